@@ -37,17 +37,62 @@ import javax.servlet.http.HttpServletResponse;
  * This class must be a Singleton as described in
  * <a href="http://code.google.com/p/google-guice/wiki/ServletModule#Filter_Mapping">
  * the Guice documentation</a>.
+ *
+ * Request and response bodies are only captured when they may be logged: when this
+ * filter logs at debug level, or always if body.capture is set to "always" (so that
+ * requests can be reprinted with their body once per org log levels are known). Only
+ * body.sample_percent percent of those requests are captured, and at most
+ * body.max_bytes bytes of each body are kept. Everything else streams straight
+ * through.
  */
 @Singleton
 public class LoggingFilter implements Filter {
 
+    public static final String HEADER_NAME_PARAM = "header.name";
+    public static final String BODY_CAPTURE_PARAM = "body.capture";
+    public static final String BODY_MAX_BYTES_PARAM = "body.max_bytes";
+    public static final String BODY_SAMPLE_PERCENT_PARAM = "body.sample_percent";
+
+    public static final String CAPTURE_DEBUG = "debug";
+    public static final String CAPTURE_ALWAYS = "always";
+    public static final int DEFAULT_MAX_BODY_BYTES = 65536;
+
+    /**
+     * Request attribute holding the {@link TeeHttpServletRequest} of requests whose
+     * body was captured.
+     */
+    public static final String CAPTURED_REQUEST_ATTRIBUTE =
+        TeeHttpServletRequest.class.getName();
+
     private static Logger log = LoggerFactory.getLogger(LoggingFilter.class);
 
     private String customHeaderName;
+    private boolean alwaysCapture = false;
+    private int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+    private int samplePercent = 100;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        customHeaderName = filterConfig.getInitParameter("header.name");
+        customHeaderName = filterConfig.getInitParameter(HEADER_NAME_PARAM);
+        alwaysCapture = CAPTURE_ALWAYS.equalsIgnoreCase(
+            filterConfig.getInitParameter(BODY_CAPTURE_PARAM));
+        maxBodyBytes = getIntParameter(filterConfig, BODY_MAX_BYTES_PARAM,
+            DEFAULT_MAX_BODY_BYTES);
+        samplePercent = getIntParameter(filterConfig, BODY_SAMPLE_PERCENT_PARAM, 100);
+    }
+
+    private int getIntParameter(FilterConfig filterConfig, String name,
+        int defaultValue) throws ServletException {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new ServletException("Invalid value for " + name + ": " + value, e);
+        }
     }
 
     @Override
@@ -55,15 +100,35 @@ public class LoggingFilter implements Filter {
         customHeaderName = null;
     }
 
+    private boolean shouldCapture(boolean debug) {
+        if (maxBodyBytes <= 0 || !(debug || alwaysCapture)) {
+            return false;
+        }
+        return samplePercent >= 100 || Math.random() * 100 < samplePercent;
+    }
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response,
         FilterChain chain) throws IOException, ServletException {
 
         long startTime = System.currentTimeMillis();
-        TeeHttpServletRequest req = new TeeHttpServletRequest(
-            (HttpServletRequest) request);
-        TeeHttpServletResponse resp = new TeeHttpServletResponse(
-            (HttpServletResponse) response);
+        boolean debug = log.isDebugEnabled();
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        TeeHttpServletRequest teeReq = null;
+        TeeHttpServletResponse resp;
+        if (shouldCapture(debug)) {
+            teeReq = new TeeHttpServletRequest(req, maxBodyBytes);
+            teeReq.setAttribute(CAPTURED_REQUEST_ATTRIBUTE, teeReq);
+            req = teeReq;
+            resp = new TeeHttpServletResponse((HttpServletResponse) response,
+                maxBodyBytes);
+        }
+        else {
+            // Only keeps track of the status and headers
+            resp = new TeeHttpServletResponse((HttpServletResponse) response, 0);
+        }
+        boolean logBodies = debug && teeReq != null;
 
         try {
             // Generate a UUID for this request and store in the thread local MDC.
@@ -80,8 +145,8 @@ public class LoggingFilter implements Filter {
             // Not sure this is useful yet.
             resp.setHeader(customHeaderName, requestUUID);
 
-            if (log.isDebugEnabled()) {
-                log.debug("{}", ServletLogger.logRequest(req));
+            if (logBodies) {
+                log.debug("{}", ServletLogger.logRequest(teeReq));
             }
             else {
                 log.info("{}", ServletLogger.logBasicRequestInfo(req));
@@ -89,7 +154,7 @@ public class LoggingFilter implements Filter {
 
             chain.doFilter(req, resp);
 
-            if (log.isDebugEnabled()) {
+            if (logBodies) {
                 log.debug("{}", ServletLogger.logResponse(resp, startTime));
             }
             else {
@@ -32,6 +32,9 @@ import javax.ws.rs.core.Response;
  */
 public class ServletLogger {
 
+    /** Appended to bodies which were only partially captured. */
+    public static final String TRUNCATED_SUFFIX = "...[truncated]";
+
     private static ObjectMapper mapper;
     private static ObjectWriter writer;
 
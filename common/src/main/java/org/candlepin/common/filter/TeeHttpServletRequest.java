@@ -16,14 +16,16 @@ package org.candlepin.common.filter;
 
 import org.candlepin.common.util.Util;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -32,31 +34,99 @@ import javax.servlet.http.HttpServletRequestWrapper;
 /**
  * This class gives us a new ServletInputStream every time we call getInputStream()
  * so we can read a request body more than once.
+ *
+ * At most maxBodyBytes bytes of the body are read ahead and kept. A body which does
+ * not fit is only readable once: its stream returns the kept bytes followed by the
+ * rest of the original stream.
  */
 public class TeeHttpServletRequest extends HttpServletRequestWrapper implements BodyLogger {
+    private static final int BUFFER_SIZE = 4096;
+
     private final byte[] body;
+    // The unread part of a body which did not fit, null if the body is complete.
+    private InputStream remainder;
+    private ServletInputStream remainderStream;
 
     public TeeHttpServletRequest(HttpServletRequest request) throws IOException {
+        this(request, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param request the request to wrap
+     * @param maxBodyBytes maximum number of body bytes read ahead and kept for logging
+     * @throws IOException if the body cannot be read
+     */
+    public TeeHttpServletRequest(HttpServletRequest request, int maxBodyBytes)
+        throws IOException {
         super(request);
         InputStream inputStream = request.getInputStream();
-        if (inputStream != null) {
-            body = IOUtils.toByteArray(inputStream);
+        if (inputStream == null) {
+            body = new byte[0];
         }
-        else {
+        else if (maxBodyBytes <= 0) {
             body = new byte[0];
+            remainder = inputStream;
+        }
+        else {
+            body = readAhead(inputStream, maxBodyBytes);
+            if (body.length == maxBodyBytes) {
+                PushbackInputStream pushback = new PushbackInputStream(inputStream, 1);
+                int next = pushback.read();
+                if (next != -1) {
+                    pushback.unread(next);
+                    remainder = pushback;
+                }
+            }
+        }
+    }
+
+    private static byte[] readAhead(InputStream inputStream, int maxBytes)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            Math.min(maxBytes, BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (out.size() < maxBytes) {
+            int read = inputStream.read(buffer, 0,
+                Math.min(buffer.length, maxBytes - out.size()));
+            if (read == -1) {
+                break;
+            }
+            out.write(buffer, 0, read);
         }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return true if the body did not fit and was only partially kept
+     */
+    public boolean isTruncated() {
+        return remainder != null && body.length > 0;
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(body);
-        ServletInputStream servletInputStream = new ServletInputStream() {
+        if (remainder != null) {
+            if (remainderStream == null) {
+                remainderStream = toServletInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(body), remainder));
+            }
+            return remainderStream;
+        }
+        return toServletInputStream(new ByteArrayInputStream(body));
+    }
+
+    private static ServletInputStream toServletInputStream(final InputStream in) {
+        return new ServletInputStream() {
             @Override
             public int read() throws IOException {
-                return byteArrayInputStream.read();
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
             }
         };
-        return servletInputStream;
     }
 
     @Override
@@ -67,7 +137,8 @@ public class TeeHttpServletRequest extends HttpServletRequestWrapper implements
     @Override
     public String getBody() {
         if (ServletLogger.showAsText(getContentType())) {
-            return new String(body);
+            return isTruncated() ?
+                new String(body) + ServletLogger.TRUNCATED_SUFFIX : new String(body);
         }
         return StringUtils.abbreviate(Util.toBase64(body), 100);
     }
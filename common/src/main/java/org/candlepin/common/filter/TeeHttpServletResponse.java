@@ -32,6 +32,10 @@ import javax.servlet.http.HttpServletResponseWrapper;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * Keeps track of the status and headers of the response, along with up to
+ * maxBodyBytes bytes of its body. With a limit of zero the body is streamed straight
+ * through without being copied.
  */
 public class TeeHttpServletResponse extends HttpServletResponseWrapper
     implements BodyLogger {
@@ -40,22 +44,43 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     protected PrintWriter teeWriter;
     protected Map<String, List<String>> headers = new HashMap<String, List<String>>();
     protected int status;
+    private final int maxBodyBytes;
 
     public TeeHttpServletResponse(HttpServletResponse httpServletResponse) {
+        this(httpServletResponse, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param httpServletResponse the response to wrap
+     * @param maxBodyBytes maximum number of body bytes kept for logging
+     */
+    public TeeHttpServletResponse(HttpServletResponse httpServletResponse,
+        int maxBodyBytes) {
         super(httpServletResponse);
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    private boolean isCapturing() {
+        return maxBodyBytes > 0;
     }
 
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+        if (!isCapturing()) {
+            return super.getOutputStream();
+        }
         if (teeServletOutputStream == null) {
             teeServletOutputStream = new TeeServletOutputStream(
-                this.getResponse());
+                this.getResponse(), maxBodyBytes);
         }
         return teeServletOutputStream;
     }
 
     @Override
     public PrintWriter getWriter() throws IOException {
+        if (!isCapturing()) {
+            return super.getWriter();
+        }
         if (this.teeWriter == null) {
             this.teeWriter = new PrintWriter(new OutputStreamWriter(
                 getOutputStream()), true);
@@ -64,7 +89,11 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     }
 
     @Override
-    public void flushBuffer() {
+    public void flushBuffer() throws IOException {
+        if (!isCapturing()) {
+            super.flushBuffer();
+            return;
+        }
         if (this.teeWriter != null) {
             this.teeWriter.flush();
         }
@@ -96,7 +125,8 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
 
         if (buff != null) {
             if (ServletLogger.showAsText(getContentType())) {
-                return new String(buff);
+                return teeServletOutputStream.isTruncated() ?
+                    new String(buff) + ServletLogger.TRUNCATED_SUFFIX : new String(buff);
             }
             return StringUtils.abbreviate(Util.toBase64(buff), 100);
         }
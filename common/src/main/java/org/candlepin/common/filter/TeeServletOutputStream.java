@@ -22,14 +22,25 @@ import javax.servlet.ServletResponse;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * Only the first maxBytes bytes written are copied, everything is passed on to the
+ * underlying stream.
  */
 public class TeeServletOutputStream extends ServletOutputStream {
 
     protected final ServletOutputStream underlyingStream;
     protected final ByteArrayOutputStream baosCopy;
+    private final int maxBytes;
+    private boolean truncated;
 
     TeeServletOutputStream(ServletResponse httpServletResponse) throws IOException {
+        this(httpServletResponse, Integer.MAX_VALUE);
+    }
+
+    TeeServletOutputStream(ServletResponse httpServletResponse, int maxBytes)
+        throws IOException {
         this.underlyingStream = httpServletResponse.getOutputStream();
+        this.maxBytes = maxBytes;
         baosCopy = new ByteArrayOutputStream();
     }
 
@@ -37,11 +48,23 @@ public class TeeServletOutputStream extends ServletOutputStream {
         return baosCopy.toByteArray();
     }
 
+    /**
+     * @return true if more bytes were written than were copied
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
     @Override
     public void write(int val) throws IOException {
         if (underlyingStream != null) {
             underlyingStream.write(val);
-            baosCopy.write(val);
+            if (baosCopy.size() < maxBytes) {
+                baosCopy.write(val);
+            }
+            else {
+                truncated = true;
+            }
         }
     }
 
@@ -60,7 +83,13 @@ public class TeeServletOutputStream extends ServletOutputStream {
         }
 
         underlyingStream.write(byteArray, offset, length);
-        baosCopy.write(byteArray, offset, length);
+        int copied = Math.min(length, maxBytes - baosCopy.size());
+        if (copied > 0) {
+            baosCopy.write(byteArray, offset, copied);
+        }
+        if (copied < length) {
+            truncated = true;
+        }
     }
 
     @Override
@@ -99,6 +99,44 @@ public class LoggingFilterTest {
         verify(mockapp, never()).doAppend(null);
     }
 
+    @Test
+    public void testBodyNotCapturedWhenDebugOff() throws Exception {
+        filterlogger.setLevel(Level.INFO);
+
+        filter.doFilter(request, response, chain);
+
+        verify(request, never()).getInputStream();
+        verify(chain).doFilter(same(request), any(TeeHttpServletResponse.class));
+    }
+
+    @Test
+    public void testBodyNotCapturedWhenNotSampled() throws Exception {
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter(LoggingFilter.BODY_SAMPLE_PERCENT_PARAM))
+            .thenReturn("0");
+        filter.init(config);
+
+        filter.doFilter(request, response, chain);
+
+        verify(request, never()).getInputStream();
+    }
+
+    @Test
+    public void testBodyCapturedWhenAlwaysCapturing() throws Exception {
+        filterlogger.setLevel(Level.INFO);
+        FilterConfig config = mock(FilterConfig.class);
+        when(config.getInitParameter(LoggingFilter.BODY_CAPTURE_PARAM))
+            .thenReturn(LoggingFilter.CAPTURE_ALWAYS);
+        filter.init(config);
+
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(any(TeeHttpServletRequest.class),
+            any(TeeHttpServletResponse.class));
+        verify(request).setAttribute(eq(LoggingFilter.CAPTURED_REQUEST_ATTRIBUTE),
+            any(TeeHttpServletRequest.class));
+    }
+
     @Test
     public void testWithHeaders() throws Exception {
         ArgumentCaptor<LoggingEvent> message = ArgumentCaptor.forClass(LoggingEvent.class);
@@ -93,6 +93,27 @@ public class TeeHttpServletRequestTest {
         }
     }
 
+    @Test
+    public void bodyOverLimitIsTruncatedButFullyReadable() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 4);
+
+        assertTrue(tee.isTruncated());
+        assertEquals("this" + ServletLogger.TRUNCATED_SUFFIX, tee.getBody());
+        assertEquals("this is my body", readData(tee.getInputStream()));
+    }
+
+    @Test
+    public void bodyAtLimitIsReplayable() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 15);
+
+        assertFalse(tee.isTruncated());
+        assertEquals("this is my body", tee.getBody());
+        assertEquals("this is my body", readData(tee.getInputStream()));
+        assertEquals("this is my body", readData(tee.getInputStream()));
+    }
+
     private String readData(InputStream is) throws IOException {
         return readData(new InputStreamReader(is));
     }
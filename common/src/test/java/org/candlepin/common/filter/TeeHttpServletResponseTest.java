@@ -40,11 +40,12 @@ import javax.ws.rs.core.MediaType;
 public class TeeHttpServletResponseTest {
 
     @Mock private HttpServletResponse resp;
+    private StringWriter sw;
 
     @Before
     public void setUp() throws IOException {
         MockitoAnnotations.initMocks(this);
-        final StringWriter sw = new StringWriter();
+        sw = new StringWriter();
         when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
             public void write(int b) throws IOException {
                 sw.write(b);
@@ -52,6 +53,27 @@ public class TeeHttpServletResponseTest {
         });
     }
 
+    @Test
+    public void bodyOverLimitIsTruncated() throws IOException {
+        when(resp.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 4);
+        tee.getOutputStream().write("this is my body".getBytes());
+
+        assertEquals("this" + ServletLogger.TRUNCATED_SUFFIX, tee.getBody());
+        assertEquals("this is my body", sw.toString());
+    }
+
+    @Test
+    public void zeroLimitStreamsStraightThrough() throws IOException {
+        when(resp.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 0);
+
+        assertSame(resp.getOutputStream(), tee.getOutputStream());
+        tee.setStatus(200);
+        assertEquals(200, tee.getStatus());
+        assertEquals("", tee.getBody());
+    }
+
     @Test
     public void getBodyTest() throws IOException {
         TeeHttpServletResponse tee = new TeeHttpServletResponse(resp);
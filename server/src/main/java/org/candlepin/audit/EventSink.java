@@ -34,6 +34,8 @@ public interface EventSink {
 
     void sendEvents();
 
+    void transferEvents(EventSink target);
+
     void emitConsumerCreated(Consumer newConsumer);
 
     void emitOwnerCreated(Owner newOwner);
@@ -14,9 +14,13 @@
  */
 package org.candlepin.audit;
 
+import org.candlepin.audit.Event.Target;
+import org.candlepin.audit.Event.Type;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerInfoCache;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Subscription;
@@ -44,14 +48,19 @@ public class EventSinkImpl implements EventSink {
     private static Logger log = LoggerFactory.getLogger(EventSinkImpl.class);
     private EventFactory eventFactory;
     private HornetqEventDispatcher dispatcher;
+    private OwnerInfoCache ownerInfoCache;
+    private ConsumerPrincipalCache principalCache;
 
     // Hold onto events we will send on successful completion of request/job:
     private List<Event> eventQueue;
 
     @Inject
-    public EventSinkImpl(EventFactory eventFactory, HornetqEventDispatcher dispatcher) {
+    public EventSinkImpl(EventFactory eventFactory, HornetqEventDispatcher dispatcher,
+        OwnerInfoCache ownerInfoCache, ConsumerPrincipalCache principalCache) {
         this.eventFactory = eventFactory;
         this.dispatcher = dispatcher;
+        this.ownerInfoCache = ownerInfoCache;
+        this.principalCache = principalCache;
         this.eventQueue = new LinkedList<Event>();
     }
 
@@ -64,23 +73,42 @@ public class EventSinkImpl implements EventSink {
      * typically after a successful request or job execution.
      */
     @Override
-    public void queueEvent(Event event) {
+    public synchronized void queueEvent(Event event) {
         log.debug("Queuing event: " + event);
         getEventQueue().add(event);
     }
 
     /**
      * Dispatch all queued events. Typically only called after a successful request or
-     * job execution.
+     * job execution, once its changes are committed, which makes this the point at
+     * which cached owner info and consumer principals go stale.
      */
     @Override
-    public void sendEvents() {
+    public synchronized void sendEvents() {
         for (Event e : getEventQueue()) {
+            ownerInfoCache.invalidate(e);
+            // Covers identity certificate regeneration, which modifies the consumer
+            if (e.getTarget() == Target.CONSUMER &&
+                (e.getType() == Type.MODIFIED || e.getType() == Type.DELETED)) {
+                principalCache.invalidateConsumer(e.getEntityId());
+            }
             dispatcher.sendEvent(e);
         }
         getEventQueue().clear();
     }
 
+    /**
+     * Moves the queued events to the given sink, typically the sink of the job whose
+     * worker thread queued them, so they are sent along with the job's own events.
+     */
+    @Override
+    public synchronized void transferEvents(EventSink target) {
+        for (Event e : getEventQueue()) {
+            target.queueEvent(e);
+        }
+        getEventQueue().clear();
+    }
+
     public void emitConsumerCreated(Consumer newConsumer) {
         Event e = eventFactory.consumerCreated(newConsumer);
         queueEvent(e);
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.candlepin.audit.Event.Target;
+import org.candlepin.model.StatisticCounter;
+import org.candlepin.model.StatisticCounterCurator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StatisticListener
+ *
+ * Keeps the {@link StatisticCounter}s of each owner up to date as consumers are
+ * created, modified and deleted, so statistic runs do not need to count them.
+ * Consumed entitlement quantities are not counted here: entitlement modifications
+ * carry no old entity, so quantity changes could not be followed, and statistic
+ * runs sum them exactly instead.
+ */
+public class StatisticListener implements EventListener {
+    private static Logger log = LoggerFactory.getLogger(StatisticListener.class);
+
+    private StatisticCounterCurator counterCurator;
+    private ObjectMapper mapper;
+
+    @Inject
+    public StatisticListener(StatisticCounterCurator counterCurator) {
+        this.counterCurator = counterCurator;
+        this.mapper = new ObjectMapper();
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (event == null || event.getOwnerId() == null ||
+            event.getTarget() != Target.CONSUMER) {
+            return;
+        }
+
+        Map<String, Long> deltas = new HashMap<String, Long>();
+        try {
+            countConsumer(read(event.getOldEntity()), -1, deltas);
+            countConsumer(read(event.getNewEntity()), 1, deltas);
+        }
+        catch (IOException e) {
+            // Retrying the event would not help, reconciliation will fix the counters.
+            log.warn("Unable to read entity of event " + event.getId() +
+                ", statistic counters not updated.", e);
+            return;
+        }
+
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            counterCurator.increment(event.getOwnerId(), delta.getKey(), delta.getValue());
+        }
+    }
+
+    /*
+     * A modification counts the old consumer out and the new one in, so only the
+     * counters it actually moved end up with a delta.
+     */
+    private void countConsumer(JsonNode consumer, long sign, Map<String, Long> deltas) {
+        if (consumer == null) {
+            return;
+        }
+
+        add(deltas, StatisticCounter.TOTAL_CONSUMERS, sign);
+        JsonNode facts = consumer.get("facts");
+        if ("true".equalsIgnoreCase(getText(facts, "virt.is_guest"))) {
+            add(deltas, StatisticCounter.GUEST_CONSUMERS, sign);
+        }
+        add(deltas, StatisticCounter.socketsName(getText(facts, "cpu.cpu_socket(s)")),
+            sign);
+    }
+
+    private void add(Map<String, Long> deltas, String name, long delta) {
+        Long previous = deltas.get(name);
+        long total = (previous == null ? 0L : previous) + delta;
+        if (total == 0) {
+            deltas.remove(name);
+        }
+        else {
+            deltas.put(name, total);
+        }
+    }
+
+    private String getText(JsonNode node, String field) {
+        if (node == null || node.get(field) == null || node.get(field).isNull()) {
+            return null;
+        }
+        return node.get(field).asText();
+    }
+
+    private JsonNode read(String json) throws IOException {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        return mapper.readTree(json);
+    }
+}
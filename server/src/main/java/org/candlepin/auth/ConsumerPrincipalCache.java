@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConsumerPrincipalCache
+ *
+ * Remembers the principals of recently authenticated consumers for a short time,
+ * keyed on the credentials they presented (client certificate or consumer UUID), so
+ * that repeated requests do not look up the consumer and its deletion status again.
+ *
+ * The consumer held by a cached principal is detached from any session, it must
+ * only be used for its identity (id, uuid and owner). All entries of a consumer are
+ * dropped when it is deleted or modified, for instance when its identity certificate
+ * is regenerated.
+ *
+ * The cache is bounded, least recently used entries are evicted first. A time to
+ * live or size of zero disables it.
+ */
+@Singleton
+public class ConsumerPrincipalCache {
+
+    private final long ttl;
+    private final int maxSize;
+    private final Map<String, CachedPrincipal> principals;
+    // Keys of the cached entries of each consumer, by consumer id
+    private final Map<String, Set<String>> keysByConsumer =
+        new HashMap<String, Set<String>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ConsumerPrincipalCache(Configuration config) {
+        this(config.getInt(ConfigProperties.PRINCIPAL_CACHE_TTL) * 1000L,
+            config.getInt(ConfigProperties.PRINCIPAL_CACHE_SIZE));
+    }
+
+    /**
+     * @param ttl milliseconds a principal is cached for
+     * @param size maximum number of cached principals
+     */
+    public ConsumerPrincipalCache(long ttl, int size) {
+        this.ttl = ttl;
+        this.maxSize = size;
+        this.principals = new LinkedHashMap<String, CachedPrincipal>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                if (size() > maxSize) {
+                    unindex(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return ttl > 0 && maxSize > 0;
+    }
+
+    /**
+     * @param key the credentials the principal was authenticated with
+     * @return the cached principal, or null if it must be looked up
+     */
+    public ConsumerPrincipal get(String key) {
+        if (!isEnabled() || key == null) {
+            return null;
+        }
+
+        synchronized (principals) {
+            CachedPrincipal cached = principals.get(key);
+            if (cached != null && cached.expires > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return cached.principal;
+            }
+            if (cached != null) {
+                principals.remove(key);
+                unindex(key, cached);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key the credentials the principal was authenticated with
+     * @param principal the authenticated principal, null principals are not cached
+     */
+    public void put(String key, ConsumerPrincipal principal) {
+        if (!isEnabled() || key == null || principal == null ||
+            principal.getConsumer().getId() == null) {
+            return;
+        }
+
+        CachedPrincipal cached = new CachedPrincipal(principal,
+            System.currentTimeMillis() + ttl);
+        synchronized (principals) {
+            CachedPrincipal replaced = principals.put(key, cached);
+            if (replaced != null) {
+                unindex(key, replaced);
+            }
+            String consumerId = cached.getConsumerId();
+            Set<String> keys = keysByConsumer.get(consumerId);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByConsumer.put(consumerId, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Drops every cached principal of the given consumer.
+     *
+     * @param consumerId database id of the consumer
+     */
+    public void invalidateConsumer(String consumerId) {
+        if (consumerId == null) {
+            return;
+        }
+        synchronized (principals) {
+            Set<String> keys = keysByConsumer.remove(consumerId);
+            if (keys != null) {
+                for (String key : keys) {
+                    principals.remove(key);
+                }
+            }
+        }
+    }
+
+    public void flush() {
+        synchronized (principals) {
+            principals.clear();
+            keysByConsumer.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (principals) {
+            return principals.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Must be called while holding the lock on principals
+    private void unindex(String key, CachedPrincipal cached) {
+        Set<String> keys = keysByConsumer.get(cached.getConsumerId());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByConsumer.remove(cached.getConsumerId());
+            }
+        }
+    }
+
+    /**
+     * A principal along with the time it expires at.
+     */
+    private static class CachedPrincipal {
+        private final ConsumerPrincipal principal;
+        private final long expires;
+
+        CachedPrincipal(ConsumerPrincipal principal, long expires) {
+            this.principal = principal;
+            this.expires = expires;
+        }
+
+        String getConsumerId() {
+            return principal.getConsumer().getId();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.candlepin.pinsetter.tasks.ExpiredPoolsJob;
 import org.candlepin.pinsetter.tasks.ExportCleaner;
 import org.candlepin.pinsetter.tasks.ImportRecordJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.RegenerateDirtyEntitlementsJob;
 import org.candlepin.pinsetter.tasks.StatisticHistoryTask;
 import org.candlepin.pinsetter.tasks.SweepBarJob;
 import org.candlepin.pinsetter.tasks.UnmappedGuestEntitlementCleanerJob;
@@ -64,6 +65,12 @@ public class ConfigProperties {
     public static final String PRETTY_PRINT = "candlepin.pretty_print";
     public static final String REVOKE_ENTITLEMENT_IN_FIFO_ORDER =
         "candlepin.entitlement.revoke.order.fifo";
+    public static final String REFRESH_POOLS_THREADS = "candlepin.refresh_pools.threads";
+    public static final String REFRESH_POOLS_PARTITION_SIZE =
+        "candlepin.refresh_pools.partition_size";
+    public static final String DIRTY_REGEN_THREADS = "candlepin.dirty_regen.threads";
+    public static final String DIRTY_REGEN_BATCH_SIZE = "candlepin.dirty_regen.batch_size";
+    public static final String DIRTY_REGEN_MAX_PER_RUN = "candlepin.dirty_regen.max_per_run";
     public static final String ACTIVATION_DEBUG_PREFIX =
         "candlepin.subscription.activation.debug_prefix";
 
@@ -88,6 +95,9 @@ public class ConfigProperties {
     public static final String AMQP_CONNECTION_RETRY_INTERVAL = "gutterball.amqp.connection.retry_interval";
 
     public static final String DB_PASSWORD = JPA_CONFIG_PREFIX + "hibernate.connection.password";
+    public static final String DB_BATCH_SIZE = JPA_CONFIG_PREFIX + "hibernate.jdbc.batch_size";
+    public static final String DB_ORDER_INSERTS = JPA_CONFIG_PREFIX + "hibernate.order_inserts";
+    public static final String DB_ORDER_UPDATES = JPA_CONFIG_PREFIX + "hibernate.order_updates";
 
     public static final String[] ENCRYPTED_PROPERTIES = new String[] {
         DB_PASSWORD,
@@ -112,9 +122,11 @@ public class ConfigProperties {
         ExportCleaner.class.getName(), ActiveEntitlementJob.class.getName(),
         CleanupCheckInsJob.class.getName(), CleanupGuestIdsCheckInsJob.class.getName(),
         UnmappedGuestEntitlementCleanerJob.class.getName(),
+        RegenerateDirtyEntitlementsJob.class.getName(),
     };
 
     public static final String SYNC_WORK_DIR = "candlepin.sync.work_dir";
+    public static final String SYNC_IMPORT_STREAMING = "candlepin.sync.import_streaming";
     public static final String CONSUMER_FACTS_MATCHER = "candlepin.consumer.facts.match_regex";
 
     public static final String SHARD_USERNAME = "candlepin.shard.username";
@@ -136,6 +148,33 @@ public class ConfigProperties {
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
 
+    public static final String RULES_VERSION_CHECK_INTERVAL =
+        "candlepin.rules.version_check_interval";
+    public static final String COMPLIANCE_NATIVE_ENGINE =
+        "candlepin.compliance.native_engine";
+    public static final String COMPLIANCE_CACHE_SIZE = "candlepin.compliance.cache_size";
+    public static final String V3_PAYLOAD_CACHE_SIZE =
+        "candlepin.entitlement.v3_payload_cache_size";
+    public static final String ENTITLEMENT_CERT_THREADS =
+        "candlepin.entitlement.cert_generation.threads";
+    public static final String ENTITLEMENT_CERT_BATCH_SIZE =
+        "candlepin.entitlement.cert_generation.batch_size";
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.keypair_pool.size";
+    public static final String KEYPAIR_POOL_FILE = "candlepin.keypair_pool.file";
+    public static final String HYPERVISOR_ASYNC_CHECKIN_GUESTS =
+        "candlepin.hypervisor.async_checkin.guests";
+    public static final String STATISTICS_RECONCILE_DAYS =
+        "candlepin.statistics.reconcile_days";
+    public static final String OWNER_INFO_CACHE_TTL = "candlepin.owner_info.cache_ttl";
+    public static final String PRINCIPAL_CACHE_TTL = "candlepin.auth.principal_cache.ttl";
+    public static final String PRINCIPAL_CACHE_SIZE = "candlepin.auth.principal_cache.size";
+    public static final String REQUEST_LOGGING_BODY_CAPTURE =
+        "candlepin.request_logging.body_capture";
+    public static final String REQUEST_LOGGING_BODY_MAX_BYTES =
+        "candlepin.request_logging.body_max_bytes";
+    public static final String REQUEST_LOGGING_BODY_SAMPLE_PERCENT =
+        "candlepin.request_logging.body_sample_percent";
+
     public static final String INTEGER_FACTS = "candlepin.integer_facts";
     private static final String INTEGER_FACT_LIST = "";
 
@@ -189,15 +228,70 @@ public class ConfigProperties {
                 this.put(AUDIT_LISTENERS,
                     "org.candlepin.audit.DatabaseListener," +
                         "org.candlepin.audit.LoggingListener," +
-                        "org.candlepin.audit.ActivationListener");
+                        "org.candlepin.audit.ActivationListener," +
+                        "org.candlepin.audit.StatisticListener");
                 this.put(AUDIT_LOG_FILE, "/var/log/candlepin/audit.log");
                 this.put(AUDIT_LOG_VERBOSE, "false");
 
                 this.put(PRETTY_PRINT, "false");
                 this.put(REVOKE_ENTITLEMENT_IN_FIFO_ORDER, "true");
+
+                /**
+                 * Number of threads a refresh pools job uses to refresh the
+                 * subscriptions of an owner, in partitions of partition_size
+                 * subscriptions. Only lazy refresh jobs are partitioned, 1 refreshes
+                 * everything serially.
+                 */
+                this.put(REFRESH_POOLS_THREADS, "1");
+                this.put(REFRESH_POOLS_PARTITION_SIZE, "100");
+
+                /**
+                 * The dirty entitlement regeneration job regenerates up to
+                 * max_per_run certificates which were marked dirty by lazy
+                 * regeneration, in batches of batch_size entitlements spread over
+                 * the given number of threads.
+                 */
+                this.put(DIRTY_REGEN_THREADS, "2");
+                this.put(DIRTY_REGEN_BATCH_SIZE, "50");
+                this.put(DIRTY_REGEN_MAX_PER_RUN, "5000");
                 this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
 
+                /**
+                 * When a delta CRL file is set, the CRL job only publishes the
+                 * serials revoked since the last complete CRL to it, and regenerates
+                 * the complete CRL once max_deltas delta CRLs have been issued.
+                 */
+                this.put(CRL_DELTA_FILE_PATH, "");
+                this.put(CRL_DELTA_MAX_DELTAS, "24");
+
+                /**
+                 * Serve GET /crl from the last published CRL file, only
+                 * regenerating it when newly revoked serials are pending.
+                 */
+                this.put(CRL_SERVE_SNAPSHOT, "false");
+
                 this.put(SYNC_WORK_DIR, "/var/cache/candlepin/sync");
+                /**
+                 * Read manifests straight from the uploaded archive rather than
+                 * extracting them to the sync work directory first.
+                 */
+                this.put(SYNC_IMPORT_STREAMING, "true");
+                /**
+                 * Number of inserts and updates Hibernate sends to the database in
+                 * one JDBC batch when a session is flushed. Hibernate only supports
+                 * this per session factory, so it applies to every session and not
+                 * just the bulk product and content writes of manifest imports it
+                 * was introduced for. Set it to 0 to turn JDBC batching off.
+                 */
+                this.put(DB_BATCH_SIZE, "30");
+                /**
+                 * A JDBC batch only holds statements for a single table, so unless
+                 * Hibernate groups them by entity on flush, the interleaved inserts
+                 * of products and their attributes and content end each batch after
+                 * a row or two.
+                 */
+                this.put(DB_ORDER_INSERTS, "true");
+                this.put(DB_ORDER_UPDATES, "true");
                 this.put(CONSUMER_FACTS_MATCHER, ".*");
                 this.put(TRUSTED_AUTHENTICATION, "false");
                 this.put(SSL_AUTHENTICATION, "true");
@@ -261,6 +355,99 @@ public class ConfigProperties {
                  */
                 this.put(PRODUCT_CACHE_MAX, "100");
 
+                /**
+                 * Number of seconds the rules timestamp read from the database is
+                 * trusted before it is checked again. Rules changes made through this
+                 * node are picked up immediately, changes made through other nodes
+                 * may take up to this long. Set to 0 to check on every rules execution.
+                 */
+                this.put(RULES_VERSION_CHECK_INTERVAL, "5");
+
+                /**
+                 * Calculate compliance with the built in Java implementation of the
+                 * default rules instead of running them in javascript. Compliance
+                 * changes made in uploaded or imported rules are not honored when
+                 * this is enabled.
+                 */
+                this.put(COMPLIANCE_NATIVE_ENGINE, "false");
+
+                /**
+                 * Maximum number of consumers whose last compliance status is kept
+                 * in memory. Set to 0 to calculate the status on every request.
+                 */
+                this.put(COMPLIANCE_CACHE_SIZE, "10000");
+
+                /**
+                 * Maximum number of encoded content payloads of v3 entitlement
+                 * certificates kept in memory. Set to 0 to encode the content of
+                 * every certificate.
+                 */
+                this.put(V3_PAYLOAD_CACHE_SIZE, "500");
+
+                /**
+                 * Mass regeneration of entitlement certificates signs the
+                 * certificates of each batch of batch_size entitlements on the given
+                 * number of threads, 0 uses one thread per available processor.
+                 */
+                this.put(ENTITLEMENT_CERT_THREADS, "0");
+                this.put(ENTITLEMENT_CERT_BATCH_SIZE, "100");
+
+                /**
+                 * Number of consumer key pairs generated ahead of registrations,
+                 * 0 generates them on demand. Left over key pairs are kept in the
+                 * given file across restarts, no file discards them.
+                 */
+                this.put(KEYPAIR_POOL_SIZE, "100");
+                this.put(KEYPAIR_POOL_FILE, "");
+
+                /**
+                 * Bulk hypervisor check-ins reporting more guests than this are
+                 * run as asynchronous jobs, each checking in hosts with at most
+                 * this many guests.
+                 */
+                this.put(HYPERVISOR_ASYNC_CHECKIN_GUESTS, "10000");
+
+                /**
+                 * Statistic runs snapshot counters kept up to date by the
+                 * StatisticListener, recomputing them from the database when they
+                 * are older than this many days.
+                 */
+                this.put(STATISTICS_RECONCILE_DAYS, "7");
+
+                /**
+                 * Number of seconds an owner's info is served from memory. Entries
+                 * are dropped earlier when this node sends an event touching the
+                 * owner's consumers, pools or entitlements. Set to 0 to disable.
+                 */
+                this.put(OWNER_INFO_CACHE_TTL, "60");
+
+                /**
+                 * Number of seconds the principal of an authenticated consumer is
+                 * reused for requests presenting the same certificate or UUID,
+                 * and the maximum number of principals kept. Set either to 0 to
+                 * look consumers up on every request.
+                 */
+                this.put(PRINCIPAL_CACHE_TTL, "30");
+                this.put(PRINCIPAL_CACHE_SIZE, "10000");
+
+                /**
+                 * When request and response bodies are captured for logging:
+                 * "debug" only when the LoggingFilter logs at debug level, "always"
+                 * to also have them for requests reprinted at a per org debug level.
+                 */
+                this.put(REQUEST_LOGGING_BODY_CAPTURE, "debug");
+
+                /**
+                 * Maximum number of bytes of each body captured for logging.
+                 */
+                this.put(REQUEST_LOGGING_BODY_MAX_BYTES, "65536");
+
+                /**
+                 * Percentage of the requests eligible for body capture which are
+                 * actually captured.
+                 */
+                this.put(REQUEST_LOGGING_BODY_SAMPLE_PERCENT, "100");
+
                 /**
                  * As we do math on some facts and attributes, we need to constrain
                  * some values
@@ -279,6 +466,9 @@ public class ConfigProperties {
             }
         };
     public static final String CRL_FILE_PATH = "candlepin.crl.file";
+    public static final String CRL_DELTA_FILE_PATH = "candlepin.crl.delta.file";
+    public static final String CRL_DELTA_MAX_DELTAS = "candlepin.crl.delta.max_deltas";
+    public static final String CRL_SERVE_SNAPSHOT = "candlepin.crl.serve_snapshot";
     public static final String IDENTITY_CERT_YEAR_ADDENDUM = "candlepin.identityCert.yr.addendum";
     /**
      * Identity certificate expiry threshold in days
@@ -55,12 +55,17 @@ import org.candlepin.policy.js.pool.PoolHelper;
 import org.candlepin.policy.js.pool.PoolRules;
 import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.resource.dto.AutobindData;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
+import org.candlepin.service.BulkSubscriptionServiceAdapter;
+import org.candlepin.service.EntitlementCertRequest;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
 import org.candlepin.util.Util;
 import org.candlepin.version.CertVersionConflictException;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
@@ -85,6 +90,12 @@ import java.util.Set;
  */
 public class CandlepinPoolManager implements PoolManager {
 
+    /*
+     * Number of subscriptions looked up from the subscription service at once
+     * while refreshing pools, keeps both the query and the result bounded.
+     */
+    private static final int SUBSCRIPTION_BATCH_SIZE = 500;
+
     private PoolCurator poolCurator;
     private static Logger log = LoggerFactory.getLogger(CandlepinPoolManager.class);
 
@@ -146,33 +157,113 @@ public class CandlepinPoolManager implements PoolManager {
         List<String> subIds = subAdapter.getSubscriptionIds(owner);
         log.debug("Found " + subIds.size() + " existing subscriptions.");
 
+        List<String> deletedSubs = refreshPoolsForSubscriptionIds(subIds, lazy, false);
+
+        // We deleted some, need to take that into account so we
+        // remove everything that isn't actually active
+        subIds.removeAll(deletedSubs);
+        cleanupPoolsForOwner(owner, subIds, lazy);
+    }
+
+    /**
+     * Refreshes the pools of one partition of an owner's subscriptions in a single
+     * transaction. Partitions must not share subscriptions, which lets them be
+     * refreshed concurrently. Pools are locked in subscription and then pool id
+     * order, so concurrent partitions always acquire their locks in the same order.
+     *
+     * @param subIds ids of the subscriptions in this partition
+     * @param lazy whether to regenerate entitlement certificates lazily
+     * @return ids of the subscriptions which no longer exist or have expired
+     */
+    @Transactional
+    List<String> refreshPoolsForPartition(List<String> subIds, boolean lazy) {
+        List<String> sortedIds = new ArrayList<String>(subIds);
+        Collections.sort(sortedIds);
+        return refreshPoolsForSubscriptionIds(sortedIds, lazy, true);
+    }
+
+    /*
+     * Returns IDs of deleted or expired subscriptions
+     */
+    private List<String> refreshPoolsForSubscriptionIds(Collection<String> subIds,
+        boolean lazy, boolean lockPools) {
         List<String> deletedSubs = new LinkedList<String>();
-        for (String subId : subIds) {
-            Subscription sub = subAdapter.getSubscription(subId);
+        for (List<String> batch : Lists.partition(new ArrayList<String>(subIds),
+            SUBSCRIPTION_BATCH_SIZE)) {
+            Map<String, Subscription> subs = lookupSubscriptions(batch);
 
-            // If this sub has been removed since getSubscriptionIds was called,
-            if (sub == null) {
-                deletedSubs.add(subId);
-                log.warn("Couldn't load subscription, assuming it has been deleted: " + subId);
-                continue;
+            for (String subId : batch) {
+                refreshPoolsForSubscriptionId(subId, subs.get(subId), lazy, lockPools,
+                    deletedSubs);
             }
+        }
+        return deletedSubs;
+    }
 
-            // Remove expired subscriptions
-            if (isExpired(sub)) {
-                deletedSubs.add(subId);
-                log.info("Deleting expired subscription: " + sub);
-                subAdapter.deleteSubscription(sub);
-                continue;
+    /*
+     * Adapters which cannot look subscriptions up in bulk are asked for each one.
+     */
+    private Map<String, Subscription> lookupSubscriptions(List<String> subIds) {
+        Map<String, Subscription> subs = new HashMap<String, Subscription>();
+        if (subAdapter instanceof BulkSubscriptionServiceAdapter) {
+            for (Subscription sub :
+                ((BulkSubscriptionServiceAdapter) subAdapter).getSubscriptions(subIds)) {
+                subs.put(sub.getId(), sub);
             }
+        }
+        else {
+            for (String subId : subIds) {
+                Subscription sub = subAdapter.getSubscription(subId);
+                if (sub != null) {
+                    subs.put(subId, sub);
+                }
+            }
+        }
+        return subs;
+    }
+
+    private void refreshPoolsForSubscriptionId(String subId, Subscription sub,
+        boolean lazy, boolean lockPools, List<String> deletedSubs) {
+        // If this sub has been removed since getSubscriptionIds was called,
+        if (sub == null) {
+            deletedSubs.add(subId);
+            log.warn("Couldn't load subscription, assuming it has been deleted: " + subId);
+            return;
+        }
 
+        // Remove expired subscriptions
+        if (isExpired(sub)) {
+            deletedSubs.add(subId);
+            log.info("Deleting expired subscription: " + sub);
+            subAdapter.deleteSubscription(sub);
+            return;
+        }
+
+        if (lockPools) {
+            List<Pool> subscriptionPools = poolCurator.getPoolsBySubscriptionId(subId);
+            Collections.sort(subscriptionPools);
+            for (Pool pool : subscriptionPools) {
+                poolCurator.lockAndLoad(pool);
+            }
+            refreshPoolsForSubscription(sub, subscriptionPools, lazy);
+        }
+        else {
             refreshPoolsForSubscription(sub, lazy);
         }
+    }
 
-        // We deleted some, need to take that into account so we
-        // remove everything that isn't actually active
-        subIds.removeAll(deletedSubs);
+    /**
+     * Deletes the pools of subscriptions the owner no longer has, and updates the
+     * owner's floating pools. Run once all of the owner's subscriptions have been
+     * refreshed.
+     *
+     * @param owner owner being refreshed
+     * @param activeSubIds ids of the owner's remaining subscriptions
+     * @param lazy whether to regenerate entitlement certificates lazily
+     */
+    void cleanupPoolsForOwner(Owner owner, List<String> activeSubIds, boolean lazy) {
         // delete pools whose subscription disappeared:
-        for (Pool p : poolCurator.getPoolsFromBadSubs(owner, subIds)) {
+        for (Pool p : poolCurator.getPoolsFromBadSubs(owner, activeSubIds)) {
             if (p.getType() == PoolType.NORMAL || p.getType() == PoolType.BONUS) {
                 deletePool(p);
             }
@@ -189,6 +280,11 @@ public class CandlepinPoolManager implements PoolManager {
 
         // These don't all necessarily belong to this owner
         List<Pool> subscriptionPools = poolCurator.getPoolsBySubscriptionId(sub.getId());
+        refreshPoolsForSubscription(sub, subscriptionPools, lazy);
+    }
+
+    private void refreshPoolsForSubscription(Subscription sub,
+        List<Pool> subscriptionPools, boolean lazy) {
 
         // Cleans up pools on other owners who have migrated subs away
         removeAndDeletePoolsOnOtherOwners(subscriptionPools, sub);
@@ -618,8 +714,8 @@ public class CandlepinPoolManager implements PoolManager {
                     Util.collectionToString(tmpSet));
         }
 
+        List<Pool> candidatePools = new LinkedList<Pool>();
         for (Pool pool : allOwnerPools) {
-            boolean providesProduct = false;
             // Would parse the int here, but it can be 'unlimited'
             // and we only need to check that it's non-zero
             if (pool.hasProductAttribute("virt_limit") &&
@@ -630,31 +726,34 @@ public class CandlepinPoolManager implements PoolManager {
                     if (pool.providesDerived(productId)) {
                         log.debug("Found virt_limit pool providing product {}: {}",
                                 productId, pool);
-                        providesProduct = true;
+                        candidatePools.add(pool);
                         break;
                     }
                 }
             }
-            if (providesProduct) {
-                ValidationResult result = enforcer.preEntitlement(host,
-                    pool, 1, CallerType.BEST_POOLS);
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResult = result;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to failed rule(s): {}" +
-                                pool);
-                        log.debug("   warnings: " +
-                                Util.collectionToString(result.getWarnings()));
-                        log.debug("   errors: " +
-                                Util.collectionToString(result.getErrors()));
-                    }
-                }
-                else {
-                    filteredPools.add(pool);
+        }
+
+        // Validate all candidates in a single rules call:
+        Map<String, ValidationResult> results = enforcer.preEntitlement(host,
+            candidatePools, CallerType.BEST_POOLS);
+        for (Pool pool : candidatePools) {
+            ValidationResult result = results.get(pool.getId());
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResult = result;
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to failed rule(s): {}" +
+                            pool);
+                    log.debug("   warnings: " +
+                            Util.collectionToString(result.getWarnings()));
+                    log.debug("   errors: " +
+                            Util.collectionToString(result.getErrors()));
                 }
             }
+            else {
+                filteredPools.add(pool);
+            }
         }
 
         // Only throw refused exception if we actually hit the rules:
@@ -728,6 +827,7 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
+        List<Pool> candidatePools = new LinkedList<Pool>();
         for (Pool pool : allOwnerPools) {
             boolean providesProduct = false;
             // If We want to complete partial stacks if possible,
@@ -746,22 +846,28 @@ public class CandlepinPoolManager implements PoolManager {
                 }
             }
             if (providesProduct) {
-                ValidationResult result = enforcer.preEntitlement(consumer,
-                    pool, 1, CallerType.BEST_POOLS);
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResult = result;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to rules " +
-                            "failure: " +
-                            pool.getId());
-                    }
-                }
-                else {
-                    filteredPools.add(pool);
+                candidatePools.add(pool);
+            }
+        }
+
+        // Validate all candidates in a single rules call:
+        Map<String, ValidationResult> results = enforcer.preEntitlement(consumer,
+            candidatePools, CallerType.BEST_POOLS);
+        for (Pool pool : candidatePools) {
+            ValidationResult result = results.get(pool.getId());
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResult = result;
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to rules " +
+                        "failure: " +
+                        pool.getId());
                 }
             }
+            else {
+                filteredPools.add(pool);
+            }
         }
 
         // Only throw refused exception if we actually hit the rules:
@@ -908,11 +1014,45 @@ public class CandlepinPoolManager implements PoolManager {
      */
     private EntitlementCertificate generateEntitlementCertificate(
         Pool pool, Entitlement e, boolean generateUeberCert) {
+        EntitlementCertRequest request = createCertRequest(pool, e,
+            new HashMap<String, Subscription>());
+
+        try {
+            return generateUeberCert ?
+                entCertAdapter.generateUeberCert(e, request.getSubscription(),
+                    request.getProduct()) :
+                entCertAdapter.generateEntitlementCert(e, request.getSubscription(),
+                    request.getProduct());
+        }
+        catch (CertVersionConflictException cvce) {
+            throw cvce;
+        }
+        catch (CertificateSizeException cse) {
+            throw cse;
+        }
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /*
+     * Looks up the subscription and product an entitlement certificate is generated
+     * from. Subscriptions are remembered in the given map, entitlements regenerated
+     * together usually share a handful of them.
+     */
+    private EntitlementCertRequest createCertRequest(Pool pool, Entitlement e,
+        Map<String, Subscription> subscriptions) {
         Subscription sub = null;
         if (pool.getSubscriptionId() != null) {
-            log.info("Getting subscription: " + pool.getSubscriptionId());
-            sub = subAdapter.getSubscription(pool.getSubscriptionId());
-            log.info("Got subscription");
+            sub = subscriptions.get(pool.getSubscriptionId());
+            if (sub == null) {
+                log.info("Getting subscription: " + pool.getSubscriptionId());
+                sub = subAdapter.getSubscription(pool.getSubscriptionId());
+                log.info("Got subscription");
+                if (sub != null) {
+                    subscriptions.put(pool.getSubscriptionId(), sub);
+                }
+            }
         }
 
         Product product = null;
@@ -933,21 +1073,7 @@ public class CandlepinPoolManager implements PoolManager {
             // Some pools may not have a subscription, i.e. derived from stack pools.
             product = productCache.getProductById(e.getProductId());
         }
-
-        try {
-            return generateUeberCert ?
-                entCertAdapter.generateUeberCert(e, sub, product) :
-                entCertAdapter.generateEntitlementCert(e, sub, product);
-        }
-        catch (CertVersionConflictException cvce) {
-            throw cvce;
-        }
-        catch (CertificateSizeException cse) {
-            throw cse;
-        }
-        catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        return new EntitlementCertRequest(e, sub, product);
     }
 
     @Override
@@ -960,8 +1086,124 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Transactional
     void regenerateCertificatesOf(Iterable<Entitlement> iterable, boolean lazy) {
+        regenerateCertificatesOf(iterable, lazy, null);
+    }
+
+    /*
+     * Certificates are generated in batches, which lets the cert adapter sign a whole
+     * batch concurrently while the results are persisted on this session. The
+     * monitor is checked after every batch, once it reports the regeneration as
+     * canceled the remaining entitlements are only marked dirty, leaving them to
+     * the dirty entitlement regeneration.
+     */
+    @Transactional
+    void regenerateCertificatesOf(Iterable<Entitlement> iterable, boolean lazy,
+        RegenerationMonitor monitor) {
+        if (lazy) {
+            for (Entitlement e : iterable) {
+                regenerateCertificatesOf(e, false, true);
+            }
+            return;
+        }
+
+        int batchSize = Math.max(1,
+            config.getInt(ConfigProperties.ENTITLEMENT_CERT_BATCH_SIZE));
+        Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+        List<Entitlement> batch = new ArrayList<Entitlement>();
+        int regenerated = 0;
+        int deferred = 0;
+        boolean canceled = false;
         for (Entitlement e : iterable) {
-            regenerateCertificatesOf(e, false, lazy);
+            if (canceled) {
+                regenerateCertificatesOf(e, false, true);
+                deferred++;
+                continue;
+            }
+
+            batch.add(e);
+            if (batch.size() >= batchSize) {
+                regenerateBatch(batch, subscriptions);
+                regenerated += batch.size();
+                batch.clear();
+                canceled = monitor != null && monitor.isCanceled();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            regenerateBatch(batch, subscriptions);
+            regenerated += batch.size();
+        }
+
+        if (canceled) {
+            log.info("Regeneration canceled after " + regenerated +
+                " entitlements, marked " + deferred + " remaining entitlements dirty.");
+        }
+    }
+
+    private void regenerateBatch(List<Entitlement> batch,
+        Map<String, Subscription> subscriptions) {
+        // Only adapters extending the base adapter generate certificates in batches:
+        if (batch.size() == 1 ||
+            !(entCertAdapter instanceof BaseEntitlementCertServiceAdapter)) {
+            for (Entitlement e : batch) {
+                regenerateCertificatesOf(e, false, false);
+            }
+            return;
+        }
+
+        List<EntitlementCertRequest> requests =
+            new ArrayList<EntitlementCertRequest>(batch.size());
+        List<List<EntitlementCertificate>> revoked =
+            new ArrayList<List<EntitlementCertificate>>(batch.size());
+        for (Entitlement e : batch) {
+            revoked.add(new ArrayList<EntitlementCertificate>(e.getCertificates()));
+            e.getCertificates().clear();
+            requests.add(createCertRequest(e.getPool(), e, subscriptions));
+        }
+
+        List<EntitlementCertificate> generated;
+        try {
+            generated = ((BaseEntitlementCertServiceAdapter) entCertAdapter)
+                .generateEntitlementCerts(requests);
+        }
+        catch (CertVersionConflictException cvce) {
+            throw cvce;
+        }
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Entitlement e = batch.get(i);
+            if (generated.get(i) == null) {
+                // Too large to regenerate, keep the existing certificates:
+                e.getCertificates().addAll(revoked.get(i));
+            }
+            else {
+                replaceCertificates(e, revoked.get(i), generated.get(i));
+            }
+        }
+    }
+
+    /*
+     * Finishes the regeneration of an entitlement whose new certificate was
+     * generated and persisted.
+     */
+    private void replaceCertificates(Entitlement e, Collection<EntitlementCertificate> old,
+        EntitlementCertificate generated) {
+        e.setDirty(false);
+        entitlementCurator.merge(e);
+        for (EntitlementCertificate ec : old) {
+            if (log.isDebugEnabled()) {
+                log.debug("Deleting entitlementCertificate: #" + ec.getId());
+            }
+            this.entitlementCertificateCurator.delete(ec);
+        }
+
+        // send entitlement changed event.
+        this.sink.queueEvent(this.eventFactory.entitlementChanged(e));
+        if (log.isDebugEnabled()) {
+            log.debug("Generated entitlementCertificate: #" + generated.getId());
         }
     }
 
@@ -993,6 +1235,21 @@ public class CandlepinPoolManager implements PoolManager {
     @Transactional
     public void regenerateCertificatesOf(Environment e, Set<String> affectedContent,
         boolean lazy) {
+        regenerateCertificatesOf(e, affectedContent, lazy, null);
+    }
+
+    /**
+     * Used to regenerate certificates affected by a mass content promotion/demotion,
+     * stopping early once the given monitor reports the regeneration as canceled.
+     *
+     * @param e Environment where the content was promoted/demoted.
+     * @param affectedContent List of content set IDs promoted/demoted.
+     * @param monitor consulted between batches, may be null.
+     */
+    @Override
+    @Transactional
+    public void regenerateCertificatesOf(Environment e, Set<String> affectedContent,
+        boolean lazy, RegenerationMonitor monitor) {
         log.info("Regenerating relevant certificates in environment: " + e.getId());
         List<Entitlement> allEnvEnts = entitlementCurator.listByEnvironment(e);
         Set<Entitlement> entsToRegen = new HashSet<Entitlement>();
@@ -1017,7 +1274,7 @@ public class CandlepinPoolManager implements PoolManager {
         }
         log.info("Found " + entsToRegen.size() + " certificates to regenerate.");
 
-        regenerateCertificatesOf(entsToRegen, lazy);
+        regenerateCertificatesOf(entsToRegen, lazy, monitor);
     }
 
     /**
@@ -1045,20 +1302,7 @@ public class CandlepinPoolManager implements PoolManager {
         try {
             EntitlementCertificate generated = this.generateEntitlementCertificate(
                 e.getPool(), e, ueberCertificate);
-            e.setDirty(false);
-            entitlementCurator.merge(e);
-            for (EntitlementCertificate ec : tempE.getCertificates()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Deleting entitlementCertificate: #" + ec.getId());
-                }
-                this.entitlementCertificateCurator.delete(ec);
-            }
-
-            // send entitlement changed event.
-            this.sink.queueEvent(this.eventFactory.entitlementChanged(e));
-            if (log.isDebugEnabled()) {
-                log.debug("Generated entitlementCertificate: #" + generated.getId());
-            }
+            replaceCertificates(e, tempE.getCertificates(), generated);
         }
         catch (CertificateSizeException cse) {
             e.getCertificates().addAll(tempE.getCertificates());
@@ -1070,12 +1314,22 @@ public class CandlepinPoolManager implements PoolManager {
     @Override
     @Transactional
     public void regenerateCertificatesOf(String productId, boolean lazy) {
+        regenerateCertificatesOf(productId, lazy, null);
+    }
+
+    @Override
+    @Transactional
+    public void regenerateCertificatesOf(String productId, boolean lazy,
+        RegenerationMonitor monitor) {
         List<Pool> poolsForProduct = this.listAvailableEntitlementPools(null, null, null,
             productId, new Date(), false, false, new PoolFilterBuilder(), null)
             .getPageData();
+        List<Set<Entitlement>> entitlements = new ArrayList<Set<Entitlement>>();
         for (Pool pool : poolsForProduct) {
-            regenerateCertificatesOf(pool.getEntitlements(), lazy);
+            entitlements.add(pool.getEntitlements());
         }
+        // Batch across pools, small pools would otherwise leave the workers idle:
+        regenerateCertificatesOf(Iterables.concat(entitlements), lazy, monitor);
     }
 
     /**
@@ -1273,6 +1527,25 @@ public class CandlepinPoolManager implements PoolManager {
         regenerateCertificatesOf(dirtyEntitlements, false);
     }
 
+    @Override
+    @Transactional
+    public int regenerateDirtyEntitlementsByIds(Collection<String> entitlementIds) {
+        if (entitlementIds.isEmpty()) {
+            return 0;
+        }
+
+        List<Entitlement> dirtyEntitlements = new ArrayList<Entitlement>();
+        for (Entitlement e : entitlementCurator.listAllByIds(entitlementIds)) {
+            // The consumer may have fetched its certificates since they were queued:
+            if (e.getDirty()) {
+                dirtyEntitlements.add(e);
+            }
+        }
+
+        regenerateCertificatesOf(dirtyEntitlements, false);
+        return dirtyEntitlements.size();
+    }
+
     @Override
     public Refresher getRefresher() {
         return getRefresher(true);
@@ -1280,7 +1553,9 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Override
     public Refresher getRefresher(boolean lazy) {
-        return new Refresher(this, this.subAdapter, lazy);
+        return new Refresher(this, this.subAdapter, lazy,
+            config.getInt(ConfigProperties.REFRESH_POOLS_THREADS),
+            config.getInt(ConfigProperties.REFRESH_POOLS_PARTITION_SIZE));
     }
 
     /**
@@ -26,15 +26,20 @@ import org.candlepin.util.Util;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.ScrollableResults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 // TODO:  Clean up these protected methods - most are protected only for unit testing!
@@ -71,15 +76,29 @@ public class CrlGenerator {
      */
     @Transactional
     public X509CRL syncCRLWithDB(X509CRL x509crl) {
+        return syncCRLWithDB(x509crl, null);
+    }
+
+    /**
+     * Synchronizes the given crl with the values from the database, folding the
+     * entries of the given delta crl into it. The returned crl is a complete crl
+     * which replaces both the old one and the delta.
+     *
+     * @param x509crl the crl to sync (can be null).
+     * @param deltaCrl the delta crl published since x509crl (can be null).
+     * @return the updated crl
+     */
+    @Transactional
+    public X509CRL syncCRLWithDB(X509CRL x509crl, X509CRL deltaCrl) {
         List<X509CRLEntryWrapper> crlEntries = null;
-        BigInteger no = getCRLNumber(x509crl);
+        BigInteger no = getCRLNumber(x509crl).max(getCRLNumber(deltaCrl));
         if (log.isDebugEnabled()) {
             log.debug("Old CRLNumber is : " + no);
         }
 
-        if (x509crl != null) {
-            crlEntries = this.toSimpleCRLEntries(removeExpiredSerials(x509crl
-                .getRevokedCertificates()));
+        Set<X509CRLEntry> revokedEntries = mergeRevokedEntries(x509crl, deltaCrl);
+        if (!revokedEntries.isEmpty()) {
+            crlEntries = this.toSimpleCRLEntries(removeExpiredSerials(revokedEntries));
         }
         else {
             crlEntries = newList();
@@ -105,6 +124,96 @@ public class CrlGenerator {
             .add(BigInteger.ONE));
     }
 
+    /**
+     * Writes a complete crl of the revoked serials in the database to the given
+     * stream. The serials are scrolled through, so neither they nor the encoded
+     * crl are held in memory. As in {@link #syncCRLWithDB(X509CRL)}, newly revoked
+     * serials are marked as collected and expired serials are deleted. Entries
+     * are revoked as of the last update of their serial.
+     *
+     * @param crlNumber the number of the new crl
+     * @param out the stream to write the PEM encoded crl to
+     * @throws IOException if the crl can not be written
+     */
+    @Transactional
+    public void writeCRL(BigInteger crlNumber, OutputStream out) throws IOException {
+        getNewSerialsToAppendAndSetThemConsumed();
+
+        try {
+            certificateSerialCurator.deleteExpiredSerials();
+        }
+        catch (RuntimeException e) {
+            log.error("Error deleting expired serials.", e);
+        }
+
+        ScrollableResults results = certificateSerialCurator.scrollRevokedSerials();
+        try {
+            pkiUtility.writeX509CRL(new RevokedSerialIterator(results), crlNumber, null,
+                out);
+        }
+        finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Appends the newly revoked serials from the database to the given delta crl.
+     * Expired serials are neither removed from the delta nor deleted from the
+     * database, both are left to the next complete regeneration so the
+     * (potentially huge) complete crl does not have to be read or rewritten.
+     *
+     * @param deltaCrl the delta crl to append to.
+     * @return the updated delta crl, relative to the same base crl
+     */
+    @Transactional
+    public X509CRL syncDeltaCRLWithDB(X509CRL deltaCrl) {
+        BigInteger no = getCRLNumber(deltaCrl);
+        BigInteger baseNo = getBaseCRLNumber(deltaCrl);
+        if (log.isDebugEnabled()) {
+            log.debug("Old delta CRLNumber is : " + no + ", base CRLNumber is : " +
+                baseNo);
+        }
+
+        List<X509CRLEntryWrapper> crlEntries = toSimpleCRLEntries(
+            mergeRevokedEntries(null, deltaCrl));
+        crlEntries.addAll(getNewSerialsToAppendAndSetThemConsumed());
+
+        return pkiUtility.createX509DeltaCRL(crlEntries, no.add(BigInteger.ONE), baseNo);
+    }
+
+    /**
+     * Creates an empty delta crl for a freshly generated complete crl.
+     *
+     * @param x509crl the complete crl the delta applies to.
+     * @return the empty delta crl
+     */
+    public X509CRL createDeltaCRL(X509CRL x509crl) {
+        return createDeltaCRL(getCRLNumber(x509crl));
+    }
+
+    /**
+     * Creates an empty delta crl for a freshly generated complete crl.
+     *
+     * @param baseCrlNumber the number of the complete crl the delta applies to.
+     * @return the empty delta crl
+     */
+    public X509CRL createDeltaCRL(BigInteger baseCrlNumber) {
+        List<X509CRLEntryWrapper> crlEntries = newList();
+        return pkiUtility.createX509DeltaCRL(crlEntries,
+            baseCrlNumber.add(BigInteger.ONE), baseCrlNumber);
+    }
+
+    /**
+     * Gets the number of delta crls issued since the base crl, which is the
+     * distance between the CRLNumber of the delta and its base.
+     *
+     * @param deltaCrl the delta crl
+     * @return the number of delta crls issued since the base crl
+     */
+    public int getDeltaCRLCount(X509CRL deltaCrl) {
+        return getCRLNumber(deltaCrl).subtract(getBaseCRLNumber(deltaCrl)).intValue();
+    }
+
     /**
      * Gets the new serials to append and set them consumed.
      *
@@ -237,6 +346,46 @@ public class CrlGenerator {
             x509crl.getExtensionValue(OIDUtil.CRL_NUMBER)));
     }
 
+    /**
+     * Gets the CRLNumber of the base crl a delta crl applies to.
+     *
+     * @param deltaCrl the delta crl
+     * @return the base crl number, zero if the crl is not a delta crl
+     */
+    protected BigInteger getBaseCRLNumber(X509CRL deltaCrl) {
+        byte[] value = deltaCrl == null ? null :
+            deltaCrl.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR);
+        if (value == null) {
+            return BigInteger.ZERO;
+        }
+        return new BigInteger(pkiUtility.decodeDERValue(value));
+    }
+
+    /*
+     * Collects the revoked entries of a crl and its delta, skipping delta
+     * entries for serials the crl already lists.
+     */
+    private Set<X509CRLEntry> mergeRevokedEntries(X509CRL x509crl, X509CRL deltaCrl) {
+        Set<X509CRLEntry> entries = Util.newSet();
+        if (x509crl != null && x509crl.getRevokedCertificates() != null) {
+            entries.addAll(x509crl.getRevokedCertificates());
+        }
+        if (deltaCrl == null || deltaCrl.getRevokedCertificates() == null) {
+            return entries;
+        }
+
+        Set<BigInteger> serials = Util.newSet();
+        for (X509CRLEntry entry : entries) {
+            serials.add(entry.getSerialNumber());
+        }
+        for (X509CRLEntry entry : deltaCrl.getRevokedCertificates()) {
+            if (serials.add(entry.getSerialNumber())) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
     /**
      * To simple crl entries.
      *
@@ -253,4 +402,42 @@ public class CrlGenerator {
         return crlEntries;
     }
 
+    /*
+     * Adapts the rows of CertificateSerialCurator.scrollRevokedSerials to crl
+     * entries, one row at a time.
+     */
+    private static class RevokedSerialIterator implements Iterator<X509CRLEntryWrapper> {
+        private final ScrollableResults results;
+        private Boolean hasNext;
+
+        RevokedSerialIterator(ScrollableResults results) {
+            this.results = results;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                hasNext = results.next();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public X509CRLEntryWrapper next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+
+            Long id = (Long) results.get(0);
+            Date updated = (Date) results.get(1);
+            return new X509CRLEntryWrapper(Util.toBigInt(id),
+                updated == null ? new Date() : updated);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,344 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.CertificateSerial;
+import org.candlepin.model.CertificateSerialCurator;
+import org.candlepin.util.CrlFileUtil;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CrlPublisher
+ *
+ * Keeps the CRL files on disk in sync with the revoked serials in the database.
+ * When a delta CRL file is configured, routine updates only append newly revoked
+ * serials to the delta CRL, and the complete CRL is regenerated (folding the
+ * delta into it) once the configured number of deltas has been issued. That
+ * regeneration streams the revoked serials from the database straight into the
+ * CRL file.
+ *
+ * The publisher also keeps a snapshot of the published CRL files, which can be
+ * served to clients without regenerating the CRL. The snapshot holds the complete
+ * CRL followed by the delta CRL whenever the delta holds revoked serials, so
+ * clients see every revoked serial while the complete CRL is still only
+ * regenerated once the configured number of deltas has been issued.
+ */
+@Singleton
+public class CrlPublisher {
+    private static Logger log = LoggerFactory.getLogger(CrlPublisher.class);
+
+    private Configuration config;
+    private CrlGenerator crlGenerator;
+    private CrlFileUtil crlFileUtil;
+    private CertificateSerialCurator certificateSerialCurator;
+
+    // Held while the CRL files are written, so only one thread regenerates them
+    private final ReentrantLock publishLock = new ReentrantLock();
+    // Dropped whenever the CRL files are written
+    private volatile Snapshot snapshot;
+
+    @Inject
+    public CrlPublisher(Configuration config, CrlGenerator crlGenerator,
+        CrlFileUtil crlFileUtil, CertificateSerialCurator certificateSerialCurator) {
+        this.config = config;
+        this.crlGenerator = crlGenerator;
+        this.crlFileUtil = crlFileUtil;
+        this.certificateSerialCurator = certificateSerialCurator;
+    }
+
+    /**
+     * Publishes the serials revoked since the last update. Only the delta CRL is
+     * rewritten, unless delta CRLs are disabled or the complete CRL is due for
+     * regeneration.
+     *
+     * @param crlFile the complete CRL file
+     * @throws CRLException if there is a problem parsing a CRL file
+     * @throws CertificateException if there is a problem parsing a CRL file
+     * @throws IOException if there is a problem reading or writing a CRL file
+     */
+    public void publish(File crlFile)
+        throws CRLException, CertificateException, IOException {
+        publishLock.lock();
+        try {
+            publishUpdates(crlFile);
+        }
+        finally {
+            snapshot = null;
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the published CRL files. Newly revoked serials are
+     * published first, the same way {@link #publish(File)} does, so they usually
+     * only end up in the delta CRL. When another thread is already writing the CRL
+     * files, the current snapshot is returned instead of waiting for it.
+     *
+     * @param crlFile the complete CRL file
+     * @return the snapshot of the complete CRL and any delta CRL
+     * @throws CRLException if there is a problem parsing a CRL file
+     * @throws CertificateException if there is a problem parsing a CRL file
+     * @throws IOException if there is a problem reading or writing a CRL file
+     */
+    public Snapshot getSnapshot(File crlFile)
+        throws CRLException, CertificateException, IOException {
+        if (!crlFile.exists()) {
+            publish(crlFile);
+        }
+
+        File deltaFile = getDeltaFile();
+        Snapshot current = snapshot;
+        boolean pending = certificateSerialCurator.hasTobeCollectedSerials();
+        boolean stale = current == null || !current.isCurrent(crlFile, deltaFile);
+        if ((pending || stale) && publishLock.tryLock()) {
+            try {
+                if (pending) {
+                    snapshot = null;
+                    publishUpdates(crlFile);
+                }
+                current = takeSnapshot(crlFile, deltaFile);
+                snapshot = current;
+            }
+            finally {
+                publishLock.unlock();
+            }
+        }
+        else if (stale) {
+            // Not kept, the CRL files are being rewritten:
+            current = takeSnapshot(crlFile, deltaFile);
+        }
+        return current;
+    }
+
+    private Snapshot takeSnapshot(File crlFile, File deltaFile)
+        throws CRLException, CertificateException, IOException {
+        long lastModified = crlFile.lastModified();
+        long length = crlFile.length();
+        long deltaLastModified = deltaFile == null ? 0L : deltaFile.lastModified();
+        byte[] crl = crlFileUtil.readCRLFileBytes(crlFile);
+        if (hasRevokedEntries(deltaFile)) {
+            // Both are PEM, so the delta simply follows the complete CRL
+            byte[] delta = crlFileUtil.readCRLFileBytes(deltaFile);
+            byte[] both = new byte[crl.length + delta.length];
+            System.arraycopy(crl, 0, both, 0, crl.length);
+            System.arraycopy(delta, 0, both, crl.length, delta.length);
+            crl = both;
+        }
+        return new Snapshot(crl, lastModified, length, deltaLastModified);
+    }
+
+    private boolean hasRevokedEntries(File deltaFile)
+        throws CRLException, CertificateException, IOException {
+        if (deltaFile == null) {
+            return false;
+        }
+        X509CRL delta = crlFileUtil.readCRLFile(deltaFile);
+        Set<? extends X509CRLEntry> entries = delta == null ? null :
+            delta.getRevokedCertificates();
+        return entries != null && !entries.isEmpty();
+    }
+
+    /*
+     * Only the delta CRL is updated, unless delta CRLs are disabled or the complete
+     * CRL is due for regeneration.
+     */
+    private void publishUpdates(File crlFile)
+        throws CRLException, CertificateException, IOException {
+        File deltaFile = getDeltaFile();
+        if (deltaFile != null) {
+            X509CRL delta = crlFileUtil.readCRLFile(deltaFile);
+            int maxDeltas = config.getInt(ConfigProperties.CRL_DELTA_MAX_DELTAS);
+            if (delta != null && crlGenerator.getDeltaCRLCount(delta) < maxDeltas) {
+                crlFileUtil.streamCRLFile(deltaFile, crlGenerator.syncDeltaCRLWithDB(delta));
+                return;
+            }
+
+            if (delta != null) {
+                /*
+                 * The delta carries the latest crl number, so the complete crl can
+                 * be written straight from the database without parsing the old one.
+                 */
+                log.info("Regenerating the complete CRL from the database");
+                final BigInteger crlNumber = crlGenerator.getCRLNumber(delta)
+                    .add(BigInteger.ONE);
+                crlFileUtil.streamCRLFile(crlFile, new CrlFileUtil.CrlWriter() {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        crlGenerator.writeCRL(crlNumber, out);
+                    }
+                });
+                crlFileUtil.streamCRLFile(deltaFile, crlGenerator.createDeltaCRL(crlNumber));
+                return;
+            }
+        }
+
+        X509CRL crl = regenerate(crlFile, deltaFile);
+        crlFileUtil.streamCRLFile(crlFile, crl);
+        resetDelta(crl, deltaFile);
+    }
+
+    /**
+     * Regenerates the complete CRL, folding in any delta CRL.
+     *
+     * @param crlFile the complete CRL file
+     * @return the PEM encoded complete CRL
+     * @throws CRLException if there is a problem parsing a CRL file
+     * @throws CertificateException if there is a problem parsing a CRL file
+     * @throws IOException if there is a problem reading or writing a CRL file
+     */
+    public byte[] publishComplete(File crlFile)
+        throws CRLException, CertificateException, IOException {
+        publishLock.lock();
+        try {
+            File deltaFile = getDeltaFile();
+            X509CRL crl = regenerate(crlFile, deltaFile);
+            byte[] encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            resetDelta(crl, deltaFile);
+            return encoded;
+        }
+        finally {
+            snapshot = null;
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Removes serials inadvertently added to the CRL. A delta CRL is folded into
+     * the complete CRL first, so the serials are removed from both.
+     *
+     * @param crlFile the complete CRL file
+     * @param serials certificate serials to be removed
+     * @throws CRLException if there is a problem parsing a CRL file
+     * @throws CertificateException if there is a problem parsing a CRL file
+     * @throws IOException if there is a problem reading or writing a CRL file
+     */
+    public void unrevoke(File crlFile, List<CertificateSerial> serials)
+        throws CRLException, CertificateException, IOException {
+        publishLock.lock();
+        try {
+            File deltaFile = getDeltaFile();
+            X509CRL crl = null;
+            X509CRL delta = deltaFile == null ? null : crlFileUtil.readCRLFile(deltaFile);
+            if (delta != null) {
+                crl = crlGenerator.syncCRLWithDB(crlFileUtil.readCRLFile(crlFile), delta);
+            }
+            else {
+                crl = crlFileUtil.readCRLFile(crlFile);
+            }
+
+            crl = crlGenerator.removeEntries(crl, serials);
+            crlFileUtil.writeCRLFile(crlFile, crl);
+            if (delta != null) {
+                resetDelta(crl, deltaFile);
+            }
+        }
+        finally {
+            snapshot = null;
+            publishLock.unlock();
+        }
+    }
+
+    private X509CRL regenerate(File crlFile, File deltaFile)
+        throws CRLException, CertificateException, IOException {
+        X509CRL crl = crlFileUtil.readCRLFile(crlFile);
+        X509CRL delta = deltaFile == null ? null : crlFileUtil.readCRLFile(deltaFile);
+        return crlGenerator.syncCRLWithDB(crl, delta);
+    }
+
+    /*
+     * Starts a new, empty delta CRL on top of a freshly written complete CRL.
+     */
+    private void resetDelta(X509CRL crl, File deltaFile) throws IOException {
+        if (deltaFile != null) {
+            crlFileUtil.streamCRLFile(deltaFile, crlGenerator.createDeltaCRL(crl));
+        }
+    }
+
+    private File getDeltaFile() {
+        String deltaPath = config.getString(ConfigProperties.CRL_DELTA_FILE_PATH, null);
+        if (deltaPath == null || deltaPath.trim().length() == 0) {
+            return null;
+        }
+        return new File(deltaPath);
+    }
+
+    /**
+     * The contents of the complete CRL file, followed by any revoked serials in the
+     * delta CRL file, at some point in time.
+     */
+    public static class Snapshot {
+        // PEM is plain ASCII
+        private static final Charset PEM_CHARSET = Charset.forName("US-ASCII");
+
+        private final String crl;
+        private final String etag;
+        private final Date lastModified;
+        private final long crlLastModified;
+        private final long length;
+        private final long deltaLastModified;
+
+        Snapshot(byte[] crl, long lastModified, long length, long deltaLastModified) {
+            this.crl = new String(crl, PEM_CHARSET);
+            this.etag = DigestUtils.md5Hex(crl);
+            this.lastModified = new Date(Math.max(lastModified, deltaLastModified));
+            this.crlLastModified = lastModified;
+            this.length = length;
+            this.deltaLastModified = deltaLastModified;
+        }
+
+        public String getCrl() {
+            return crl;
+        }
+
+        /**
+         * @return an entity tag derived from the complete and delta CRL contents
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        public Date getLastModified() {
+            return lastModified;
+        }
+
+        boolean isCurrent(File crlFile, File deltaFile) {
+            return crlFile.lastModified() == crlLastModified &&
+                crlFile.length() == length &&
+                (deltaFile == null || deltaFile.lastModified() == deltaLastModified);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.pinsetter.core.JobWorkers;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DirtyEntitlementRegenerator
+ *
+ * Regenerates in the background the certificates which lazy regeneration marked
+ * dirty, so the next certificate fetch of their consumers does not have to sign
+ * them inline.
+ *
+ * Every run reads up to max_per_run dirty entitlement ids from the database, in the
+ * order of their consumers' last check in, most recent first, and regenerates them
+ * in batches, each in its own transaction, on at most the configured number of
+ * threads. When a batch fails its entitlements are retried one by one, so a single
+ * broken entitlement does not hold back the rest of its batch. Entitlements which
+ * failed are remembered and taken after all others by later runs, the more often
+ * they failed the later, so they cannot starve the backlog.
+ *
+ * The pool manager is scoped to the job that runs us, through its event sink, so
+ * one is looked up for every run rather than held on to.
+ */
+@Singleton
+public class DirtyEntitlementRegenerator {
+
+    private static Logger log = LoggerFactory.getLogger(DirtyEntitlementRegenerator.class);
+
+    private Provider<PoolManager> poolManagerProvider;
+    private EntitlementCurator entitlementCurator;
+    private int threads;
+    private int batchSize;
+    private int maxPerRun;
+
+    private final Set<String> inProgress = new HashSet<String>();
+    // Failed attempts per entitlement, oldest failures first:
+    private final Map<String, Integer> failures = new LinkedHashMap<String, Integer>();
+
+    private final AtomicLong regenerated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastRunMillis;
+    private volatile double lastRunThroughput;
+
+    @Inject
+    public DirtyEntitlementRegenerator(Provider<PoolManager> poolManagerProvider,
+        EntitlementCurator entitlementCurator, Configuration config) {
+        this.poolManagerProvider = poolManagerProvider;
+        this.entitlementCurator = entitlementCurator;
+        this.threads = Math.max(config.getInt(ConfigProperties.DIRTY_REGEN_THREADS), 1);
+        this.batchSize = Math.max(config.getInt(ConfigProperties.DIRTY_REGEN_BATCH_SIZE), 1);
+        this.maxPerRun = Math.max(config.getInt(ConfigProperties.DIRTY_REGEN_MAX_PER_RUN), 1);
+    }
+
+    /**
+     * Regenerates up to max_per_run of the dirty entitlements found in the database.
+     *
+     * @param workers the running job's workers, if null all batches are regenerated
+     * on the calling thread
+     * @return the number of entitlements regenerated
+     */
+    public int regenerate(JobWorkers workers) {
+        List<List<String>> batches = takeBatches();
+        if (batches.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        int count = 0;
+        if (threads == 1 || batches.size() == 1 || workers == null) {
+            PoolManager poolManager = poolManagerProvider.get();
+            for (List<String> batch : batches) {
+                count += regenerateBatch(poolManager, batch);
+            }
+        }
+        else {
+            count = regenerateConcurrently(batches, workers);
+        }
+
+        lastRunMillis = System.currentTimeMillis() - start;
+        lastRunThroughput = count * 1000.0 / Math.max(lastRunMillis, 1);
+        log.info("Regenerated " + count + " dirty entitlements in " + lastRunMillis +
+            "ms (" + String.format("%.1f", lastRunThroughput) + "/s), " +
+            getFailingCount() + " failing.");
+        return count;
+    }
+
+    private int regenerateConcurrently(List<List<String>> batches,
+        final JobWorkers workers) {
+        // Hand our logging context to the worker threads:
+        @SuppressWarnings("unchecked")
+        final Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threads, batches.size()));
+        int count = 0;
+        try {
+            List<Future<BatchResult>> results = new ArrayList<Future<BatchResult>>();
+            for (final List<String> batch : batches) {
+                results.add(executor.submit(new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() {
+                        if (mdc != null) {
+                            MDC.setContextMap(mdc);
+                        }
+                        workers.enter();
+                        try {
+                            int count = regenerateBatch(
+                                workers.getInstance(PoolManager.class), batch);
+                            return new BatchResult(count, workers.getEventSink());
+                        }
+                        finally {
+                            workers.exit();
+                            MDC.clear();
+                        }
+                    }
+                }));
+            }
+
+            // Events of the regenerated certificates go out with the job's own:
+            for (Future<BatchResult> result : results) {
+                BatchResult done = result.get();
+                count += done.count;
+                workers.collect(done.sink);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while regenerating dirty entitlements",
+                e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    /*
+     * A failed batch is retried one entitlement at a time. Entitlements failing on
+     * their own stay dirty, and are picked up again after the others by later runs
+     * or by their consumer's next fetch.
+     */
+    private int regenerateBatch(PoolManager poolManager, List<String> batch) {
+        try {
+            int count = poolManager.regenerateDirtyEntitlementsByIds(batch);
+            succeeded(batch);
+            regenerated.addAndGet(count);
+            return count;
+        }
+        catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                failed(batch.get(0), e);
+                return 0;
+            }
+            log.warn("Unable to regenerate " + batch.size() +
+                " dirty entitlements at once, retrying them one by one", e);
+            int count = 0;
+            for (String id : batch) {
+                try {
+                    count += poolManager.regenerateDirtyEntitlementsByIds(
+                        Collections.singletonList(id));
+                    succeeded(Collections.singletonList(id));
+                }
+                catch (RuntimeException entFailure) {
+                    failed(id, entFailure);
+                }
+            }
+            regenerated.addAndGet(count);
+            return count;
+        }
+        finally {
+            done(batch);
+        }
+    }
+
+    private void failed(String id, RuntimeException e) {
+        log.error("Unable to regenerate dirty entitlement " + id, e);
+        failed.incrementAndGet();
+        synchronized (this) {
+            Integer attempts = failures.remove(id);
+            failures.put(id, attempts == null ? 1 : attempts + 1);
+            // Only the most recent failures are remembered:
+            Iterator<String> it = failures.keySet().iterator();
+            while (failures.size() > maxPerRun && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void succeeded(List<String> ids) {
+        failures.keySet().removeAll(ids);
+    }
+
+    private static class BatchResult {
+        private final int count;
+        private final EventSink sink;
+
+        BatchResult(int count, EventSink sink) {
+            this.count = count;
+            this.sink = sink;
+        }
+    }
+
+    /*
+     * Enough ids are read for a full run even if every remembered failure is among
+     * them. Ids which never failed keep the database order and come first, failed
+     * ones follow, fewest attempts first.
+     */
+    private synchronized List<List<String>> takeBatches() {
+        List<String> ids = entitlementCurator.listDirtyIds(maxPerRun + failures.size());
+        List<String> fresh = new ArrayList<String>(ids.size());
+        List<String> failing = new ArrayList<String>();
+        for (String id : ids) {
+            if (inProgress.contains(id)) {
+                continue;
+            }
+            if (failures.containsKey(id)) {
+                failing.add(id);
+            }
+            else {
+                fresh.add(id);
+            }
+        }
+        Collections.sort(failing, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return failures.get(a).compareTo(failures.get(b));
+            }
+        });
+        fresh.addAll(failing);
+
+        List<String> taken = new ArrayList<String>(
+            fresh.subList(0, Math.min(fresh.size(), maxPerRun)));
+        inProgress.addAll(taken);
+        return Lists.partition(taken, batchSize);
+    }
+
+    private synchronized void done(List<String> batch) {
+        inProgress.removeAll(batch);
+    }
+
+    /**
+     * @return the number of entitlements which failed to regenerate in their last
+     * attempt
+     */
+    public synchronized int getFailingCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return the number of entitlements currently being regenerated
+     */
+    public synchronized int getInProgress() {
+        return inProgress.size();
+    }
+
+    public long getRegeneratedCount() {
+        return regenerated.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    /**
+     * @return entitlements regenerated per second during the last run
+     */
+    public double getLastRunThroughput() {
+        return lastRunThroughput;
+    }
+}
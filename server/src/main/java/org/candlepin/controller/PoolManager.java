@@ -39,6 +39,17 @@ import java.util.Set;
  */
 public interface PoolManager {
 
+    /**
+     * Consulted between the batches of a mass certificate regeneration.
+     */
+    interface RegenerationMonitor {
+        /**
+         * @return true if the regeneration should stop, the entitlements which were
+         * not regenerated yet are then marked dirty instead.
+         */
+        boolean isCanceled();
+    }
+
     Pool createPool(Pool p);
 
     /**
@@ -108,8 +119,14 @@ public interface PoolManager {
 
     void regenerateCertificatesOf(Environment env, Set<String> contentIds, boolean lazy);
 
+    void regenerateCertificatesOf(Environment env, Set<String> contentIds, boolean lazy,
+        RegenerationMonitor monitor);
+
     void regenerateCertificatesOf(String productId, boolean lazy);
 
+    void regenerateCertificatesOf(String productId, boolean lazy,
+        RegenerationMonitor monitor);
+
     void regenerateEntitlementCertificates(Consumer consumer, boolean lazy);
 
     int revokeAllEntitlements(Consumer consumer);
@@ -124,6 +141,15 @@ public interface PoolManager {
 
     void regenerateDirtyEntitlements(List<Entitlement> entitlements);
 
+    /**
+     * Regenerates the certificates of the given entitlements which are still
+     * marked dirty, in a single transaction.
+     *
+     * @param entitlementIds ids of the entitlements to regenerate
+     * @return the number of entitlements regenerated
+     */
+    int regenerateDirtyEntitlementsByIds(Collection<String> entitlementIds);
+
     Entitlement adjustEntitlementQuantity(Consumer consumer, Entitlement entitlement,
         Integer quantity) throws EntitlementRefusedException;
 
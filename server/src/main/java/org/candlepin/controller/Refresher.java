@@ -14,29 +14,58 @@
  */
 package org.candlepin.controller;
 
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.Subscription;
+import org.candlepin.pinsetter.core.JobWorkers;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.util.Util;
 
+import com.google.common.collect.Lists;
 import com.google.inject.persist.Transactional;
-import com.google.inject.persist.UnitOfWork;
 
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Refresher
  */
 public class Refresher {
 
+    private static Logger log = LoggerFactory.getLogger(Refresher.class);
+
+    /**
+     * Notified as the subscriptions of an owner are refreshed.
+     */
+    public interface ProgressListener {
+        void progress(Owner owner, int refreshed, int total);
+    }
+
     private CandlepinPoolManager poolManager;
     private SubscriptionServiceAdapter subAdapter;
     private boolean lazy;
-    private UnitOfWork uow;
+    private JobWorkers workers;
+    private int threads;
+    private int partitionSize;
+    private ProgressListener progressListener;
 
     private Set<Owner> owners = Util.newSet();
     private Set<Product> products = Util.newSet();
@@ -44,13 +73,25 @@ public class Refresher {
 
     Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
         boolean lazy) {
+        this(poolManager, subAdapter, lazy, 1, 0);
+    }
+
+    Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
+        boolean lazy, int threads, int partitionSize) {
         this.poolManager = poolManager;
         this.subAdapter = subAdapter;
         this.lazy = lazy;
+        this.threads = threads;
+        this.partitionSize = partitionSize;
     }
 
-    public Refresher setUnitOfWork(UnitOfWork uow) {
-        this.uow = uow;
+    public Refresher setWorkers(JobWorkers workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    public Refresher setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
         return this;
     }
 
@@ -93,7 +134,114 @@ public class Refresher {
         }
 
         for (Owner owner : owners) {
-            poolManager.refreshPoolsWithRegeneration(owner, lazy);
+            if (isPartitioned()) {
+                refreshPartitioned(owner);
+            }
+            else {
+                poolManager.refreshPoolsWithRegeneration(owner, lazy);
+            }
+        }
+    }
+
+    /*
+     * Partitions run on their own threads, each in a job scope of its own, so we
+     * can only partition when run from a job. Certificate regeneration is only deferred in lazy mode,
+     * otherwise partitions sharing consumers would contend on their certificates.
+     */
+    private boolean isPartitioned() {
+        return threads > 1 && partitionSize > 0 && lazy && workers != null;
+    }
+
+    private void refreshPartitioned(final Owner owner) {
+        log.info("Refreshing pools for owner: " + owner.getKey() + " using " + threads +
+            " threads");
+        List<String> subIds = new ArrayList<String>(subAdapter.getSubscriptionIds(owner));
+        Collections.sort(subIds);
+        final int total = subIds.size();
+        final AtomicInteger refreshed = new AtomicInteger();
+        List<List<String>> partitions = Lists.partition(subIds, partitionSize);
+        log.debug("Found " + total + " existing subscriptions, in " + partitions.size() +
+            " partitions.");
+
+        // Hand the caller's principal and logging context to the worker threads:
+        final Principal principal = ResteasyProviderFactory.getContextData(Principal.class);
+        @SuppressWarnings("unchecked")
+        final Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threads, Math.max(partitions.size(), 1)));
+        List<String> deletedSubs = new ArrayList<String>();
+        try {
+            List<Future<PartitionResult>> results = new ArrayList<Future<PartitionResult>>();
+            for (List<String> view : partitions) {
+                final List<String> partition = new ArrayList<String>(view);
+                results.add(executor.submit(new Callable<PartitionResult>() {
+                    @Override
+                    public PartitionResult call() {
+                        if (mdc != null) {
+                            MDC.setContextMap(mdc);
+                        }
+                        ResteasyProviderFactory.pushContext(Principal.class, principal);
+                        workers.enter();
+                        try {
+                            // A pool manager of the worker's own, so its rules run on
+                            // their own javascript runners and its events are queued
+                            // on the worker's sink:
+                            CandlepinPoolManager manager =
+                                workers.getInstance(CandlepinPoolManager.class);
+                            List<String> deleted = manager.refreshPoolsForPartition(
+                                partition, lazy);
+                            reportProgress(owner, refreshed.addAndGet(partition.size()),
+                                total);
+                            return new PartitionResult(deleted, workers.getEventSink());
+                        }
+                        finally {
+                            workers.exit();
+                            ResteasyProviderFactory.popContextData(Principal.class);
+                            MDC.clear();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<PartitionResult> result : results) {
+                PartitionResult done = result.get();
+                deletedSubs.addAll(done.deleted);
+                workers.collect(done.sink);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while refreshing pools for owner: " +
+                owner.getKey(), e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        subIds.removeAll(deletedSubs);
+        poolManager.cleanupPoolsForOwner(owner, subIds, lazy);
+    }
+
+    private static class PartitionResult {
+        private final List<String> deleted;
+        private final EventSink sink;
+
+        PartitionResult(List<String> deleted, EventSink sink) {
+            this.deleted = deleted;
+            this.sink = sink;
+        }
+    }
+
+    private void reportProgress(Owner owner, int done, int total) {
+        if (progressListener != null) {
+            progressListener.progress(owner, done, total);
         }
     }
 
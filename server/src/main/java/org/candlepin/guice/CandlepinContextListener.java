@@ -26,6 +26,8 @@ import org.candlepin.common.logging.LoggingConfigurator;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.logging.LoggerContextListener;
 import org.candlepin.pinsetter.core.PinsetterContextListener;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.pki.SigningExecutor;
 import org.candlepin.util.Util;
 
 import com.google.inject.AbstractModule;
@@ -119,6 +121,7 @@ public class CandlepinContextListener extends CandlepinGuiceResteasyBootstrap {
         hornetqListener.contextInitialized(injector);
         pinsetterListener = injector.getInstance(PinsetterContextListener.class);
         pinsetterListener.contextInitialized();
+        injector.getInstance(KeyPairPool.class).start();
 
         log.info("Candlepin context initialized.");
     }
@@ -128,6 +131,8 @@ public class CandlepinContextListener extends CandlepinGuiceResteasyBootstrap {
         super.contextDestroyed(event);
         hornetqListener.contextDestroyed();
         pinsetterListener.contextDestroyed();
+        injector.getInstance(KeyPairPool.class).stop();
+        injector.getInstance(SigningExecutor.class).stop();
         loggerListener = injector.getInstance(LoggerContextListener.class);
         loggerListener.contextDestroyed();
 
@@ -204,7 +209,7 @@ public class CandlepinContextListener extends CandlepinGuiceResteasyBootstrap {
         });
 
         modules.add(new CandlepinModule(config));
-        modules.add(new CandlepinFilterModule());
+        modules.add(new CandlepinFilterModule(config));
 
         return modules;
     }
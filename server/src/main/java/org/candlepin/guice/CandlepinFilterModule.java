@@ -14,7 +14,9 @@
  */
 package org.candlepin.guice;
 
+import org.candlepin.common.config.Configuration;
 import org.candlepin.common.filter.LoggingFilter;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.servlet.filter.CandlepinPersistFilter;
 import org.candlepin.servlet.filter.CandlepinScopeFilter;
 import org.candlepin.servlet.filter.ContentTypeHackFilter;
@@ -32,10 +34,22 @@ import java.util.Map;
  */
 public class CandlepinFilterModule extends ServletModule {
 
+    private Configuration config;
+
+    public CandlepinFilterModule(Configuration config) {
+        this.config = config;
+    }
+
     @Override
     protected void configureServlets() {
         Map<String, String> loggingFilterConfig = new HashMap<String, String>();
-        loggingFilterConfig.put("header.name", "x-candlepin-request-uuid");
+        loggingFilterConfig.put(LoggingFilter.HEADER_NAME_PARAM, "x-candlepin-request-uuid");
+        loggingFilterConfig.put(LoggingFilter.BODY_CAPTURE_PARAM,
+            config.getString(ConfigProperties.REQUEST_LOGGING_BODY_CAPTURE));
+        loggingFilterConfig.put(LoggingFilter.BODY_MAX_BYTES_PARAM,
+            config.getString(ConfigProperties.REQUEST_LOGGING_BODY_MAX_BYTES));
+        loggingFilterConfig.put(LoggingFilter.BODY_SAMPLE_PERCENT_PARAM,
+            config.getString(ConfigProperties.REQUEST_LOGGING_BODY_SAMPLE_PERCENT));
 
         filter("/*").through(CandlepinScopeFilter.class);
         filter("/*").through(CandlepinPersistFilter.class);
@@ -16,6 +16,8 @@ package org.candlepin.model;
 
 import org.candlepin.util.Util;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
@@ -36,6 +38,8 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
     private static final Class[] CERTCLASSES = {IdentityCertificate.class,
         EntitlementCertificate.class, SubscriptionsCertificate.class, CdnCertificate.class};
 
+    private static final int SCROLL_FETCH_SIZE = 1000;
+
     public CertificateSerialCurator() {
         super(CertificateSerial.class);
     }
@@ -51,6 +55,19 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(Restrictions.eq("collected", false)).list();
     }
 
+    /**
+     * @return true if there are serials which are revoked but not yet collected
+     * and put into CRL
+     */
+    public boolean hasTobeCollectedSerials() {
+        return this.currentSession().createCriteria(CertificateSerial.class)
+            .add(getRevokedCriteria())
+            .add(Restrictions.eq("collected", false))
+            .setProjection(Projections.id())
+            .setMaxResults(1)
+            .uniqueResult() != null;
+    }
+
     @SuppressWarnings("unchecked")
     public List<CertificateSerial> getExpiredSerials() {
         //TODO - Should date fields be truncated when checking expiration?
@@ -60,6 +77,28 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(getRevokedCriteria()).list();
     }
 
+    /**
+     * Returns a forward only cursor over the revoked serials which have not
+     * expired, in serial order. Each row holds the serial id and the date the
+     * serial was last updated, no entities are loaded into the session.
+     * The caller must close the results.
+     *
+     * @return cursor over the id and updated date of the revoked serials
+     */
+    public ScrollableResults scrollRevokedSerials() {
+        return this.currentSession()
+            .createCriteria(CertificateSerial.class)
+            .add(Restrictions.or(Restrictions.isNull("expiration"),
+                Restrictions.gt("expiration", Util.yesterday())))
+            .add(getRevokedCriteria())
+            .setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("updated")))
+            .addOrder(Order.asc("id"))
+            .setFetchSize(SCROLL_FETCH_SIZE)
+            .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
     /**
      * Delete expired serials.
      *
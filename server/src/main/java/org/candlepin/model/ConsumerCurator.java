@@ -14,6 +14,7 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotFoundException;
@@ -57,6 +58,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private ConsumerTypeCurator consumerTypeCurator;
     @Inject private DeletedConsumerCurator deletedConsumerCurator;
     @Inject private Configuration config;
+    @Inject private ConsumerPrincipalCache principalCache;
 
     private static final int MAX_FACT_STR_LENGTH = 255;
     private static final int NAME_LENGTH = 250;
@@ -84,6 +86,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             entity.getOwner().getDisplayName());
 
         super.delete(entity);
+        principalCache.invalidateConsumer(entity.getId());
 
         DeletedConsumer existing = deletedConsumerCurator.
                     findByConsumerUuid(dc.getConsumerUuid());
@@ -353,8 +356,10 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
 
     @Transactional
     public void updateLastCheckin(Consumer consumer, Date checkinDate) {
-        consumer.addCheckIn(checkinDate);
-        save(consumer);
+        // The consumer may come from a cached principal and be detached from
+        // this session, so the check in is saved on its own.
+        currentSession().save(new CheckIn(consumer, checkinDate));
+        flush();
     }
 
     private boolean factsChanged(Map<String, String> updatedFacts,
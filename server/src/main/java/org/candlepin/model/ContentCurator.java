@@ -14,13 +14,24 @@
  */
 package org.candlepin.model;
 
+import com.google.common.collect.Lists;
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.criterion.Restrictions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * ContentCurator
  */
 public class ContentCurator extends AbstractHibernateCurator<Content> {
 
+    private static final int IN_BATCH_SIZE = 500;
+
     public ContentCurator() {
         super(Content.class);
     }
@@ -35,4 +46,50 @@ public class ContentCurator extends AbstractHibernateCurator<Content> {
         // Copy the ID so Hibernate knows this is an existing entity to merge:
         return merge(c);
     }
+
+    /**
+     * Looks up the content with the given ids using one IN-list query per batch
+     * of ids.
+     *
+     * @param ids content ids to lookup
+     * @return the content which exists, keyed by id
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public Map<String, Content> lookupByIds(Collection<String> ids) {
+        Map<String, Content> result = new HashMap<String, Content>();
+        for (List<String> batch : Lists.partition(new ArrayList<String>(ids),
+            IN_BATCH_SIZE)) {
+            List<Content> contents = currentSession().createCriteria(Content.class)
+                .add(Restrictions.in("id", batch))
+                .list();
+            for (Content content : contents) {
+                result.put(content.getId(), content);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the given new content and updates the given existing content, writing
+     * all of it out with a single flush so the statements can be batched.
+     *
+     * @param created content which does not exist yet
+     * @param updated content which exists and has changed
+     * @return the persistent instances of all the given content, keyed by id
+     */
+    @Transactional
+    public Map<String, Content> bulkCreateOrUpdate(Collection<Content> created,
+        Collection<Content> updated) {
+        Map<String, Content> result = new HashMap<String, Content>();
+        for (Content content : created) {
+            getEntityManager().persist(content);
+            result.put(content.getId(), content);
+        }
+        for (Content content : updated) {
+            result.put(content.getId(), getEntityManager().merge(content));
+        }
+        flush();
+        return result;
+    }
 }
@@ -17,8 +17,11 @@ package org.candlepin.model;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -54,6 +57,46 @@ public class EntitlementCertificateCurator extends
             .list();
     }
 
+    /**
+     * Lists the serials of the non-expired certificates for a consumer along with
+     * the id and dirty flag of their entitlements. Only those columns are selected,
+     * so neither the certificate bodies nor the keys are loaded.
+     *
+     * The rows are selected from the entitlements, outer joined to their
+     * certificates, so a dirty entitlement which has no certificate yet is listed
+     * as well, with a null serial.
+     *
+     * @param c the consumer
+     * @return the serials of the consumer's current entitlement certificates
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public List<EntitlementCertificateSerial> listSerialsForConsumer(Consumer c) {
+        List<Object[]> rows = currentSession()
+            .createCriteria(Entitlement.class)
+            .createAlias("pool", "p")
+            .createAlias("certificates", "cert", JoinType.LEFT_OUTER_JOIN)
+            .createAlias("cert.serial", "s", JoinType.LEFT_OUTER_JOIN)
+            .add(Restrictions.eq("consumer", c))
+            // Never show a consumer expired certificates
+            .add(Restrictions.ge("p.endDate", new Date()))
+            .add(Restrictions.or(Restrictions.isNotNull("s.id"),
+                Restrictions.eq("dirty", true)))
+            .setProjection(Projections.projectionList()
+                .add(Projections.property("s.id"))
+                .add(Projections.property("id"))
+                .add(Projections.property("dirty")))
+            .list();
+
+        List<EntitlementCertificateSerial> serials =
+            new ArrayList<EntitlementCertificateSerial>(rows.size());
+        for (Object[] row : rows) {
+            serials.add(new EntitlementCertificateSerial((Long) row[0],
+                (String) row[1], Boolean.TRUE.equals(row[2])));
+        }
+        return serials;
+    }
+
     @Transactional
     public void delete(EntitlementCertificate cert) {
         // make sure to delete it! else get ready to face
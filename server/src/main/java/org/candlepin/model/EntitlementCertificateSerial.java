@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+/**
+ * EntitlementCertificateSerial: a lightweight view of an entitlement certificate
+ * holding just its serial and the state of the entitlement it was issued for,
+ * which lets callers list serials without loading the certificate bodies.
+ * The serial is null for a dirty entitlement which has no certificate yet.
+ */
+public class EntitlementCertificateSerial {
+
+    private final Long serial;
+    private final String entitlementId;
+    private final boolean dirty;
+
+    public EntitlementCertificateSerial(Long serial, String entitlementId,
+        boolean dirty) {
+        this.serial = serial;
+        this.entitlementId = entitlementId;
+        this.dirty = dirty;
+    }
+
+    public Long getSerial() {
+        return serial;
+    }
+
+    public String getEntitlementId() {
+        return entitlementId;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+}
@@ -22,9 +22,11 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.hibernate.Criteria;
+import org.hibernate.NullPrecedence;
 import org.hibernate.ReplicationMode;
 import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.sql.JoinType;
 import org.slf4j.Logger;
@@ -100,6 +102,25 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
             .list();
     }
 
+    /**
+     * Lists the ids of entitlements whose certificates were marked dirty, those
+     * of the most recently checked in consumers first.
+     *
+     * @param maxResults maximum number of ids to return
+     * @return ids of dirty entitlements
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> listDirtyIds(int maxResults) {
+        return currentSession().createCriteria(Entitlement.class)
+            .createAlias("consumer", "c")
+            .add(Restrictions.eq("dirty", true))
+            .addOrder(Order.desc("c.lastCheckin").nulls(NullPrecedence.LAST))
+            .addOrder(Order.asc("c.id"))
+            .setProjection(Projections.id())
+            .setMaxResults(maxResults)
+            .list();
+    }
+
     public List<Entitlement> listByEnvironment(Environment environment) {
         Criteria criteria = currentSession().createCriteria(Entitlement.class)
             .createCriteria("consumer").add(Restrictions.eq("environment", environment));
@@ -16,13 +16,26 @@ package org.candlepin.model;
 
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
+import org.candlepin.util.Util;
+
+import com.google.common.collect.Lists;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * GuestIdCurator
@@ -31,6 +44,9 @@ public class GuestIdCurator extends AbstractHibernateCurator<GuestId> {
 
     private static Logger log = LoggerFactory.getLogger(GuestIdCurator.class);
 
+    // Keeps IN clauses and JDBC batches below the limits of every supported database.
+    private static final int BATCH_SIZE = 300;
+
     public GuestIdCurator() {
         super(GuestId.class);
     }
@@ -62,4 +78,205 @@ public class GuestIdCurator extends AbstractHibernateCurator<GuestId> {
             .setMaxResults(1)
             .uniqueResult();
     }
+
+    /**
+     * Loads the guest IDs reported by the given host consumers, keyed by consumer ID.
+     * The rows are read with scalar queries, so the returned GuestIds are not attached
+     * to the session and can be diffed against an incoming report and removed with
+     * {@link #batchDelete(Collection)} without touching the consumers' collections.
+     *
+     * @param consumerIds database IDs of the host consumers
+     * @return detached guest IDs, keyed by host consumer ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<GuestId>> getGuestIdsByConsumer(Collection<String> consumerIds) {
+        Map<String, List<GuestId>> result = new HashMap<String, List<GuestId>>();
+        for (List<String> batch : Lists.partition(new ArrayList<String>(consumerIds),
+            BATCH_SIZE)) {
+            Map<String, GuestId> byId = new HashMap<String, GuestId>();
+            List<Object[]> rows = this.currentSession().createSQLQuery(
+                "select id, guest_id, consumer_id from cp_consumer_guests " +
+                "where consumer_id in (:consumerids)")
+                .setParameterList("consumerids", batch)
+                .list();
+            for (Object[] row : rows) {
+                GuestId guestId = new GuestId((String) row[1]);
+                guestId.setId((String) row[0]);
+                byId.put(guestId.getId(), guestId);
+
+                List<GuestId> guestIds = result.get((String) row[2]);
+                if (guestIds == null) {
+                    guestIds = new ArrayList<GuestId>();
+                    result.put((String) row[2], guestIds);
+                }
+                guestIds.add(guestId);
+            }
+
+            rows = this.currentSession().createSQLQuery(
+                "select a.cp_consumer_guest_id, a.mapkey, a.element " +
+                "from cp_consumer_guests_attributes a " +
+                "inner join cp_consumer_guests g on g.id = a.cp_consumer_guest_id " +
+                "where g.consumer_id in (:consumerids)")
+                .setParameterList("consumerids", batch)
+                .list();
+            for (Object[] row : rows) {
+                GuestId guestId = byId.get((String) row[0]);
+                if (guestId != null) {
+                    guestId.getAttributes().put((String) row[1], (String) row[2]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the host consumer which most recently reported each of the given guest
+     * IDs in the owner. Only UUIDs are read, so no consumer or guest collection is
+     * loaded into the session.
+     *
+     * @param owner the owner of the hosts
+     * @param guestIds virt guest IDs, in any case or endianness
+     * @return host consumer UUIDs, keyed by the lower case guest ID as stored
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getReportingHostUuids(Owner owner,
+        Collection<String> guestIds) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (List<String> batch : Lists.partition(new ArrayList<String>(guestIds),
+            BATCH_SIZE)) {
+            List<String> possibleIds = Util.getPossibleUuids(
+                batch.toArray(new String[batch.size()]));
+
+            // One row per guest and host, with the host's latest check-in only, as
+            // hosts keep every check-in. Sorted so the most recent host comes first:
+            List<Object[]> rows = this.currentSession().createSQLQuery(
+                "select g.guest_id, c.uuid, max(ch.updated) " +
+                "from cp_consumer_guests g " +
+                "inner join cp_consumer c on c.id = g.consumer_id " +
+                "inner join cp_guest_ids_checkin ch on ch.consumer_id = c.id " +
+                "where c.owner_id = :ownerid and lower(g.guest_id) in (:guestids) " +
+                "group by g.guest_id, c.uuid " +
+                "order by max(ch.updated) desc")
+                .setParameter("ownerid", owner.getId())
+                .setParameterList("guestids", possibleIds)
+                .list();
+            for (Object[] row : rows) {
+                String guestId = ((String) row[0]).toLowerCase();
+                if (!result.containsKey(guestId)) {
+                    result.put(guestId, (String) row[1]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts the given guest IDs and their attributes with batched JDBC statements,
+     * bypassing the session. Each GuestId must reference a persisted consumer and
+     * is assigned a new ID.
+     *
+     * @param guestIds guest IDs to insert
+     */
+    public void batchInsert(final Collection<GuestId> guestIds) {
+        if (guestIds.isEmpty()) {
+            return;
+        }
+
+        // Make sure the referenced consumers have been written out.
+        this.currentSession().flush();
+        this.currentSession().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement guestStatement = connection.prepareStatement(
+                    "insert into cp_consumer_guests " +
+                    "(id, created, updated, guest_id, consumer_id) values (?, ?, ?, ?, ?)");
+                PreparedStatement attributeStatement = connection.prepareStatement(
+                    "insert into cp_consumer_guests_attributes " +
+                    "(cp_consumer_guest_id, mapkey, element) values (?, ?, ?)");
+                try {
+                    Timestamp now = new Timestamp(new Date().getTime());
+                    int pending = 0;
+                    for (GuestId guestId : guestIds) {
+                        guestId.setId(Util.generateUUID().replace("-", ""));
+                        guestId.setCreated(now);
+                        guestId.setUpdated(now);
+
+                        guestStatement.setString(1, guestId.getId());
+                        guestStatement.setTimestamp(2, now);
+                        guestStatement.setTimestamp(3, now);
+                        guestStatement.setString(4, guestId.getGuestId());
+                        guestStatement.setString(5, guestId.getConsumer().getId());
+                        guestStatement.addBatch();
+
+                        if (guestId.getAttributes() != null) {
+                            for (Map.Entry<String, String> attribute :
+                                guestId.getAttributes().entrySet()) {
+                                attributeStatement.setString(1, guestId.getId());
+                                attributeStatement.setString(2, attribute.getKey());
+                                attributeStatement.setString(3, attribute.getValue());
+                                attributeStatement.addBatch();
+                            }
+                        }
+
+                        if (++pending % BATCH_SIZE == 0) {
+                            guestStatement.executeBatch();
+                            attributeStatement.executeBatch();
+                        }
+                    }
+                    guestStatement.executeBatch();
+                    attributeStatement.executeBatch();
+                }
+                finally {
+                    guestStatement.close();
+                    attributeStatement.close();
+                }
+            }
+        });
+        log.debug("Inserted {} guest IDs", guestIds.size());
+    }
+
+    /**
+     * Deletes the given guest IDs and their attributes with batched JDBC statements,
+     * bypassing the session. The GuestIds should not be attached to the session,
+     * see {@link #getGuestIdsByConsumer(Collection)}.
+     *
+     * @param guestIds guest IDs to delete
+     */
+    public void batchDelete(final Collection<GuestId> guestIds) {
+        if (guestIds.isEmpty()) {
+            return;
+        }
+
+        this.currentSession().doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement attributeStatement = connection.prepareStatement(
+                    "delete from cp_consumer_guests_attributes " +
+                    "where cp_consumer_guest_id = ?");
+                PreparedStatement guestStatement = connection.prepareStatement(
+                    "delete from cp_consumer_guests where id = ?");
+                try {
+                    int pending = 0;
+                    for (GuestId guestId : guestIds) {
+                        attributeStatement.setString(1, guestId.getId());
+                        attributeStatement.addBatch();
+                        guestStatement.setString(1, guestId.getId());
+                        guestStatement.addBatch();
+
+                        if (++pending % BATCH_SIZE == 0) {
+                            attributeStatement.executeBatch();
+                            guestStatement.executeBatch();
+                        }
+                    }
+                    attributeStatement.executeBatch();
+                    guestStatement.executeBatch();
+                }
+                finally {
+                    attributeStatement.close();
+                    guestStatement.close();
+                }
+            }
+        });
+        log.debug("Deleted {} guest IDs", guestIds.size());
+    }
 }
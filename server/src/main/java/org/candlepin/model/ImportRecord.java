@@ -83,6 +83,10 @@ public class ImportRecord extends AbstractHibernateObject {
     @JoinColumn(name = "upstream_id")
     private ImportUpstreamConsumer upstreamConsumer;
 
+    @Column(name = "phase_timings", nullable = true)
+    @Size(max = 255)
+    private String phaseTimings;
+
     @SuppressWarnings("unused")
     private ImportRecord() {
         // JPA
@@ -157,4 +161,15 @@ public class ImportRecord extends AbstractHibernateObject {
     public void setUpstreamConsumer(ImportUpstreamConsumer upstreamConsumer) {
         this.upstreamConsumer = upstreamConsumer;
     }
+
+    /**
+     * @return time spent in each phase of the import, e.g. "read=20ms, ..."
+     */
+    public String getPhaseTimings() {
+        return phaseTimings;
+    }
+
+    public void setPhaseTimings(String phaseTimings) {
+        this.phaseTimings = phaseTimings;
+    }
 }
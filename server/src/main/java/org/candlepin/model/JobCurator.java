@@ -24,9 +24,12 @@ import org.candlepin.pinsetter.core.model.JobStatus.TargetType;
 import org.candlepin.pinsetter.tasks.KingpinJob;
 
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -72,6 +75,51 @@ public class JobCurator extends AbstractHibernateCurator<JobStatus> {
         }
     }
 
+    /**
+     * Checks whether a job has been canceled. The state is read in a session and
+     * transaction of its own, so a job checking from within its long running
+     * transaction still sees a cancellation committed after that transaction began,
+     * whatever the isolation level.
+     *
+     * @param jobId id of the job
+     * @return true if the job's status is canceled
+     */
+    public boolean isCanceled(String jobId) {
+        Session session = this.currentSession().getSessionFactory().openSession();
+        try {
+            Transaction tx = session.beginTransaction();
+            try {
+                Object state = session.createQuery(
+                    "select j.state from JobStatus j where j.id = :jobid")
+                    .setParameter("jobid", jobId)
+                    .uniqueResult();
+                return JobState.CANCELED.equals(state);
+            }
+            finally {
+                // Nothing was written:
+                tx.rollback();
+            }
+        }
+        finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Updates the result of a running job, used to report its progress.
+     *
+     * @param jobId id of the job
+     * @param result the new result
+     */
+    @Transactional
+    public void updateResult(String jobId, String result) {
+        JobStatus status = this.find(jobId);
+        if (status != null) {
+            status.setResult(result);
+            this.merge(status);
+        }
+    }
+
     public int cleanupAllOldJobs(Date deadline) {
         return this.currentSession().createQuery(
             "delete from JobStatus where updated <= :date")
@@ -14,7 +14,7 @@
  */
 package org.candlepin.model;
 
-import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.KeyPairPool;
 
 import com.google.inject.Inject;
 
@@ -26,16 +26,17 @@ import java.security.NoSuchAlgorithmException;
 public class KeyPairCurator extends
     AbstractHibernateCurator<KeyPair> {
 
-    private PKIUtility pki;
+    private KeyPairPool keyPairPool;
 
     @Inject
-    public KeyPairCurator(PKIUtility pki) {
+    public KeyPairCurator(KeyPairPool keyPairPool) {
         super(KeyPair.class);
-        this.pki = pki;
+        this.keyPairPool = keyPairPool;
     }
 
     /**
-     * Lookup the keypair for this consumer. If none exists, a pair will be generated.
+     * Lookup the keypair for this consumer. If none exists, a pair will be taken
+     * from the pool of pre-generated key pairs.
      * Returns the java.security.KeyPair, not our internal KeyPair.
      * @return server-wide keypair.
      */
@@ -45,7 +46,7 @@ public class KeyPairCurator extends
         KeyPair cpKeyPair = c.getKeyPair();
         if (cpKeyPair == null) {
             try {
-                java.security.KeyPair newPair = pki.generateNewKeyPair();
+                java.security.KeyPair newPair = keyPairPool.take();
                 cpKeyPair = new KeyPair(newPair.getPrivate(), newPair.getPublic());
                 create(cpKeyPair);
                 c.setKeyPair(cpKeyPair);
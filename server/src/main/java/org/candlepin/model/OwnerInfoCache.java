@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.candlepin.audit.Event;
+import org.candlepin.auth.Principal;
+import org.candlepin.auth.permissions.OwnerPermission;
+import org.candlepin.auth.permissions.Permission;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OwnerInfoCache
+ *
+ * Keeps the last {@link OwnerInfo} calculated for each owner for a short time. An
+ * owner's entry is dropped as soon as this node sends an event which may change its
+ * counts, events sent by other nodes are only picked up once the entry expires.
+ *
+ * The counts in an OwnerInfo are filtered by the permissions of the principal who
+ * asked for them, so only infos calculated for principals allowed to see the whole
+ * owner are shared.
+ */
+@Singleton
+public class OwnerInfoCache {
+
+    /** Response header carrying the age in seconds of the returned info. */
+    public static final String AGE_HEADER = "X-Cache-Age";
+
+    private static final Set<Event.Target> INVALIDATING_TARGETS = EnumSet.of(
+        Event.Target.CONSUMER, Event.Target.ENTITLEMENT, Event.Target.POOL,
+        Event.Target.SUBSCRIPTION, Event.Target.COMPLIANCE, Event.Target.IMPORT);
+
+    private final long ttl;
+    private final ConcurrentMap<String, CachedOwnerInfo> infos =
+        new ConcurrentHashMap<String, CachedOwnerInfo>();
+    // Last invalidation of each owner, so that a lookup racing an invalidation is
+    // not stored.
+    private final ConcurrentMap<String, Long> invalidated =
+        new ConcurrentHashMap<String, Long>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public OwnerInfoCache(Configuration config) {
+        this(config.getInt(ConfigProperties.OWNER_INFO_CACHE_TTL) * 1000L);
+    }
+
+    /**
+     * @param ttl milliseconds an entry is served for, zero disables the cache
+     */
+    public OwnerInfoCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isEnabled() {
+        return ttl > 0;
+    }
+
+    /**
+     * @param principal principal requesting the info
+     * @param owner owner the info is requested for
+     * @return true if the principal sees every consumer and pool of the owner, and
+     * may therefore share the cached info
+     */
+    public boolean isCacheable(Principal principal, Owner owner) {
+        if (!isEnabled() || owner == null || owner.getId() == null) {
+            return false;
+        }
+        if (principal == null || principal.hasFullAccess()) {
+            return true;
+        }
+        for (Permission perm : principal.getPermissions()) {
+            if (perm instanceof OwnerPermission && perm.getOwner() != null &&
+                owner.getKey().equals(perm.getOwner().getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ownerId id of the owner
+     * @return the cached info, or null if it must be calculated
+     */
+    public CachedOwnerInfo get(String ownerId) {
+        CachedOwnerInfo cached = infos.get(ownerId);
+        if (cached != null && cached.getAge(System.currentTimeMillis()) < ttl) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        if (cached != null) {
+            infos.remove(ownerId, cached);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a freshly calculated info, unless the owner was invalidated while it
+     * was being calculated.
+     *
+     * @param ownerId id of the owner
+     * @param info the calculated info
+     * @param started time in milliseconds the calculation started
+     * @return the stored entry, or null if the info was discarded
+     */
+    public CachedOwnerInfo put(String ownerId, OwnerInfo info, long started) {
+        Long last = invalidated.get(ownerId);
+        if (!isEnabled() || (last != null && last >= started)) {
+            return null;
+        }
+        CachedOwnerInfo cached = new CachedOwnerInfo(info, started);
+        infos.put(ownerId, cached);
+        return cached;
+    }
+
+    public void invalidate(String ownerId) {
+        if (ownerId == null || !isEnabled()) {
+            return;
+        }
+        invalidated.put(ownerId, System.currentTimeMillis());
+        infos.remove(ownerId);
+    }
+
+    /**
+     * Drops the info of the event's owner if the event may have changed its counts.
+     *
+     * @param event event being sent
+     */
+    public void invalidate(Event event) {
+        if (event != null && INVALIDATING_TARGETS.contains(event.getTarget())) {
+            invalidate(event.getOwnerId());
+        }
+    }
+
+    public void flush() {
+        infos.clear();
+    }
+
+    public int size() {
+        return infos.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * An OwnerInfo along with the time its calculation started.
+     */
+    public static class CachedOwnerInfo {
+        private final OwnerInfo info;
+        private final long created;
+
+        CachedOwnerInfo(OwnerInfo info, long created) {
+            this.info = info;
+            this.created = created;
+        }
+
+        public OwnerInfo getInfo() {
+            return info;
+        }
+
+        /**
+         * @param now current time in milliseconds
+         * @return milliseconds since the info was calculated
+         */
+        public long getAge(long now) {
+            return Math.max(0, now - created);
+        }
+    }
+}
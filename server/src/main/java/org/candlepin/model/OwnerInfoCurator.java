@@ -23,13 +23,12 @@ import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import javax.persistence.EntityManager;
 
@@ -43,6 +42,13 @@ public class OwnerInfoCurator {
     private ConsumerCurator consumerCurator;
     private PoolCurator poolCurator;
 
+    private static final String REQUIRES_CONSUMER_TYPE = "requires_consumer_type";
+    private static final String ENABLED_CONSUMER_TYPES = "enabled_consumer_types";
+    private static final String PRODUCT_FAMILY = "product_family";
+    private static final String VIRT_ONLY = "virt_only";
+    private static final String[] POOL_ATTRIBUTES = {REQUIRES_CONSUMER_TYPE,
+        ENABLED_CONSUMER_TYPES, PRODUCT_FAMILY, VIRT_ONLY};
+
     @Inject
     public OwnerInfoCurator(Provider<EntityManager> entityManager,
         ConsumerCurator consumerCurator, ConsumerTypeCurator consumerTypeCurator,
@@ -53,58 +59,253 @@ public class OwnerInfoCurator {
         this.poolCurator = poolCurator;
     }
 
+    /**
+     * Calculates the info of an owner using a fixed number of grouped queries,
+     * regardless of how many consumer types and product families exist.
+     *
+     * @param owner owner to look up
+     * @return the owner's info
+     */
     public OwnerInfo lookupByOwner(Owner owner) {
         OwnerInfo info = new OwnerInfo();
         Date now = new Date();
 
-        List<ConsumerType> types = consumerTypeCurator.listAll();
-        HashMap<String, ConsumerType> typeHash = new HashMap<String, ConsumerType>();
-        for (ConsumerType type : types) {
-            // Store off the type for later use
-            typeHash.put(type.getLabel(), type);
+        Map<String, Integer> consumerCounts = getConsumerCountsByType(owner);
+        Map<String, Integer> entitlementCounts = getEntitlementCountsByType(owner);
+        Map<String, ActivePool> pools = getActivePools(owner, now);
+
+        int totalConsumers = 0;
+        for (ConsumerType type : consumerTypeCurator.listAll()) {
+            int consumers = count(consumerCounts, type.getLabel());
+            totalConsumers += consumers;
+            info.addTypeTotal(type, consumers, count(entitlementCounts, type.getLabel()));
+
+            int required = 0;
+            int enabled = 0;
+            for (ActivePool pool : pools.values()) {
+                if (type.getLabel().equalsIgnoreCase(
+                    pool.getAttribute(REQUIRES_CONSUMER_TYPE))) {
+                    required++;
+                }
+                if (listsValue(pool.getAttribute(ENABLED_CONSUMER_TYPES),
+                    type.getLabel())) {
+                    enabled++;
+                }
+            }
+            info.addToConsumerTypeCountByPool(type, required);
+            if (enabled > 0) {
+                info.addToEnabledConsumerTypeCountByPool(type, enabled);
+            }
+        }
+
+        info.addDefaultEnabledConsumerTypeCount(pools.size());
+
+        setEntitlementsConsumedByFamily(owner, now, pools, info);
+        setConsumerGuestCounts(owner, totalConsumers, info);
+        setConsumerCountsByComplianceStatus(owner, info);
+
+        return info;
+    }
 
-            // Do the real work
-            int consumers = consumerCurator.getConsumerCount(owner, type);
-            int entCount = consumerCurator.getConsumerEntitlementCount(owner, type);
-            info.addTypeTotal(type, consumers, entCount);
+    /*
+     * Families of pools strictly within their dates, along with the physical and
+     * virtual quantity consumed from them. Pool attributes override product ones.
+     */
+    private void setEntitlementsConsumedByFamily(Owner owner, Date date,
+        Map<String, ActivePool> pools, OwnerInfo info) {
+        Map<String, Integer> consumed = getConsumedQuantityByPool(owner, date);
+
+        Map<String, int[]> families = new TreeMap<String, int[]>();
+        int total = 0;
+        int virtTotal = 0;
+        for (ActivePool pool : pools.values()) {
+            if (!pool.isActiveOn(date)) {
+                continue;
+            }
 
-            int count = getRequiresConsumerTypeCount(type, owner, now);
-            info.addToConsumerTypeCountByPool(type, count);
+            int quantity = count(consumed, pool.id);
+            boolean virt = "true".equals(pool.getAttribute(VIRT_ONLY));
+            total += quantity;
+            if (virt) {
+                virtTotal += quantity;
+            }
 
-            count = getEnabledConsumerTypeCount(type, owner, now);
-            if (count > 0) {
-                info.addToEnabledConsumerTypeCountByPool(type, count);
+            String family = pool.getAttribute(PRODUCT_FAMILY);
+            if (family == null) {
+                continue;
             }
+            int[] counts = families.get(family);
+            if (counts == null) {
+                counts = new int[2];
+                families.put(family, counts);
+            }
+            counts[virt ? 1 : 0] += quantity;
+        }
 
+        for (Entry<String, int[]> family : families.entrySet()) {
+            info.addToEntitlementsConsumedByFamily(family.getKey(),
+                family.getValue()[0], family.getValue()[1]);
         }
+        info.addDefaultEntitlementsConsumedByFamily(total - virtTotal, virtTotal);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> getConsumerCountsByType(Owner owner) {
+        Criteria crit = consumerCurator.createSecureCriteria()
+            .createAlias("type", "t")
+            .add(Restrictions.eq("owner", owner))
+            .setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("t.label"))
+                .add(Projections.rowCount()));
+        return toCounts(crit.list());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> getEntitlementCountsByType(Owner owner) {
+        Criteria crit = consumerCurator.createSecureCriteria()
+            .createAlias("type", "t")
+            .createAlias("entitlements", "ent")
+            .add(Restrictions.eq("owner", owner))
+            .setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("t.label"))
+                .add(Projections.sum("ent.quantity")));
+        return toCounts(crit.list());
+    }
 
-        int activePools = getActivePoolCount(owner, now);
-        info.addDefaultEnabledConsumerTypeCount(activePools);
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> getConsumedQuantityByPool(Owner owner, Date date) {
+        String queryStr = "select p.id, sum(ent.quantity) from Pool p " +
+            "join p.entitlements as ent " +
+            "where p.owner = :owner " +
+            "and p.startDate < :date and p.endDate > :date " +
+            "group by p.id";
+        Query query = currentSession().createQuery(queryStr)
+            .setEntity("owner", owner)
+            .setParameter("date", date);
+        return toCounts(query.list());
+    }
 
-        Collection<String> families = getProductFamilies(owner, now);
+    /*
+     * Pools active on the given date, including both boundaries, with the pool and
+     * product attributes the info is built from.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, ActivePool> getActivePools(Owner owner, Date date) {
+        Criteria crit = createActivePoolCriteria(owner, date)
+            .setProjection(Projections.projectionList()
+                .add(Projections.property("id"))
+                .add(Projections.property("startDate"))
+                .add(Projections.property("endDate")));
+
+        Map<String, ActivePool> pools = new HashMap<String, ActivePool>();
+        for (Object[] row : (List<Object[]>) crit.list()) {
+            pools.put((String) row[0],
+                new ActivePool((String) row[0], (Date) row[1], (Date) row[2]));
+        }
 
-        for (String family : families) {
-            int virtualCount = getProductFamilyCount(owner, now, family, true);
-            int totalCount = getProductFamilyCount(owner, now, family, false);
-            info.addToEntitlementsConsumedByFamily(family, totalCount - virtualCount,
-                virtualCount);
+        if (!pools.isEmpty()) {
+            addAttributes(owner, date, "attributes", pools, false);
+            addAttributes(owner, date, "productAttributes", pools, true);
         }
+        return pools;
+    }
 
-        int virtTotalEntitlements = getProductFamilyCount(owner, now, null, true);
-        int totalEntitlements = getProductFamilyCount(owner, now, null, false);
+    @SuppressWarnings("unchecked")
+    private void addAttributes(Owner owner, Date date, String association,
+        Map<String, ActivePool> pools, boolean product) {
+        Criteria crit = createActivePoolCriteria(owner, date)
+            .createAlias(association, "attr")
+            .add(Restrictions.in("attr.name", POOL_ATTRIBUTES))
+            .setProjection(Projections.projectionList()
+                .add(Projections.property("id"))
+                .add(Projections.property("attr.name"))
+                .add(Projections.property("attr.value")));
+
+        for (Object[] row : (List<Object[]>) crit.list()) {
+            ActivePool pool = pools.get((String) row[0]);
+            if (pool != null) {
+                (product ? pool.productAttributes : pool.attributes)
+                    .put((String) row[1], (String) row[2]);
+            }
+        }
+    }
 
-        info.addDefaultEntitlementsConsumedByFamily(
-            totalEntitlements - virtTotalEntitlements,
-            virtTotalEntitlements);
+    private Criteria createActivePoolCriteria(Owner owner, Date date) {
+        return poolCurator.createSecureCriteria()
+            .add(Restrictions.eq("owner", owner))
+            .add(Restrictions.le("startDate", date))
+            .add(Restrictions.ge("endDate", date));
+    }
 
-        setConsumerGuestCounts(owner, info);
-        setConsumerCountsByComplianceStatus(owner, info);
+    private Map<String, Integer> toCounts(List<Object[]> rows) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Object[] row : rows) {
+            if (row[1] != null) {
+                counts.put((String) row[0], ((Number) row[1]).intValue());
+            }
+        }
+        return counts;
+    }
 
-        return info;
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
     }
 
-    @SuppressWarnings("unchecked")
-    private void setConsumerGuestCounts(Owner owner, OwnerInfo info) {
+    /*
+     * Whether a comma separated attribute value contains the given value, ignoring
+     * case, the way the enabled_consumer_types pool filter matches it.
+     */
+    private static boolean listsValue(String list, String value) {
+        if (list == null) {
+            return false;
+        }
+        for (String item : list.split(",")) {
+            if (item.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The dates and relevant attributes of an active pool.
+     */
+    private static class ActivePool {
+        private final String id;
+        private final Date startDate;
+        private final Date endDate;
+        private final Map<String, String> attributes = new HashMap<String, String>();
+        private final Map<String, String> productAttributes =
+            new HashMap<String, String>();
+
+        ActivePool(String id, Date startDate, Date endDate) {
+            this.id = id;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        /*
+         * Pool attributes override product attributes of the same name.
+         */
+        String getAttribute(String name) {
+            if (attributes.containsKey(name)) {
+                return attributes.get(name);
+            }
+            return productAttributes.get(name);
+        }
+
+        /*
+         * Compared by time since the dates may be Timestamps.
+         */
+        boolean isActiveOn(Date date) {
+            return startDate.getTime() < date.getTime() &&
+                endDate.getTime() > date.getTime();
+        }
+    }
+
+    private void setConsumerGuestCounts(Owner owner, int totalConsumers,
+        OwnerInfo info) {
         Criteria cr = consumerCurator.createSecureCriteria()
             .createAlias("facts", "f")
             .add(Restrictions.eq("owner", owner))
@@ -113,18 +314,13 @@ public class OwnerInfoCurator {
             .setProjection(Projections.count("id"));
 
         int guestCount = ((Long) cr.uniqueResult()).intValue();
-
-        Criteria totalConsumersCriteria = consumerCurator.createSecureCriteria()
-            .add(Restrictions.eq("owner", owner))
-            .setProjection(Projections.count("id"));
-
-        int totalConsumers = ((Long) totalConsumersCriteria.uniqueResult()).intValue();
         int physicalCount = totalConsumers - guestCount;
 
         info.setGuestCount(guestCount);
         info.setPhysicalCount(physicalCount);
     }
 
+    @SuppressWarnings("unchecked")
     private void setConsumerCountsByComplianceStatus(Owner owner, OwnerInfo info) {
         // We exclude the following types since they are fake/transparent consumers
         // and we do not want them included in the totals.
@@ -147,141 +343,6 @@ public class OwnerInfoCurator {
         }
     }
 
-    private int getActivePoolCount(Owner owner, Date date) {
-        Criteria activePoolCountCrit = poolCurator.createSecureCriteria()
-            .add(Restrictions.eq("owner", owner))
-            .add(Restrictions.le("startDate", date))
-            .add(Restrictions.ge("endDate", date))
-            .setProjection(Projections.count("id"));
-        return ((Long) activePoolCountCrit.uniqueResult()).intValue();
-    }
-
-    private int getRequiresConsumerTypeCount(ConsumerType type, Owner owner, Date date) {
-        PoolFilterBuilder filterBuilder = new PoolFilterBuilder();
-        filterBuilder.addAttributeFilter("requires_consumer_type", type.getLabel());
-        Criteria typeCountCrit = poolCurator.createSecureCriteria()
-            .add(Restrictions.eq("owner", owner))
-            .add(Restrictions.le("startDate", date))
-            .add(Restrictions.ge("endDate", date))
-            .setProjection(Projections.count("id"));
-        filterBuilder.applyTo(typeCountCrit);
-
-        return ((Long) typeCountCrit.uniqueResult()).intValue();
-    }
-
-    private int getEnabledConsumerTypeCount(ConsumerType type, Owner owner, Date date) {
-        PoolFilterBuilder filterBuilder = new PoolFilterBuilder();
-        filterBuilder.addAttributeFilter("enabled_consumer_types", type.getLabel() + ",*");
-        filterBuilder.addAttributeFilter("enabled_consumer_types", "*," + type.getLabel() + ",*");
-        filterBuilder.addAttributeFilter("enabled_consumer_types", "*," + type.getLabel());
-        filterBuilder.addAttributeFilter("enabled_consumer_types", type.getLabel());
-        Criteria enabledCountCrit = poolCurator.createSecureCriteria()
-            .add(Restrictions.eq("owner", owner))
-            .add(Restrictions.le("startDate", date))
-            .add(Restrictions.ge("endDate", date))
-            .setProjection(Projections.countDistinct("id"));
-        filterBuilder.applyTo(enabledCountCrit);
-
-        return ((Long) enabledCountCrit.uniqueResult()).intValue();
-    }
-
-    private Collection<String> getProductFamilies(Owner owner, Date date) {
-        Set<String> families = new HashSet<String>();
-
-        String queryStr = "select distinct attr.value from Pool p " +
-            "join p.attributes as attr " +
-            "where p.owner = :owner " +
-            "and p.startDate < :date and p.endDate > :date " +
-            "and attr.name = 'product_family'";
-        Query query = currentSession().createQuery(queryStr)
-            .setEntity("owner", owner)
-            .setParameter("date", date);
-
-        Iterator iter = query.iterate();
-        while (iter.hasNext()) {
-            String family = (String) iter.next();
-            families.add(family);
-        }
-
-        queryStr = "select distinct prod.value from Pool p " +
-            "join p.productAttributes as prod " +
-            "where p.owner = :owner " +
-            "and p.startDate < :date and p.endDate > :date " +
-            "and prod.name = 'product_family' " +
-            "and p not in (select distinct pa.pool from PoolAttribute pa" +
-            "              where pa.name = 'product_family')";
-        query = currentSession().createQuery(queryStr)
-            .setEntity("owner", owner)
-            .setParameter("date", date);
-
-        iter = query.iterate();
-        while (iter.hasNext()) {
-            String family = (String) iter.next();
-            families.add(family);
-        }
-
-        return families;
-    }
-
-    /*
-     * If called with virt = false, returns the total number of all entitlements in
-     * that family for that owner. So you probably want to subtract  the result of
-     * virt=true from that.
-     *
-     * use family = null to get counts for all pools.
-     */
-    private int getProductFamilyCount(Owner owner, Date date, String family, boolean virt) {
-        String queryStr = "select sum(ent.quantity) from Pool p" +
-            "              join p.entitlements as ent " +
-            "              where p.owner = :owner " +
-            "              and p.startDate < :date and p.endDate > :date ";
-
-        if (family != null) {
-            queryStr +=
-                "and (p in (select p from Pool p join p.attributes as attr " +
-                "           where p.owner = :owner " +
-                "           and attr.name = 'product_family' and attr.value = :family)" +
-                "     or (p in (select p from Pool p join p.productAttributes as prod " +
-                "              where p.owner = :owner " +
-                "              and prod.name = 'product_family' " +
-                "              and prod.value = :family) " +
-                "         and p not in (select p from Pool p join p.attributes as attr " +
-                "                       where p.owner = :owner " +
-                "                       and attr.name = 'product_family')" +
-                "        )" +
-                ")";
-        }
-
-        if (virt) {
-            queryStr += "and (p in (select p from Pool p join p.attributes as attr " +
-                        "           where attr.name = 'virt_only' " +
-                        "           and attr.value = 'true') " +
-                        "     or (p in (select p from Pool p " +
-                        "               join p.productAttributes as prod " +
-                        "               where p.owner = :owner " +
-                        "               and prod.name = 'virt_only' " +
-                        "               and prod.value = 'true')" +
-                        "         and p not in (select p from Pool p " +
-                        "                       join p.attributes as attr " +
-                        "                       where p.owner = :owner " +
-                        "                       and attr.name = 'virt_only')" +
-                        "     )" +
-                        ")";
-        }
-        Query query = currentSession().createQuery(queryStr)
-            .setEntity("owner", owner)
-            .setParameter("date", date);
-        if (family != null) {
-            query.setParameter("family", family);
-        }
-        Long res = (Long) query.uniqueResult();
-        if (res == null) {
-            return 0;
-        }
-
-        return res.intValue();
-    }
-
     protected Session currentSession() {
         Session sess = (Session) entityManager.get().getDelegate();
         return sess;
@@ -18,19 +18,24 @@ import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.config.ConfigProperties;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.sql.JoinType;
 import org.xnap.commons.i18n.I18n;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -38,6 +43,8 @@ import java.util.Set;
  */
 public class ProductCurator extends AbstractHibernateCurator<Product> {
 
+    private static final int IN_BATCH_SIZE = 500;
+
     @Inject private Configuration config;
     @Inject private I18n i18n;
 
@@ -68,6 +75,70 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
             .add(Restrictions.eq("id", id)).uniqueResult();
     }
 
+    /**
+     * Looks up the products with the given ids using IN-list queries per batch
+     * of ids, rather than one query per product. The attributes, content and
+     * dependent products of each product are loaded too, one query per collection,
+     * so they can be compared without further round trips.
+     *
+     * @param ids product ids to lookup
+     * @return the products which exist, keyed by id
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public Map<String, Product> lookupByIds(Collection<String> ids) {
+        Map<String, Product> result = new HashMap<String, Product>();
+        for (List<String> batch : Lists.partition(new ArrayList<String>(ids),
+            IN_BATCH_SIZE)) {
+            List<Product> products = currentSession().createCriteria(Product.class)
+                .add(Restrictions.in("id", batch))
+                .setFetchMode("attributes", FetchMode.JOIN)
+                .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+                .list();
+            if (products.isEmpty()) {
+                continue;
+            }
+
+            // Joining every collection at once would multiply the rows, the products
+            // are already in the session so these just fill in their collections:
+            currentSession().createCriteria(Product.class)
+                .add(Restrictions.in("id", batch))
+                .setFetchMode("productContent", FetchMode.JOIN)
+                .list();
+            currentSession().createCriteria(Product.class)
+                .add(Restrictions.in("id", batch))
+                .setFetchMode("dependentProductIds", FetchMode.JOIN)
+                .list();
+
+            for (Product product : products) {
+                result.put(product.getId(), product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the given new products and updates the given existing ones, then
+     * writes all of them out with a single flush, letting Hibernate send the
+     * statements in JDBC batches instead of flushing after every product.
+     *
+     * @param created products which do not exist yet
+     * @param updated products which exist and have changed
+     */
+    @Transactional
+    public void bulkCreateOrUpdate(Collection<Product> created,
+        Collection<Product> updated) {
+        for (Product product : created) {
+            prepareAttributes(product);
+            getEntityManager().persist(product);
+        }
+        for (Product product : updated) {
+            prepareAttributes(product);
+            getEntityManager().merge(product);
+        }
+        flush();
+    }
+
     /**
      * Create the given product if it does not already exist, otherwise update
      * existing product.
@@ -86,25 +157,17 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
 
     @Transactional
     public Product create(Product entity) {
-
-        /*
-         * Ensure all referenced ProductAttributes are correctly pointing to
-         * this product. This is useful for products being created from incoming
-         * json.
-         */
-        for (ProductAttribute attr : entity.getAttributes()) {
-            attr.setProduct(entity);
-            validateAttributeValue(attr);
-        }
-        /*
-         * Ensure that no circular reference exists
-         */
-
+        prepareAttributes(entity);
         return super.create(entity);
     }
 
     @Transactional
     public Product merge(Product entity) {
+        prepareAttributes(entity);
+        return super.merge(entity);
+    }
+
+    private void prepareAttributes(Product entity) {
 
         /*
          * Ensure all referenced ProductAttributes are correctly pointing to
@@ -118,8 +181,6 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
         /*
          * Ensure that no circular reference exists
          */
-
-        return super.merge(entity);
     }
 
     private void validateAttributeValue(ProductAttribute attr) {
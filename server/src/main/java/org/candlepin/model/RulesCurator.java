@@ -20,6 +20,7 @@ import org.candlepin.util.Util;
 
 import com.google.inject.persist.Transactional;
 
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.slf4j.Logger;
@@ -31,6 +32,9 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Date;
 
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 /**
  * RulesCurator
  */
@@ -136,6 +140,34 @@ public class RulesCurator extends AbstractHibernateCurator<Rules> {
         return new Date(rulesFile.lastModified());
     }
 
+    /**
+     * Runs the given task once the current transaction commits, or right away when
+     * no transaction is active. The task is dropped if the transaction rolls back.
+     *
+     * @param task work which must only see committed rules
+     */
+    public void afterCommit(final Runnable task) {
+        Transaction tx = currentSession().getTransaction();
+        if (tx == null || !tx.isActive()) {
+            task.run();
+            return;
+        }
+
+        tx.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nothing to do until the outcome is known
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    task.run();
+                }
+            }
+        });
+    }
+
     @Transactional
     public void resetToRpmRules() {
         currentSession().createQuery("DELETE FROM Rules").executeUpdate();
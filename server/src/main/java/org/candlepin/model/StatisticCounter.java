@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+/**
+ * StatisticCounter - A running count kept per owner, updated from the event
+ * stream so statistic runs only need to snapshot it. See
+ * {@link StatisticCounterCurator} for how the counters are reconciled.
+ */
+@Entity
+@Table(name = "cp_stat_counter",
+    uniqueConstraints = {@UniqueConstraint(columnNames = {"owner_id", "name"})})
+public class StatisticCounter extends AbstractHibernateObject {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String TOTAL_CONSUMERS = "consumers";
+    public static final String GUEST_CONSUMERS = "guests";
+    public static final String SOCKETS_PREFIX = "sockets:";
+    // Marks when the counters of an owner were last recomputed from the database.
+    public static final String RECONCILED = "reconciled";
+
+    @Id
+    @GeneratedValue(generator = "system-uuid")
+    @GenericGenerator(name = "system-uuid", strategy = "uuid")
+    @Column(length = 32)
+    @NotNull
+    private String id;
+
+    @Column(nullable = false, name = "owner_id", length = 32)
+    @Size(max = 32)
+    @NotNull
+    private String ownerId;
+
+    @Column(nullable = false)
+    @Size(max = 255)
+    @NotNull
+    private String name;
+
+    @Column(nullable = false)
+    private long value;
+
+    public StatisticCounter() {
+    }
+
+    public StatisticCounter(String ownerId, String name, long value) {
+        this.ownerId = ownerId;
+        this.name = name;
+        this.value = value;
+    }
+
+    /**
+     * @param sockets the cpu.cpu_socket(s) fact of a consumer, possibly null
+     * @return the name of the counter of consumers with that socket count
+     */
+    public static String socketsName(String sockets) {
+        return SOCKETS_PREFIX + (sockets == null ? "" : sockets);
+    }
+
+    /**
+     * @param name the name of a socket count counter
+     * @return the socket count it counts, null for consumers without the fact
+     */
+    public static String socketsOf(String name) {
+        String sockets = name.substring(SOCKETS_PREFIX.length());
+        return sockets.isEmpty() ? null : sockets;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(String ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public void setValue(long value) {
+        this.value = value;
+    }
+
+    public String toString() {
+        return "StatisticCounter [owner=" + getOwnerId() + ", name=" + getName() +
+            ", value=" + getValue() + "]";
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import com.google.inject.persist.Transactional;
+
+import org.hibernate.LockMode;
+import org.hibernate.criterion.Restrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StatisticCounterCurator
+ *
+ * Maintains the per owner {@link StatisticCounter}s. The counters are moved by
+ * deltas as consumers come and go, and are periodically reconciled with
+ * aggregate queries to correct any drift, for instance from events lost or from
+ * changes not reported by an event.
+ */
+public class StatisticCounterCurator extends AbstractHibernateCurator<StatisticCounter> {
+
+    private static Logger log = LoggerFactory.getLogger(StatisticCounterCurator.class);
+
+    public StatisticCounterCurator() {
+        super(StatisticCounter.class);
+    }
+
+    /**
+     * Adds the given delta to a counter, creating it if needed. Nothing is counted
+     * before the counters of the owner were first reconciled, which computes them
+     * from scratch anyway.
+     *
+     * @param ownerId the owner of the counter
+     * @param name the name of the counter
+     * @param delta the amount to add, may be negative
+     */
+    @Transactional
+    public void increment(String ownerId, String name, long delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        // Concurrent listeners would race to create the same counter, so updates
+        // to the counters of an owner are serialized on its reconciled marker.
+        if (lockReconciled(ownerId) == null) {
+            return;
+        }
+
+        int updated = currentSession().createQuery(
+            "update StatisticCounter c set c.value = c.value + :delta, c.updated = :now " +
+            "where c.ownerId = :ownerId and c.name = :name")
+            .setLong("delta", delta)
+            .setTimestamp("now", new Date())
+            .setString("ownerId", ownerId)
+            .setString("name", name)
+            .executeUpdate();
+        if (updated == 0) {
+            create(new StatisticCounter(ownerId, name, delta));
+        }
+    }
+
+    private StatisticCounter lockReconciled(String ownerId) {
+        return (StatisticCounter) currentSession().createCriteria(StatisticCounter.class)
+            .add(Restrictions.eq("ownerId", ownerId))
+            .add(Restrictions.eq("name", StatisticCounter.RECONCILED))
+            .setLockMode(LockMode.PESSIMISTIC_WRITE)
+            .uniqueResult();
+    }
+
+    /**
+     * @param ownerId the owner of the counters
+     * @return the current counter values, keyed by counter name
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> getCounters(String ownerId) {
+        List<Object[]> rows = currentSession().createQuery(
+            "select c.name, c.value from StatisticCounter c " +
+            "where c.ownerId = :ownerId and c.name != :reconciled")
+            .setString("ownerId", ownerId)
+            .setString("reconciled", StatisticCounter.RECONCILED)
+            .list();
+
+        Map<String, Long> counters = new HashMap<String, Long>();
+        for (Object[] row : rows) {
+            counters.put((String) row[0], (Long) row[1]);
+        }
+        return counters;
+    }
+
+    /**
+     * @param ownerId the owner of the counters
+     * @return when the counters were last reconciled, or null if they never were
+     */
+    public Date getReconciled(String ownerId) {
+        return (Date) currentSession().createQuery(
+            "select c.created from StatisticCounter c " +
+            "where c.ownerId = :ownerId and c.name = :reconciled")
+            .setString("ownerId", ownerId)
+            .setString("reconciled", StatisticCounter.RECONCILED)
+            .uniqueResult();
+    }
+
+    /**
+     * Recomputes every counter of the owner with aggregate queries, no consumer is
+     * loaded.
+     *
+     * @param ownerId the owner of the counters
+     * @return the reconciled counter values, keyed by counter name
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> reconcile(String ownerId) {
+        // Hold back increments until the recomputed counters are committed:
+        lockReconciled(ownerId);
+        Map<String, Long> counters = new HashMap<String, Long>();
+
+        counters.put(StatisticCounter.TOTAL_CONSUMERS, count(currentSession().createQuery(
+            "select count(c) from Consumer c where c.owner.id = :ownerId")
+            .setString("ownerId", ownerId)
+            .uniqueResult()));
+
+        counters.put(StatisticCounter.GUEST_CONSUMERS, count(currentSession().createSQLQuery(
+            "select count(distinct c.id) from cp_consumer c " +
+            "inner join cp_consumer_facts f on f.cp_consumer_id = c.id " +
+            "where c.owner_id = :ownerId and lower(f.mapkey) = 'virt.is_guest' " +
+            "and lower(f.element) = 'true'")
+            .setString("ownerId", ownerId)
+            .uniqueResult()));
+
+        List<Object[]> sockets = currentSession().createSQLQuery(
+            "select f.element, count(c.id) from cp_consumer c " +
+            "left outer join cp_consumer_facts f on f.cp_consumer_id = c.id " +
+            "and f.mapkey = 'cpu.cpu_socket(s)' " +
+            "where c.owner_id = :ownerId group by f.element")
+            .setString("ownerId", ownerId)
+            .list();
+        for (Object[] row : sockets) {
+            String name = StatisticCounter.socketsName((String) row[0]);
+            Long previous = counters.get(name);
+            counters.put(name, count(row[1]) + (previous == null ? 0L : previous));
+        }
+
+        currentSession().createQuery(
+            "delete from StatisticCounter c where c.ownerId = :ownerId")
+            .setString("ownerId", ownerId)
+            .executeUpdate();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            create(new StatisticCounter(ownerId, counter.getKey(), counter.getValue()));
+        }
+        create(new StatisticCounter(ownerId, StatisticCounter.RECONCILED, 0L));
+
+        log.info("Reconciled {} statistic counters of owner {}", counters.size(), ownerId);
+        return counters;
+    }
+
+    /*
+     * Aggregates come back as Long or BigInteger/BigDecimal depending on the
+     * query and database, and sums of nothing are null.
+     */
+    private static long count(Object result) {
+        return result == null ? 0L : ((Number) result).longValue();
+    }
+}
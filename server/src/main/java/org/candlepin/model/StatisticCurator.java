@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Statistic.EntryType;
 import org.candlepin.model.Statistic.ValueType;
 
@@ -24,11 +26,11 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 /**
  * StatisticCurator
@@ -36,17 +38,19 @@ import java.util.Map.Entry;
 public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
 
     private OwnerCurator ownerCurator;
-    private OwnerInfoCurator ownerInfoCurator;
+    private StatisticCounterCurator counterCurator;
     private StatisticCuratorQueries statisticCuratorQueries;
+    private Configuration config;
 
     @Inject
     public StatisticCurator(OwnerCurator ownerCurator,
-        OwnerInfoCurator ownerInfoCurator,
-        StatisticCuratorQueries statisticCuratorQueries) {
+        StatisticCounterCurator counterCurator,
+        StatisticCuratorQueries statisticCuratorQueries, Configuration config) {
         super(Statistic.class);
         this.ownerCurator = ownerCurator;
-        this.ownerInfoCurator = ownerInfoCurator;
+        this.counterCurator = counterCurator;
         this.statisticCuratorQueries = statisticCuratorQueries;
+        this.config = config;
     }
 
     @Transactional
@@ -77,10 +81,11 @@ public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
         List<Owner> owners = ownerCurator.listAll();
         for (Owner owner : owners) {
             String ownerId = owner.getId();
+            Map<String, Long> counters = getCounters(ownerId);
 
-            systemCounts(owner);
-            totalConsumers(owner);
-            consumersPerSocketCount(owner);
+            systemCounts(ownerId, counters);
+            totalConsumers(ownerId, counters);
+            consumersPerSocketCount(ownerId, counters);
             int tsc = totalSubscriptionCount(ownerId);
             totalSubscriptionConsumed(ownerId, tsc);
             perPool(ownerId);
@@ -88,44 +93,58 @@ public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
         }
     }
 
-    private void systemCounts(Owner owner) {
-        OwnerInfo oi = ownerInfoCurator.lookupByOwner(owner);
+    /*
+     * The consumer counts come from the counters maintained by the
+     * StatisticListener, which are recomputed when missing or too old.
+     */
+    private Map<String, Long> getCounters(String ownerId) {
+        Date reconciled = counterCurator.getReconciled(ownerId);
+        long maxAge = TimeUnit.DAYS.toMillis(
+            config.getInt(ConfigProperties.STATISTICS_RECONCILE_DAYS));
+        if (reconciled == null ||
+            reconciled.getTime() < System.currentTimeMillis() - maxAge) {
+            return counterCurator.reconcile(ownerId);
+        }
+        return counterCurator.getCounters(ownerId);
+    }
+
+    private static int counter(Map<String, Long> counters, String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value.intValue();
+    }
+
+    private void systemCounts(String ownerId, Map<String, Long> counters) {
+        int guests = counter(counters, StatisticCounter.GUEST_CONSUMERS);
+        int physical = counter(counters, StatisticCounter.TOTAL_CONSUMERS) - guests;
 
         Statistic consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.VIRTUAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.GUEST),
-            owner.getId());
+            ValueType.VIRTUAL, null, guests, ownerId);
         create(consumerCountStatistic);
 
         consumerCountStatistic = new Statistic(EntryType.SYSTEM,
-            ValueType.PHYSICAL, null, oi.getConsumerGuestCounts().get(OwnerInfo.PHYSICAL),
-            owner.getId());
+            ValueType.PHYSICAL, null, physical, ownerId);
         create(consumerCountStatistic);
 
     }
 
-    private void totalConsumers(Owner owner) {
-        int count = owner.getConsumers().size();
+    private void totalConsumers(String ownerId, Map<String, Long> counters) {
+        int count = counter(counters, StatisticCounter.TOTAL_CONSUMERS);
         Statistic consumerCountStatistic = new Statistic(
-            EntryType.TOTALCONSUMERS, ValueType.RAW, null, count, owner.getId());
+            EntryType.TOTALCONSUMERS, ValueType.RAW, null, count, ownerId);
         create(consumerCountStatistic);
     }
 
-    private void consumersPerSocketCount(Owner owner) {
-        Map<String, Integer> map = new HashMap<String, Integer>();
-        for (Consumer c : owner.getConsumers()) {
-            String sockets = c.getFact("cpu.cpu_socket(s)");
-            Integer count = map.get(sockets);
-            if (count == null) {
-                count = Integer.valueOf(0);
+    private void consumersPerSocketCount(String ownerId, Map<String, Long> counters) {
+        for (Entry<String, Long> entry : counters.entrySet()) {
+            // Buckets emptied by deleted consumers are not reported, as before.
+            if (!entry.getKey().startsWith(StatisticCounter.SOCKETS_PREFIX) ||
+                entry.getValue() <= 0) {
+                continue;
             }
-            count++;
-            map.put(sockets, count);
-        }
-
-        for (Entry<String, Integer> entry : map.entrySet()) {
             Statistic socketCountStatistic = new Statistic(
-                EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW, entry.getKey(),
-                entry.getValue(), owner.getId());
+                EntryType.CONSUMERSBYSOCKETCOUNT, ValueType.RAW,
+                StatisticCounter.socketsOf(entry.getKey()),
+                entry.getValue().intValue(), ownerId);
             create(socketCountStatistic);
         }
     }
@@ -148,7 +167,8 @@ public class StatisticCurator extends AbstractHibernateCurator<Statistic> {
     private void totalSubscriptionConsumed(String ownerId,
         int subscriptionCountTotal) {
 
-        // Total Subscription Consumed (Raw Count and Percentage)
+        // Total Subscription Consumed (Raw Count and Percentage). Summed on every
+        // run, entitlement quantity changes cannot be followed from events.
         int entitlementCountTotal = 0;
         String entitlementCountString = "select sum(quantity) from Entitlement e" +
             " where e.owner.id = :ownerId";
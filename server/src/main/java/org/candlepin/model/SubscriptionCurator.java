@@ -21,6 +21,7 @@ import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -45,6 +46,20 @@ public class SubscriptionCurator extends AbstractHibernateCurator<Subscription>
             .add(Restrictions.eq("id", subId)).uniqueResult();
     }
 
+    /**
+     * Return the subscriptions matching the given ids in a single query.
+     * @param subIds subscription ids
+     * @return subscriptions whose ids match one of the given values.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Subscription> listByIds(Collection<String> subIds) {
+        if (subIds == null || subIds.isEmpty()) {
+            return new LinkedList<Subscription>();
+        }
+        return currentSession().createCriteria(Subscription.class)
+            .add(Restrictions.in("id", subIds)).list();
+    }
+
     /**
      * Return a list of subscriptions filtered by owner.
      * @param o Owner of the subscription.
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.core;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.guice.SimpleScope;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.google.inject.persist.UnitOfWork;
+
+import javax.inject.Named;
+
+/**
+ * JobWorkers lets a job hand work off to threads of its own.
+ *
+ * Pinsetter scoped objects only exist on the thread running the job, so each worker
+ * enters a job scope and unit of work of its own, and gets its own event sink with
+ * them. Once a worker is done, the job moves the events it queued onto the job's
+ * sink from the job's thread, so they are only sent if the job as a whole succeeds.
+ *
+ * Must be injected while the job's scope is active, typically by the job itself.
+ */
+public class JobWorkers {
+
+    private static final Key<EventSink> WORKER_SINK = Key.get(EventSink.class,
+        Names.named("PinsetterSink"));
+
+    private Injector injector;
+    private UnitOfWork unitOfWork;
+    private SimpleScope jobScope;
+    private EventSink jobSink;
+
+    @Inject
+    public JobWorkers(Injector injector, UnitOfWork unitOfWork,
+        @Named("PinsetterJobScope") SimpleScope jobScope, EventSink jobSink) {
+        this.injector = injector;
+        this.unitOfWork = unitOfWork;
+        this.jobScope = jobScope;
+        this.jobSink = jobSink;
+    }
+
+    /**
+     * Enters a new job scope and unit of work on the calling worker thread. Every
+     * call must be paired with a call to {@link #exit()} in a finally block.
+     */
+    public void enter() {
+        jobScope.enter();
+        try {
+            unitOfWork.begin();
+        }
+        catch (RuntimeException e) {
+            jobScope.exit();
+            throw e;
+        }
+    }
+
+    public void exit() {
+        try {
+            unitOfWork.end();
+        }
+        finally {
+            jobScope.exit();
+        }
+    }
+
+    /**
+     * Creates an instance in the calling worker's scope. Objects are not shared with
+     * the job or other workers unless they are bound as singletons. Workers must get
+     * anything running rules from here, a JsRunner is not safe to share between
+     * threads.
+     */
+    public <T> T getInstance(Class<T> type) {
+        return injector.getInstance(type);
+    }
+
+    /**
+     * @return the event sink of the calling worker, to be passed to
+     * {@link #collect(EventSink)} once the worker is done.
+     */
+    public EventSink getEventSink() {
+        return injector.getInstance(WORKER_SINK);
+    }
+
+    /**
+     * Queues the events of a finished worker on the job's own sink. Call from the
+     * job's thread.
+     */
+    public void collect(EventSink workerSink) {
+        workerSink.transferEvents(jobSink);
+    }
+}
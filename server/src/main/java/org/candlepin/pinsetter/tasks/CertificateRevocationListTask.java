@@ -16,8 +16,7 @@ package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.common.config.Configuration;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
-import org.candlepin.util.CrlFileUtil;
+import org.candlepin.controller.CrlPublisher;
 
 import com.google.inject.Inject;
 
@@ -30,20 +29,20 @@ import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 
 /**
  * CertificateRevocationListTask synchronizes the CRL with the DB, we add newly
  * revoked certificates, and remove expired certificates from the file. The job
- * then writes the CRL file.
+ * then writes the CRL file. When delta CRLs are enabled, newly revoked
+ * certificates are written to the delta CRL instead, and the complete CRL is
+ * only periodically regenerated.
  */
 public class CertificateRevocationListTask extends KingpinJob {
 
     public static final String DEFAULT_SCHEDULE = "0 0 12 * * ?";
 
     private Configuration config;
-    private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
+    private CrlPublisher crlPublisher;
 
     private static Logger log =
         LoggerFactory.getLogger(CertificateRevocationListTask.class);
@@ -51,15 +50,13 @@ public class CertificateRevocationListTask extends KingpinJob {
     /**
      * Instantiates a new certificate revocation list task.
      *
-     * @param crlFileUtil file util
      * @param conf the conf
+     * @param crlPublisher publisher of the CRL files
      */
     @Inject
-    public CertificateRevocationListTask(Configuration conf,
-        CrlFileUtil crlFileUtil, CrlGenerator crlGenerator) {
+    public CertificateRevocationListTask(Configuration conf, CrlPublisher crlPublisher) {
         this.config = conf;
-        this.crlFileUtil = crlFileUtil;
-        this.crlGenerator = crlGenerator;
+        this.crlPublisher = crlPublisher;
     }
 
     public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
@@ -71,10 +68,7 @@ public class CertificateRevocationListTask extends KingpinJob {
                 ConfigProperties.CRL_FILE_PATH, false);
         }
         try {
-            File crlFile = new File(filePath);
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            crlFileUtil.writeCRLFile(crlFile, crl);
+            crlPublisher.publish(new File(filePath));
         }
         catch (CRLException e) {
             log.error("CRLException:", e);
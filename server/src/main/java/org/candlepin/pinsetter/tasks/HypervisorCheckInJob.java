@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.quartz.JobBuilder.*;
+
+import org.candlepin.auth.Principal;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.pinsetter.core.PinsetterJobListener;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.resource.dto.HypervisorCheckInResult;
+import org.candlepin.resource.util.HypervisorBulkCheckIn;
+import org.candlepin.util.Util;
+
+import com.google.inject.Inject;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HypervisorCheckInJob
+ *
+ * Runs a bulk hypervisor check-in too large to be handled within the request, then
+ * reconciles the entitlements of the guests which moved to another host.
+ */
+public class HypervisorCheckInJob extends KingpinJob {
+    private static Logger log = LoggerFactory.getLogger(HypervisorCheckInJob.class);
+    public static final String HOST_GUEST_MAP = "host_guest_map";
+    public static final String CREATE_MISSING = "create_missing";
+
+    private OwnerCurator ownerCurator;
+    private HypervisorBulkCheckIn bulkCheckIn;
+
+    @Inject
+    public HypervisorCheckInJob(OwnerCurator ownerCurator,
+        HypervisorBulkCheckIn bulkCheckIn) {
+        this.ownerCurator = ownerCurator;
+        this.bulkCheckIn = bulkCheckIn;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
+        try {
+            JobDataMap map = ctx.getMergedJobDataMap();
+            String ownerKey = map.getString(JobStatus.TARGET_ID);
+            boolean createMissing = map.getBoolean(CREATE_MISSING);
+            Map<String, List<GuestId>> hostGuestMap =
+                (Map<String, List<GuestId>>) map.get(HOST_GUEST_MAP);
+            Principal principal = (Principal) map.get(PinsetterJobListener.PRINCIPAL_KEY);
+
+            Owner owner = ownerCurator.lookupByKey(ownerKey);
+            if (owner == null) {
+                ctx.setResult("Nothing to do. Owner no longer exists");
+                return;
+            }
+
+            HypervisorCheckInResult result = new HypervisorCheckInResult();
+            Map<String, List<String>> hostGuests = bulkCheckIn.checkIn(owner,
+                hostGuestMap, principal, createMissing, result);
+            int reconciled = HypervisorGuestReconcileJob.reconcile(bulkCheckIn,
+                hostGuests);
+            ctx.setResult(result + ", Reconciled guests: " + reconciled);
+        }
+        catch (Exception e) {
+            log.error("HypervisorCheckInJob encountered a problem.", e);
+            ctx.setResult(e.getMessage());
+            throw new JobExecutionException(e.getMessage(), e, false);
+        }
+    }
+
+    /**
+     * Splits a report into check-in jobs of at most the given number of guests, so
+     * no job carries the whole report in its job data. The guests of a host are
+     * never split, a host reporting more guests gets a job of its own.
+     *
+     * @param owner owner of the hosts
+     * @param hostGuestMap the reported guests, keyed by host
+     * @param createMissing whether to create missing hypervisors
+     * @param maxGuests maximum number of guests per job
+     * @return the jobs checking in the whole report
+     */
+    public static JobDetail[] forReport(Owner owner,
+        Map<String, List<GuestId>> hostGuestMap, boolean createMissing, int maxGuests) {
+        List<JobDetail> jobs = new ArrayList<JobDetail>();
+        Map<String, List<GuestId>> chunk = new HashMap<String, List<GuestId>>();
+        int guests = 0;
+        for (Map.Entry<String, List<GuestId>> entry : hostGuestMap.entrySet()) {
+            int hostGuests = entry.getValue() == null ? 0 : entry.getValue().size();
+            if (!chunk.isEmpty() && guests + hostGuests > maxGuests) {
+                jobs.add(forOwner(owner, chunk, createMissing));
+                chunk = new HashMap<String, List<GuestId>>();
+                guests = 0;
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+            guests += hostGuests;
+        }
+        if (!chunk.isEmpty()) {
+            jobs.add(forOwner(owner, chunk, createMissing));
+        }
+        return jobs.toArray(new JobDetail[jobs.size()]);
+    }
+
+    public static JobDetail forOwner(Owner owner, Map<String, List<GuestId>> hostGuestMap,
+        boolean createMissing) {
+        // Copied into serializable collections for the job store.
+        HashMap<String, ArrayList<GuestId>> data = new HashMap<String, ArrayList<GuestId>>();
+        for (Map.Entry<String, List<GuestId>> entry : hostGuestMap.entrySet()) {
+            data.put(entry.getKey(), entry.getValue() == null ?
+                new ArrayList<GuestId>() : new ArrayList<GuestId>(entry.getValue()));
+        }
+
+        JobDataMap map = new JobDataMap();
+        map.put(JobStatus.TARGET_TYPE, JobStatus.TargetType.OWNER);
+        map.put(JobStatus.TARGET_ID, owner.getKey());
+        map.put(CREATE_MISSING, createMissing);
+        map.put(HOST_GUEST_MAP, data);
+
+        return newJob(HypervisorCheckInJob.class)
+            .withIdentity("hypervisor_checkin_" + Util.generateUUID())
+            .usingJobData(map)
+            .build();
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.quartz.JobBuilder.*;
+
+import org.candlepin.model.Owner;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.resource.util.HypervisorBulkCheckIn;
+import org.candlepin.util.Util;
+
+import com.google.inject.Inject;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HypervisorGuestReconcileJob
+ *
+ * Revokes the entitlements of guests reported by a new host during a bulk hypervisor
+ * check-in, and auto-heals them afterwards. Each guest is handled in its own
+ * transaction.
+ */
+public class HypervisorGuestReconcileJob extends KingpinJob {
+    private static Logger log = LoggerFactory.getLogger(HypervisorGuestReconcileJob.class);
+    public static final String HOST_GUESTS = "host_guests";
+
+    private HypervisorBulkCheckIn bulkCheckIn;
+
+    @Inject
+    public HypervisorGuestReconcileJob(HypervisorBulkCheckIn bulkCheckIn) {
+        this.bulkCheckIn = bulkCheckIn;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
+        try {
+            JobDataMap map = ctx.getMergedJobDataMap();
+            Map<String, List<String>> hostGuests =
+                (Map<String, List<String>>) map.get(HOST_GUESTS);
+            int reconciled = reconcile(bulkCheckIn, hostGuests);
+            ctx.setResult("Reconciled entitlements of " + reconciled + " guests");
+        }
+        catch (Exception e) {
+            log.error("HypervisorGuestReconcileJob encountered a problem.", e);
+            ctx.setResult(e.getMessage());
+            throw new JobExecutionException(e.getMessage(), e, false);
+        }
+    }
+
+    /*
+     * Failures are logged and skipped, the remaining guests are still reconciled.
+     */
+    static int reconcile(HypervisorBulkCheckIn bulkCheckIn,
+        Map<String, List<String>> hostGuests) {
+        int reconciled = 0;
+        for (Map.Entry<String, List<String>> entry : hostGuests.entrySet()) {
+            for (String guestUuid : entry.getValue()) {
+                try {
+                    bulkCheckIn.reconcileGuest(entry.getKey(), guestUuid);
+                    reconciled++;
+                }
+                catch (Exception e) {
+                    log.error("Unable to reconcile entitlements of guest " + guestUuid +
+                        " with host " + entry.getKey(), e);
+                }
+            }
+        }
+        return reconciled;
+    }
+
+    public static JobDetail forGuests(Owner owner, Map<String, List<String>> hostGuests) {
+        // Copied into serializable collections for the job store.
+        HashMap<String, ArrayList<String>> data = new HashMap<String, ArrayList<String>>();
+        for (Map.Entry<String, List<String>> entry : hostGuests.entrySet()) {
+            data.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+
+        JobDataMap map = new JobDataMap();
+        map.put(JobStatus.TARGET_TYPE, JobStatus.TargetType.OWNER);
+        map.put(JobStatus.TARGET_ID, owner.getKey());
+        map.put(HOST_GUESTS, data);
+
+        return newJob(HypervisorGuestReconcileJob.class)
+            .withIdentity("hypervisor_guest_reconcile_" + Util.generateUUID())
+            .usingJobData(map)
+            .build();
+    }
+}
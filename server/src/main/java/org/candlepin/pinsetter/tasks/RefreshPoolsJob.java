@@ -17,8 +17,11 @@ package org.candlepin.pinsetter.tasks;
 import static org.quartz.JobBuilder.newJob;
 
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.Refresher;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.pinsetter.core.JobWorkers;
 import org.candlepin.pinsetter.core.RetryJobException;
 import org.candlepin.pinsetter.core.model.JobStatus;
 import org.candlepin.util.Util;
@@ -45,14 +48,19 @@ public class RefreshPoolsJob extends UniqueByOwnerJob {
     private static Logger log = LoggerFactory.getLogger(RefreshPoolsJob.class);
     private OwnerCurator ownerCurator;
     private PoolManager poolManager;
+    private JobCurator jobCurator;
+    private JobWorkers workers;
 
     public static final String LAZY_REGEN = "lazy_regen";
     protected static String prefix = "refresh_pools_";
 
     @Inject
-    public RefreshPoolsJob(OwnerCurator ownerCurator, PoolManager poolManager) {
+    public RefreshPoolsJob(OwnerCurator ownerCurator, PoolManager poolManager,
+        JobCurator jobCurator, JobWorkers workers) {
         this.ownerCurator = ownerCurator;
         this.poolManager = poolManager;
+        this.jobCurator = jobCurator;
+        this.workers = workers;
     }
 
     /**
@@ -75,7 +83,10 @@ public class RefreshPoolsJob extends UniqueByOwnerJob {
             }
 
             // Assume that we verified the request in the resource layer:
-            poolManager.getRefresher(lazy).setUnitOfWork(unitOfWork).add(owner).run();
+            Refresher refresher = poolManager.getRefresher(lazy).setWorkers(workers);
+            refresher.setProgressListener(
+                new JobProgressListener(context.getJobDetail().getKey().getName()));
+            refresher.add(owner).run();
             context.setResult("Pools refreshed for owner " + owner.getDisplayName());
         }
         catch (PersistenceException e) {
@@ -107,6 +118,24 @@ public class RefreshPoolsJob extends UniqueByOwnerJob {
         }
     }
 
+    /**
+     * Reports refresh progress through the result of the job's status, so it can be
+     * followed while the job runs.
+     */
+    private class JobProgressListener implements Refresher.ProgressListener {
+        private String jobId;
+
+        JobProgressListener(String jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void progress(Owner owner, int refreshed, int total) {
+            jobCurator.updateResult(jobId, "Refreshed " + refreshed + " of " + total +
+                " subscriptions for owner " + owner.getDisplayName());
+        }
+    }
+
     /**
      * Creates a {@link JobDetail} that runs this job for the given {@link Owner}.
      *
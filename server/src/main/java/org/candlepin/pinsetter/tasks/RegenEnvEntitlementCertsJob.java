@@ -16,6 +16,7 @@ package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.controller.PoolManager;
 import org.candlepin.model.Environment;
+import org.candlepin.model.JobCurator;
 
 import com.google.inject.Inject;
 
@@ -33,13 +34,15 @@ import java.util.Set;
 public class RegenEnvEntitlementCertsJob extends KingpinJob {
 
     private PoolManager poolManager;
+    private JobCurator jobCurator;
     public static final String ENV = "env_id";
     public static final String CONTENT = "content_ids";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenEnvEntitlementCertsJob(PoolManager poolManager) {
+    public RegenEnvEntitlementCertsJob(PoolManager poolManager, JobCurator jobCurator) {
         this.poolManager = poolManager;
+        this.jobCurator = jobCurator;
     }
 
     @Override
@@ -50,6 +53,7 @@ public class RegenEnvEntitlementCertsJob extends KingpinJob {
             arg0.getJobDetail().getJobDataMap().get(CONTENT);
         Boolean lazy = arg0.getMergedJobDataMap().getBoolean(LAZY_REGEN);
 
-        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy);
+        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy,
+            new JobCancellationMonitor(jobCurator, arg0.getJobDetail().getKey().getName()));
     }
 }
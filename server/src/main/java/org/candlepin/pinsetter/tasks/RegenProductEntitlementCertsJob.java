@@ -15,6 +15,7 @@
 package org.candlepin.pinsetter.tasks;
 
 import org.candlepin.controller.PoolManager;
+import org.candlepin.model.JobCurator;
 
 import com.google.inject.Inject;
 
@@ -27,12 +28,15 @@ import org.quartz.JobExecutionException;
 public class RegenProductEntitlementCertsJob extends KingpinJob {
 
     private PoolManager poolManager;
+    private JobCurator jobCurator;
     public static final String PROD_ID = "product_id";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenProductEntitlementCertsJob(PoolManager poolManager) {
+    public RegenProductEntitlementCertsJob(PoolManager poolManager,
+        JobCurator jobCurator) {
         this.poolManager = poolManager;
+        this.jobCurator = jobCurator;
     }
 
     @Override
@@ -40,6 +44,7 @@ public class RegenProductEntitlementCertsJob extends KingpinJob {
         String prodId = arg0.getJobDetail().getJobDataMap().getString(
             PROD_ID);
         boolean lazy = arg0.getJobDetail().getJobDataMap().getBoolean(LAZY_REGEN);
-        this.poolManager.regenerateCertificatesOf(prodId, lazy);
+        this.poolManager.regenerateCertificatesOf(prodId, lazy,
+            new JobCancellationMonitor(jobCurator, arg0.getJobDetail().getKey().getName()));
     }
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import org.candlepin.controller.DirtyEntitlementRegenerator;
+import org.candlepin.pinsetter.core.JobWorkers;
+
+import com.google.inject.Inject;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RegenerateDirtyEntitlementsJob: Periodically regenerates the entitlement
+ * certificates which were marked dirty by lazy regeneration, so consumers do not
+ * have to wait for them to be signed on their next certificate fetch.
+ */
+@DisallowConcurrentExecution
+public class RegenerateDirtyEntitlementsJob extends KingpinJob {
+
+    // Every five minutes:
+    public static final String DEFAULT_SCHEDULE = "0 0/5 * * * ?";
+
+    private static Logger log = LoggerFactory.getLogger(
+        RegenerateDirtyEntitlementsJob.class);
+
+    private DirtyEntitlementRegenerator regenerator;
+    private JobWorkers workers;
+
+    @Inject
+    public RegenerateDirtyEntitlementsJob(DirtyEntitlementRegenerator regenerator,
+        JobWorkers workers) {
+        this.regenerator = regenerator;
+        this.workers = workers;
+    }
+
+    @Override
+    public void toExecute(JobExecutionContext ctx) throws JobExecutionException {
+        log.info("Executing RegenerateDirtyEntitlementsJob");
+        int count = regenerator.regenerate(workers);
+        if (ctx != null) {
+            ctx.setResult("Regenerated " + count + " dirty entitlements (" +
+                String.format("%.1f", regenerator.getLastRunThroughput()) + "/s), " +
+                regenerator.getFailingCount() + " failing, " +
+                regenerator.getFailedCount() + " failed since startup");
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.util.Util;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeyPairPool
+ *
+ * Holds RSA key pairs generated ahead of time for consumers, so registering a
+ * consumer or generating its first certificate does not have to wait for a key
+ * pair to be generated. Once started, a low priority thread keeps the pool filled
+ * up to its capacity. When the pool runs dry, key pairs are generated on the
+ * caller's thread again and the exhaustion is counted.
+ *
+ * If a file is configured, the key pairs left in the pool are written to it on
+ * shutdown and read back on the next start. The file is removed once read, so a
+ * key pair is never handed out twice. A capacity of zero disables the pool.
+ */
+@Singleton
+public class KeyPairPool {
+
+    private static Logger log = LoggerFactory.getLogger(KeyPairPool.class);
+    private static final long STOP_TIMEOUT = 10000L;
+
+    private final PKIUtility pki;
+    private final int capacity;
+    private final String file;
+    private final BlockingQueue<KeyPair> pairs;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private Thread refiller;
+
+    @Inject
+    public KeyPairPool(PKIUtility pki, Configuration config) {
+        this(pki, config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE),
+            config.getString(ConfigProperties.KEYPAIR_POOL_FILE));
+    }
+
+    /**
+     * @param pki generates the key pairs
+     * @param capacity maximum number of pre-generated key pairs, 0 disables the pool
+     * @param file where left over key pairs are kept across restarts, may be empty
+     */
+    public KeyPairPool(PKIUtility pki, int capacity, String file) {
+        this.pki = pki;
+        this.capacity = capacity;
+        this.file = file == null || file.trim().length() == 0 ? null : file.trim();
+        this.pairs = new LinkedBlockingQueue<KeyPair>(Math.max(capacity, 1));
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Loads the key pairs saved by the last shutdown and starts filling the pool in
+     * the background.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || refiller != null) {
+            return;
+        }
+
+        load();
+        refiller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refill();
+            }
+        }, "KeyPairPool");
+        refiller.setDaemon(true);
+        refiller.setPriority(Thread.MIN_PRIORITY);
+        refiller.start();
+        log.info("Pre-generating up to " + capacity + " consumer key pairs.");
+    }
+
+    /**
+     * Stops filling the pool, saving the key pairs left in it if a file is
+     * configured.
+     */
+    public synchronized void stop() {
+        if (refiller == null) {
+            return;
+        }
+
+        refiller.interrupt();
+        try {
+            refiller.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        refiller = null;
+        save();
+        log.info("Served " + served.get() + " pre-generated key pairs, pool was empty " +
+            exhausted.get() + " times.");
+    }
+
+    /**
+     * @return a pre-generated key pair, or a newly generated one if the pool is empty
+     * @throws NoSuchAlgorithmException if RSA key pairs cannot be generated
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair pair = pairs.poll();
+        if (pair != null) {
+            served.incrementAndGet();
+            return pair;
+        }
+
+        if (isEnabled()) {
+            exhausted.incrementAndGet();
+            log.debug("Key pair pool exhausted, generating key pair.");
+        }
+        return pki.generateNewKeyPair();
+    }
+
+    private void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Blocks while the pool is full:
+                pairs.put(pki.generateNewKeyPair());
+            }
+        }
+        catch (InterruptedException e) {
+            // Stopped, nothing left to do.
+        }
+        catch (NoSuchAlgorithmException e) {
+            log.error("Unable to pre-generate key pairs.", e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !new File(file).exists()) {
+            return;
+        }
+
+        int loaded = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null && pairs.remainingCapacity() > 0) {
+                String[] keys = line.trim().split(" ");
+                if (keys.length == 2) {
+                    pairs.offer(pki.decodeKeys(decode(keys[0]), decode(keys[1])));
+                    loaded++;
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Unable to read pre-generated key pairs from " + file, e);
+        }
+        catch (GeneralSecurityException e) {
+            log.warn("Unable to read pre-generated key pairs from " + file, e);
+        }
+        finally {
+            Util.closeSafely(reader, file);
+            // Never hand out a key pair twice, even if the next shutdown is unclean:
+            if (!new File(file).delete()) {
+                log.warn("Unable to remove " + file + ", its key pairs will be reused.");
+            }
+        }
+        log.info("Loaded " + loaded + " pre-generated key pairs from " + file);
+    }
+
+    private void save() {
+        List<KeyPair> remaining = new ArrayList<KeyPair>();
+        pairs.drainTo(remaining);
+        if (file == null || remaining.isEmpty()) {
+            return;
+        }
+
+        File target = new File(file);
+        File temp = null;
+        PrintWriter writer = null;
+        try {
+            // The file holds private keys, only we may read it. Narrow the permissions
+            // while the temporary file is still empty, and only then write the keys:
+            temp = File.createTempFile(target.getName() + ".", ".tmp",
+                target.getAbsoluteFile().getParentFile());
+            if (!(temp.setReadable(false, false) && temp.setWritable(false, false) &&
+                temp.setReadable(true, true) && temp.setWritable(true, true))) {
+                throw new IOException("Unable to restrict permissions of " + temp);
+            }
+
+            writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), "UTF-8"));
+            for (KeyPair pair : remaining) {
+                writer.println(encode(pair.getPrivate().getEncoded()) + " " +
+                    encode(pair.getPublic().getEncoded()));
+            }
+            writer.close();
+            if (writer.checkError()) {
+                throw new IOException("Unable to write " + temp);
+            }
+
+            if (!temp.renameTo(target)) {
+                throw new IOException("Unable to rename " + temp + " to " + target);
+            }
+            temp = null;
+            log.info("Saved " + remaining.size() + " pre-generated key pairs to " + file);
+        }
+        catch (IOException e) {
+            log.warn("Unable to save pre-generated key pairs to " + file, e);
+        }
+        finally {
+            Util.closeSafely(writer, file);
+            if (temp != null && !temp.delete()) {
+                log.warn("Unable to remove " + temp);
+            }
+        }
+    }
+
+    private static String encode(byte[] key) throws IOException {
+        return new String(Base64.encodeBase64(key), "US-ASCII");
+    }
+
+    private static byte[] decode(String key) throws IOException {
+        return Base64.decodeBase64(key.getBytes("US-ASCII"));
+    }
+
+    public int size() {
+        return pairs.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getServedCount() {
+        return served.get();
+    }
+
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+}
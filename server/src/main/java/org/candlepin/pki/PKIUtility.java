@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.Key;
@@ -41,7 +42,9 @@ import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -77,6 +80,34 @@ public abstract class PKIUtility {
     public abstract X509CRL createX509CRL(List<X509CRLEntryWrapper> entries,
         BigInteger crlNumber);
 
+    /**
+     * Generate a delta CRL (RFC 5280 section 5.2.4) listing the entries revoked
+     * since the given base CRL was issued.
+     *
+     * @param entries the entries revoked since the base CRL
+     * @param crlNumber the number of the delta CRL
+     * @param baseCrlNumber the number of the complete CRL the delta applies to
+     * @return the x509 delta CRL
+     */
+    public abstract X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber);
+
+    /**
+     * Generate a CRL and write it PEM encoded to the given stream, without
+     * holding the entries or the encoded CRL in memory. Suited for CRLs too
+     * large to create with {@link #createX509CRL(List, BigInteger)}.
+     *
+     * @param entries the entries, consumed exactly once
+     * @param crlNumber the number of the CRL
+     * @param baseCrlNumber the number of the base CRL when writing a delta CRL,
+     * null otherwise
+     * @param out the stream to write to, flushed but not closed
+     * @throws IOException if there is i/o problem
+     */
+    public abstract void writeX509CRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber, OutputStream out)
+        throws IOException;
+
     public KeyPair decodeKeys(byte[] privKeyBits, byte[] pubKeyBits)
         throws InvalidKeySpecException, NoSuchAlgorithmException {
 
@@ -110,6 +141,16 @@ public abstract class PKIUtility {
 
     public abstract byte[] getPemEncoded(X509CRL crl) throws IOException;
 
+    /**
+     * Write the PEM encoding of the CRL to the given stream, without building
+     * the encoded result in memory first. The stream is flushed, not closed.
+     * @param crl the CRL to encode
+     * @param out the stream to write to
+     * @throws IOException if there is i/o problem
+     */
+    public abstract void writePemEncoded(X509CRL crl, OutputStream out)
+        throws IOException;
+
     public static X509Certificate createCert(byte[] certData) {
         try {
             CertificateFactory cf = CertificateFactory.getInstance("X509");
@@ -124,8 +165,7 @@ public abstract class PKIUtility {
 
     public byte[] getSHA256WithRSAHash(InputStream input) {
         try {
-            Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(reader.getCaKey());
+            Signature signature = getSHA256WithRSASigner();
 
             updateSignature(input, signature);
             return signature.sign();
@@ -135,6 +175,24 @@ public abstract class PKIUtility {
         }
     }
 
+    /**
+     * Creates a signature ready to sign with the CA key, for data which is produced
+     * piece by piece rather than read from a stream.
+     * See {@link SignatureOutputStream}.
+     *
+     * @return a SHA256withRSA signature initialized for signing
+     */
+    public Signature getSHA256WithRSASigner() {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(reader.getCaKey());
+            return signature;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public boolean verifySHA256WithRSAHashAgainstCACerts(
         File input, byte[] signedHash) throws CertificateException, IOException {
         log.debug("Verify against: " + reader.getCACert().getSerialNumber());
@@ -152,6 +210,54 @@ public abstract class PKIUtility {
         return false;
     }
 
+    /**
+     * Verifies the signature against the CA certificate and the upstream CA
+     * certificates, reading the signed data only once.
+     *
+     * @param input the signed data, not closed
+     * @param signedHash the signature
+     * @return true if any of the certificates verifies the signature
+     */
+    public boolean verifySHA256WithRSAHashAgainstCACerts(
+        InputStream input, byte[] signedHash) throws CertificateException, IOException {
+        List<X509Certificate> certs = new ArrayList<X509Certificate>();
+        certs.add(reader.getCACert());
+        certs.addAll(reader.getUpstreamCACerts());
+
+        try {
+            List<Signature> signatures = new ArrayList<Signature>();
+            for (X509Certificate cert : certs) {
+                Signature signature = Signature.getInstance("SHA256withRSA");
+                signature.initVerify(cert);
+                signatures.add(signature);
+            }
+
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = input.read(buf)) != -1) {
+                for (Signature signature : signatures) {
+                    signature.update(buf, 0, len);
+                }
+            }
+
+            for (int i = 0; i < certs.size(); i++) {
+                log.debug("Verify against: " + certs.get(i).getSerialNumber());
+                try {
+                    if (signatures.get(i).verify(signedHash)) {
+                        return true;
+                    }
+                }
+                catch (SignatureException se) {
+                    // malformed signature for this certificate, try the next one
+                }
+            }
+            return false;
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public boolean verifySHA256WithRSAHash(
             InputStream input, byte[] signedHash, Certificate certificate) {
         try {
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * SignatureOutputStream
+ *
+ * Passes everything written on to the underlying stream, updating a signature with
+ * it along the way, so data can be signed while it is being written out.
+ */
+public class SignatureOutputStream extends FilterOutputStream {
+
+    private Signature signature;
+
+    /**
+     * @param out the stream to write to
+     * @param signature a signature initialized for signing
+     */
+    public SignatureOutputStream(OutputStream out, Signature signature) {
+        super(out);
+        this.signature = signature;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            signature.update((byte) b);
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            signature.update(b, off, len);
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+        out.write(b, off, len);
+    }
+
+    /**
+     * @return the signature of everything written so far
+     * @throws IOException if the signature could not be computed
+     */
+    public byte[] sign() throws IOException {
+        try {
+            return signature.sign();
+        }
+        catch (SignatureException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SigningExecutor
+ *
+ * The threads certificates are signed on during mass regeneration. They are shared
+ * by all regenerations, so concurrent jobs do not each start threads of their own,
+ * started on first use and stopped when candlepin shuts down.
+ */
+@Singleton
+public class SigningExecutor {
+
+    private final int threads;
+    private ExecutorService executor;
+
+    @Inject
+    public SigningExecutor(Configuration config) {
+        this(config.getInt(ConfigProperties.ENTITLEMENT_CERT_THREADS));
+    }
+
+    /**
+     * @param threads number of signing threads, 0 or less for one thread per
+     * available processor
+     */
+    public SigningExecutor(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public synchronized <T> Future<T> submit(Callable<T> task) {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new SignerThreadFactory());
+        }
+        return executor.submit(task);
+    }
+
+    /**
+     * Stops the signing threads, interrupting any certificate being signed. They are
+     * started again if more work is submitted.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Names the threads, and keeps them from holding up the JVM on shutdown.
+     */
+    private static class SignerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SigningExecutor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
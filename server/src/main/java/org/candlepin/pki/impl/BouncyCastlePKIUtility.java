@@ -46,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -54,6 +55,7 @@ import java.security.KeyPair;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -172,6 +174,31 @@ public class BouncyCastlePKIUtility extends PKIUtility {
 
     @Override
     public X509CRL createX509CRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber) {
+        return createX509CRL(entries, crlNumber, null);
+    }
+
+    @Override
+    public X509CRL createX509DeltaCRL(List<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber) {
+        return createX509CRL(entries, crlNumber, baseCrlNumber);
+    }
+
+    @Override
+    public void writeX509CRL(Iterator<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        BigInteger baseCrlNumber, OutputStream out) throws IOException {
+
+        try {
+            X509CRLStreamWriter writer = new X509CRLStreamWriter(reader.getCACert(),
+                reader.getCaKey(), SIGNATURE_ALGO);
+            writer.write(entries, crlNumber, baseCrlNumber, out);
+        }
+        catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private X509CRL createX509CRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        BigInteger baseCrlNumber) {
 
         try {
             X509Certificate caCert = reader.getCACert();
@@ -190,6 +217,11 @@ public class BouncyCastlePKIUtility extends PKIUtility {
                 false, new AuthorityKeyIdentifierStructure(caCert));
             generator.addExtension(X509Extensions.CRLNumber, false,
                 new CRLNumber(crlNumber));
+            if (baseCrlNumber != null) {
+                // RFC 5280 requires the delta CRL indicator to be critical
+                generator.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                    new CRLNumber(baseCrlNumber));
+            }
             return generator.generate(reader.getCaKey());
         }
         catch (Exception e) {
@@ -221,6 +253,13 @@ public class BouncyCastlePKIUtility extends PKIUtility {
         return getPemEncoded((Object) crl);
     }
 
+    @Override
+    public void writePemEncoded(X509CRL crl, OutputStream out) throws IOException {
+        PEMWriter writer = new PEMWriter(new OutputStreamWriter(out));
+        writer.writeObject(crl);
+        writer.flush();
+    }
+
     @Override
     public String decodeDERValue(byte[] value) {
         ASN1InputStream vis = null;
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki.impl;
+
+import org.candlepin.pki.X509CRLEntryWrapper;
+import org.candlepin.util.Util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.asn1.x509.X509ExtensionsGenerator;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * X509CRLStreamWriter
+ *
+ * Writes a signed, PEM encoded X.509 CRL without holding its entries in memory.
+ * DER needs the length of the revoked certificates sequence before its content,
+ * so the encoded entries are first spooled to a temporary file, and then fed
+ * through the signature and the PEM encoder in a second pass over that file.
+ * Memory use does not depend on the number of entries.
+ *
+ * The encoding matches the CRLs created by {@link BouncyCastlePKIUtility}, which
+ * is the only user of this class.
+ */
+class X509CRLStreamWriter {
+    private static Logger log = LoggerFactory.getLogger(X509CRLStreamWriter.class);
+
+    private static final int SEQUENCE = 0x30;
+    private static final int BUFFER_SIZE = 8192;
+
+    // Object identifiers of the RSA signature algorithms, by their JCA names:
+    private static final Map<String, DERObjectIdentifier> SIGNATURE_OIDS =
+        new HashMap<String, DERObjectIdentifier>();
+
+    static {
+        SIGNATURE_OIDS.put("MD5WITHRSA", PKCSObjectIdentifiers.md5WithRSAEncryption);
+        SIGNATURE_OIDS.put("SHA1WITHRSA", PKCSObjectIdentifiers.sha1WithRSAEncryption);
+        SIGNATURE_OIDS.put("SHA256WITHRSA", PKCSObjectIdentifiers.sha256WithRSAEncryption);
+        SIGNATURE_OIDS.put("SHA384WITHRSA", PKCSObjectIdentifiers.sha384WithRSAEncryption);
+        SIGNATURE_OIDS.put("SHA512WITHRSA", PKCSObjectIdentifiers.sha512WithRSAEncryption);
+    }
+
+    private final X509Certificate caCert;
+    private final PrivateKey caKey;
+    private final String signatureAlgorithm;
+    private final AlgorithmIdentifier algorithmIdentifier;
+    private final byte[] reasonExtension;
+
+    /**
+     * @param caCert the certificate of the CA issuing the CRL
+     * @param caKey the key to sign the CRL with
+     * @param signatureAlgorithm the JCA name of an RSA signature algorithm, such as
+     * SHA256WITHRSA
+     * @throws IllegalArgumentException if the signature algorithm is not supported
+     */
+    X509CRLStreamWriter(X509Certificate caCert, PrivateKey caKey,
+        String signatureAlgorithm) {
+        DERObjectIdentifier oid = SIGNATURE_OIDS.get(
+            signatureAlgorithm.toUpperCase(Locale.ENGLISH));
+        if (oid == null) {
+            throw new IllegalArgumentException(
+                "Unsupported CRL signature algorithm: " + signatureAlgorithm);
+        }
+
+        this.caCert = caCert;
+        this.caKey = caKey;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.algorithmIdentifier = new AlgorithmIdentifier(oid, DERNull.INSTANCE);
+
+        X509ExtensionsGenerator extensions = new X509ExtensionsGenerator();
+        extensions.addExtension(X509Extensions.ReasonCode, false,
+            new CRLReason(CRLReason.privilegeWithdrawn));
+        this.reasonExtension = extensions.generate().getDEREncoded();
+    }
+
+    /**
+     * Writes the CRL to the given stream. The stream is flushed, not closed.
+     *
+     * @param entries the revoked entries, consumed exactly once
+     * @param crlNumber the number of the CRL
+     * @param baseCrlNumber the number of the base CRL for a delta CRL, or null
+     * @param out the stream to write the PEM encoded CRL to
+     * @throws IOException if the CRL can not be written
+     * @throws GeneralSecurityException if the CRL can not be signed
+     */
+    void write(Iterator<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        BigInteger baseCrlNumber, OutputStream out)
+        throws IOException, GeneralSecurityException {
+
+        File spool = File.createTempFile("crl-entries", ".der");
+        try {
+            long entriesLength = spoolEntries(entries, spool);
+
+            byte[] header = encodeHeader();
+            byte[] revokedHeader = entriesLength > 0 ?
+                encodeTagAndLength(SEQUENCE, entriesLength) : new byte[0];
+            byte[] extensions = encodeExtensions(crlNumber, baseCrlNumber);
+            long tbsLength = header.length + revokedHeader.length + entriesLength +
+                extensions.length;
+            byte[] tbsHeader = encodeTagAndLength(SEQUENCE, tbsLength);
+
+            Signature signature = Signature.getInstance(signatureAlgorithm);
+            signature.initSign(caKey);
+            signature.update(tbsHeader);
+            signature.update(header);
+            signature.update(revokedHeader);
+            InputStream in = new BufferedInputStream(new FileInputStream(spool));
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    signature.update(buffer, 0, read);
+                }
+            }
+            finally {
+                in.close();
+            }
+            signature.update(extensions);
+
+            byte[] algorithm = algorithmIdentifier.getDEREncoded();
+            byte[] signatureBits = new DERBitString(signature.sign()).getDEREncoded();
+
+            PemOutputStream pem = new PemOutputStream(out, "X509 CRL");
+            pem.write(encodeTagAndLength(SEQUENCE, tbsHeader.length + tbsLength +
+                algorithm.length + signatureBits.length));
+            pem.write(tbsHeader);
+            pem.write(header);
+            pem.write(revokedHeader);
+            in = new BufferedInputStream(new FileInputStream(spool));
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    pem.write(buffer, 0, read);
+                }
+            }
+            finally {
+                in.close();
+            }
+            pem.write(extensions);
+            pem.write(algorithm);
+            pem.write(signatureBits);
+            pem.finish();
+        }
+        finally {
+            if (!spool.delete()) {
+                log.warn("Unable to delete CRL spool file: {}", spool.getAbsolutePath());
+            }
+        }
+    }
+
+    private long spoolEntries(Iterator<X509CRLEntryWrapper> entries, File spool)
+        throws IOException {
+        long length = 0;
+        long count = 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(spool),
+            BUFFER_SIZE);
+        try {
+            while (entries.hasNext()) {
+                X509CRLEntryWrapper entry = entries.next();
+                byte[] serial = new DERInteger(entry.getSerialNumber()).getDEREncoded();
+                byte[] date = new Time(entry.getRevocationDate()).getDEREncoded();
+                byte[] prefix = encodeTagAndLength(SEQUENCE,
+                    serial.length + date.length + reasonExtension.length);
+
+                out.write(prefix);
+                out.write(serial);
+                out.write(date);
+                out.write(reasonExtension);
+                length += prefix.length + serial.length + date.length +
+                    reasonExtension.length;
+                count++;
+            }
+        }
+        finally {
+            out.close();
+        }
+        log.debug("Spooled {} CRL entries.", count);
+        return length;
+    }
+
+    /*
+     * The fields of the TBSCertList preceding the revoked certificates: version,
+     * signature algorithm, issuer, thisUpdate and nextUpdate.
+     */
+    private byte[] encodeHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(new DERInteger(1).getDEREncoded());
+        header.write(algorithmIdentifier.getDEREncoded());
+        header.write(caCert.getIssuerX500Principal().getEncoded());
+        header.write(new Time(new Date()).getDEREncoded());
+        header.write(new Time(Util.tomorrow()).getDEREncoded());
+        return header.toByteArray();
+    }
+
+    private byte[] encodeExtensions(BigInteger crlNumber, BigInteger baseCrlNumber)
+        throws GeneralSecurityException {
+        X509ExtensionsGenerator extensions = new X509ExtensionsGenerator();
+        extensions.addExtension(X509Extensions.AuthorityKeyIdentifier, false,
+            new AuthorityKeyIdentifierStructure(caCert));
+        extensions.addExtension(X509Extensions.CRLNumber, false,
+            new CRLNumber(crlNumber));
+        if (baseCrlNumber != null) {
+            extensions.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                new CRLNumber(baseCrlNumber));
+        }
+        return new DERTaggedObject(true, 0, extensions.generate()).getDEREncoded();
+    }
+
+    /*
+     * DER tag and definite length octets for content of the given length.
+     */
+    static byte[] encodeTagAndLength(int tag, long length) {
+        if (length < 0x80) {
+            return new byte[] {(byte) tag, (byte) length};
+        }
+
+        int size = 0;
+        for (long remaining = length; remaining > 0; remaining >>>= 8) {
+            size++;
+        }
+        byte[] encoded = new byte[size + 2];
+        encoded[0] = (byte) tag;
+        encoded[1] = (byte) (0x80 | size);
+        for (int i = encoded.length - 1; i > 1; i--) {
+            encoded[i] = (byte) length;
+            length >>>= 8;
+        }
+        return encoded;
+    }
+
+    /**
+     * Base64 encodes everything written to it into 64 character lines between
+     * PEM armor, like the PEMWriter does.
+     */
+    private static class PemOutputStream extends OutputStream {
+        // 48 bytes encode to exactly one line of 64 characters
+        private static final int LINE_BYTES = 48;
+
+        private final OutputStream out;
+        private final String type;
+        private final byte[] line = new byte[LINE_BYTES];
+        private int position;
+
+        PemOutputStream(OutputStream out, String type) throws IOException {
+            this.out = out;
+            this.type = type;
+            writeLine("-----BEGIN " + type + "-----");
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            line[position++] = (byte) b;
+            if (position == LINE_BYTES) {
+                flushLine();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, LINE_BYTES - position);
+                System.arraycopy(b, off, line, position, chunk);
+                position += chunk;
+                off += chunk;
+                len -= chunk;
+                if (position == LINE_BYTES) {
+                    flushLine();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (position > 0) {
+                flushLine();
+            }
+            writeLine("-----END " + type + "-----");
+            out.flush();
+        }
+
+        private void flushLine() throws IOException {
+            byte[] chunk = line;
+            if (position < LINE_BYTES) {
+                chunk = new byte[position];
+                System.arraycopy(line, 0, chunk, 0, position);
+            }
+            out.write(Base64.encodeBase64(chunk));
+            out.write('\n');
+            position = 0;
+        }
+
+        private void writeLine(String text) throws IOException {
+            out.write(text.getBytes("US-ASCII"));
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JsNamespaceCache
+ *
+ * Holds the javascript namespace objects (Entitlement, Compliance, Autobind, etc.)
+ * resolved for a single compiled version of the rules. The namespace factory
+ * functions only return objects living in the sealed global scope, so the result
+ * can be shared by every {@link JsRunner} created from the same compilation.
+ *
+ * A new cache is created by the {@link JsRunnerProvider} every time the rules are
+ * recompiled, which discards all namespaces resolved against the old rules.
+ */
+public class JsNamespaceCache {
+
+    private final ConcurrentMap<String, Object> namespaces =
+        new ConcurrentHashMap<String, Object>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Date rulesTimestamp;
+
+    public JsNamespaceCache() {
+        this(null);
+    }
+
+    /**
+     * @param rulesTimestamp the timestamp of the rules the namespaces are resolved from
+     */
+    public JsNamespaceCache(Date rulesTimestamp) {
+        this.rulesTimestamp = rulesTimestamp;
+    }
+
+    /**
+     * @param namespace the name of the namespace factory function
+     * @return the resolved namespace object, or null if it has not been resolved yet
+     */
+    public Object get(String namespace) {
+        Object resolved = namespaces.get(namespace);
+        if (resolved == null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return resolved;
+    }
+
+    public void put(String namespace, Object resolved) {
+        if (resolved != null) {
+            namespaces.putIfAbsent(namespace, resolved);
+        }
+    }
+
+    /**
+     * @return the timestamp of the compiled rules, or null if unknown
+     */
+    public Date getRulesTimestamp() {
+        return rulesTimestamp;
+    }
+
+    public int size() {
+        return namespaces.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
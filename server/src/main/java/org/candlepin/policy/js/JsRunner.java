@@ -24,6 +24,8 @@ import org.mozilla.javascript.Wrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Date;
+
 /**
  * JsRunner - Responsible for running the javascript rules methods in all namespaces.
  * Used by the various "Rules" classes.
@@ -34,11 +36,17 @@ public class JsRunner {
     private Object rulesNameSpace;
     private String namespace;
     private Scriptable scope;
+    private JsNamespaceCache namespaceCache;
 
     private boolean initialized = false;
 
     public JsRunner(Scriptable scope) {
+        this(scope, new JsNamespaceCache());
+    }
+
+    public JsRunner(Scriptable scope, JsNamespaceCache namespaceCache) {
         this.scope = scope;
+        this.namespaceCache = namespaceCache;
     }
 
     /**
@@ -51,12 +59,21 @@ public class JsRunner {
         this.namespace = namespace;
 
         if (!initialized) {
+            // Namespaces resolved against the same compiled rules are shared,
+            // so skip running the factory function when we can.
+            Object cached = namespaceCache.get(namespace);
+            if (cached != null) {
+                this.rulesNameSpace = cached;
+                this.initialized = true;
+                return;
+            }
 
             Context context = Context.enter();
             try {
                 Object func = ScriptableObject.getProperty(scope, namespace);
                 this.rulesNameSpace = unwrapReturnValue(((Function) func).call(context,
                     scope, scope, Context.emptyArgs));
+                namespaceCache.put(namespace, this.rulesNameSpace);
 
                 this.initialized = true;
             }
@@ -75,6 +92,13 @@ public class JsRunner {
         init(namespace);
     }
 
+    /**
+     * @return the timestamp of the rules this runner executes, or null if unknown
+     */
+    public Date getRulesTimestamp() {
+        return namespaceCache.getRulesTimestamp();
+    }
+
     Object unwrapReturnValue(Object result) {
         if (result instanceof Wrapper) {
             result = ((Wrapper) result).unwrap();
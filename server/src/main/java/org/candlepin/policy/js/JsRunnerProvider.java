@@ -16,6 +16,8 @@ package org.candlepin.policy.js;
 
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SystemPrincipal;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.RulesCurator;
 
 import com.google.inject.Inject;
@@ -31,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -47,9 +50,15 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     private Script script;
     private Scriptable scope;
     private volatile Date updated;
-    // Use this lock to access script, scope and updated
+    private JsNamespaceCache namespaceCache = new JsNamespaceCache();
+    // Use this lock to access script, scope, namespaceCache and updated
     private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
 
+    // How long (in ms) we trust the last rules timestamp read from the database
+    private long versionCheckInterval;
+    private volatile long lastVersionCheck;
+    private AtomicLong avoidedVersionChecks = new AtomicLong();
+
     /**
      * DynamicScopeContextFactory - replace the standard rhino context factory with one that
      * enables dynamic scopes. Dynamic scopes allow us to define a global var (ie pools) in
@@ -71,8 +80,23 @@ public class JsRunnerProvider implements Provider<JsRunner> {
     }
 
     @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Configuration config) {
+        this(rulesCurator,
+            config.getLong(ConfigProperties.RULES_VERSION_CHECK_INTERVAL) * 1000L);
+    }
+
+    /**
+     * Creates a provider which checks the rules timestamp on every call to get().
+     *
+     * @param rulesCurator
+     */
     public JsRunnerProvider(RulesCurator rulesCurator) {
+        this(rulesCurator, 0L);
+    }
+
+    JsRunnerProvider(RulesCurator rulesCurator, long versionCheckInterval) {
         this.rulesCurator = rulesCurator;
+        this.versionCheckInterval = versionCheckInterval;
 
         log.debug("Compiling rules for initial load");
         this.rulesCurator.updateDbRules();
@@ -96,6 +120,7 @@ public class JsRunnerProvider implements Provider<JsRunner> {
             // Check to see if we need to recompile. we do this inside the write lock
             // just to avoid race conditions where we might double compile
             Date newUpdated = rulesCurator.getUpdated();
+            this.lastVersionCheck = System.currentTimeMillis();
             if (newUpdated.equals(this.updated)) {
                 return;
             }
@@ -111,6 +136,13 @@ public class JsRunnerProvider implements Provider<JsRunner> {
                 script.exec(context, scope);
                 ((ScriptableObject) scope).sealObject();
                 this.updated = newUpdated;
+
+                // Namespaces resolved against the old rules must not leak into
+                // runners created from the new ones.
+                log.debug("Discarding rules namespace cache: " + namespaceCache.size() +
+                    " namespaces, " + namespaceCache.getHits() + " hits, " +
+                    namespaceCache.getMisses() + " misses");
+                this.namespaceCache = new JsNamespaceCache(newUpdated);
             }
             finally {
                 Context.exit();
@@ -128,10 +160,18 @@ public class JsRunnerProvider implements Provider<JsRunner> {
          * based on the preinitialized global one (which contains our js rules).
          */
         // Avoid a write lock if we can
-        if (!rulesCurator.getUpdated().equals(this.updated)) {
-            compileRules(this.rulesCurator);
+        if (isVersionCheckDue()) {
+            Date current = rulesCurator.getUpdated();
+            this.lastVersionCheck = System.currentTimeMillis();
+            if (!current.equals(this.updated)) {
+                compileRules(this.rulesCurator);
+            }
+        }
+        else {
+            avoidedVersionChecks.incrementAndGet();
         }
         Scriptable rulesScope;
+        JsNamespaceCache namespaces;
         scriptLock.readLock().lock();
         try {
             Context context = Context.enter();
@@ -139,12 +179,57 @@ public class JsRunnerProvider implements Provider<JsRunner> {
             rulesScope.setPrototype(scope);
             rulesScope.setParentScope(null);
             Context.exit();
+            namespaces = this.namespaceCache;
         }
         finally {
             scriptLock.readLock().unlock();
         }
 
-        return new JsRunner(rulesScope);
+        return new JsRunner(rulesScope, namespaces);
+    }
+
+    private boolean isVersionCheckDue() {
+        return versionCheckInterval <= 0 ||
+            System.currentTimeMillis() - lastVersionCheck >= versionCheckInterval;
+    }
+
+    /**
+     * Forces the next call to get() to check the rules timestamp in the database,
+     * regardless of the configured check interval. Called whenever this node
+     * changes the rules, other nodes pick the change up once their interval expires.
+     *
+     * The reset is deferred until the surrounding transaction commits; resetting any
+     * earlier would let a concurrent get() read the old timestamp and then trust it
+     * for a full interval.
+     */
+    public void invalidate() {
+        rulesCurator.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                lastVersionCheck = 0L;
+            }
+        });
+    }
+
+    /**
+     * @return the number of calls to get() which trusted the cached rules timestamp
+     * instead of reading it from the database
+     */
+    public long getAvoidedVersionChecks() {
+        return avoidedVersionChecks.get();
+    }
+
+    /**
+     * @return the namespace cache shared by runners created from the current rules
+     */
+    public JsNamespaceCache getNamespaceCache() {
+        scriptLock.readLock().lock();
+        try {
+            return this.namespaceCache;
+        }
+        finally {
+            scriptLock.readLock().unlock();
+        }
     }
 
 }
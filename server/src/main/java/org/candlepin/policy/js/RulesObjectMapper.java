@@ -16,6 +16,7 @@ package org.candlepin.policy.js;
 
 import org.candlepin.common.exceptions.IseException;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
@@ -23,7 +24,6 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.fasterxml.jackson.datatype.hibernate4.Hibernate4Module;
@@ -32,6 +32,8 @@ import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -103,18 +105,51 @@ public class RulesObjectMapper {
     }
 
     public String toJsonString(Map<String, Object> toSerialize) {
-        ObjectNode mainNode = this.mapper.createObjectNode();
-        for (Entry<String, Object> entry : toSerialize.entrySet()) {
-            mainNode.putPOJO(entry.getKey(), entry.getValue());
+        // The map is serialized directly, without building an ObjectNode tree of
+        // the context first.
+        try {
+            return this.mapper.writeValueAsString(toSerialize);
         }
+        catch (Exception e) {
+            log.error("Unable to serialize objects to JSON.", e);
+            throw new IseException("Unable to serialize objects to JSON.", e);
+        }
+    }
 
+    /**
+     * Streams the given map to the writer as a single JSON object, serializing each
+     * value straight into the output rather than building an intermediate tree.
+     *
+     * @param toSerialize the named objects to serialize
+     * @param writer destination of the JSON, left open for the caller
+     */
+    public void writeJson(Map<String, Object> toSerialize, Writer writer) {
+        JsonGenerator generator = null;
         try {
-            return this.mapper.writeValueAsString(mainNode);
+            generator = this.mapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            for (Entry<String, Object> entry : toSerialize.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                this.mapper.writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+            generator.flush();
         }
         catch (Exception e) {
             log.error("Unable to serialize objects to JSON.", e);
             throw new IseException("Unable to serialize objects to JSON.", e);
         }
+        finally {
+            if (generator != null) {
+                try {
+                    generator.close();
+                }
+                catch (IOException e) {
+                    log.warn("Unable to close JSON generator.", e);
+                }
+            }
+        }
     }
 
     public <T extends Object> T toObject(String json, Class<T> clazz) {
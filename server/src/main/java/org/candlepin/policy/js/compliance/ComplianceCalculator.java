@@ -0,0 +1,809 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.model.AbstractPoolAttribute;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ComplianceCalculator
+ *
+ * A native implementation of the compliance namespace of the default rules
+ * (get_status, is_stack_compliant and is_ent_compliant). It works directly on
+ * the model objects, avoiding the JSON round trip through the javascript engine.
+ *
+ * The calculations mirror rules.js as closely as possible, including its javascript
+ * number handling (parseInt, NaN comparisons, etc.), so that both engines produce
+ * the same {@link ComplianceStatus} for the same input. Any change to the compliance
+ * portion of rules.js must be reflected here.
+ */
+public class ComplianceCalculator {
+    private static Logger log = LoggerFactory.getLogger(ComplianceCalculator.class);
+
+    // Consumer fact names
+    private static final String SOCKET_FACT = "cpu.cpu_socket(s)";
+    private static final String RAM_FACT = "memory.memtotal";
+    private static final String CORES_FACT = "cpu.core(s)_per_socket";
+    private static final String ARCH_FACT = "uname.machine";
+    private static final String IS_VIRT_GUEST_FACT = "virt.is_guest";
+
+    // Product attribute names
+    private static final String SOCKETS_ATTRIBUTE = "sockets";
+    private static final String CORES_ATTRIBUTE = "cores";
+    private static final String ARCH_ATTRIBUTE = "arch";
+    private static final String RAM_ATTRIBUTE = "ram";
+    private static final String VCPU_ATTRIBUTE = "vcpu";
+    private static final String GUEST_LIMIT_ATTRIBUTE = "guest_limit";
+    private static final String INSTANCE_ATTRIBUTE = "instance_multiplier";
+    private static final String REQUIRES_HOST_ATTRIBUTE = "requires_host";
+    private static final String UNMAPPED_GUESTS_ONLY = "unmapped_guests_only";
+    private static final String STACKING_ID_ATTRIBUTE = "stacking_id";
+
+    private static final String SYSTEM_TYPE = "system";
+
+    private static final String TRACKER_STACK = "STACK";
+    private static final String TRACKER_ENTITLEMENT = "ENTITLEMENT";
+
+    private static final Map<String, String> ATTRIBUTES_TO_CONSUMER_FACTS =
+        new HashMap<String, String>();
+    static {
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(SOCKETS_ATTRIBUTE, SOCKET_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(CORES_ATTRIBUTE, CORES_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(ARCH_ATTRIBUTE, ARCH_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(RAM_ATTRIBUTE, RAM_FACT);
+        ATTRIBUTES_TO_CONSUMER_FACTS.put(VCPU_ATTRIBUTE, CORES_FACT);
+    }
+
+    private static final List<String> PHYSICAL_ATTRIBUTES = Arrays.asList(
+        SOCKETS_ATTRIBUTE, CORES_ATTRIBUTE, RAM_ATTRIBUTE, ARCH_ATTRIBUTE,
+        GUEST_LIMIT_ATTRIBUTE);
+
+    private static final List<String> VIRT_ATTRIBUTES = Arrays.asList(
+        VCPU_ATTRIBUTE, RAM_ATTRIBUTE, ARCH_ATTRIBUTE, GUEST_LIMIT_ATTRIBUTE);
+
+    private static final List<String> UNCHECKED_WHEN_HOST_RESTRICTED = Arrays.asList(
+        RAM_ATTRIBUTE, VCPU_ATTRIBUTE);
+
+    private static final List<String> GLOBAL_ATTRIBUTES = Arrays.asList(
+        GUEST_LIMIT_ATTRIBUTE);
+
+    /**
+     * Equivalent of the get_status rule.
+     *
+     * @param consumer consumer to check
+     * @param entitlements all of the consumer's entitlements
+     * @param onDate date to check compliance on
+     * @param calculateCompliantUntil whether or not to determine the compliant until date
+     * @return the compliance status of the consumer
+     */
+    public ComplianceStatus getStatus(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate, boolean calculateCompliantUntil) {
+        Collection<Entitlement> ents = entitlements == null ?
+            Collections.<Entitlement>emptyList() : entitlements;
+
+        ComplianceStatus status = getStatusOnDate(consumer, ents, onDate);
+        Date compliantUntil = null;
+        if (isCompliant(status) && calculateCompliantUntil && !ents.isEmpty()) {
+            compliantUntil = determineCompliantUntilDate(consumer, ents, onDate);
+        }
+        status.setCompliantUntil(compliantUntil);
+        return status;
+    }
+
+    /**
+     * Equivalent of the is_stack_compliant rule.
+     */
+    public boolean isStackCompliant(Consumer consumer, String stackId,
+        Collection<Entitlement> entitlements) {
+        return getStackCoverage(consumer, stackId, entitlements).isCovered();
+    }
+
+    /**
+     * Equivalent of the is_ent_compliant rule.
+     */
+    public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent,
+        Collection<Entitlement> entitlements) {
+        return getEntitlementCoverage(consumer, ent, entitlements).isCovered();
+    }
+
+    /*
+     * The rules consider a status compliant based on the products it covers,
+     * which differs from ComplianceStatus.isCompliant() (based on reasons).
+     */
+    private boolean isCompliant(ComplianceStatus status) {
+        return status.getNonCompliantProducts().isEmpty() &&
+            status.getPartiallyCompliantProducts().isEmpty();
+    }
+
+    ComplianceStatus getStatusOnDate(Consumer consumer, Collection<Entitlement> entitlements,
+        Date onDate) {
+        ComplianceStatus status = new ComplianceStatus(onDate);
+
+        // Track the stack IDs we've already checked to save some time:
+        List<String> compliantStackIds = new LinkedList<String>();
+        List<String> nonCompliantStackIds = new LinkedList<String>();
+
+        log.debug("Checking compliance status for consumer: " + consumer.getUuid() +
+            " on date: " + onDate);
+
+        List<Entitlement> entitlementsOnDate = filterEntitlementsByDate(entitlements, onDate);
+        for (Entitlement e : entitlementsOnDate) {
+            List<String> relevantPids = findRelevantPids(e, consumer);
+            boolean partiallyStacked = false;
+            boolean entIsStacked = isStacked(e.getPool());
+
+            if (entIsStacked) {
+                String stackId = getProductAttribute(e.getPool(), STACKING_ID_ATTRIBUTE);
+
+                if (nonCompliantStackIds.contains(stackId)) {
+                    partiallyStacked = true;
+                    status.addPartialStack(stackId, e);
+                }
+                else if (!compliantStackIds.contains(stackId)) {
+                    Coverage stackCoverage = getStackCoverage(consumer, stackId,
+                        entitlementsOnDate);
+                    if (!stackCoverage.isCovered()) {
+                        partiallyStacked = true;
+                        status.addPartialStack(stackId, e);
+                        nonCompliantStackIds.add(stackId);
+                        status.getReasons().addAll(stackCoverage.getReasons());
+                    }
+                    else {
+                        compliantStackIds.add(stackId);
+                    }
+                }
+            }
+
+            // If we have no installed products and the entitlement
+            // is partially covered, we want the system to be partial.
+            if (relevantPids.isEmpty() && !entIsStacked) {
+                Coverage entCoverage = getEntitlementCoverage(consumer, e,
+                    entitlementsOnDate);
+                if (!entCoverage.isCovered()) {
+                    status.getReasons().addAll(entCoverage.getReasons());
+                }
+            }
+
+            // If the consumer has an entitlement from a pool marked
+            // unmapped_guests_only it can only hope to be yellow
+            if ("true".equalsIgnoreCase(getAttribute(e.getPool(), UNMAPPED_GUESTS_ONLY))) {
+                status.getReasons().add(buildUnmappedEntitlementReason(e.getId()));
+            }
+
+            for (String relevantPid : relevantPids) {
+                if (partiallyStacked) {
+                    status.addPartiallyCompliantProduct(relevantPid, e);
+                    continue;
+                }
+
+                Coverage entCoverage = getEntitlementCoverage(consumer, e,
+                    entitlementsOnDate);
+                if (!entCoverage.isCovered() && !entIsStacked) {
+                    status.addPartiallyCompliantProduct(relevantPid, e);
+                    status.getReasons().addAll(entCoverage.getReasons());
+                }
+                else {
+                    status.addCompliantProduct(relevantPid, e);
+                }
+            }
+        }
+
+        // A product provided by a regular entitlement is not partially compliant, even
+        // if a partial stack also provides it. The stack stays in the partial stacks.
+        status.getPartiallyCompliantProducts().keySet().removeAll(
+            status.getCompliantProducts().keySet());
+
+        // Installed products we didn't find any entitlement for:
+        if (consumer.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                String pid = installed.getProductId();
+                if (!status.getCompliantProducts().containsKey(pid) &&
+                    !status.getPartiallyCompliantProducts().containsKey(pid)) {
+                    status.addNonCompliantProduct(pid);
+                    status.getReasons().add(buildInstalledProductReason(pid));
+                }
+            }
+        }
+        return status;
+    }
+
+    /*
+     * Determine the compliant until date for a consumer based on the specified start
+     * date and entitlements.
+     */
+    Date determineCompliantUntilDate(Consumer consumer, Collection<Entitlement> entitlements,
+        Date startDate) {
+        if (consumer.getInstalledProducts() == null ||
+            consumer.getInstalledProducts().isEmpty()) {
+            return null;
+        }
+
+        List<Long> dates = new ArrayList<Long>();
+        for (Entitlement ent : entitlements) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                if (provides(ent.getPool(), installed.getProductId())) {
+                    dates.add(time(ent.getEndDate()));
+                    break;
+                }
+            }
+        }
+        Collections.sort(dates);
+
+        long lastDate = time(startDate);
+        for (Long endDate : dates) {
+            // Ignore past dates and duplicates
+            if (endDate <= lastDate) {
+                continue;
+            }
+
+            // Need to check if we are still compliant after the end date,
+            // so we add one second.
+            Date dateToCheck = new Date(endDate + 1000L);
+            lastDate = dateToCheck.getTime();
+
+            ComplianceStatus status = getStatusOnDate(consumer, entitlements, dateToCheck);
+            if (!isCompliant(status)) {
+                return dateToCheck;
+            }
+        }
+        return null;
+    }
+
+    Coverage getStackCoverage(Consumer consumer, String stackId,
+        Collection<Entitlement> ents) {
+        log.debug("Checking stack compliance for: " + stackId);
+        ComplianceTracker tracker = new ComplianceTracker(consumer, stackId);
+        for (Entitlement ent : ents) {
+            if (isStacked(ent.getPool())) {
+                String currentStackId = getProductAttribute(ent.getPool(),
+                    STACKING_ID_ATTRIBUTE);
+                if (currentStackId == null ? stackId == null :
+                    currentStackId.equals(stackId)) {
+                    tracker.updateAccumulatedFromEnt(ent);
+                }
+            }
+        }
+        return getTrackerCoverage(tracker, consumer, ents);
+    }
+
+    Coverage getEntitlementCoverage(Consumer consumer, Entitlement entitlement,
+        Collection<Entitlement> ents) {
+        log.debug("Checking compliance for entitlement: " + entitlement.getId());
+        ComplianceTracker tracker = new ComplianceTracker(consumer, null);
+        tracker.updateAccumulatedFromEnt(entitlement);
+        return getTrackerCoverage(tracker, consumer, ents);
+    }
+
+    /*
+     * Equivalent of CoverageCalculator.getStackCoverage followed by
+     * getCoverageForTracker.
+     */
+    private Coverage getTrackerCoverage(ComplianceTracker tracker, Consumer consumer,
+        Collection<Entitlement> ents) {
+        List<String> attributes = getComplianceAttributes(consumer);
+        for (String attr : attributes) {
+            if (tracker.enforces(attr) && GLOBAL_ATTRIBUTES.contains(attr)) {
+                tracker.accumulatedValues.put(attr, getGlobalGuestLimit(ents));
+            }
+        }
+
+        int coverageCount = 0;
+        List<ComplianceReason> reasons = new LinkedList<ComplianceReason>();
+        for (String attr : attributes) {
+            // if the value doesn't exist we do not enforce it.
+            if (!tracker.enforces(attr)) {
+                coverageCount++;
+                continue;
+            }
+
+            ComplianceReason reason;
+            if (ARCH_ATTRIBUTE.equals(attr)) {
+                reason = checkArch(tracker, consumer);
+            }
+            else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                reason = checkGuestLimit(tracker, consumer);
+            }
+            else {
+                reason = checkQuantity(tracker, attr, consumer);
+            }
+
+            if (reason == null) {
+                coverageCount++;
+            }
+            else {
+                reasons.add(reason);
+            }
+        }
+        return new Coverage(coverageCount == attributes.size(), reasons);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ComplianceReason checkArch(ComplianceTracker tracker, Consumer consumer) {
+        List<String> supportedArchs = (List<String>) tracker.accumulatedValues.get(
+            ARCH_ATTRIBUTE);
+        String consumerArch = consumer.getFacts() == null ? null :
+            consumer.getFacts().get(ARCH_FACT);
+        String consumerType = consumer.getType() == null ? null :
+            consumer.getType().getLabel();
+
+        for (String archString : supportedArchs) {
+            if (!architectureMatches(archString, consumerArch, consumerType)) {
+                log.debug("  System architecture not covered by: " + archString);
+                return buildReason(ARCH_ATTRIBUTE, tracker, consumerArch, archString);
+            }
+        }
+        return null;
+    }
+
+    private ComplianceReason checkGuestLimit(ComplianceTracker tracker, Consumer consumer) {
+        double consumerQuantity = toNumber(getFact(GUEST_LIMIT_ATTRIBUTE, consumer));
+        Object sourceValue = tracker.accumulatedValues.get(GUEST_LIMIT_ATTRIBUTE);
+
+        boolean covered = (sourceValue != null && toNumber(sourceValue) == -1) ||
+            parseInt(sourceValue) >= consumerQuantity;
+        if (!covered) {
+            return buildReason(GUEST_LIMIT_ATTRIBUTE, tracker, consumerQuantity,
+                sourceValue);
+        }
+        return null;
+    }
+
+    private ComplianceReason checkQuantity(ComplianceTracker tracker, String attr,
+        Consumer consumer) {
+        Object consumerQuantity = getFact(attr, consumer);
+        Object sourceValue = tracker.accumulatedValues.get(attr);
+
+        boolean covered = parseInt(sourceValue) >= toNumber(consumerQuantity);
+        if (!covered) {
+            return buildReason(attr, tracker, consumerQuantity, sourceValue);
+        }
+        return null;
+    }
+
+    private boolean architectureMatches(String productArchStr, String consumerUnameMachine,
+        String consumerType) {
+        // Non-system consumers without an architecture fact can pass this rule
+        // regardless what arch the product requires.
+        boolean hasArch = consumerUnameMachine != null && consumerUnameMachine.length() > 0;
+        if (!hasArch && !SYSTEM_TYPE.equals(consumerType)) {
+            return true;
+        }
+
+        if (productArchStr != null) {
+            List<String> supportedArches = new ArrayList<String>(Arrays.asList(
+                productArchStr.toUpperCase().split(",", -1)));
+
+            // If X86 is supported, add all variants to this list:
+            if (supportedArches.contains("X86")) {
+                supportedArches.add("I386");
+                supportedArches.add("I586");
+                supportedArches.add("I686");
+            }
+
+            if (!supportedArches.contains("ALL") && (!hasArch ||
+                !supportedArches.contains(consumerUnameMachine.toUpperCase()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Equivalent of FactValueCalculator.getFact. Returns either the raw fact
+     * String or a Double, matching what the rules would compare against.
+     */
+    private Object getFact(String prodAttr, Consumer consumer) {
+        if (RAM_ATTRIBUTE.equals(prodAttr)) {
+            double ramGb = parseInt(getRawFact(prodAttr, consumer)) / 1024 / 1024;
+            return Double.isNaN(ramGb) ? ramGb : Math.floor(ramGb + 0.5);
+        }
+        if (CORES_ATTRIBUTE.equals(prodAttr)) {
+            double sockets = toNumber(getFact(SOCKETS_ATTRIBUTE, consumer));
+            return toNumber(getRawFact(prodAttr, consumer)) * sockets;
+        }
+        if (VCPU_ATTRIBUTE.equals(prodAttr)) {
+            return getFact(CORES_ATTRIBUTE, consumer);
+        }
+        if (GUEST_LIMIT_ATTRIBUTE.equals(prodAttr)) {
+            if (consumer.getGuestIds() == null) {
+                return 0d;
+            }
+            double activeGuestCount = 0;
+            for (GuestId guest : consumer.getGuestIds()) {
+                if (isGuestActive(guest)) {
+                    activeGuestCount++;
+                }
+            }
+            return activeGuestCount;
+        }
+        return getRawFact(prodAttr, consumer);
+    }
+
+    private Object getRawFact(String prodAttr, Consumer consumer) {
+        String factName = ATTRIBUTES_TO_CONSUMER_FACTS.get(prodAttr);
+        String value = factName == null ? null : consumer.getFact(factName);
+        if (value == null || value.length() == 0) {
+            return 1d;
+        }
+        return value;
+    }
+
+    private boolean isGuestActive(GuestId guest) {
+        Map<String, String> attrs = guest.getAttributes();
+        return attrs != null && "libvirt".equals(attrs.get("virtWhoType")) &&
+            "1".equals(attrs.get("active"));
+    }
+
+    /*
+     * Equivalent of GlobalAttributeCalculator for guest_limit: the largest
+     * guest_limit across all entitlements, -1 (unlimited) wins.
+     */
+    private Double getGlobalGuestLimit(Collection<Entitlement> ents) {
+        Double total = null;
+        for (Entitlement ent : ents) {
+            String value = getProductAttribute(ent.getPool(), GUEST_LIMIT_ATTRIBUTE);
+            if (value != null) {
+                if (total == null) {
+                    total = 0d;
+                }
+                double poolValue = parseInt(value);
+                if (poolValue == -1) {
+                    return poolValue;
+                }
+                if (poolValue > total) {
+                    total = poolValue;
+                }
+            }
+        }
+        return total;
+    }
+
+    private List<String> getComplianceAttributes(Consumer consumer) {
+        return isGuest(consumer) ? VIRT_ATTRIBUTES : PHYSICAL_ATTRIBUTES;
+    }
+
+    private boolean isGuest(Consumer consumer) {
+        return "true".equalsIgnoreCase(consumer.getFact(IS_VIRT_GUEST_FACT));
+    }
+
+    private List<Entitlement> filterEntitlementsByDate(Collection<Entitlement> ents,
+        Date date) {
+        long onDate = time(date);
+        List<Entitlement> filtered = new LinkedList<Entitlement>();
+        for (Entitlement ent : ents) {
+            if (time(ent.getStartDate()) <= onDate && time(ent.getEndDate()) >= onDate) {
+                filtered.add(ent);
+            }
+        }
+        return filtered;
+    }
+
+    private List<String> findRelevantPids(Entitlement ent, Consumer consumer) {
+        List<String> pids = new LinkedList<String>();
+        if (consumer.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                if (provides(ent.getPool(), installed.getProductId())) {
+                    pids.add(installed.getProductId());
+                }
+            }
+        }
+        return pids;
+    }
+
+    private boolean provides(Pool pool, String productId) {
+        return productId != null && pool.provides(productId);
+    }
+
+    private boolean isStacked(Pool pool) {
+        return pool.getProductAttributes() != null && pool.hasProductAttribute(
+            STACKING_ID_ATTRIBUTE);
+    }
+
+    /*
+     * Pool attribute lookups as done by the rules: an attribute with a value
+     * of "0" is considered not set.
+     */
+    private static String findAttributeIn(String name,
+        Set<? extends AbstractPoolAttribute> attrs) {
+        if (attrs != null) {
+            for (AbstractPoolAttribute attr : attrs) {
+                if (name.equals(attr.getName())) {
+                    String value = attr.getValue();
+                    return "0".equals(value) ? null : value;
+                }
+            }
+        }
+        return null;
+    }
+
+    static String getAttribute(Pool pool, String name) {
+        String value = findAttributeIn(name, pool.getAttributes());
+        return value == null ? findAttributeIn(name, pool.getProductAttributes()) : value;
+    }
+
+    static String getProductAttribute(Pool pool, String name) {
+        String value = findAttributeIn(name, pool.getProductAttributes());
+        return value == null ? findAttributeIn(name, pool.getAttributes()) : value;
+    }
+
+    private ComplianceReason buildReason(String attr, ComplianceTracker tracker,
+        Object has, Object covered) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey(attr.toUpperCase());
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("has", toJsonString(has));
+        reason.getAttributes().put("covered", toJsonString(covered));
+        if (TRACKER_STACK.equals(tracker.type)) {
+            reason.getAttributes().put("stack_id", tracker.id);
+        }
+        else {
+            reason.getAttributes().put("entitlement_id", tracker.id);
+        }
+        return reason;
+    }
+
+    private ComplianceReason buildInstalledProductReason(String productId) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey("NOTCOVERED");
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("product_id", productId);
+        return reason;
+    }
+
+    private ComplianceReason buildUnmappedEntitlementReason(String entitlementId) {
+        ComplianceReason reason = new ComplianceReason();
+        reason.setKey("UNMAPPEDGUEST");
+        reason.setMessage(reason.getKey());
+        reason.getAttributes().put("entitlement_id", entitlementId);
+        return reason;
+    }
+
+    private static long time(Date date) {
+        return date == null ? 0L : date.getTime();
+    }
+
+    /*
+     * Javascript number conversions, used wherever the rules rely on them.
+     */
+
+    static double toNumber(Object value) {
+        if (value == null) {
+            return 0d;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        String str = value.toString().trim();
+        if (str.length() == 0) {
+            return 0d;
+        }
+        char last = Character.toLowerCase(str.charAt(str.length() - 1));
+        if (last == 'd' || last == 'f') {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(str);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    static double parseInt(Object value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.NaN;
+            }
+            return d < 0 ? Math.ceil(d) : Math.floor(d);
+        }
+
+        String str = value.toString().trim();
+        int idx = 0;
+        boolean negative = false;
+        if (idx < str.length() && (str.charAt(idx) == '-' || str.charAt(idx) == '+')) {
+            negative = str.charAt(idx) == '-';
+            idx++;
+        }
+        int radix = 10;
+        if (str.startsWith("0x", idx) || str.startsWith("0X", idx)) {
+            radix = 16;
+            idx += 2;
+        }
+        int start = idx;
+        while (idx < str.length() && Character.digit(str.charAt(idx), radix) >= 0) {
+            idx++;
+        }
+        if (idx == start) {
+            return Double.NaN;
+        }
+        double result = new BigInteger(str.substring(start, idx), radix)
+            .doubleValue();
+        return negative ? -result : result;
+    }
+
+    static int toInt32(Object value) {
+        double d = toNumber(value);
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return 0;
+        }
+        return (int) (long) d;
+    }
+
+    /*
+     * Renders a value the way it comes back from the rules after a JSON round trip.
+     */
+    static String toJsonString(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return null;
+            }
+            if (d == Math.rint(d) && Math.abs(d) < 1e21) {
+                return Long.toString((long) d);
+            }
+            return Double.toString(d);
+        }
+        return value.toString();
+    }
+
+    /**
+     * The result of a coverage check for a stack or a single entitlement.
+     */
+    static class Coverage {
+        private final boolean covered;
+        private final List<ComplianceReason> reasons;
+
+        Coverage(boolean covered, List<ComplianceReason> reasons) {
+            this.covered = covered;
+            this.reasons = reasons;
+        }
+
+        boolean isCovered() {
+            return covered;
+        }
+
+        List<ComplianceReason> getReasons() {
+            return reasons;
+        }
+    }
+
+    /**
+     * Tracks the values accumulated by a single entitlement or by all
+     * entitlements in a stack. See createComplianceTracker in rules.js.
+     */
+    private class ComplianceTracker {
+        private String id;
+        private final String type;
+        private final Consumer consumer;
+        private final List<String> entitlementIds = new ArrayList<String>();
+        private String hostRestricted;
+        private final Map<String, Object> accumulatedValues = new HashMap<String, Object>();
+
+        ComplianceTracker(Consumer consumer, String id) {
+            this.id = id;
+            this.type = id == null ? TRACKER_ENTITLEMENT : TRACKER_STACK;
+            this.consumer = consumer;
+        }
+
+        boolean enforces(String attribute) {
+            // Guests are not subjected to Sockets/RAM/Cores/Vcpus limitations if
+            // using a host-restricted sub-pool.
+            if (hostRestricted != null && isGuest(consumer) &&
+                UNCHECKED_WHEN_HOST_RESTRICTED.contains(attribute)) {
+                return false;
+            }
+            return accumulatedValues.containsKey(attribute);
+        }
+
+        void updateAccumulatedFromEnt(Entitlement ent) {
+            if (TRACKER_ENTITLEMENT.equals(type) && entitlementIds.isEmpty()) {
+                this.id = ent.getId();
+            }
+            if (isAlreadyAdded(ent.getId())) {
+                return;
+            }
+            entitlementIds.add(ent.getId());
+
+            // If quantity is > 1 but the entitlement is not stacked
+            // only calculate compliance for quantity 1
+            int quantity = ent.getQuantity() == null ? 0 : ent.getQuantity();
+            if (!isStacked(ent.getPool()) && quantity > 1) {
+                quantity = 1;
+            }
+            updateAccumulatedFromPool(ent.getPool(), quantity);
+        }
+
+        /*
+         * The rules check "ent.id in this.entitlementIds", which tests the array
+         * indexes rather than its contents. Mirrored as is to keep both engines
+         * in agreement.
+         */
+        private boolean isAlreadyAdded(String entId) {
+            if (entId == null || !entId.matches("0|[1-9][0-9]{0,8}")) {
+                return false;
+            }
+            return Integer.parseInt(entId) < entitlementIds.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        void updateAccumulatedFromPool(Pool pool, int quantity) {
+            String requiresHost = getAttribute(pool, REQUIRES_HOST_ATTRIBUTE);
+            if (requiresHost != null && requiresHost.length() > 0) {
+                this.hostRestricted = requiresHost;
+            }
+
+            for (String attr : getComplianceAttributes(consumer)) {
+                String poolValue = getProductAttribute(pool, attr);
+                if (poolValue == null) {
+                    continue;
+                }
+
+                Object stackValue = enforces(attr) ? accumulatedValues.get(attr) : null;
+                Object accumulated;
+                if (ARCH_ATTRIBUTE.equals(attr)) {
+                    List<String> archs = stackValue == null ? new ArrayList<String>() :
+                        (List<String>) stackValue;
+                    archs.add(poolValue);
+                    accumulated = archs;
+                }
+                else if (SOCKETS_ATTRIBUTE.equals(attr)) {
+                    double increment = parseInt(getProductAttribute(pool,
+                        INSTANCE_ATTRIBUTE));
+                    if (Double.isNaN(increment) || increment == 0) {
+                        increment = 1;
+                    }
+                    // use lowest quantity evenly divisible by the instance multiplier
+                    double adjustedQuantity = quantity - (quantity % increment);
+                    accumulated = toInt32(stackValue) +
+                        ((parseInt(poolValue) * adjustedQuantity) / increment);
+                }
+                else if (GUEST_LIMIT_ATTRIBUTE.equals(attr)) {
+                    // Value doesn't matter, just need it to be enforced
+                    accumulated = -1d;
+                }
+                else {
+                    accumulated = toInt32(stackValue) + (parseInt(poolValue) * quantity);
+                }
+                accumulatedValues.put(attr, accumulated);
+            }
+        }
+    }
+}
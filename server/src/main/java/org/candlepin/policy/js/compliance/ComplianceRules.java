@@ -15,6 +15,8 @@
 package org.candlepin.policy.js.compliance;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
@@ -49,16 +51,25 @@ public class ComplianceRules {
     private Provider<EventSink> eventSinkProvider;
     // Use the curator to update consumer entitlement status every time we run compliance (with null date)
     private ConsumerCurator consumerCurator;
+    // Native implementation of the compliance rules, used instead of the
+    // javascript when enabled in the configuration.
+    private ComplianceCalculator calculator;
+    private boolean useNativeEngine;
+    private ComplianceStatusCache statusCache;
 
     @Inject
     public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
         StatusReasonMessageGenerator generator, Provider<EventSink> eventSinkProvider,
-        ConsumerCurator consumerCurator) {
+        ConsumerCurator consumerCurator, Configuration config,
+        ComplianceStatusCache statusCache) {
         this.entCurator = entCurator;
         this.jsRules = jsRules;
         this.generator = generator;
         this.eventSinkProvider = eventSinkProvider;
         this.consumerCurator = consumerCurator;
+        this.calculator = new ComplianceCalculator();
+        this.useNativeEngine = config.getBoolean(ConfigProperties.COMPLIANCE_NATIVE_ENGINE);
+        this.statusCache = statusCache;
 
         mapper = RulesObjectMapper.instance();
         jsRules.init("compliance_name_space");
@@ -117,17 +128,15 @@ public class ComplianceRules {
             date = new Date();
             currentCompliance = true;
         }
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", c);
-        args.put("entitlements", c.getEntitlements());
-        args.put("ondate", date);
-        args.put("calculateCompliantUntil", calculateCompliantUntil);
-        args.put("log", log, false);
 
-        // Convert the JSON returned into a ComplianceStatus object:
-        String json = jsRules.runJsFunction(String.class, "get_status", args);
+        Date rulesTimestamp = jsRules.getRulesTimestamp();
+        ComplianceStatus result = statusCache.get(c, date, calculateCompliantUntil,
+            rulesTimestamp);
+        if (result == null) {
+            result = calculateStatus(c, date, calculateCompliantUntil);
+            statusCache.put(c, calculateCompliantUntil, rulesTimestamp, result);
+        }
         try {
-            ComplianceStatus result = mapper.toObject(json, ComplianceStatus.class);
             for (ComplianceReason reason : result.getReasons()) {
                 generator.setMessage(c, reason, result.getDate());
             }
@@ -164,8 +173,47 @@ public class ComplianceRules {
         }
     }
 
+    /**
+     * Runs the compliance calculation itself, without any of the side effects
+     * (messages, events, consumer updates) of getStatus.
+     */
+    ComplianceStatus calculateStatus(Consumer c, Date date,
+        boolean calculateCompliantUntil) {
+        if (useNativeEngine) {
+            return calculator.getStatus(c, c.getEntitlements(), date,
+                calculateCompliantUntil);
+        }
+        return calculateJsStatus(c, date, calculateCompliantUntil);
+    }
+
+    ComplianceStatus calculateJsStatus(Consumer c, Date date,
+        boolean calculateCompliantUntil) {
+        JsonJsContext args = new JsonJsContext(mapper);
+        args.put("consumer", c);
+        args.put("entitlements", c.getEntitlements());
+        args.put("ondate", date);
+        args.put("calculateCompliantUntil", calculateCompliantUntil);
+        args.put("log", log, false);
+
+        // Convert the JSON returned into a ComplianceStatus object:
+        String json = jsRules.runJsFunction(String.class, "get_status", args);
+        try {
+            return mapper.toObject(json, ComplianceStatus.class);
+        }
+        catch (Exception e) {
+            throw new RuleExecutionException(e);
+        }
+    }
+
+    ComplianceCalculator getCalculator() {
+        return calculator;
+    }
+
     public boolean isStackCompliant(Consumer consumer, String stackId,
         List<Entitlement> entsToConsider) {
+        if (useNativeEngine) {
+            return calculator.isStackCompliant(consumer, stackId, entsToConsider);
+        }
         JsonJsContext args = new JsonJsContext(mapper);
         args.put("stack_id", stackId);
         args.put("consumer", consumer);
@@ -176,6 +224,9 @@ public class ComplianceRules {
 
     public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent, Date onDate) {
         List<Entitlement> ents = entCurator.listByConsumerAndDate(consumer, onDate);
+        if (useNativeEngine) {
+            return calculator.isEntitlementCompliant(consumer, ent, ents);
+        }
 
         JsonJsContext args = new JsonJsContext(mapper);
         args.put("consumer", consumer);
@@ -0,0 +1,455 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Attribute;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCapability;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Pool;
+import org.candlepin.model.ProvidedProduct;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ComplianceStatusCache
+ *
+ * Remembers the last compliance status calculated for each consumer. A cached
+ * status is only reused while everything the compliance rules read is unchanged:
+ * the rules themselves, the consumer's type, facts, installed products, guests and
+ * capabilities, and the quantities, dates and pools of its entitlements. It is
+ * also only returned for dates which fall between the same
+ * entitlement start/end boundaries as the date it was calculated for, so
+ * entitlements starting or expiring still change the status.
+ *
+ * Only entitlement ids are kept, the status handed out is rebuilt from the
+ * entitlements of the consumer passed in, so it never refers to entities loaded in
+ * another session.
+ *
+ * The cache is bounded, least recently used consumers are evicted first. A size of
+ * zero disables it.
+ */
+@Singleton
+public class ComplianceStatusCache {
+    private static Logger log = LoggerFactory.getLogger(ComplianceStatusCache.class);
+
+    private static final Comparator<String> NULLS_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+    };
+
+    private final int maxSize;
+    private final Map<String, CachedStatus> statuses;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ComplianceStatusCache(Configuration config) {
+        this(config.getInt(ConfigProperties.COMPLIANCE_CACHE_SIZE));
+    }
+
+    public ComplianceStatusCache(int size) {
+        this.maxSize = size;
+        this.statuses = new LinkedHashMap<String, CachedStatus>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatus> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Looks up the status of the consumer on the given date.
+     *
+     * @param consumer consumer to check
+     * @param date date the status is requested for
+     * @param calculateCompliantUntil whether the status must contain a compliant until date
+     * @param rulesTimestamp timestamp of the rules which would calculate the status
+     * @return the cached status rebuilt for the given date, or null if it must be
+     * calculated
+     */
+    public ComplianceStatus get(Consumer consumer, Date date,
+        boolean calculateCompliantUntil, Date rulesTimestamp) {
+        if (!isCacheable(consumer)) {
+            return null;
+        }
+
+        CachedStatus cached;
+        synchronized (statuses) {
+            cached = statuses.get(consumer.getUuid());
+        }
+
+        if (cached != null && cached.matches(date, calculateCompliantUntil) &&
+            cached.key.equals(key(consumer, rulesTimestamp))) {
+            ComplianceStatus status = cached.rebuild(consumer, date);
+            if (status != null) {
+                hits.incrementAndGet();
+                return status;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a freshly calculated status for the consumer.
+     *
+     * @param consumer consumer the status was calculated for
+     * @param calculateCompliantUntil whether the status contains a compliant until date
+     * @param rulesTimestamp timestamp of the rules which calculated the status
+     * @param status the calculated status
+     */
+    public void put(Consumer consumer, boolean calculateCompliantUntil,
+        Date rulesTimestamp, ComplianceStatus status) {
+        if (!isCacheable(consumer) || status == null || status.getDate() == null) {
+            return;
+        }
+
+        String ownerKey = consumer.getOwner() == null ? null : consumer.getOwner().getKey();
+        CachedStatus cached = new CachedStatus(key(consumer, rulesTimestamp), ownerKey,
+            calculateCompliantUntil, status);
+        cached.setValidity(consumer.getEntitlements(), status.getDate().getTime());
+
+        synchronized (statuses) {
+            statuses.put(consumer.getUuid(), cached);
+        }
+    }
+
+    /**
+     * Removes the cached status of every consumer belonging to the given owner.
+     *
+     * @param ownerKey key of the owner to flush
+     * @return the number of statuses removed
+     */
+    public int flushOwner(String ownerKey) {
+        int removed = 0;
+        synchronized (statuses) {
+            Iterator<CachedStatus> iter = statuses.values().iterator();
+            while (iter.hasNext()) {
+                CachedStatus cached = iter.next();
+                if (ownerKey == null ? cached.ownerKey == null :
+                    ownerKey.equals(cached.ownerKey)) {
+                    iter.remove();
+                    removed++;
+                }
+            }
+        }
+        log.info("Flushed " + removed + " cached compliance statuses for owner: " +
+            ownerKey);
+        return removed;
+    }
+
+    public void flush() {
+        synchronized (statuses) {
+            statuses.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (statuses) {
+            return statuses.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private boolean isCacheable(Consumer consumer) {
+        return isEnabled() && consumer != null && consumer.getUuid() != null;
+    }
+
+    /*
+     * The key is built from the inputs of the compliance rules themselves rather
+     * than from updated timestamps, which are only set when the session is flushed:
+     * entitlement quantities and pools change in memory, and the status is
+     * calculated again before anything is written. The consumer's facts, installed
+     * products, guests and capabilities are part of it for the same reason. The
+     * inputs are hashed so the cache does not hold on to them.
+     */
+    static String key(Consumer consumer, Date rulesTimestamp) {
+        StringBuilder inputs = new StringBuilder();
+        inputs.append(getTime(rulesTimestamp)).append(';');
+        inputs.append(consumer.getType() == null ? null : consumer.getType().getLabel())
+            .append(';').append(consumer.getUsername())
+            .append(';').append(consumer.getServiceLevel()).append(';');
+        if (consumer.getFacts() != null) {
+            inputs.append(new TreeMap<String, String>(consumer.getFacts()));
+        }
+        inputs.append(';');
+
+        List<String> items = new ArrayList<String>();
+        if (consumer.getInstalledProducts() != null) {
+            for (ConsumerInstalledProduct installed : consumer.getInstalledProducts()) {
+                items.add(installed.getProductId() + ":" + installed.getProductName() +
+                    ":" + installed.getVersion() + ":" + installed.getArch());
+            }
+        }
+        appendSorted(inputs, items);
+        if (consumer.getGuestIds() != null) {
+            for (GuestId guest : consumer.getGuestIds()) {
+                items.add(guest.getGuestId() == null ? null :
+                    guest.getGuestId().toLowerCase());
+            }
+        }
+        appendSorted(inputs, items);
+        if (consumer.getCapabilities() != null) {
+            for (ConsumerCapability capability : consumer.getCapabilities()) {
+                items.add(capability.getName());
+            }
+        }
+        appendSorted(inputs, items);
+
+        if (consumer.getEntitlements() != null) {
+            for (Entitlement ent : consumer.getEntitlements()) {
+                items.add(entitlementKey(ent));
+            }
+        }
+        appendSorted(inputs, items);
+        return DigestUtils.sha256Hex(inputs.toString());
+    }
+
+    private static String entitlementKey(Entitlement ent) {
+        StringBuilder key = new StringBuilder();
+        key.append(ent.getId()).append(':').append(ent.getQuantity())
+            .append(':').append(getTime(ent.getStartDate()))
+            .append(':').append(getTime(ent.getEndDate()))
+            .append(':').append(ent.getDirty()).append(':');
+
+        Pool pool = ent.getPool();
+        if (pool != null) {
+            key.append(pool.getId()).append(':').append(pool.getProductId())
+                .append(':').append(pool.getDerivedProductId())
+                .append(':').append(pool.getQuantity())
+                .append(':').append(pool.getConsumed())
+                .append(':').append(getTime(pool.getStartDate()))
+                .append(':').append(getTime(pool.getEndDate()))
+                .append(':').append(pool.getRestrictedToUsername()).append(':');
+            List<String> items = new ArrayList<String>();
+            addAttributes(items, "a", pool.getAttributes());
+            addAttributes(items, "pa", pool.getProductAttributes());
+            addAttributes(items, "da", pool.getDerivedProductAttributes());
+            addProducts(items, "p", pool.getProvidedProducts());
+            addProducts(items, "dp", pool.getDerivedProvidedProducts());
+            appendSorted(key, items);
+        }
+        return key.toString();
+    }
+
+    private static void addAttributes(List<String> items, String prefix,
+        Set<? extends Attribute> attributes) {
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                items.add(prefix + ":" + attribute.getName() + "=" + attribute.getValue());
+            }
+        }
+    }
+
+    private static void addProducts(List<String> items, String prefix,
+        Set<? extends ProvidedProduct> products) {
+        if (products != null) {
+            for (ProvidedProduct product : products) {
+                items.add(prefix + ":" + product.getProductId());
+            }
+        }
+    }
+
+    /*
+     * Appends the items in a stable order and clears the list for reuse.
+     */
+    private static void appendSorted(StringBuilder to, List<String> items) {
+        Collections.sort(items, NULLS_FIRST);
+        to.append(items).append(';');
+        items.clear();
+    }
+
+    private static Long getTime(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    /**
+     * The data of a status along with the range of dates it is valid for.
+     * Entitlements are only referred to by id.
+     */
+    private static class CachedStatus {
+        private final String key;
+        private final String ownerKey;
+        private final boolean calculateCompliantUntil;
+        private final Date compliantUntil;
+        private final Set<String> nonCompliantProducts;
+        private final Map<String, Set<String>> compliantProducts;
+        private final Map<String, Set<String>> partiallyCompliantProducts;
+        private final Map<String, Set<String>> partialStacks;
+        private final Set<ComplianceReason> reasons;
+        // The status holds for dates in [validFrom, validUntil)
+        private long validFrom = Long.MIN_VALUE;
+        private long validUntil = Long.MAX_VALUE;
+
+        CachedStatus(String key, String ownerKey, boolean calculateCompliantUntil,
+            ComplianceStatus status) {
+            this.key = key;
+            this.ownerKey = ownerKey;
+            this.calculateCompliantUntil = calculateCompliantUntil;
+            this.compliantUntil = status.getCompliantUntil();
+            this.nonCompliantProducts = new HashSet<String>(
+                status.getNonCompliantProducts());
+            this.compliantProducts = toIds(status.getCompliantProducts());
+            this.partiallyCompliantProducts = toIds(
+                status.getPartiallyCompliantProducts());
+            this.partialStacks = toIds(status.getPartialStacks());
+            this.reasons = copyReasons(status.getReasons());
+        }
+
+        /*
+         * Statuses handed out are modified by the caller (reason messages), so every
+         * caller gets a status of its own, dated for the date it asked for. Returns
+         * null if an entitlement of the status is no longer the consumer's.
+         */
+        ComplianceStatus rebuild(Consumer consumer, Date date) {
+            Map<String, Entitlement> ents = new HashMap<String, Entitlement>();
+            if (consumer.getEntitlements() != null) {
+                for (Entitlement ent : consumer.getEntitlements()) {
+                    ents.put(ent.getId(), ent);
+                }
+            }
+
+            ComplianceStatus status = new ComplianceStatus(date);
+            status.setCompliantUntil(compliantUntil);
+            status.getNonCompliantProducts().addAll(nonCompliantProducts);
+            if (!toEntitlements(compliantProducts, ents, status.getCompliantProducts()) ||
+                !toEntitlements(partiallyCompliantProducts, ents,
+                    status.getPartiallyCompliantProducts()) ||
+                !toEntitlements(partialStacks, ents, status.getPartialStacks())) {
+                return null;
+            }
+            status.setReasons(copyReasons(reasons));
+            return status;
+        }
+
+        private static Map<String, Set<String>> toIds(Map<String, Set<Entitlement>> from) {
+            Map<String, Set<String>> to = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, Set<Entitlement>> entry : from.entrySet()) {
+                Set<String> ids = new HashSet<String>();
+                for (Entitlement ent : entry.getValue()) {
+                    ids.add(ent.getId());
+                }
+                to.put(entry.getKey(), ids);
+            }
+            return to;
+        }
+
+        private static boolean toEntitlements(Map<String, Set<String>> from,
+            Map<String, Entitlement> ents, Map<String, Set<Entitlement>> to) {
+            for (Map.Entry<String, Set<String>> entry : from.entrySet()) {
+                Set<Entitlement> mapped = new HashSet<Entitlement>();
+                for (String id : entry.getValue()) {
+                    Entitlement ent = ents.get(id);
+                    if (ent == null) {
+                        return false;
+                    }
+                    mapped.add(ent);
+                }
+                to.put(entry.getKey(), mapped);
+            }
+            return true;
+        }
+
+        private static Set<ComplianceReason> copyReasons(Set<ComplianceReason> from) {
+            Set<ComplianceReason> reasons = new HashSet<ComplianceReason>();
+            for (ComplianceReason reason : from) {
+                ComplianceReason copy = new ComplianceReason();
+                copy.setKey(reason.getKey());
+                copy.setMessage(reason.getMessage());
+                copy.setAttributes(new HashMap<String, String>(reason.getAttributes()));
+                reasons.add(copy);
+            }
+            return reasons;
+        }
+
+        /*
+         * An entitlement is active from its start date up to and including its end
+         * date, so the status can change at the start date, at the end date (the
+         * compliant until calculation skips end dates not after the checked date) and
+         * right after the end date.
+         */
+        void setValidity(Iterable<Entitlement> entitlements, long date) {
+            if (entitlements == null) {
+                return;
+            }
+            for (Entitlement ent : entitlements) {
+                if (ent.getStartDate() != null) {
+                    addBoundary(ent.getStartDate().getTime(), date);
+                }
+                if (ent.getEndDate() != null) {
+                    addBoundary(ent.getEndDate().getTime(), date);
+                    addBoundary(ent.getEndDate().getTime() + 1, date);
+                }
+            }
+        }
+
+        private void addBoundary(long boundary, long date) {
+            if (boundary <= date) {
+                validFrom = Math.max(validFrom, boundary);
+            }
+            else {
+                validUntil = Math.min(validUntil, boundary);
+            }
+        }
+
+        boolean matches(Date date, boolean compliantUntil) {
+            long time = date.getTime();
+            return this.calculateCompliantUntil == compliantUntil &&
+                time >= validFrom && time < validUntil;
+        }
+    }
+}
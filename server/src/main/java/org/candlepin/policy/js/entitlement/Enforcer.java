@@ -20,7 +20,9 @@ import org.candlepin.model.Pool;
 import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.js.pool.PoolHelper;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Enforces the entitlement rules definitions.
@@ -87,6 +89,21 @@ public interface Enforcer {
     ValidationResult preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity, CallerType caller);
 
+    /**
+     * Run pre-entitlement checks for a quantity of 1 against several pools at once.
+     *
+     * All pools are validated in a single rules invocation, which is much cheaper
+     * than calling {@link #preEntitlement(Consumer, Pool, Integer, CallerType)} for
+     * each of them.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param entitlementPools Entitlement pools to potentially consume from.
+     * @param caller the context calling the rules.
+     * @return map of pool id to the validation result for that pool.
+     */
+    Map<String, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> entitlementPools, CallerType caller);
+
     /**
      * @param consumer Consumer who wishes to consume an entitlement.
      * @param pools Entitlement pools to potentially consume from.
@@ -34,6 +34,8 @@ import com.google.inject.Inject;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -105,7 +107,13 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
     }
 
     @Override
-    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+    public Map<String, ValidationResult> preEntitlement(Consumer consumer,
+        Collection<Pool> entitlementPools, CallerType caller) {
+        Map<String, ValidationResult> resultMap = new HashMap<String, ValidationResult>();
+        if (entitlementPools.isEmpty()) {
+            return resultMap;
+        }
+
         JsonJsContext args = new JsonJsContext(objectMapper);
         args.put("consumer", consumer);
         args.put("hostConsumer", consumer.hasFact("virt.uuid") ?
@@ -113,12 +121,11 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
                 consumer.getOwner()) : null);
         args.put("consumerEntitlements", consumer.getEntitlements());
         args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
-        args.put("pools", pools);
-        args.put("caller", CallerType.LIST_POOLS.getLabel());
+        args.put("pools", entitlementPools);
+        args.put("caller", caller.getLabel());
         args.put("log", log, false);
 
         String json = jsRules.runJsFunction(String.class, "validate_pools_list", args);
-        Map<String, ValidationResult> resultMap;
         TypeReference<Map<String, ValidationResult>> typeref =
             new TypeReference<Map<String, ValidationResult>>() {};
         try {
@@ -128,10 +135,20 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
             throw new RuleExecutionException(e);
         }
 
+        for (Pool pool : entitlementPools) {
+            finishValidation(resultMap.get(pool.getId()), pool, 1);
+        }
+        return resultMap;
+    }
+
+    @Override
+    public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+        Map<String, ValidationResult> resultMap = preEntitlement(consumer, pools,
+            CallerType.LIST_POOLS);
+
         List<Pool> filteredPools = new LinkedList<Pool>();
         for (Pool pool : pools) {
             ValidationResult result = resultMap.get(pool.getId());
-            finishValidation(result, pool, 1);
 
             if (result.isSuccessful() && (!result.hasWarnings() || showAll)) {
                 filteredPools.add(pool);
@@ -21,6 +21,8 @@ import org.candlepin.auth.SystemPrincipal;
 import org.candlepin.common.auth.SecurityHole;
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.service.impl.DefaultUserServiceAdapter;
 
@@ -30,10 +32,14 @@ import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
@@ -48,13 +54,18 @@ public class AdminResource {
     private UserServiceAdapter userService;
     private UserCurator userCurator;
     private HornetqEventDispatcher dispatcher;
+    private ComplianceStatusCache complianceCache;
+    private KeyPairPool keyPairPool;
 
     @Inject
     public AdminResource(UserServiceAdapter userService, UserCurator userCurator,
-            HornetqEventDispatcher dispatcher) {
+            HornetqEventDispatcher dispatcher, ComplianceStatusCache complianceCache,
+            KeyPairPool keyPairPool) {
         this.userService = userService;
         this.userCurator = userCurator;
         this.dispatcher = dispatcher;
+        this.complianceCache = complianceCache;
+        this.keyPairPool = keyPairPool;
     }
 
     /**
@@ -112,4 +123,52 @@ public class AdminResource {
         return dispatcher.getQueueInfo();
     }
 
+    /**
+     * @return The number of consumers with a cached compliance status, along with
+     * the cache hit and miss counts since the server started.
+     *
+     * @httpcode 200
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("compliance_cache")
+    public Map<String, Long> getComplianceCacheStats() {
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put("size", (long) complianceCache.size());
+        stats.put("hits", complianceCache.getHits());
+        stats.put("misses", complianceCache.getMisses());
+        return stats;
+    }
+
+    /**
+     * @return The number of pre-generated consumer key pairs available and the
+     * pool's capacity, along with how many key pairs were served from the pool and
+     * how often it was found empty since the server started.
+     *
+     * @httpcode 200
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("keypair_pool")
+    public Map<String, Long> getKeyPairPoolStats() {
+        Map<String, Long> stats = new HashMap<String, Long>();
+        stats.put("size", (long) keyPairPool.size());
+        stats.put("capacity", (long) keyPairPool.getCapacity());
+        stats.put("served", keyPairPool.getServedCount());
+        stats.put("exhausted", keyPairPool.getExhaustedCount());
+        return stats;
+    }
+
+    /**
+     * Discards the cached compliance status of every consumer in an owner, forcing
+     * it to be recalculated on the next request.
+     *
+     * @httpcode 200
+     */
+    @DELETE
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("compliance_cache/{owner_key}")
+    public void flushComplianceCache(@PathParam("owner_key") String ownerKey) {
+        complianceCache.flushOwner(ownerKey);
+    }
 }
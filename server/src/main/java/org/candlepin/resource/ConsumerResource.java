@@ -58,6 +58,7 @@ import org.candlepin.model.DistributorVersionCapability;
 import org.candlepin.model.DistributorVersionCurator;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
+import org.candlepin.model.EntitlementCertificateSerial;
 import org.candlepin.model.EntitlementCurator;
 import org.candlepin.model.Environment;
 import org.candlepin.model.EnvironmentCurator;
@@ -87,6 +88,7 @@ import org.candlepin.resource.util.ConsumerInstalledProductEnricher;
 import org.candlepin.resource.util.ResourceDateParser;
 import org.candlepin.resteasy.parameter.CandlepinParam;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
@@ -99,6 +101,7 @@ import org.candlepin.util.Util;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jboss.resteasy.annotations.providers.jaxb.Wrapped;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
@@ -112,6 +115,7 @@ import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -135,8 +139,12 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * API Gateway for Consumers
@@ -1119,7 +1127,7 @@ public class ConsumerResource {
         return removedGuests;
     }
 
-    protected void revokeGuestEntitlementsNotMatchingHost(Consumer host, Consumer guest) {
+    public void revokeGuestEntitlementsNotMatchingHost(Consumer host, Consumer guest) {
         // we need to create a list of entitlements to delete before actually
         // deleting, otherwise we are tampering with the loop iterator (BZ #786730)
         Set<Entitlement> deletableGuestEntitlements = new HashSet<Entitlement>();
@@ -1322,31 +1330,95 @@ public class ConsumerResource {
      * Return the client certificate metadata a for the given consumer. This
      * is a small subset of data clients can use to determine which certificates
      * they need to update/fetch.
+     * <p>
+     * The response carries an ETag computed from the set of serials, clients
+     * sending it back in If-None-Match get a 304 while their certificates are
+     * unchanged.
      *
      * @param consumerUuid UUID of the consumer
      * @return a list of CertificateSerial objects
      * @httpcode 404
+     * @httpcode 304
      * @httpcode 200
      */
     @GET
     @Path("{consumer_uuid}/certificates/serials")
     @Produces(MediaType.APPLICATION_JSON)
     @Wrapped(element = "serials")
-    public List<CertificateSerialDto> getEntitlementCertificateSerials(
-        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid) {
+    public Response getEntitlementCertificateSerials(
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @Context Request request) {
 
         log.debug("Getting client certificate serials for consumer: {}", consumerUuid);
         Consumer consumer = consumerCurator.verifyAndLookupConsumer(consumerUuid);
-        poolManager.regenerateDirtyEntitlements(
-            entitlementCurator.listByConsumer(consumer));
+
+        // Only the serials are selected here, the certificates are loaded
+        // solely for the entitlements which need to be regenerated.
+        List<EntitlementCertificateSerial> serials = listSerials(consumer);
+        Set<String> dirtyIds = new HashSet<String>();
+        for (EntitlementCertificateSerial serial : serials) {
+            if (serial.isDirty()) {
+                dirtyIds.add(serial.getEntitlementId());
+            }
+        }
+
+        if (!dirtyIds.isEmpty()) {
+            log.debug("Regenerating {} dirty entitlements for consumer: {}",
+                dirtyIds.size(), consumerUuid);
+            poolManager.regenerateDirtyEntitlements(
+                entitlementCurator.listAllByIds(dirtyIds));
+            serials = listSerials(consumer);
+        }
+
+        List<Long> ids = new ArrayList<Long>(serials.size());
+        for (EntitlementCertificateSerial serial : serials) {
+            if (serial.getSerial() != null) {
+                ids.add(serial.getSerial());
+            }
+        }
+        Collections.sort(ids);
 
         List<CertificateSerialDto> allCerts = new LinkedList<CertificateSerialDto>();
-        for (EntitlementCertificate cert : entCertService
-            .listForConsumer(consumer)) {
-            allCerts.add(new CertificateSerialDto(cert.getSerial().getId()));
+        for (Long id : ids) {
+            allCerts.add(new CertificateSerialDto(id));
+        }
+
+        EntityTag tag = new EntityTag(DigestUtils.md5Hex(StringUtils.join(ids, ",")));
+        ResponseBuilder builder = request == null ? null :
+            request.evaluatePreconditions(tag);
+        if (builder == null) {
+            builder = Response.ok(
+                new GenericEntity<List<CertificateSerialDto>>(allCerts) { });
         }
+        return builder.tag(tag).build();
+    }
 
-        return allCerts;
+    /*
+     * Adapters which do not keep their certificates through our curators can only
+     * hand out the certificates themselves, so the serials are read off those and
+     * the consumer's entitlements.
+     */
+    private List<EntitlementCertificateSerial> listSerials(Consumer consumer) {
+        if (entCertService instanceof BaseEntitlementCertServiceAdapter) {
+            return ((BaseEntitlementCertServiceAdapter) entCertService)
+                .listSerialsForConsumer(consumer);
+        }
+
+        List<EntitlementCertificateSerial> serials =
+            new ArrayList<EntitlementCertificateSerial>();
+        Set<String> certified = new HashSet<String>();
+        for (EntitlementCertificate cert : entCertService.listForConsumer(consumer)) {
+            Entitlement ent = cert.getEntitlement();
+            serials.add(new EntitlementCertificateSerial(cert.getSerial().getId(),
+                ent.getId(), ent.isDirty()));
+            certified.add(ent.getId());
+        }
+        for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
+            if (ent.isDirty() && !certified.contains(ent.getId())) {
+                serials.add(new EntitlementCertificateSerial(null, ent.getId(), true));
+            }
+        }
+        return serials;
     }
 
     /**
@@ -18,10 +18,9 @@ import org.candlepin.auth.Principal;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.IseException;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlPublisher;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
-import org.candlepin.util.CrlFileUtil;
 
 import com.google.inject.Inject;
 
@@ -29,7 +28,6 @@ import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.util.List;
 
 import javax.ws.rs.DELETE;
@@ -38,7 +36,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * CrlResource
@@ -46,19 +48,16 @@ import javax.ws.rs.core.MediaType;
 @Path("/crl")
 public class CrlResource {
 
-    private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
+    private CrlPublisher crlPublisher;
     private Configuration config;
     private CertificateSerialCurator certificateSerialCurator;
 
 
     @Inject
-    public CrlResource(CrlGenerator crlGenerator,
-        CrlFileUtil crlFileUtil, Configuration config,
+    public CrlResource(CrlPublisher crlPublisher, Configuration config,
         CertificateSerialCurator certificateSerialCurator) {
 
-        this.crlGenerator = crlGenerator;
-        this.crlFileUtil = crlFileUtil;
+        this.crlPublisher = crlPublisher;
         this.config = config;
         this.certificateSerialCurator = certificateSerialCurator;
     }
@@ -66,31 +65,43 @@ public class CrlResource {
     /**
      * Retrieves the Certificate Revocation List
      *
+     * When serving CRL snapshots, the last published CRL, followed by any delta
+     * CRL holding revoked serials, is returned along with an ETag and
+     * Last-Modified header, and conditional requests are answered with a 304 if
+     * the CRLs have not changed.
+     *
      * @return a String object
      * @throws CRLException if there is issue generating the CRL
      * @throws IOException if there is a problem serializing the CRL
      * @httpcode 200
+     * @httpcode 304
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
-    public String getCurrentCrl(@Context Principal principal)
+    public Response getCurrentCrl(@Context Principal principal, @Context Request request)
         throws CRLException, IOException {
 
         String filePath = getCrlFilePath();
         File crlFile = new File(filePath);
 
-        byte[] encoded = null;
-
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            if (!config.getBoolean(ConfigProperties.CRL_SERVE_SNAPSHOT)) {
+                byte[] encoded = crlPublisher.publishComplete(crlFile);
+                return Response.ok(new String(encoded)).build();
+            }
+
+            CrlPublisher.Snapshot snapshot = crlPublisher.getSnapshot(crlFile);
+            EntityTag tag = new EntityTag(snapshot.getETag());
+            ResponseBuilder builder = request == null ? null :
+                request.evaluatePreconditions(snapshot.getLastModified(), tag);
+            if (builder == null) {
+                builder = Response.ok(snapshot.getCrl());
+            }
+            return builder.tag(tag).lastModified(snapshot.getLastModified()).build();
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
-
-        return new String(encoded);
     }
 
     /**
@@ -109,16 +120,11 @@ public class CrlResource {
         File crlFile = new File(filePath);
 
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-
-            // get crl file if it exists
             // lookup entitlement, find CertificateSerial
             List<CertificateSerial> serials =
                 certificateSerialCurator.listBySerialIds(serialIds);
 
-            crl = crlGenerator.removeEntries(crl, serials);
-
-            crlFileUtil.writeCRLFile(crlFile,  crl);
+            crlPublisher.unrevoke(crlFile, serials);
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
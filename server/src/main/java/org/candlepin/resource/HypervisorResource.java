@@ -18,8 +18,11 @@ import org.candlepin.auth.Access;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SubResource;
 import org.candlepin.auth.interceptor.Verify;
+import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotFoundException;
+import org.candlepin.common.exceptions.ServiceUnavailableException;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -29,11 +32,18 @@ import org.candlepin.model.HypervisorId;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
+import org.candlepin.pinsetter.core.PinsetterException;
+import org.candlepin.pinsetter.core.PinsetterJobListener;
+import org.candlepin.pinsetter.core.PinsetterKernel;
+import org.candlepin.pinsetter.tasks.HypervisorCheckInJob;
+import org.candlepin.pinsetter.tasks.HypervisorGuestReconcileJob;
 import org.candlepin.resource.dto.HypervisorCheckInResult;
+import org.candlepin.resource.util.HypervisorBulkCheckIn;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
+import org.quartz.JobDetail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
@@ -52,6 +62,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 /**
  * HypervisorResource
@@ -63,14 +74,22 @@ public class HypervisorResource {
     private ConsumerResource consumerResource;
     private I18n i18n;
     private OwnerCurator ownerCurator;
+    private HypervisorBulkCheckIn bulkCheckIn;
+    private PinsetterKernel pinsetterKernel;
+    private Configuration config;
 
     @Inject
     public HypervisorResource(ConsumerResource consumerResource,
-        ConsumerCurator consumerCurator, I18n i18n, OwnerCurator ownerCurator) {
+        ConsumerCurator consumerCurator, I18n i18n, OwnerCurator ownerCurator,
+        HypervisorBulkCheckIn bulkCheckIn, PinsetterKernel pinsetterKernel,
+        Configuration config) {
         this.consumerResource = consumerResource;
         this.consumerCurator = consumerCurator;
         this.i18n = i18n;
         this.ownerCurator = ownerCurator;
+        this.bulkCheckIn = bulkCheckIn;
+        this.pinsetterKernel = pinsetterKernel;
+        this.config = config;
     }
 
     /**
@@ -93,7 +112,6 @@ public class HypervisorResource {
      * will result in failed entries in the resulting HypervisorCheckInResult
      * @return a HypervisorCheckInResult object
      *
-     * @httpcode 202
      * @httpcode 200
      *
      */
@@ -186,6 +204,80 @@ public class HypervisorResource {
         return result;
     }
 
+    /**
+     * Updates the list of Hypervisor Guests in bulk
+     * <p>
+     * Meant for virt-who reports covering many hosts and guests. Works like the
+     * check-in above, but the guest IDs of all hosts are compared in memory and
+     * written in batches, and the revocation of guest entitlements no longer
+     * matching their host is deferred to an asynchronous job. Reports with more
+     * guests than configured by candlepin.hypervisor.async_checkin.guests are
+     * processed entirely by asynchronous jobs of at most that many guests each,
+     * whose statuses are returned instead.
+     *
+     * @param hostGuestMap a mapping of host_id to list of guestIds
+     * @param principal
+     * @param ownerKey key of owner to update
+     * @param createMissing specify whether or not to create missing hypervisors.
+     * Default is true.
+     * @return a HypervisorCheckInResult object, or the job statuses for large reports
+     *
+     * @httpcode 202
+     * @httpcode 200
+     *
+     */
+    @POST
+    @Path("/bulk")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response hypervisorBulkCheckIn(
+        Map<String, List<GuestId>> hostGuestMap, @Context Principal principal,
+        @QueryParam("owner") @Verify(value = Owner.class,
+            require = Access.READ_ONLY,
+            subResource = SubResource.HYPERVISOR) String ownerKey,
+        @QueryParam("create_missing") @DefaultValue("true") boolean createMissing) {
+        log.info("Bulk hypervisor check-in by principal: " + principal);
+
+        if (hostGuestMap == null) {
+            log.debug("Host/Guest mapping provided during hypervisor checkin was null.");
+            throw new BadRequestException(
+                i18n.tr("Host to guest mapping was not provided for hypervisor checkin."));
+        }
+
+        Owner owner = this.getOwner(ownerKey);
+
+        int guests = 0;
+        for (List<GuestId> guestIds : hostGuestMap.values()) {
+            guests += guestIds == null ? 0 : guestIds.size();
+        }
+        int maxGuests = config.getInt(ConfigProperties.HYPERVISOR_ASYNC_CHECKIN_GUESTS);
+        if (guests > maxGuests) {
+            JobDetail[] details = HypervisorCheckInJob.forReport(owner, hostGuestMap,
+                createMissing, maxGuests);
+            log.info("Deferring check-in of {} guest IDs to {} jobs", guests, details.length);
+            // Scheduled by the PinsetterAsyncInterceptor:
+            return Response.status(Response.Status.ACCEPTED)
+                .type(MediaType.APPLICATION_JSON).entity(details).build();
+        }
+
+        HypervisorCheckInResult result = new HypervisorCheckInResult();
+        Map<String, List<String>> hostGuests = bulkCheckIn.checkIn(owner, hostGuestMap,
+            principal, createMissing, result);
+        if (!hostGuests.isEmpty()) {
+            JobDetail detail = HypervisorGuestReconcileJob.forGuests(owner, hostGuests);
+            detail.getJobDataMap().put(PinsetterJobListener.PRINCIPAL_KEY, principal);
+            try {
+                pinsetterKernel.scheduleSingleJob(detail);
+            }
+            catch (PinsetterException e) {
+                throw new ServiceUnavailableException(
+                    "Error scheduling guest reconcile job.", e);
+            }
+        }
+        return Response.status(Response.Status.OK)
+            .type(MediaType.APPLICATION_JSON).entity(result).build();
+    }
+
     /*
      * Get the owner or bust
      */
@@ -51,6 +51,8 @@ import org.candlepin.model.ImportUpstreamConsumer;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.OwnerInfo;
+import org.candlepin.model.OwnerInfoCache;
+import org.candlepin.model.OwnerInfoCache.CachedOwnerInfo;
 import org.candlepin.model.OwnerInfoCurator;
 import org.candlepin.model.PermissionBlueprint;
 import org.candlepin.model.PermissionBlueprintCurator;
@@ -76,6 +78,7 @@ import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.OwnerServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.sync.ConflictOverrides;
+import org.candlepin.sync.ImportTimings;
 import org.candlepin.sync.Importer;
 import org.candlepin.sync.ImporterException;
 import org.candlepin.sync.Meta;
@@ -111,6 +114,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
@@ -133,6 +137,7 @@ public class OwnerResource {
 
     private OwnerCurator ownerCurator;
     private OwnerInfoCurator ownerInfoCurator;
+    private OwnerInfoCache ownerInfoCache;
     private SubscriptionCurator subscriptionCurator;
     private ActivationKeyCurator activationKeyCurator;
     private StatisticCurator statisticCurator;
@@ -182,7 +187,7 @@ public class OwnerResource {
         EnvironmentCurator envCurator, CalculatedAttributesUtil calculatedAttributesUtil,
         ContentOverrideValidator contentOverrideValidator,
         ServiceLevelValidator serviceLevelValidator,
-        OwnerServiceAdapter ownerService) {
+        OwnerServiceAdapter ownerService, OwnerInfoCache ownerInfoCache) {
 
         this.ownerCurator = ownerCurator;
         this.ownerInfoCurator = ownerInfoCurator;
@@ -210,6 +215,7 @@ public class OwnerResource {
         this.contentOverrideValidator = contentOverrideValidator;
         this.serviceLevelValidator = serviceLevelValidator;
         this.ownerService = ownerService;
+        this.ownerInfoCache = ownerInfoCache;
     }
 
     /**
@@ -269,6 +275,9 @@ public class OwnerResource {
 
     /**
      * Retrieves the Owner Info for an Owner
+     * <p>
+     * The info may be served from a cache for a short time, the X-Cache-Age
+     * response header holds its age in seconds.
      *
      * @param ownerKey Owner ID.
      * @return an OwnerInfo object
@@ -279,9 +288,32 @@ public class OwnerResource {
     @Path("/{owner_key}/info")
     @Produces(MediaType.APPLICATION_JSON)
     public OwnerInfo getOwnerInfo(@PathParam("owner_key")
-        @Verify(value = Owner.class, subResource = SubResource.CONSUMERS) String ownerKey) {
+        @Verify(value = Owner.class, subResource = SubResource.CONSUMERS) String ownerKey,
+        @Context Principal principal,
+        @Context HttpServletResponse response) {
         Owner owner = findOwner(ownerKey);
-        return ownerInfoCurator.lookupByOwner(owner);
+        if (!ownerInfoCache.isCacheable(principal, owner)) {
+            setCacheAge(response, 0);
+            return ownerInfoCurator.lookupByOwner(owner);
+        }
+
+        long now = System.currentTimeMillis();
+        CachedOwnerInfo cached = ownerInfoCache.get(owner.getId());
+        if (cached == null) {
+            OwnerInfo info = ownerInfoCurator.lookupByOwner(owner);
+            ownerInfoCache.put(owner.getId(), info, now);
+            setCacheAge(response, 0);
+            return info;
+        }
+        setCacheAge(response, cached.getAge(now));
+        return cached.getInfo();
+    }
+
+    private void setCacheAge(HttpServletResponse response, long ageMillis) {
+        if (response != null) {
+            response.setHeader(OwnerInfoCache.AGE_HEADER,
+                String.valueOf(ageMillis / 1000));
+        }
     }
 
     /**
@@ -1381,6 +1413,11 @@ public class OwnerResource {
         }
         record.setUpstreamConsumer(createImportUpstreamConsumer(owner, null));
         record.setFileName(filename);
+        ImportTimings timings = (ImportTimings) data.get("timings");
+        if (timings != null) {
+            log.info("Import phase timings for owner " + owner.getKey() + ": " + timings);
+            record.setPhaseTimings(StringUtils.abbreviate(timings.toString(), 255));
+        }
 
         String msg = i18n.tr("{0} file imported successfully.", owner.getKey());
         if (!forcedConflicts.isEmpty()) {
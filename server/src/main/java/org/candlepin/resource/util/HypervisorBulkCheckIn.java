@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resource.util;
+
+import org.candlepin.audit.EventFactory;
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.GuestIdCurator;
+import org.candlepin.model.HypervisorId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.VirtConsumerMap;
+import org.candlepin.resource.ConsumerResource;
+import org.candlepin.resource.dto.HypervisorCheckInResult;
+import org.candlepin.util.Util;
+
+import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnap.commons.i18n.I18n;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Applies a virt-who host to guest mapping for many hypervisors at once.
+ *
+ * Unlike the per host consumer update, the guest IDs of all reported hosts are read
+ * with a single query, diffed in memory and written back with batched JDBC. The
+ * revocation of guest entitlements which no longer match their host is not done
+ * here, the guests needing it are returned so the work can be deferred to a
+ * {@link org.candlepin.pinsetter.tasks.HypervisorGuestReconcileJob}.
+ */
+public class HypervisorBulkCheckIn {
+    private static Logger log = LoggerFactory.getLogger(HypervisorBulkCheckIn.class);
+
+    private ConsumerResource consumerResource;
+    private ConsumerCurator consumerCurator;
+    private GuestIdCurator guestIdCurator;
+    private EventFactory eventFactory;
+    private EventSink sink;
+    private I18n i18n;
+
+    @Inject
+    public HypervisorBulkCheckIn(ConsumerResource consumerResource,
+        ConsumerCurator consumerCurator, GuestIdCurator guestIdCurator,
+        EventFactory eventFactory, EventSink sink, I18n i18n) {
+        this.consumerResource = consumerResource;
+        this.consumerCurator = consumerCurator;
+        this.guestIdCurator = guestIdCurator;
+        this.eventFactory = eventFactory;
+        this.sink = sink;
+        this.i18n = i18n;
+    }
+
+    /**
+     * Updates the guest IDs of every host in the mapping, creating the missing
+     * hypervisor consumers if requested.
+     *
+     * @param owner owner of the hypervisors
+     * @param hostGuestMap a mapping of host_id to list of guestIds
+     * @param principal principal creating the missing hypervisors
+     * @param createMissing whether or not to create missing hypervisors
+     * @param result collects the created, updated, unchanged and failed hosts
+     * @return UUIDs of the registered guests whose entitlements must be checked
+     * against their new host, keyed by the UUID of that host consumer
+     */
+    @Transactional
+    public Map<String, List<String>> checkIn(Owner owner,
+        Map<String, List<GuestId>> hostGuestMap, Principal principal,
+        boolean createMissing, HypervisorCheckInResult result) {
+
+        // Maps virt hypervisor ID to registered consumer for that hypervisor:
+        VirtConsumerMap hypervisorConsumersMap =
+            consumerCurator.getHostConsumersMap(owner, hostGuestMap.keySet());
+
+        List<String> allGuestIds = new ArrayList<String>();
+        for (List<GuestId> guestIds : hostGuestMap.values()) {
+            if (guestIds != null) {
+                for (GuestId guestId : guestIds) {
+                    allGuestIds.add(guestId.getGuestId());
+                }
+            }
+        }
+        // Maps virt guest ID to registered consumer for guest, if one exists:
+        VirtConsumerMap guestConsumersMap =
+            consumerCurator.getGuestConsumersMap(owner, allGuestIds);
+        // Maps virt guest ID to the UUID of the host which last reported it:
+        Map<String, String> guestHostUuids =
+            guestIdCurator.getReportingHostUuids(owner, allGuestIds);
+
+        List<String> hostIds = new ArrayList<String>();
+        for (String hypervisorId : hostGuestMap.keySet()) {
+            Consumer host = hypervisorConsumersMap.get(hypervisorId);
+            if (host != null) {
+                hostIds.add(host.getId());
+            }
+        }
+        Map<String, List<GuestId>> existingGuestIds =
+            guestIdCurator.getGuestIdsByConsumer(hostIds);
+
+        List<GuestId> inserts = new ArrayList<GuestId>();
+        List<GuestId> deletes = new ArrayList<GuestId>();
+        Map<String, List<String>> reconcile = new HashMap<String, List<String>>();
+        Date now = new Date();
+
+        for (Entry<String, List<GuestId>> hostEntry : hostGuestMap.entrySet()) {
+            String hypervisorId = hostEntry.getKey();
+            List<GuestId> incoming = hostEntry.getValue() == null ?
+                new ArrayList<GuestId>() : hostEntry.getValue();
+            try {
+                log.info("Syncing virt host: " + hypervisorId +
+                    " (" + incoming.size() + " guest IDs)");
+
+                Consumer host = hypervisorConsumersMap.get(hypervisorId);
+                if (host == null) {
+                    if (!createMissing) {
+                        log.info("Unable to find hypervisor with id " +
+                            hypervisorId + " in org " + owner.getKey());
+                        result.failed(hypervisorId, i18n.tr(
+                            "Unable to find hypervisor in org ''{0}''", owner.getKey()));
+                        continue;
+                    }
+                    log.info("Registering new host consumer for hypervisor ID: {}",
+                        hypervisorId);
+                    // New hosts are few, let them persist their guests through the session.
+                    host = createConsumerForHypervisorId(hypervisorId, owner, principal,
+                        distinct(incoming));
+                    for (GuestId guestId : host.getGuestIds()) {
+                        sink.queueEvent(eventFactory.guestIdCreated(guestId));
+                    }
+                    result.created(host);
+                }
+                else {
+                    List<GuestId> existing = existingGuestIds.get(host.getId());
+                    if (existing == null) {
+                        existing = Collections.emptyList();
+                    }
+                    List<GuestId> removed = difference(existing, incoming);
+                    List<GuestId> added = difference(distinct(incoming), existing);
+
+                    for (GuestId guestId : removed) {
+                        guestId.setConsumer(host);
+                        deletes.add(guestId);
+                        sink.queueEvent(eventFactory.guestIdDeleted(guestId));
+                    }
+                    for (GuestId guestId : added) {
+                        GuestId created = new GuestId(guestId.getGuestId(), host,
+                            guestId.getAttributes());
+                        inserts.add(created);
+                        sink.queueEvent(eventFactory.guestIdCreated(created));
+                    }
+
+                    // Always record a guest ID checkin, it is used to find which host
+                    // most recently reported a guest.
+                    host.addGuestIdCheckIn();
+                    if (removed.isEmpty() && added.isEmpty()) {
+                        result.unchanged(host);
+                    }
+                    else {
+                        host.setUpdated(now);
+                        result.updated(host);
+                    }
+                }
+
+                addGuestsToReconcile(host, incoming, guestConsumersMap, guestHostUuids,
+                    reconcile);
+            }
+            catch (Exception e) {
+                log.error("Hypervisor checkin failed", e);
+                result.failed(hypervisorId, e.getMessage());
+            }
+        }
+
+        guestIdCurator.batchDelete(deletes);
+        guestIdCurator.batchInsert(inserts);
+        log.info("Hypervisor check-in added {} and removed {} guest IDs",
+            inserts.size(), deletes.size());
+        return reconcile;
+    }
+
+    /**
+     * Revokes the entitlements of a guest which do not match the host now reporting
+     * it, and auto-heals the guest afterwards. Runs in its own transaction so one
+     * failing guest does not undo the others.
+     *
+     * @param hostUuid UUID of the host consumer reporting the guest
+     * @param guestUuid UUID of the guest consumer
+     */
+    @Transactional
+    public void reconcileGuest(String hostUuid, String guestUuid) {
+        Consumer host = consumerCurator.findByUuid(hostUuid);
+        Consumer guest = consumerCurator.findByUuid(guestUuid);
+        if (host == null || guest == null) {
+            log.debug("Host {} or guest {} no longer exists, skipping.", hostUuid,
+                guestUuid);
+            return;
+        }
+        consumerResource.revokeGuestEntitlementsNotMatchingHost(host, guest);
+    }
+
+    /*
+     * Registered guests need their entitlements checked unless the host was already
+     * the last one to report them, mirroring the per host consumer update.
+     */
+    private void addGuestsToReconcile(Consumer host, List<GuestId> incoming,
+        VirtConsumerMap guestConsumersMap, Map<String, String> guestHostUuids,
+        Map<String, List<String>> reconcile) {
+        for (GuestId guestId : incoming) {
+            Consumer guest = guestConsumersMap.get(guestId.getGuestId());
+            if (guest == null) {
+                continue;
+            }
+
+            String lastHostUuid = getHostUuid(guestHostUuids, guestId.getGuestId());
+            if (host.getUuid().equals(lastHostUuid)) {
+                continue;
+            }
+            if (lastHostUuid != null) {
+                log.warn("Guest {} was associated with another host, entitlements " +
+                    "related to host {} will be revoked.", guestId.getGuestId(),
+                    lastHostUuid);
+            }
+
+            List<String> guests = reconcile.get(host.getUuid());
+            if (guests == null) {
+                guests = new ArrayList<String>();
+                reconcile.put(host.getUuid(), guests);
+            }
+            guests.add(guest.getUuid());
+        }
+    }
+
+    /*
+     * Looks the guest up the way VirtConsumerMap does, ignoring case and endianness.
+     */
+    private String getHostUuid(Map<String, String> guestHostUuids, String guestId) {
+        String lower = guestId.toLowerCase();
+        String hostUuid = guestHostUuids.get(lower);
+        if (hostUuid == null) {
+            hostUuid = guestHostUuids.get(Util.transformUuid(lower));
+        }
+        return hostUuid;
+    }
+
+    /*
+     * Guest IDs of the first list missing from the second one, comparing them the way
+     * GuestId.equals does but in linear time.
+     */
+    private List<GuestId> difference(List<GuestId> guestIds, List<GuestId> others) {
+        Set<List<Object>> otherKeys = new HashSet<List<Object>>();
+        for (GuestId other : others) {
+            otherKeys.add(key(other));
+        }
+
+        List<GuestId> result = new ArrayList<GuestId>();
+        for (GuestId guestId : guestIds) {
+            if (!otherKeys.contains(key(guestId))) {
+                result.add(guestId);
+            }
+        }
+        return result;
+    }
+
+    private List<GuestId> distinct(List<GuestId> guestIds) {
+        Set<List<Object>> seen = new HashSet<List<Object>>();
+        List<GuestId> result = new ArrayList<GuestId>();
+        for (GuestId guestId : guestIds) {
+            if (seen.add(key(guestId))) {
+                result.add(guestId);
+            }
+        }
+        return result;
+    }
+
+    private static List<Object> key(GuestId guestId) {
+        return Arrays.<Object>asList(guestId.getGuestId().toLowerCase(),
+            guestId.getAttributes());
+    }
+
+    /*
+     * Create a new hypervisor type consumer to represent the incoming hypervisorId
+     */
+    private Consumer createConsumerForHypervisorId(String incHypervisorId,
+        Owner owner, Principal principal, List<GuestId> guestIds) {
+        Consumer consumer = new Consumer();
+        consumer.setName(incHypervisorId);
+        consumer.setType(new ConsumerType(ConsumerTypeEnum.HYPERVISOR));
+        consumer.setFact("uname.machine", "x86_64");
+        List<GuestId> hostGuestIds = new ArrayList<GuestId>();
+        for (GuestId guestId : guestIds) {
+            hostGuestIds.add(new GuestId(guestId.getGuestId(), consumer,
+                guestId.getAttributes()));
+        }
+        consumer.setGuestIds(hostGuestIds);
+        consumer.setOwner(owner);
+        consumer.setHypervisorId(new HypervisorId(consumer, incHypervisorId));
+        return consumerResource.create(consumer, principal, null, owner.getKey(), null);
+    }
+}
@@ -16,6 +16,7 @@ package org.candlepin.resteasy.interceptor;
 
 import org.candlepin.auth.Access;
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SubResource;
@@ -73,7 +74,6 @@ import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 import org.xnap.commons.i18n.I18n;
 
-import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -106,6 +106,7 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
     private UserServiceAdapter userService;
     private List<AuthProvider> providers = new ArrayList<AuthProvider>();
     private javax.inject.Provider<I18n> i18nProvider;
+    private ConsumerPrincipalCache principalCache;
     private Marker duplicate;
 
     @SuppressWarnings("rawtypes")
@@ -115,7 +116,7 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
     public AuthInterceptor(Configuration config, UserServiceAdapter userService,
         ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator, Injector injector,
-        javax.inject.Provider<I18n> i18nProvider) {
+        javax.inject.Provider<I18n> i18nProvider, ConsumerPrincipalCache principalCache) {
         super();
         this.consumerCurator = consumerCurator;
         this.injector = injector;
@@ -123,6 +124,7 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
         this.userService = userService;
         this.deletedConsumerCurator = deletedConsumerCurator;
         this.i18nProvider = i18nProvider;
+        this.principalCache = principalCache;
         this.duplicate = MarkerFactory.getMarker("DUPLICATE");
 
         createStoreMap();
@@ -147,8 +149,8 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
         // use oauth
         if (config.getBoolean(ConfigProperties.OAUTH_AUTHENTICATION)) {
             log.debug("OAuth Authentication is enabled.");
-            TrustedConsumerAuth consumerAuth =
-                new TrustedConsumerAuth(consumerCurator, deletedConsumerCurator, i18nProvider);
+            TrustedConsumerAuth consumerAuth = new TrustedConsumerAuth(consumerCurator,
+                deletedConsumerCurator, i18nProvider, principalCache);
             TrustedUserAuth userAuth = new TrustedUserAuth(userService, injector);
             TrustedExternalSystemAuth systemAuth = new TrustedExternalSystemAuth();
             providers.add(new OAuth(consumerAuth, userAuth, systemAuth, injector, config));
@@ -165,7 +167,8 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
             providers.add(
                 new SSLAuth(consumerCurator,
                     deletedConsumerCurator,
-                    i18nProvider));
+                    i18nProvider,
+                    principalCache));
         }
         // trusted headers
         if (config.getBoolean(ConfigProperties.TRUSTED_AUTHENTICATION)) {
@@ -173,7 +176,8 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
             providers.add(
                 new TrustedConsumerAuth(consumerCurator,
                     deletedConsumerCurator,
-                    i18nProvider));
+                    i18nProvider,
+                    principalCache));
             providers.add(new TrustedUserAuth(userService, injector));
         }
     }
@@ -222,15 +226,17 @@ public class AuthInterceptor implements PreProcessInterceptor, AcceptedByMethod
                 Marker m =
                     (LoggerFactory.getLogger(LoggingFilter.class).isDebugEnabled()) ?
                     duplicate : null;
-                try {
-                    TeeHttpServletRequest teeRequest = new TeeHttpServletRequest(
-                        ResteasyProviderFactory.getContextData(HttpServletRequest.class));
-                    log.debug(m, "{}", ServletLogger.logBasicRequestInfo(teeRequest));
+                HttpServletRequest servletRequest =
+                    ResteasyProviderFactory.getContextData(HttpServletRequest.class);
+                log.debug(m, "{}", ServletLogger.logBasicRequestInfo(servletRequest));
+
+                // The body can only be reprinted if the LoggingFilter captured it,
+                // reading it here would consume it.
+                TeeHttpServletRequest teeRequest = (TeeHttpServletRequest)
+                    servletRequest.getAttribute(LoggingFilter.CAPTURED_REQUEST_ATTRIBUTE);
+                if (teeRequest != null) {
                     log.debug(m, "{}", ServletLogger.logRequest(teeRequest));
                 }
-                catch (IOException e) {
-                    log.info("Couldn't log request information", e);
-                }
             }
         }
 
@@ -15,6 +15,7 @@
 package org.candlepin.resteasy.interceptor;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.common.exceptions.GoneException;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
@@ -37,15 +38,17 @@ public abstract class ConsumerAuth implements AuthProvider {
 
     protected ConsumerCurator consumerCurator;
     protected DeletedConsumerCurator deletedConsumerCurator;
+    protected ConsumerPrincipalCache principalCache;
     private Provider<I18n> i18nProvider;
 
     @Inject
     ConsumerAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
-        Provider<I18n> i18nProvider) {
+        Provider<I18n> i18nProvider, ConsumerPrincipalCache principalCache) {
         this.consumerCurator = consumerCurator;
         this.deletedConsumerCurator = deletedConsumerCurator;
         this.i18nProvider = i18nProvider;
+        this.principalCache = principalCache;
     }
 
     public ConsumerPrincipal createPrincipal(String consumerUuid) {
@@ -14,6 +14,8 @@
  */
 package org.candlepin.resteasy.interceptor;
 
+import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.Principal;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
@@ -44,8 +46,8 @@ class SSLAuth extends ConsumerAuth {
     @Inject
     SSLAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
-        Provider<I18n> i18nProvider) {
-        super(consumerCurator, deletedConsumerCurator, i18nProvider);
+        Provider<I18n> i18nProvider, ConsumerPrincipalCache principalCache) {
+        super(consumerCurator, deletedConsumerCurator, i18nProvider, principalCache);
     }
 
     public Principal getPrincipal(HttpRequest request) {
@@ -66,7 +68,23 @@ class SSLAuth extends ConsumerAuth {
         // itself.
         X509Certificate identityCert = certs[0];
 
-        return createPrincipal(parseUuid(identityCert));
+        // A certificate seen recently spares us parsing its DN and looking up
+        // the consumer again.
+        String cacheKey = cacheKey(identityCert);
+        ConsumerPrincipal principal = principalCache.get(cacheKey);
+        if (principal == null) {
+            principal = createPrincipal(parseUuid(identityCert));
+            principalCache.put(cacheKey, principal);
+        }
+        return principal;
+    }
+
+    // Certificates are identified by their issuer and serial number.
+    private String cacheKey(X509Certificate cert) {
+        if (cert.getSerialNumber() == null) {
+            return null;
+        }
+        return "cert:" + cert.getIssuerX500Principal() + ":" + cert.getSerialNumber();
     }
 
     // Pulls the consumer uuid off of the x509 cert.
@@ -15,6 +15,7 @@
 package org.candlepin.resteasy.interceptor;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.Principal;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.DeletedConsumerCurator;
@@ -40,8 +41,8 @@ class TrustedConsumerAuth extends ConsumerAuth {
     @Inject
     TrustedConsumerAuth(ConsumerCurator consumerCurator,
         DeletedConsumerCurator deletedConsumerCurator,
-        Provider<I18n> i18nProvider) {
-        super(consumerCurator, deletedConsumerCurator, i18nProvider);
+        Provider<I18n> i18nProvider, ConsumerPrincipalCache principalCache) {
+        super(consumerCurator, deletedConsumerCurator, i18nProvider, principalCache);
     }
 
     public Principal getPrincipal(HttpRequest request) {
@@ -56,7 +57,12 @@ class TrustedConsumerAuth extends ConsumerAuth {
         }
 
         if (consumerUUID != null) {
-            principal = createPrincipal(consumerUUID);
+            String cacheKey = "uuid:" + consumerUUID;
+            principal = principalCache.get(cacheKey);
+            if (principal == null) {
+                principal = createPrincipal(consumerUUID);
+                principalCache.put(cacheKey, principal);
+            }
         }
 
         return principal;
@@ -17,7 +17,15 @@ package org.candlepin.service;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.EntitlementCertificate;
 import org.candlepin.model.EntitlementCertificateCurator;
+import org.candlepin.model.EntitlementCertificateSerial;
+import org.candlepin.util.CertificateSizeException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -29,12 +37,66 @@ import java.util.List;
 public abstract class BaseEntitlementCertServiceAdapter implements
     EntitlementCertServiceAdapter {
 
+    private static Logger log =
+        LoggerFactory.getLogger(BaseEntitlementCertServiceAdapter.class);
+
     protected EntitlementCertificateCurator entCertCurator;
 
+    /**
+     * Generate entitlement certificates for a batch of entitlements.
+     *
+     * Certificates are persisted in the order of the requests, subclasses are
+     * free to build and sign them concurrently. Not part of
+     * {@link EntitlementCertServiceAdapter}, entitlements are regenerated one by one
+     * for adapters which do not extend this class.
+     *
+     * This implementation generates the certificates one at a time.
+     *
+     * @param requests entitlements to generate certificates for.
+     * @return the generated certificates in request order, null for entitlements
+     * whose certificate would exceed the allowed size.
+     * @throws IOException thrown if there's a problem reading the cert.
+     * @throws GeneralSecurityException thrown security problem
+     */
+    public List<EntitlementCertificate> generateEntitlementCerts(
+        List<EntitlementCertRequest> requests)
+        throws GeneralSecurityException, IOException {
+
+        List<EntitlementCertificate> certs =
+            new ArrayList<EntitlementCertificate>(requests.size());
+        for (EntitlementCertRequest request : requests) {
+            try {
+                certs.add(generateEntitlementCert(request.getEntitlement(),
+                    request.getSubscription(), request.getProduct()));
+            }
+            catch (CertificateSizeException cse) {
+                log.warn("The certificate cannot be generated at this time: " +
+                    cse.getMessage());
+                certs.add(null);
+            }
+        }
+        return certs;
+    }
+
     @Override
     public List<EntitlementCertificate> listForConsumer(
         Consumer consumer) {
         return entCertCurator.listForConsumer(consumer);
     }
 
+    /**
+     * Return the serials of all entitlement certificates for a given consumer
+     * without loading the certificates themselves.
+     *
+     * Not part of {@link EntitlementCertServiceAdapter}, adapters which do not
+     * extend this class only provide the certificates through listForConsumer.
+     *
+     * @param consumer
+     * @return Serials and entitlement state for this consumer's certs.
+     */
+    public List<EntitlementCertificateSerial> listSerialsForConsumer(
+        Consumer consumer) {
+        return entCertCurator.listSerialsForConsumer(consumer);
+    }
+
 }
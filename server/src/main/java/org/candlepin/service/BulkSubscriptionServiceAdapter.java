@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service;
+
+import org.candlepin.model.Subscription;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Optional extension of {@link SubscriptionServiceAdapter} for adapters which can
+ * look up several subscriptions in one call. Pools are refreshed with one lookup
+ * per subscription when the configured adapter does not implement it.
+ */
+public interface BulkSubscriptionServiceAdapter extends SubscriptionServiceAdapter {
+
+    /**
+     * Lookup several subscriptions at once. Ids which do not match a subscription
+     * are left out of the result.
+     * @param subscriptionIds ids of the subscriptions to return.
+     * @return Subscriptions whose ids match one of subscriptionIds, in no
+     * particular order.
+     */
+    List<Subscription> getSubscriptions(Collection<String> subscriptionIds);
+}
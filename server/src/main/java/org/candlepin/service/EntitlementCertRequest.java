@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.service;
+
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Product;
+import org.candlepin.model.Subscription;
+
+/**
+ * EntitlementCertRequest
+ *
+ * An entitlement to generate a certificate for, along with the subscription and
+ * product it grants.
+ */
+public class EntitlementCertRequest {
+
+    private Entitlement entitlement;
+    private Subscription subscription;
+    private Product product;
+
+    /**
+     * @param entitlement entitlement which grants the cert.
+     * @param subscription Subscription being used, null for pools without one.
+     * @param product Product being consumed.
+     */
+    public EntitlementCertRequest(Entitlement entitlement, Subscription subscription,
+        Product product) {
+        this.entitlement = entitlement;
+        this.subscription = subscription;
+        this.product = product;
+    }
+
+    public Entitlement getEntitlement() {
+        return entitlement;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
@@ -32,9 +32,11 @@ import org.candlepin.model.ProductContent;
 import org.candlepin.model.ProvidedProduct;
 import org.candlepin.model.Subscription;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SigningExecutor;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
 import org.candlepin.service.BaseEntitlementCertServiceAdapter;
+import org.candlepin.service.EntitlementCertRequest;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
 import org.candlepin.util.Util;
@@ -48,6 +50,7 @@ import com.google.inject.Inject;
 import org.apache.commons.lang.BooleanUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.xnap.commons.i18n.I18n;
 
 import java.io.ByteArrayInputStream;
@@ -57,12 +60,17 @@ import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * DefaultEntitlementCertServiceAdapter
@@ -79,6 +87,7 @@ public class DefaultEntitlementCertServiceAdapter extends
     private EntitlementCurator entCurator;
     private I18n i18n;
     private Configuration config;
+    private SigningExecutor signer;
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultEntitlementCertServiceAdapter.class);
@@ -92,7 +101,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         CertificateSerialCurator serialCurator,
         ProductServiceAdapter productAdapter,
         EntitlementCurator entCurator, I18n i18n,
-        Configuration config) {
+        Configuration config, SigningExecutor signer) {
 
         this.pki = pki;
         this.extensionUtil = extensionUtil;
@@ -104,6 +113,7 @@ public class DefaultEntitlementCertServiceAdapter extends
         this.entCurator = entCurator;
         this.i18n = i18n;
         this.config = config;
+        this.signer = signer;
     }
 
 
@@ -163,6 +173,19 @@ public class DefaultEntitlementCertServiceAdapter extends
         KeyPair keyPair, boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
 
+        return prepareX509Certificate(ent, product, products, serialNumber, keyPair,
+            useContentPrefix).createX509Certificate();
+    }
+
+    /*
+     * Gathers everything the certificate is built from. This reads from the
+     * session and has to run on the caller's thread, the signing itself does not.
+     */
+    private PendingCertificate prepareX509Certificate(Entitlement ent,
+        Product product, Set<Product> products, BigInteger serialNumber,
+        KeyPair keyPair, boolean useContentPrefix)
+        throws IOException {
+
         // oidutil is busted at the moment, so do this manually
         Set<X509ExtensionWrapper> extensions;
         Set<X509ByteExtensionWrapper> byteExtensions =
@@ -184,10 +207,8 @@ public class DefaultEntitlementCertServiceAdapter extends
         }
 
         setupEntitlementEndDate(ent);
-        X509Certificate x509Cert =  this.pki.createX509Certificate(
-                createDN(ent), extensions, byteExtensions, ent.getStartDate(),
-                ent.getEndDate(), keyPair, serialNumber, null);
-        return x509Cert;
+        return new PendingCertificate(ent, extensions, byteExtensions, serialNumber,
+            keyPair);
     }
 
     /**
@@ -351,10 +372,110 @@ public class DefaultEntitlementCertServiceAdapter extends
         return output.toString().replace("%24", "$");
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Everything which reads from the session is prepared on the caller's thread,
+     * the certificates are then built and signed on the shared signing threads and
+     * persisted back on the caller's thread as they complete, in request order.
+     */
+    @Override
+    public List<EntitlementCertificate> generateEntitlementCerts(
+        List<EntitlementCertRequest> requests)
+        throws GeneralSecurityException, IOException {
+
+        if (Math.min(signer.getThreads(), requests.size()) <= 1) {
+            return super.generateEntitlementCerts(requests);
+        }
+
+        List<PendingCertificate> pending =
+            new ArrayList<PendingCertificate>(requests.size());
+        for (EntitlementCertRequest request : requests) {
+            try {
+                pending.add(prepareEntitlementCert(request.getEntitlement(),
+                    request.getSubscription(), request.getProduct(), false));
+            }
+            catch (CertificateSizeException cse) {
+                log.warn("The certificate cannot be generated at this time: " +
+                    cse.getMessage());
+                pending.add(null);
+            }
+        }
+
+        // Hand our logging context to the worker threads:
+        @SuppressWarnings("unchecked")
+        final Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        List<Future<PendingCertificate>> signed =
+            new ArrayList<Future<PendingCertificate>>(pending.size());
+        try {
+            for (final PendingCertificate cert : pending) {
+                if (cert == null) {
+                    signed.add(null);
+                    continue;
+                }
+                signed.add(signer.submit(new Callable<PendingCertificate>() {
+                    @Override
+                    public PendingCertificate call() throws Exception {
+                        if (mdc != null) {
+                            MDC.setContextMap(mdc);
+                        }
+                        try {
+                            return cert.sign();
+                        }
+                        finally {
+                            MDC.clear();
+                        }
+                    }
+                }));
+            }
+
+            List<EntitlementCertificate> certs =
+                new ArrayList<EntitlementCertificate>(signed.size());
+            for (Future<PendingCertificate> result : signed) {
+                certs.add(result == null ? null : persist(result.get()));
+            }
+            return certs;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating entitlement certs", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        finally {
+            // Leave the shared threads to other work if we failed part way:
+            for (Future<PendingCertificate> result : signed) {
+                if (result != null) {
+                    result.cancel(true);
+                }
+            }
+        }
+    }
+
     private EntitlementCertificate generateEntitlementCert(Entitlement entitlement,
         Subscription sub, Product product, boolean thisIsUeberCert)
         throws GeneralSecurityException, IOException {
 
+        return persist(prepareEntitlementCert(entitlement, sub, product,
+            thisIsUeberCert).sign());
+    }
+
+    private PendingCertificate prepareEntitlementCert(Entitlement entitlement,
+        Subscription sub, Product product, boolean thisIsUeberCert)
+        throws IOException {
+
         log.info("Generating entitlement cert.");
 
         KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
@@ -371,43 +492,33 @@ public class DefaultEntitlementCertServiceAdapter extends
         // is available in the upstream certificate.
         products.addAll(getDerivedProductsForDistributor(sub, entitlement));
 
-        log.info("Creating X509 cert.");
-        X509Certificate x509Cert = createX509Certificate(entitlement,
+        PendingCertificate pending = prepareX509Certificate(entitlement,
             product, products, BigInteger.valueOf(serial.getId()), keyPair,
             !thisIsUeberCert);
-
-        EntitlementCertificate cert = new EntitlementCertificate();
-        cert.setSerial(serial);
-        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
+        pending.serial = serial;
 
         products.add(product);
-        Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
-        String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
-
-        log.info("Getting PEM encoded cert.");
-        String pem = new String(this.pki.getPemEncoded(x509Cert));
-
         if (shouldGenerateV3(entitlement)) {
-            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(products,
+            Map<String, EnvironmentContent> promotedContent =
+                getPromotedContent(entitlement);
+            String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
+            pending.payload = v3extensionUtil.createEntitlementDataPayload(products,
                 entitlement, contentPrefix, promotedContent);
-            String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
-            payload += Util.toBase64(payloadBytes);
-            payload += "-----END ENTITLEMENT DATA-----\n";
-
-            byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payloadBytes));
-            String signature = "-----BEGIN RSA SIGNATURE-----\n";
-            signature += Util.toBase64(bytes);
-            signature += "-----END RSA SIGNATURE-----\n";
-
-            pem += payload + signature;
         }
+        return pending;
+    }
 
-        cert.setCert(pem);
+    private EntitlementCertificate persist(PendingCertificate pending) {
+        Entitlement entitlement = pending.entitlement;
 
+        EntitlementCertificate cert = new EntitlementCertificate();
+        cert.setSerial(pending.serial);
+        cert.setKeyAsBytes(pending.key);
+        cert.setCert(pending.pem);
         cert.setEntitlement(entitlement);
 
         if (log.isDebugEnabled()) {
-            log.debug("Generated cert serial number: " + serial.getId());
+            log.debug("Generated cert serial number: " + pending.serial.getId());
             log.debug("Key: " + cert.getKey());
             log.debug("Cert: " + cert.getCert());
         }
@@ -423,4 +534,67 @@ public class DefaultEntitlementCertServiceAdapter extends
         sb.append(ent.getId());
         return sb.toString();
     }
+
+    /**
+     * A certificate prepared from the session, waiting to be built and signed.
+     * Signing only touches the values captured here, so it is safe to do off the
+     * caller's thread.
+     */
+    private class PendingCertificate {
+        private Entitlement entitlement;
+        private String dn;
+        private Set<X509ExtensionWrapper> extensions;
+        private Set<X509ByteExtensionWrapper> byteExtensions;
+        private Date startDate;
+        private Date endDate;
+        private BigInteger serialNumber;
+        private KeyPair keyPair;
+        private CertificateSerial serial;
+        private byte[] payload;
+
+        private String pem;
+        private byte[] key;
+
+        PendingCertificate(Entitlement entitlement, Set<X509ExtensionWrapper> extensions,
+            Set<X509ByteExtensionWrapper> byteExtensions, BigInteger serialNumber,
+            KeyPair keyPair) {
+            this.entitlement = entitlement;
+            this.dn = createDN(entitlement);
+            this.extensions = extensions;
+            this.byteExtensions = byteExtensions;
+            this.startDate = entitlement.getStartDate();
+            this.endDate = entitlement.getEndDate();
+            this.serialNumber = serialNumber;
+            this.keyPair = keyPair;
+        }
+
+        X509Certificate createX509Certificate()
+            throws GeneralSecurityException, IOException {
+            return pki.createX509Certificate(dn, extensions, byteExtensions, startDate,
+                endDate, keyPair, serialNumber, null);
+        }
+
+        PendingCertificate sign() throws GeneralSecurityException, IOException {
+            log.info("Creating X509 cert.");
+            X509Certificate x509Cert = createX509Certificate();
+            key = pki.getPemEncoded(keyPair.getPrivate());
+
+            log.info("Getting PEM encoded cert.");
+            pem = new String(pki.getPemEncoded(x509Cert));
+
+            if (payload != null) {
+                String payloadPem = "-----BEGIN ENTITLEMENT DATA-----\n";
+                payloadPem += Util.toBase64(payload);
+                payloadPem += "-----END ENTITLEMENT DATA-----\n";
+
+                byte[] bytes = pki.getSHA256WithRSAHash(new ByteArrayInputStream(payload));
+                String signature = "-----BEGIN RSA SIGNATURE-----\n";
+                signature += Util.toBase64(bytes);
+                signature += "-----END RSA SIGNATURE-----\n";
+
+                pem += payloadPem + signature;
+            }
+            return this;
+        }
+    }
 }
@@ -23,7 +23,7 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductCurator;
 import org.candlepin.model.Subscription;
 import org.candlepin.model.SubscriptionCurator;
-import org.candlepin.service.SubscriptionServiceAdapter;
+import org.candlepin.service.BulkSubscriptionServiceAdapter;
 
 import com.google.inject.Inject;
 
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnap.commons.i18n.I18n;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,7 +41,7 @@ import java.util.Set;
  * default SubscriptionAdapter implementation
  */
 public class DefaultSubscriptionServiceAdapter implements
-        SubscriptionServiceAdapter {
+        BulkSubscriptionServiceAdapter {
 
     private static Logger log =
         LoggerFactory.getLogger(DefaultSubscriptionServiceAdapter.class);
@@ -67,6 +68,11 @@ public class DefaultSubscriptionServiceAdapter implements
         return subCurator.lookupByOwnerAndId(subscriptionId);
     }
 
+    @Override
+    public List<Subscription> getSubscriptions(Collection<String> subscriptionIds) {
+        return subCurator.listByIds(subscriptionIds);
+    }
+
     @Override
     public List<Subscription> getSubscriptions(Owner owner) {
         return subCurator.listByOwner(owner);
@@ -78,6 +78,16 @@ public class EntitlementImporter {
         throws IOException, SyncDataFormatException {
 
         Entitlement entitlement = mapper.readValue(reader, Entitlement.class);
+        return importObject(entitlement, owner, productsById, consumer, meta);
+    }
+
+    /**
+     * Turns an entitlement already read from the manifest into a subscription.
+     */
+    public Subscription importObject(Entitlement entitlement, Owner owner,
+        Map<String, Product> productsById, ConsumerDto consumer, Meta meta)
+        throws SyncDataFormatException {
+
         Subscription subscription = new Subscription();
 
         subscription.setUpstreamPoolId(entitlement.getPool().getId());
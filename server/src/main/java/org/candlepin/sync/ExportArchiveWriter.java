@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.pki.SignatureOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.Signature;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ExportArchiveWriter
+ *
+ * Writes a signed export archive in a single pass. Files are compressed into the
+ * inner consumer_export.zip as they are exported, while that archive is written as
+ * the first entry of the outer one and its bytes are signed. The signature entry
+ * follows once the inner archive is complete, so nothing is staged on disk or read
+ * back.
+ *
+ * Only one file can be written at a time, it is complete once its stream or writer
+ * is closed.
+ */
+class ExportArchiveWriter {
+
+    static final String INNER_ARCHIVE = "consumer_export.zip";
+    static final String SIGNATURE = "signature";
+    private static final String ROOT = "export/";
+    private static final int BUFFER_SIZE = 8192;
+
+    private ZipOutputStream outer;
+    private ZipOutputStream inner;
+    private SignatureOutputStream signed;
+
+    /**
+     * @param out the stream to write the archive to, left open when done
+     * @param signature a signature initialized for signing the inner archive
+     * @param comment comment of the inner archive
+     * @param signedComment comment of the outer archive
+     */
+    ExportArchiveWriter(OutputStream out, Signature signature, String comment,
+        String signedComment) throws IOException {
+        outer = new ZipOutputStream(out);
+        outer.setComment(signedComment);
+        outer.putNextEntry(new ZipEntry(INNER_ARCHIVE));
+
+        signed = new SignatureOutputStream(outer, signature);
+        inner = new ZipOutputStream(signed);
+        inner.setComment(comment);
+    }
+
+    /**
+     * @param path path of the file, relative to the export directory
+     * @return a stream for the content of the file
+     */
+    OutputStream newFile(String path) throws IOException {
+        inner.putNextEntry(new ZipEntry(ROOT + path));
+        return new EntryOutputStream();
+    }
+
+    /**
+     * @param path path of the file, relative to the export directory
+     * @return a writer for the content of the file, in the platform encoding
+     */
+    Writer newWriter(String path) throws IOException {
+        return new OutputStreamWriter(newFile(path));
+    }
+
+    /**
+     * Copies the given stream into a new file.
+     *
+     * @param path path of the file, relative to the export directory
+     * @param in the content of the file, not closed
+     */
+    void addFile(String path, InputStream in) throws IOException {
+        OutputStream out = newFile(path);
+        try {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Completes the inner archive, then adds its signature to the outer one.
+     * The underlying stream is flushed but not closed.
+     */
+    void finish() throws IOException {
+        inner.finish();
+        outer.closeEntry();
+
+        byte[] signature = signed.sign();
+        outer.putNextEntry(new ZipEntry(SIGNATURE));
+        outer.write(signature, 0, signature.length);
+        outer.closeEntry();
+        outer.finish();
+        outer.flush();
+    }
+
+    /**
+     * Stream of the current file, closing it completes the entry rather than
+     * closing the archive.
+     */
+    private class EntryOutputStream extends OutputStream {
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            inner.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            inner.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inner.closeEntry();
+            }
+        }
+    }
+}
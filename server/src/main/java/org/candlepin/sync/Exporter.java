@@ -41,25 +41,22 @@ import org.candlepin.service.ProductServiceAdapter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Exporter
@@ -140,41 +137,46 @@ public class Exporter {
         throws ExportCreationException {
         // TODO: need to delete tmpDir (which contains the archive,
         // which we need to return...)
+        File archive = createArchiveFile();
+        OutputStream out = null;
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir, cdnKey);
-            exportConsumer(baseDir, consumer, webAppPrefix, apiUrl);
-            exportIdentityCertificate(baseDir, consumer);
-            exportEntitlements(baseDir, consumer);
-            exportEntitlementsCerts(baseDir, consumer, null, true);
-            exportProducts(baseDir, consumer);
-            exportConsumerTypes(baseDir);
-            exportRules(baseDir);
-            exportDistributorVersions(baseDir);
-            exportContentDeliveryNetworks(baseDir);
-            return makeArchive(consumer, tmpDir, baseDir);
+            out = new BufferedOutputStream(new FileOutputStream(archive));
+            getFullExport(consumer, cdnKey, webAppPrefix, apiUrl, out);
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
             throw new ExportCreationException("Unable to create export archive", e);
         }
+        finally {
+            closeQuietly(out);
+        }
+        log.debug("Returning file: " + archive.getAbsolutePath());
+        return archive;
     }
 
-    public File getEntitlementExport(Consumer consumer,
-                        Set<Long> serials) throws ExportCreationException {
-        // TODO: need to delete tmpDir (which contains the archive,
-        // which we need to return...)
+    /**
+     * Writes the full export of a consumer to the given stream in a single pass,
+     * without going through temporary files.
+     *
+     * @param out stream the signed archive is written to, flushed but not closed
+     */
+    public void getFullExport(Consumer consumer, String cdnKey, String webAppPrefix,
+        String apiUrl, OutputStream out)
+        throws ExportCreationException {
         try {
-            File tmpDir = new SyncUtils(config).makeTempDir("export");
-            File baseDir = new File(tmpDir.getAbsolutePath(), "export");
-            baseDir.mkdir();
-
-            exportMeta(baseDir, null);
-            exportEntitlementsCerts(baseDir, consumer, serials, false);
-            return makeArchive(consumer, tmpDir, baseDir);
+            ExportArchiveWriter archive = createArchiveWriter(consumer, out);
+
+            exportMeta(archive, cdnKey);
+            exportConsumer(archive, consumer, webAppPrefix, apiUrl);
+            exportIdentityCertificate(archive, consumer);
+            exportEntitlements(archive, consumer);
+            exportEntitlementsCerts(archive, consumer, null, true);
+            exportProducts(archive, consumer);
+            exportConsumerTypes(archive);
+            exportRules(archive);
+            exportDistributorVersions(archive);
+            exportContentDeliveryNetworks(archive);
+            archive.finish();
         }
         catch (IOException e) {
             log.error("Error generating entitlement export", e);
@@ -182,142 +184,69 @@ public class Exporter {
         }
     }
 
-    /**
-     * Create a tar.gz archive of the exported directory.
-     *
-     * @param exportDir Directory where Candlepin data was exported.
-     * @return File reference to the new archive zip.
-     */
-    private File makeArchive(Consumer consumer, File tempDir, File exportDir)
-        throws IOException {
-        String exportFileName = exportDir.getName() + ".zip";
-        log.info("Creating archive of " + exportDir.getAbsolutePath() + " in: " +
-            exportFileName);
-
-        File archive = createZipArchiveWithDir(
-            tempDir, exportDir, "consumer_export.zip",
-            "Candlepin export for " + consumer.getUuid());
-
-        InputStream archiveInputStream = null;
+    public File getEntitlementExport(Consumer consumer,
+                        Set<Long> serials) throws ExportCreationException {
+        // TODO: need to delete tmpDir (which contains the archive,
+        // which we need to return...)
+        File archive = createArchiveFile();
+        OutputStream out = null;
         try {
-            archiveInputStream = new FileInputStream(archive);
-            File signedArchive = createSignedZipArchive(
-                tempDir, archive, exportFileName,
-                pki.getSHA256WithRSAHash(archiveInputStream),
-                "signed Candlepin export for " + consumer.getUuid());
+            out = new BufferedOutputStream(new FileOutputStream(archive));
+            ExportArchiveWriter writer = createArchiveWriter(consumer, out);
 
-            log.debug("Returning file: " + archive.getAbsolutePath());
-            return signedArchive;
-        }
-        finally {
-            if (archiveInputStream != null) {
-                try {
-                    archiveInputStream.close();
-                }
-                catch (Exception e) {
-                    // nothing to do
-                }
-            }
+            exportMeta(writer, null);
+            exportEntitlementsCerts(writer, consumer, serials, false);
+            writer.finish();
         }
-    }
-
-    private File createZipArchiveWithDir(File tempDir, File exportDir,
-        String exportFileName, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
-        try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFilesToArchive(out, exportDir.getParent().length() + 1, exportDir);
+        catch (IOException e) {
+            log.error("Error generating entitlement export", e);
+            throw new ExportCreationException("Unable to create export archive", e);
         }
         finally {
-            if (out != null) {
-                out.close();
-            }
+            closeQuietly(out);
         }
         return archive;
     }
 
-    private File createSignedZipArchive(File tempDir, File toAdd,
-        String exportFileName, byte[] signature, String comment)
-        throws FileNotFoundException, IOException {
-
-        File archive = new File(tempDir, exportFileName);
-        ZipOutputStream out = null;
+    private File createArchiveFile() throws ExportCreationException {
         try {
-            out = new ZipOutputStream(new FileOutputStream(archive));
-            out.setComment(comment);
-            addFileToArchive(out, toAdd.getParent().length() + 1, toAdd);
-            addSignatureToArchive(out, signature);
+            File tmpDir = new SyncUtils(config).makeTempDir("export");
+            return new File(tmpDir, "export.zip");
         }
-        finally {
-            if (out != null) {
-                out.close();
-            }
+        catch (IOException e) {
+            log.error("Error generating entitlement export", e);
+            throw new ExportCreationException("Unable to create export archive", e);
         }
-        return archive;
     }
 
-
-
     /**
-     * @param out
-     * @param exportDir
-     * @throws IOException
+     * Starts a signed archive, the content of consumer_export.zip is signed as it is
+     * written, and the signature added once the archive is finished.
      */
-    private void addFilesToArchive(ZipOutputStream out, int charsToDropFromName,
-        File directory) throws IOException {
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                addFilesToArchive(out, charsToDropFromName, file);
-            }
-            else {
-                addFileToArchive(out, charsToDropFromName, file);
-            }
-        }
+    private ExportArchiveWriter createArchiveWriter(Consumer consumer, OutputStream out)
+        throws IOException {
+        log.info("Creating export archive for " + consumer.getUuid());
+        return new ExportArchiveWriter(out, pki.getSHA256WithRSASigner(),
+            "Candlepin export for " + consumer.getUuid(),
+            "signed Candlepin export for " + consumer.getUuid());
     }
 
-    private void addFileToArchive(ZipOutputStream out, int charsToDropFromName,
-        File file) throws IOException, FileNotFoundException {
-        log.debug("Adding file to archive: " +
-            file.getAbsolutePath().substring(charsToDropFromName));
-        out.putNextEntry(new ZipEntry(
-            file.getAbsolutePath().substring(charsToDropFromName)));
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(file);
-
-            byte [] buf = new byte[1024];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
+    private void closeQuietly(OutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
             }
-            out.closeEntry();
-        }
-        finally {
-            if (in != null) {
-                in.close();
+            catch (IOException e) {
+                log.warn("Unable to close export archive", e);
             }
         }
     }
 
-    private void addSignatureToArchive(ZipOutputStream out, byte[] signature)
-        throws IOException, FileNotFoundException {
-
-        log.debug("Adding signature to archive.");
-        out.putNextEntry(new ZipEntry("signature"));
-        out.write(signature, 0, signature.length);
-        out.closeEntry();
-    }
-
-    private void exportMeta(File baseDir, String cdnKey)
+    private void exportMeta(ExportArchiveWriter archive, String cdnKey)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "meta.json");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(file);
+            writer = archive.newWriter("meta.json");
             Meta m = new Meta(getVersion(), new Date(),
                 principalProvider.get().getPrincipalName(),
                 null, cdnKey);
@@ -357,13 +286,12 @@ public class Exporter {
         return map.get("version") + "-" + map.get("release");
     }
 
-    private void exportConsumer(File baseDir, Consumer consumer, String webAppPrefix,
-        String apiUrl)
+    private void exportConsumer(ExportArchiveWriter archive, Consumer consumer,
+        String webAppPrefix, String apiUrl)
         throws IOException {
-        File file = new File(baseDir.getCanonicalPath(), "consumer.json");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(file);
+            writer = archive.newWriter("consumer.json");
             this.consumerExporter.export(mapper, writer, consumer,
                 getPrefixWebUrl(webAppPrefix), getPrefixApiUrl(apiUrl));
         }
@@ -374,15 +302,12 @@ public class Exporter {
         }
     }
 
-    private void exportEntitlementsCerts(File baseDir,
+    private void exportEntitlementsCerts(ExportArchiveWriter archive,
                                          Consumer consumer,
                                          Set<Long> serials,
                                          boolean manifest)
         throws IOException {
 
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlement_certificates");
-        entCertDir.mkdir();
-
         for (EntitlementCertificate cert : entCertAdapter.listForConsumer(consumer)) {
             if (manifest && !this.exportRules.canExport(cert.getEntitlement())) {
                 if (log.isDebugEnabled()) {
@@ -394,11 +319,10 @@ public class Exporter {
 
             if ((serials == null) || (serials.contains(cert.getSerial().getId()))) {
                 log.debug("Exporting entitlement certificate: " + cert.getSerial());
-                File file = new File(entCertDir.getCanonicalPath(),
-                    cert.getSerial().getId() + ".pem");
-                FileWriter writer = null;
+                Writer writer = null;
                 try {
-                    writer = new FileWriter(file);
+                    writer = archive.newWriter("entitlement_certificates/" +
+                        cert.getSerial().getId() + ".pem");
                     entCert.export(writer, cert);
                 }
                 finally {
@@ -410,21 +334,17 @@ public class Exporter {
         }
     }
 
-    private void exportIdentityCertificate(File baseDir, Consumer consumer)
+    private void exportIdentityCertificate(ExportArchiveWriter archive, Consumer consumer)
         throws IOException {
 
-        File idcertdir = new File(baseDir.getCanonicalPath(), "upstream_consumer");
-        idcertdir.mkdir();
-
         IdentityCertificate cert = consumer.getIdCert();
-        File file = new File(idcertdir.getCanonicalPath(),
-            cert.getSerial().getId() + ".json");
 
         // paradigm dictates this should go in an exporter.export method
-        FileWriter writer = null;
+        Writer writer = null;
 
         try {
-            writer = new FileWriter(file);
+            writer = archive.newWriter("upstream_consumer/" +
+                cert.getSerial().getId() + ".json");
             mapper.writeValue(writer, cert);
         }
         finally {
@@ -434,10 +354,8 @@ public class Exporter {
         }
     }
 
-    private void exportEntitlements(File baseDir, Consumer consumer)
+    private void exportEntitlements(ExportArchiveWriter archive, Consumer consumer)
         throws IOException, ExportCreationException {
-        File entCertDir = new File(baseDir.getCanonicalPath(), "entitlements");
-        entCertDir.mkdir();
 
         for (Entitlement ent : entitlementCurator.listByConsumer(consumer)) {
             if (ent.getDirty()) {
@@ -457,10 +375,9 @@ public class Exporter {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting entitlement for product" + ent.getProductId());
             }
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                File file = new File(entCertDir.getCanonicalPath(), ent.getId() + ".json");
-                writer = new FileWriter(file);
+                writer = archive.newWriter("entitlements/" + ent.getId() + ".json");
                 entExporter.export(mapper, writer, ent);
             }
             finally {
@@ -471,10 +388,8 @@ public class Exporter {
         }
     }
 
-    private void exportProducts(File baseDir, Consumer consumer) throws IOException {
-        File productDir = new File(baseDir.getCanonicalPath(), "products");
-        productDir.mkdir();
-
+    private void exportProducts(ExportArchiveWriter archive, Consumer consumer)
+        throws IOException {
         Map<String, Product> products = new HashMap<String, Product>();
         for (Entitlement entitlement : consumer.getEntitlements()) {
 
@@ -513,12 +428,10 @@ public class Exporter {
         }
 
         for (Product product : products.values()) {
-            String path = productDir.getCanonicalPath();
             String productId = product.getId();
-            File file = new File(path, productId + ".json");
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                writer = new FileWriter(file);
+                writer = archive.newWriter("products/" + productId + ".json");
                 productExporter.export(mapper, writer, product);
             }
             finally {
@@ -534,9 +447,7 @@ public class Exporter {
                 // so just skip over this if we get null back
                 // XXX: need to decide if the cert should always be in the export, or never.
                 if (cert != null) {
-                    file = new File(productDir.getCanonicalPath(),
-                        product.getId() + ".pem");
-                    writer = new FileWriter(file);
+                    writer = archive.newWriter("products/" + product.getId() + ".pem");
                     productCertExporter.export(writer, cert);
                     writer.close();
                 }
@@ -544,15 +455,11 @@ public class Exporter {
         }
     }
 
-    private void exportConsumerTypes(File baseDir) throws IOException {
-        File typeDir = new File(baseDir.getCanonicalPath(), "consumer_types");
-        typeDir.mkdir();
-
+    private void exportConsumerTypes(ExportArchiveWriter archive) throws IOException {
         for (ConsumerType type : consumerTypeCurator.listAll()) {
-            File file = new File(typeDir.getCanonicalPath(), type.getLabel() + ".json");
-            FileWriter writer = null;
+            Writer writer = null;
             try {
-                writer = new FileWriter(file);
+                writer = archive.newWriter("consumer_types/" + type.getLabel() + ".json");
                 consumerType.export(mapper, writer, type);
             }
             finally {
@@ -563,15 +470,12 @@ public class Exporter {
         }
     }
 
-    private void exportRules(File baseDir) throws IOException {
+    private void exportRules(ExportArchiveWriter archive) throws IOException {
         // Because old candlepin servers assume to import a file in rules dir, we had to
         // move to a new directory for versioned rules file:
-        File newRulesDir = new File(baseDir.getCanonicalPath(), "rules2");
-        newRulesDir.mkdir();
-        File newRulesFile = new File(newRulesDir.getCanonicalPath(), "rules.js");
-        FileWriter writer = null;
+        Writer writer = null;
         try {
-            writer = new FileWriter(newRulesFile);
+            writer = archive.newWriter("rules2/rules.js");
             rules.export(writer);
         }
         finally {
@@ -580,39 +484,36 @@ public class Exporter {
             }
         }
 
-        exportLegacyRules(baseDir);
+        exportLegacyRules(archive);
     }
 
     /*
      * We still need to export a copy of the deprecated default-rules.js so new manifests
      * can still be imported by old candlepin servers.
      */
-    private void exportLegacyRules(File baseDir) throws IOException {
-        File oldRulesDir = new File(baseDir.getCanonicalPath(), "rules");
-        oldRulesDir.mkdir();
-        File oldRulesFile = new File(oldRulesDir.getCanonicalPath(), "default-rules.js");
-
+    private void exportLegacyRules(ExportArchiveWriter archive) throws IOException {
         // TODO: does this need a "exporter" object as well?
-        FileUtils.copyFile(new File(
-            this.getClass().getResource(LEGACY_RULES_FILE).getPath()),
-            oldRulesFile);
+        InputStream in = this.getClass().getResourceAsStream(LEGACY_RULES_FILE);
+        try {
+            archive.addFile("rules/default-rules.js", in);
+        }
+        finally {
+            in.close();
+        }
     }
 
-    private void exportDistributorVersions(File baseDir) throws IOException {
+    private void exportDistributorVersions(ExportArchiveWriter archive)
+        throws IOException {
         List<DistributorVersion> versions = distVerCurator.findAll();
         if (versions == null || versions.isEmpty()) { return; }
 
-        File distVerDir = new File(baseDir.getCanonicalPath(), "distributor_version");
-        distVerDir.mkdir();
-
-        FileWriter writer = null;
+        Writer writer = null;
         for (DistributorVersion dv : versions) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Distributor Version" + dv.getName());
             }
             try {
-                File file = new File(distVerDir.getCanonicalPath(), dv.getName() + ".json");
-                writer = new FileWriter(file);
+                writer = archive.newWriter("distributor_version/" + dv.getName() + ".json");
                 distVerExporter.export(mapper, writer, dv);
             }
             finally {
@@ -623,21 +524,19 @@ public class Exporter {
         }
     }
 
-    private void exportContentDeliveryNetworks(File baseDir) throws IOException {
+    private void exportContentDeliveryNetworks(ExportArchiveWriter archive)
+        throws IOException {
         List<Cdn> cdns = cdnCurator.list();
         if (cdns == null || cdns.isEmpty()) { return; }
 
-        File cdnDir = new File(baseDir.getCanonicalPath(), "content_delivery_network");
-        cdnDir.mkdir();
-
-        FileWriter writer = null;
+        Writer writer = null;
         for (Cdn cdn : cdns) {
             if (log.isDebugEnabled()) {
                 log.debug("Exporting Content Delivery Network" + cdn.getName());
             }
             try {
-                File file = new File(cdnDir.getCanonicalPath(), cdn.getLabel() + ".json");
-                writer = new FileWriter(file);
+                writer = archive.newWriter("content_delivery_network/" +
+                    cdn.getLabel() + ".json");
                 cdnExporter.export(mapper, writer, cdn);
             }
             finally {
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ImportTimings
+ *
+ * Wall clock time spent in each phase of a manifest import, in the order the
+ * phases first ran. Each call to {@link #stop(String)} charges the time since
+ * the previous start or stop to the given phase.
+ */
+public class ImportTimings {
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private long mark = System.currentTimeMillis();
+
+    /**
+     * Starts timing the next phase, discarding the time since the last stop.
+     */
+    public void start() {
+        mark = System.currentTimeMillis();
+    }
+
+    /**
+     * Charges the time since the last start or stop to the given phase, and
+     * starts timing the next one.
+     *
+     * @param phase name of the phase which just finished
+     */
+    public void stop(String phase) {
+        long now = System.currentTimeMillis();
+        Long spent = phases.get(phase);
+        phases.put(phase, (spent == null ? 0L : spent) + now - mark);
+        mark = now;
+    }
+
+    /**
+     * @return milliseconds spent in each phase, keyed by phase name
+     */
+    public Map<String, Long> getPhases() {
+        return Collections.unmodifiableMap(phases);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(phase.getKey()).append('=').append(phase.getValue())
+                .append("ms");
+        }
+        return builder.toString();
+    }
+}
@@ -16,6 +16,7 @@ package org.candlepin.sync;
 
 import org.candlepin.audit.EventSink;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.PoolManager;
 import org.candlepin.controller.Refresher;
 import org.candlepin.model.Cdn;
@@ -26,6 +27,7 @@ import org.candlepin.model.ConsumerTypeCurator;
 import org.candlepin.model.ContentCurator;
 import org.candlepin.model.DistributorVersion;
 import org.candlepin.model.DistributorVersionCurator;
+import org.candlepin.model.Entitlement;
 import org.candlepin.model.ExporterMetadata;
 import org.candlepin.model.ExporterMetadataCurator;
 import org.candlepin.model.IdentityCertificate;
@@ -43,6 +45,7 @@ import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -54,9 +57,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -64,6 +73,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.persistence.PersistenceException;
@@ -75,6 +86,10 @@ import javax.persistence.PersistenceException;
 public class Importer {
     private static Logger log = LoggerFactory.getLogger(Importer.class);
 
+    private static final String SIGNATURE = "signature";
+    private static final String CONSUMER_EXPORT = "consumer_export.zip";
+    private static final String EXPORT_DIR = "export/";
+
     /**
      *
      * files we use to perform import
@@ -173,7 +188,22 @@ public class Importer {
         ConflictOverrides forcedConflicts)
         throws IOException, ImporterException {
 
-        Meta m = mapper.readValue(meta, Meta.class);
+        validateMetadata(type, owner, mapper.readValue(meta, Meta.class),
+            forcedConflicts);
+    }
+
+    /**
+     * Check to make sure the meta data is newer than the imported data.
+     * @param type ExporterMetadata.TYPE_PER_USER or TYPE_SYSTEM
+     * @param owner Owner in the case of PER_USER
+     * @param m the metadata read from meta.json
+     * @param forcedConflicts Conflicts we will override if encountered
+     * @throws ImporterException thrown if the metadata is invalid.
+     */
+    public void validateMetadata(String type, Owner owner, Meta m,
+        ConflictOverrides forcedConflicts)
+        throws ImporterException {
+
         if (type == null) {
             throw new ImporterException(i18n.tr("Wrong metadata type"));
         }
@@ -237,9 +267,15 @@ public class Importer {
         throws ImporterException {
         File tmpDir = null;
         Map<String, Object> result = new HashMap<String, Object>();
+        ImportTimings timings = new ImportTimings();
         try {
+            if (config.getBoolean(ConfigProperties.SYNC_IMPORT_STREAMING)) {
+                return streamExport(owner, exportFile, overrides, timings);
+            }
+
             tmpDir = new SyncUtils(config).makeTempDir("import");
             extractArchive(tmpDir, exportFile);
+            timings.stop("extract");
 
             File signature = new File(tmpDir, "signature");
             if (signature.length() == 0) {
@@ -251,25 +287,9 @@ public class Importer {
                 new File(tmpDir, "consumer_export.zip"),
                 loadSignature(new File(tmpDir, "signature")));
             if (!verifiedSignature) {
-                log.warn("Archive signature check failed.");
-                if (!overrides
-                    .isForced(Conflict.SIGNATURE_CONFLICT)) {
-
-                    /*
-                     * Normally for import conflicts that can be overridden, we try to
-                     * report them all the first time so if the user intends to override,
-                     * they can do so with just one more request. However in the case of
-                     * a bad signature, we're going to report immediately due to the nature
-                     * of what this might mean.
-                     */
-                    throw new ImportConflictException(
-                        i18n.tr("Archive failed signature check"),
-                        Conflict.SIGNATURE_CONFLICT);
-                }
-                else {
-                    log.warn("Ignoring signature check failure.");
-                }
+                signatureCheckFailed(overrides);
             }
+            timings.stop("signature");
 
             File consumerExport = new File(tmpDir, "consumer_export.zip");
             File exportDir = extractArchive(tmpDir, consumerExport);
@@ -287,12 +307,13 @@ public class Importer {
             // Need the rules file as well which is in a nested dir:
             File rulesFile = new File(exportDir, ImportFile.RULES_FILE.fileName());
             importFiles.put(ImportFile.RULES_FILE.fileName(), rulesFile);
+            ManifestContents contents = readManifest(importFiles);
+            timings.stop("read");
 
-            ConsumerDto consumer = importObjects(owner, importFiles, overrides);
-            Meta m = mapper.readValue(importFiles.get(ImportFile.META.fileName()),
-                Meta.class);
+            ConsumerDto consumer = importObjects(owner, contents, overrides, timings);
             result.put("consumer", consumer);
-            result.put("meta", m);
+            result.put("meta", contents.getMeta());
+            result.put("timings", timings);
             return result;
         }
         catch (FileNotFoundException fnfe) {
@@ -332,35 +353,302 @@ public class Importer {
         }
     }
 
-    @Transactional(rollbackOn = {IOException.class, ImporterException.class,
-            RuntimeException.class, ImportConflictException.class})
-    // WARNING: Keep this method public, otherwise @Transactional is ignored:
-    ConsumerDto importObjects(Owner owner, Map<String, File> importFiles,
-        ConflictOverrides overrides)
+    private void signatureCheckFailed(ConflictOverrides overrides) {
+        log.warn("Archive signature check failed.");
+        if (!overrides.isForced(Conflict.SIGNATURE_CONFLICT)) {
+
+            /*
+             * Normally for import conflicts that can be overridden, we try to
+             * report them all the first time so if the user intends to override,
+             * they can do so with just one more request. However in the case of
+             * a bad signature, we're going to report immediately due to the nature
+             * of what this might mean.
+             */
+            throw new ImportConflictException(
+                i18n.tr("Archive failed signature check"),
+                Conflict.SIGNATURE_CONFLICT);
+        }
+        else {
+            log.warn("Ignoring signature check failure.");
+        }
+    }
+
+    /*
+     * Imports a manifest straight from its archive. The inner archive is read once
+     * to check its signature, and once more to parse each file as it streams by,
+     * nothing is extracted to disk.
+     */
+    private Map<String, Object> streamExport(Owner owner, File exportFile,
+        ConflictOverrides overrides, ImportTimings timings)
+        throws IOException, CertificateException, ImporterException {
+        ZipFile archive = null;
+        try {
+            try {
+                archive = new ZipFile(exportFile);
+            }
+            catch (ZipException e) {
+                log.debug("Unable to open export archive", e);
+                archive = null;
+            }
+            if (archive == null || archive.size() == 0) {
+                throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                    "a properly compressed file or is empty", exportFile.getName()));
+            }
+
+            ZipEntry signatureEntry = archive.getEntry(SIGNATURE);
+            byte[] signature = signatureEntry == null ? new byte[0] :
+                readSignature(archive, signatureEntry);
+            if (signature.length == 0) {
+                throw new ImportExtractionException(i18n.tr("The archive does not " +
+                                          "contain the required signature file"));
+            }
+
+            ZipEntry consumerExport = archive.getEntry(CONSUMER_EXPORT);
+            if (consumerExport == null) {
+                log.error("Archive file does not contain consumer_export.zip");
+                throw new ImportExtractionException(i18n.tr("The archive does not " +
+                    "contain the required consumer_export.zip file"));
+            }
+
+            boolean verifiedSignature;
+            InputStream in = archive.getInputStream(consumerExport);
+            try {
+                verifiedSignature = pki.verifySHA256WithRSAHashAgainstCACerts(in,
+                    signature);
+            }
+            finally {
+                in.close();
+            }
+            if (!verifiedSignature) {
+                signatureCheckFailed(overrides);
+            }
+            timings.stop("signature");
+
+            ManifestContents contents;
+            in = archive.getInputStream(consumerExport);
+            try {
+                contents = readManifest(in);
+            }
+            finally {
+                in.close();
+            }
+            timings.stop("read");
+
+            ConsumerDto consumer = importObjects(owner, contents, overrides, timings);
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("consumer", consumer);
+            result.put("meta", contents.getMeta());
+            result.put("timings", timings);
+            return result;
+        }
+        finally {
+            if (archive != null) {
+                try {
+                    archive.close();
+                }
+                catch (IOException e) {
+                    log.error("Failed to close export archive", e);
+                }
+            }
+        }
+    }
+
+    private byte[] readSignature(ZipFile archive, ZipEntry entry) throws IOException {
+        InputStream in = archive.getInputStream(entry);
+        try {
+            return IOUtils.toByteArray(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the files of a consumer_export.zip archive as they stream by, handing
+     * each one to the importer of its kind. Certificates and legacy rules, which
+     * are not imported, are skipped without being read.
+     *
+     * @param consumerExport the content of consumer_export.zip, not closed
+     * @return the objects read from the manifest
+     */
+    ManifestContents readManifest(InputStream consumerExport)
+        throws IOException, ImporterException {
+        ConsumerTypeImporter consumerTypeImporter =
+            new ConsumerTypeImporter(consumerTypeCurator);
+        ConsumerImporter consumerImporter = new ConsumerImporter(ownerCurator,
+            idCertCurator, i18n, csCurator);
+        ProductImporter productImporter = new ProductImporter(productCurator,
+            contentCurator);
+        DistributorVersionImporter distVerImporter =
+            new DistributorVersionImporter(distVerCurator);
+        CdnImporter cdnImporter = new CdnImporter(cdnCurator);
+
+        ManifestContents contents = new ManifestContents();
+        ZipInputStream zip = new ZipInputStream(consumerExport);
+        ZipEntry entry = zip.getNextEntry();
+        if (entry == null) {
+            throw new ImportExtractionException(i18n.tr("The archive {0} is not " +
+                "a properly compressed file or is empty", CONSUMER_EXPORT));
+        }
+
+        boolean empty = true;
+        for (; entry != null; entry = zip.getNextEntry()) {
+            if (entry.isDirectory() || !entry.getName().startsWith(EXPORT_DIR)) {
+                continue;
+            }
+            empty = false;
+
+            String path = entry.getName().substring(EXPORT_DIR.length());
+            int slash = path.lastIndexOf('/');
+            String dir = slash < 0 ? "" : path.substring(0, slash);
+            if (log.isDebugEnabled()) {
+                log.debug("Reading " + path);
+            }
+
+            // Jackson closes what it reads from, which must not close the archive
+            Reader reader = new InputStreamReader(new UnclosableInputStream(zip));
+            if (path.equals(ImportFile.META.fileName())) {
+                contents.setMeta(mapper.readValue(reader, Meta.class));
+            }
+            else if (path.equals(ImportFile.RULES_FILE.fileName())) {
+                contents.setRules(StringFromReader.asString(reader));
+            }
+            else if (path.equals(ImportFile.CONSUMER.fileName())) {
+                contents.setConsumer(consumerImporter.createObject(mapper, reader));
+            }
+            else if (dir.equals(ImportFile.CONSUMER_TYPE.fileName())) {
+                contents.addConsumerType(consumerTypeImporter.createObject(mapper,
+                    reader));
+            }
+            else if (dir.equals(ImportFile.UPSTREAM_CONSUMER.fileName())) {
+                if (path.endsWith(".json")) {
+                    contents.setUpstreamIdentityCert(mapper.readValue(reader,
+                        IdentityCertificate.class));
+                }
+                else {
+                    log.warn("Extra file found in upstream_consumer directory: " +
+                        path);
+                }
+            }
+            else if (dir.equals(ImportFile.PRODUCTS.fileName())) {
+                // Skip product.pem's, we just need the json to import:
+                if (path.endsWith(".json")) {
+                    contents.addProduct(productImporter.createObject(mapper, reader));
+                }
+            }
+            else if (dir.equals(ImportFile.ENTITLEMENTS.fileName())) {
+                contents.addEntitlement(mapper.readValue(reader, Entitlement.class));
+            }
+            else if (dir.equals(ImportFile.DISTRIBUTOR_VERSIONS.fileName())) {
+                contents.addDistributorVersion(distVerImporter.createObject(mapper,
+                    reader));
+            }
+            else if (dir.equals(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName())) {
+                contents.addCdn(cdnImporter.createObject(mapper, reader));
+            }
+        }
+
+        if (empty) {
+            throw new ImportExtractionException(i18n.tr("The consumer_export " +
+                "archive has no contents"));
+        }
+        return contents;
+    }
+
+    /**
+     * Reads the files of a manifest extracted to disk into the same objects
+     * {@link #readManifest(InputStream)} reads from the archive, so that both are
+     * imported alike. Directories present in the manifest are read into collections
+     * even when they are empty.
+     *
+     * @param importFiles the files and directories of the export directory, by name
+     * @return the objects read from the manifest
+     */
+    ManifestContents readManifest(Map<String, File> importFiles)
         throws IOException, ImporterException {
+        File meta = importFiles.get(ImportFile.META.fileName());
+        File consumerTypes = importFiles.get(ImportFile.CONSUMER_TYPE.fileName());
+        File consumer = importFiles.get(ImportFile.CONSUMER.fileName());
+        File products = importFiles.get(ImportFile.PRODUCTS.fileName());
+        File entitlements = importFiles.get(ImportFile.ENTITLEMENTS.fileName());
+        checkManifest(meta != null, consumerTypes != null, consumer != null,
+            products != null, entitlements != null);
+
+        ManifestContents contents = new ManifestContents();
+        contents.setMeta(mapper.readValue(meta, Meta.class));
+        contents.setRules(readRules(importFiles.get(ImportFile.RULES_FILE.fileName())));
+        contents.setConsumerTypes(readConsumerTypes(listFiles(consumerTypes)));
 
-        File metadata = importFiles.get(ImportFile.META.fileName());
-        if (metadata == null) {
+        File distributorVersions = importFiles.get(ImportFile.DISTRIBUTOR_VERSIONS.fileName());
+        if (distributorVersions != null) {
+            contents.setDistributorVersions(readDistributorVersions(
+                listFiles(distributorVersions)));
+        }
+        File cdns = importFiles.get(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName());
+        if (cdns != null) {
+            contents.setCdns(readContentDeliveryNetworks(listFiles(cdns)));
+        }
+
+        contents.setConsumer(readConsumer(consumer));
+        File upstream = importFiles.get(ImportFile.UPSTREAM_CONSUMER.fileName());
+        if (upstream != null) {
+            contents.setUpstreamIdentityCert(readUpstreamIdentityCert(
+                listFiles(upstream)));
+        }
+
+        // If the consumer has no entitlements, the products directory will end up
+        // empty. This also implies there will be no entitlements to import.
+        if (products != null) {
+            contents.setProducts(readProducts(listFiles(products)));
+            contents.setEntitlements(readEntitlements(listFiles(entitlements)));
+        }
+        return contents;
+    }
+
+    private void checkManifest(boolean hasMeta, boolean hasConsumerTypes,
+        boolean hasConsumer, boolean hasProducts, boolean hasEntitlements)
+        throws ImporterException {
+        if (!hasMeta) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                    "required meta.json file"));
         }
-        File consumerTypes = importFiles.get(ImportFile.CONSUMER_TYPE.fileName());
-        if (consumerTypes == null) {
+        if (!hasConsumerTypes) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                     "required consumer_types directory"));
         }
-        File consumerFile = importFiles.get(ImportFile.CONSUMER.fileName());
-        if (consumerFile == null) {
+        if (!hasConsumer) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                 "required consumer.json file"));
         }
-        File products = importFiles.get(ImportFile.PRODUCTS.fileName());
-        File entitlements = importFiles.get(ImportFile.ENTITLEMENTS.fileName());
-        if (products != null && entitlements == null) {
+        if (hasProducts && !hasEntitlements) {
             throw new ImporterException(i18n.tr("The archive does not contain the " +
                                         "required entitlements directory"));
         }
+    }
 
+    @Transactional(rollbackOn = {IOException.class, ImporterException.class,
+            RuntimeException.class, ImportConflictException.class})
+    // WARNING: Guice does not intercept private methods, @Transactional is ignored here
+    // unless this method stays visible:
+    ConsumerDto importObjects(Owner owner, Map<String, File> importFiles,
+        ConflictOverrides overrides)
+        throws IOException, ImporterException {
+        return importObjects(owner, readManifest(importFiles), overrides,
+            new ImportTimings());
+    }
+
+    @Transactional(rollbackOn = {IOException.class, ImporterException.class,
+            RuntimeException.class, ImportConflictException.class})
+    // WARNING: Guice does not intercept private methods, @Transactional is ignored here
+    // unless this method stays visible:
+    ConsumerDto importObjects(Owner owner, ManifestContents contents,
+        ConflictOverrides overrides, ImportTimings timings)
+        throws IOException, ImporterException {
+
+        Meta meta = contents.getMeta();
+        checkManifest(meta != null, contents.getConsumerTypes() != null,
+            contents.getConsumer() != null, contents.getProducts() != null,
+            contents.getEntitlements() != null);
 
         // system level elements
         /*
@@ -376,25 +664,28 @@ public class Importer {
         List<ImportConflictException> conflictExceptions =
             new LinkedList<ImportConflictException>();
 
-        File rules = importFiles.get(ImportFile.RULES_FILE.fileName());
-        importRules(rules, metadata);
+        if (contents.getRules() != null) {
+            rulesImporter.importObject(new StringReader(contents.getRules()));
+        }
+        else {
+            log.warn("Skipping rules import, manifest does not contain rules file: " +
+                ImportFile.RULES_FILE.fileName());
+        }
 
-        importConsumerTypes(consumerTypes.listFiles());
+        new ConsumerTypeImporter(consumerTypeCurator).store(contents.getConsumerTypes());
 
-        File distributorVersions = importFiles.get(ImportFile.DISTRIBUTOR_VERSIONS.fileName());
-        if (distributorVersions != null) {
-            importDistributorVersions(distributorVersions.listFiles());
+        if (contents.getDistributorVersions() != null) {
+            new DistributorVersionImporter(distVerCurator).store(
+                contents.getDistributorVersions());
         }
 
-        File cdns = importFiles.get(ImportFile.CONTENT_DELIVERY_NETWORKS.fileName());
-        if (cdns != null) {
-            importContentDeliveryNetworks(cdns.listFiles());
+        if (contents.getCdns() != null) {
+            new CdnImporter(cdnCurator).store(contents.getCdns());
         }
 
         // per user elements
         try {
-            validateMetadata(ExporterMetadata.TYPE_PER_USER, owner, metadata,
-                overrides);
+            validateMetadata(ExporterMetadata.TYPE_PER_USER, owner, meta, overrides);
         }
         catch (ImportConflictException e) {
             conflictExceptions.add(e);
@@ -402,14 +693,8 @@ public class Importer {
 
         ConsumerDto consumer = null;
         try {
-            Meta m = mapper.readValue(metadata, Meta.class);
-            File upstreamFile = importFiles.get(ImportFile.UPSTREAM_CONSUMER.fileName());
-            File[] dafiles = new File[0];
-            if (upstreamFile != null) {
-                dafiles = upstreamFile.listFiles();
-            }
-            consumer = importConsumer(owner, consumerFile,
-                dafiles, overrides, m);
+            consumer = importConsumer(owner, contents.getConsumer(),
+                contents.getUpstreamIdentityCert(), overrides, meta);
         }
         catch (ImportConflictException e) {
             conflictExceptions.add(e);
@@ -424,52 +709,53 @@ public class Importer {
             throw new ImportConflictException(conflictExceptions);
         }
 
-        // If the consumer has no entitlements, this products directory will end up empty.
-        // This also implies there will be no entitlements to import.
+        timings.stop("consumer");
+
+        // If the consumer has no entitlements, there will be no products either.
         Refresher refresher = poolManager.getRefresher();
-        Meta meta = mapper.readValue(metadata, Meta.class);
-        if (importFiles.get(ImportFile.PRODUCTS.fileName()) != null) {
+        if (contents.getProducts() != null) {
             ProductImporter importer = new ProductImporter(productCurator, contentCurator);
+            Set<Product> productsToImport = contents.getProducts();
 
-            Set<Product> productsToImport = importProducts(
-                importFiles.get(ImportFile.PRODUCTS.fileName()).listFiles(),
-                importer);
-
-            Set<Product> modifiedProducts = importer.getChangedProducts(productsToImport);
+            Set<Product> modifiedProducts = importer.bulkStore(productsToImport, timings);
             for (Product product : modifiedProducts) {
                 refresher.add(product);
             }
 
-            importer.store(productsToImport);
-
-            meta = mapper.readValue(metadata, Meta.class);
-            importEntitlements(owner, productsToImport, entitlements.listFiles(),
+            importEntitlements(owner, productsToImport, contents.getEntitlements(),
                 consumer, meta);
-
-            refresher.add(owner);
-            refresher.run();
         }
         else {
             log.warn("No products found to import, skipping product import.");
             log.warn("No entitlements in manifest, removing all subscriptions for owner.");
-            importEntitlements(owner, new HashSet<Product>(), new File[]{}, consumer, meta);
-            refresher.add(owner);
-            refresher.run();
+            importEntitlements(owner, new HashSet<Product>(), new ArrayList<Entitlement>(),
+                consumer, meta);
         }
+        timings.stop("entitlements");
+        refresher.add(owner);
+        refresher.run();
+        timings.stop("refresh");
         return consumer;
     }
 
-    public void importRules(File rulesFile, File metadata) throws IOException {
+    private File[] listFiles(File dir) {
+        File[] files = dir.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private String readRules(File rulesFile) throws IOException {
+        if (rulesFile == null) {
+            return null;
+        }
 
         Reader reader = null;
         try {
             reader = new FileReader(rulesFile);
-            rulesImporter.importObject(reader);
+            return StringFromReader.asString(reader);
         }
         catch (FileNotFoundException fnfe) {
-            log.warn("Skipping rules import, manifest does not contain rules file: " +
-                ImportFile.RULES_FILE.fileName());
-            return;
+            // Reported when the manifest is imported:
+            return null;
         }
         finally {
             if (reader != null) {
@@ -478,7 +764,7 @@ public class Importer {
         }
     }
 
-    public void importConsumerTypes(File[] consumerTypes) throws IOException {
+    private Set<ConsumerType> readConsumerTypes(File[] consumerTypes) throws IOException {
         ConsumerTypeImporter importer = new ConsumerTypeImporter(consumerTypeCurator);
         Set<ConsumerType> consumerTypeObjs = new HashSet<ConsumerType>();
         for (File consumerType : consumerTypes) {
@@ -493,13 +779,18 @@ public class Importer {
                 }
             }
         }
-        importer.store(consumerTypeObjs);
+        return consumerTypeObjs;
     }
 
     public ConsumerDto importConsumer(Owner owner, File consumerFile,
         File[] upstreamConsumer, ConflictOverrides forcedConflicts, Meta meta)
         throws IOException, SyncDataFormatException {
+        return importConsumer(owner, readConsumer(consumerFile),
+            readUpstreamIdentityCert(upstreamConsumer), forcedConflicts, meta);
+    }
 
+    private IdentityCertificate readUpstreamIdentityCert(File[] upstreamConsumer)
+        throws IOException {
         IdentityCertificate idcert = null;
         for (File uc : upstreamConsumer) {
             if (uc.getName().endsWith(".json")) {
@@ -521,40 +812,50 @@ public class Importer {
                     uc.getName());
             }
         }
+        return idcert;
+    }
 
+    private ConsumerDto readConsumer(File consumerFile) throws IOException {
         ConsumerImporter importer = new ConsumerImporter(ownerCurator, idCertCurator,
             i18n, csCurator);
         Reader reader = null;
-        ConsumerDto consumer = null;
         try {
             reader = new FileReader(consumerFile);
-            consumer = importer.createObject(mapper, reader);
-            // we can not rely on the actual ConsumerType in the ConsumerDto
-            // because it could have an id not in our database. We need to
-            // stick with the label. Hence we need to lookup the ACTUAL type
-            // by label here before attempting to store the UpstreamConsumer
-            ConsumerType type = consumerTypeCurator.lookupByLabel(
-                consumer.getType().getLabel());
-            consumer.setType(type);
-
-            // in older manifests the web app prefix will not
-            // be on the consumer, we can use the one stored in
-            // the metadata
-            if (StringUtils.isEmpty(consumer.getUrlWeb())) {
-                consumer.setUrlWeb(meta.getWebAppPrefix());
-            }
-            importer.store(owner, consumer, forcedConflicts, idcert);
+            return importer.createObject(mapper, reader);
         }
         finally {
             if (reader != null) {
                 reader.close();
             }
         }
+    }
+
+    public ConsumerDto importConsumer(Owner owner, ConsumerDto consumer,
+        IdentityCertificate idcert, ConflictOverrides forcedConflicts, Meta meta)
+        throws SyncDataFormatException {
+
+        ConsumerImporter importer = new ConsumerImporter(ownerCurator, idCertCurator,
+            i18n, csCurator);
+        // we can not rely on the actual ConsumerType in the ConsumerDto
+        // because it could have an id not in our database. We need to
+        // stick with the label. Hence we need to lookup the ACTUAL type
+        // by label here before attempting to store the UpstreamConsumer
+        ConsumerType type = consumerTypeCurator.lookupByLabel(
+            consumer.getType().getLabel());
+        consumer.setType(type);
+
+        // in older manifests the web app prefix will not
+        // be on the consumer, we can use the one stored in
+        // the metadata
+        if (StringUtils.isEmpty(consumer.getUrlWeb())) {
+            consumer.setUrlWeb(meta.getWebAppPrefix());
+        }
+        importer.store(owner, consumer, forcedConflicts, idcert);
         return consumer;
     }
 
-    public Set<Product> importProducts(File[] products, ProductImporter importer)
-        throws IOException {
+    private Set<Product> readProducts(File[] products) throws IOException {
+        ProductImporter importer = new ProductImporter(productCurator, contentCurator);
         Set<Product> productsToImport = new HashSet<Product>();
         for (File product : products) {
             // Skip product.pem's, we just need the json to import:
@@ -580,25 +881,14 @@ public class Importer {
         return productsToImport;
     }
 
-    public void importEntitlements(Owner owner, Set<Product> products, File[] entitlements,
-        ConsumerDto consumer, Meta meta)
-        throws IOException, SyncDataFormatException {
-        EntitlementImporter importer = new EntitlementImporter(subCurator, csCurator,
-            cdnCurator, sink, i18n);
-
-        Map<String, Product> productsById = new HashMap<String, Product>();
-        for (Product product : products) {
-            productsById.put(product.getId(), product);
-        }
-
-        Set<Subscription> subscriptionsToImport = new HashSet<Subscription>();
+    private List<Entitlement> readEntitlements(File[] entitlements) throws IOException {
+        List<Entitlement> entitlementsToImport = new ArrayList<Entitlement>();
         for (File entitlement : entitlements) {
             Reader reader = null;
             try {
                 log.debug("Import entitlement: " + entitlement.getName());
                 reader = new FileReader(entitlement);
-                subscriptionsToImport.add(importer.importObject(mapper, reader, owner,
-                    productsById, consumer, meta));
+                entitlementsToImport.add(mapper.readValue(reader, Entitlement.class));
             }
             finally {
                 if (reader != null) {
@@ -606,6 +896,25 @@ public class Importer {
                 }
             }
         }
+        return entitlementsToImport;
+    }
+
+    public void importEntitlements(Owner owner, Set<Product> products,
+        Collection<Entitlement> entitlements, ConsumerDto consumer, Meta meta)
+        throws SyncDataFormatException {
+        EntitlementImporter importer = new EntitlementImporter(subCurator, csCurator,
+            cdnCurator, sink, i18n);
+
+        Map<String, Product> productsById = new HashMap<String, Product>();
+        for (Product product : products) {
+            productsById.put(product.getId(), product);
+        }
+
+        Set<Subscription> subscriptionsToImport = new HashSet<Subscription>();
+        for (Entitlement entitlement : entitlements) {
+            subscriptionsToImport.add(importer.importObject(entitlement, owner,
+                productsById, consumer, meta));
+        }
 
         importer.store(owner, subscriptionsToImport);
     }
@@ -701,6 +1010,12 @@ public class Importer {
     }
 
     public void importDistributorVersions(File[] versionFiles) throws IOException {
+        new DistributorVersionImporter(distVerCurator).store(
+            readDistributorVersions(versionFiles));
+    }
+
+    private Set<DistributorVersion> readDistributorVersions(File[] versionFiles)
+        throws IOException {
         DistributorVersionImporter importer =
             new DistributorVersionImporter(distVerCurator);
         Set<DistributorVersion> distVers = new HashSet<DistributorVersion>();
@@ -716,10 +1031,10 @@ public class Importer {
                 }
             }
         }
-        importer.store(distVers);
+        return distVers;
     }
 
-    public void importContentDeliveryNetworks(File[] cdnFiles) throws IOException {
+    private Set<Cdn> readContentDeliveryNetworks(File[] cdnFiles) throws IOException {
         CdnImporter importer =
             new CdnImporter(cdnCurator);
         Set<Cdn> cdns = new HashSet<Cdn>();
@@ -735,6 +1050,20 @@ public class Importer {
                 }
             }
         }
-        importer.store(cdns);
+        return cdns;
+    }
+
+    /**
+     * Stream of the current archive entry which leaves the archive open when closed.
+     */
+    private static class UnclosableInputStream extends FilterInputStream {
+        UnclosableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the archive is closed by its owner
+        }
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.sync;
+
+import org.candlepin.model.Cdn;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.DistributorVersion;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.IdentityCertificate;
+import org.candlepin.model.Product;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ManifestContents
+ *
+ * The objects read from a manifest, either while streaming through its archive or
+ * from the files extracted to disk, ready to be imported once the whole manifest has
+ * been read. Collections of files which were not present in the manifest are left
+ * null.
+ */
+class ManifestContents {
+
+    private Meta meta;
+    private String rules;
+    private ConsumerDto consumer;
+    private IdentityCertificate upstreamIdentityCert;
+    private Set<ConsumerType> consumerTypes;
+    private Set<DistributorVersion> distributorVersions;
+    private Set<Cdn> cdns;
+    private Set<Product> products;
+    private List<Entitlement> entitlements;
+
+    public Meta getMeta() {
+        return meta;
+    }
+
+    public void setMeta(Meta meta) {
+        this.meta = meta;
+    }
+
+    public String getRules() {
+        return rules;
+    }
+
+    public void setRules(String rules) {
+        this.rules = rules;
+    }
+
+    public ConsumerDto getConsumer() {
+        return consumer;
+    }
+
+    public void setConsumer(ConsumerDto consumer) {
+        this.consumer = consumer;
+    }
+
+    public IdentityCertificate getUpstreamIdentityCert() {
+        return upstreamIdentityCert;
+    }
+
+    public void setUpstreamIdentityCert(IdentityCertificate upstreamIdentityCert) {
+        this.upstreamIdentityCert = upstreamIdentityCert;
+    }
+
+    public Set<ConsumerType> getConsumerTypes() {
+        return consumerTypes;
+    }
+
+    public void setConsumerTypes(Set<ConsumerType> consumerTypes) {
+        this.consumerTypes = consumerTypes;
+    }
+
+    public void addConsumerType(ConsumerType consumerType) {
+        if (consumerTypes == null) {
+            consumerTypes = new HashSet<ConsumerType>();
+        }
+        consumerTypes.add(consumerType);
+    }
+
+    public Set<DistributorVersion> getDistributorVersions() {
+        return distributorVersions;
+    }
+
+    public void setDistributorVersions(Set<DistributorVersion> distributorVersions) {
+        this.distributorVersions = distributorVersions;
+    }
+
+    public void addDistributorVersion(DistributorVersion distributorVersion) {
+        if (distributorVersions == null) {
+            distributorVersions = new HashSet<DistributorVersion>();
+        }
+        distributorVersions.add(distributorVersion);
+    }
+
+    public Set<Cdn> getCdns() {
+        return cdns;
+    }
+
+    public void setCdns(Set<Cdn> cdns) {
+        this.cdns = cdns;
+    }
+
+    public void addCdn(Cdn cdn) {
+        if (cdns == null) {
+            cdns = new HashSet<Cdn>();
+        }
+        cdns.add(cdn);
+    }
+
+    public Set<Product> getProducts() {
+        return products;
+    }
+
+    public void setProducts(Set<Product> products) {
+        this.products = products;
+    }
+
+    public void addProduct(Product product) {
+        if (products == null) {
+            products = new HashSet<Product>();
+        }
+        products.add(product);
+    }
+
+    public List<Entitlement> getEntitlements() {
+        return entitlements;
+    }
+
+    public void setEntitlements(List<Entitlement> entitlements) {
+        this.entitlements = entitlements;
+    }
+
+    public void addEntitlement(Entitlement entitlement) {
+        if (entitlements == null) {
+            entitlements = new ArrayList<Entitlement>();
+        }
+        entitlements.add(entitlement);
+    }
+}
@@ -26,10 +26,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.builder.EqualsBuilder;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -71,30 +77,145 @@ public class ProductImporter {
             // The downside is if multiple products reference the same content, it
             // will be updated multiple times during the import.
             for (ProductContent content : importedProduct.getProductContent()) {
-                // BZ 990113 error occurs because incoming content data has
-                //  no value for Vendor. Will place one to avoid DB issues.
                 Content c = content.getContent();
-                if (StringUtils.isBlank(c.getVendor())) {
-                    c.setVendor("unknown");
+                prepareContent(c);
+                contentCurator.createOrUpdate(c);
+            }
+
+            curator.createOrUpdate(importedProduct);
+        }
+    }
+
+    /**
+     * Stores the given products and their content like {@link #store(Set)}, but in
+     * bulk. The existing products and content are loaded with a few IN-list queries
+     * and compared with the imported ones in memory. Only new or changed rows are
+     * written, and each kind is written out with a single batched flush. Content
+     * shared by several products is written once.
+     *
+     * @param products the products to import
+     * @param timings receives the time spent looking up, comparing and writing
+     * @return the products which already existed and have been changed by the import,
+     * as {@link #getChangedProducts(Set)} would return them
+     */
+    public Set<Product> bulkStore(Set<Product> products, ImportTimings timings) {
+        timings.start();
+        Map<String, Product> importedProducts = new HashMap<String, Product>();
+        Map<String, Content> importedContent = new HashMap<String, Content>();
+        for (Product product : products) {
+            importedProducts.put(product.getId(), product);
+            for (ProductContent pc : product.getProductContent()) {
+                Content c = pc.getContent();
+                prepareContent(c);
+                if (!importedContent.containsKey(c.getId())) {
+                    importedContent.put(c.getId(), c);
                 }
+            }
+        }
 
-                /*
-                 * On standalone servers we will set metadata expire to 1 second so
-                 * clients an immediately get changes to content when published on the
-                 * server. We would use 0, but the client plugin interprets this as unset
-                 * and ignores it completely resulting in the default yum values being
-                 * used.
-                 *
-                 * We know this is a standalone server due to the fact that import is
-                 * being used, so there is no need to guard this behavior.
-                 */
-                c.setMetadataExpire(new Long(1));
+        // Content first, so the content of the existing products is already loaded:
+        Map<String, Content> existingContent =
+            contentCurator.lookupByIds(importedContent.keySet());
+        Map<String, Product> existingProducts =
+            curator.lookupByIds(importedProducts.keySet());
+        timings.stop("products.lookup");
 
-                contentCurator.createOrUpdate(c);
+        List<Content> createdContent = new ArrayList<Content>();
+        List<Content> updatedContent = new ArrayList<Content>();
+        for (Content c : importedContent.values()) {
+            Content existing = existingContent.get(c.getId());
+            if (existing == null) {
+                createdContent.add(c);
+            }
+            else if (hasContentChanged(existing, c)) {
+                updatedContent.add(c);
             }
+        }
 
-            curator.createOrUpdate(importedProduct);
+        Set<Product> changedProducts = Util.newSet();
+        List<Product> createdProducts = new ArrayList<Product>();
+        List<Product> updatedProducts = new ArrayList<Product>();
+        for (Product product : importedProducts.values()) {
+            Product existing = existingProducts.get(product.getId());
+            if (existing == null) {
+                createdProducts.add(product);
+            }
+            else if (hasProductChanged(existing, product)) {
+                changedProducts.add(product);
+                updatedProducts.add(product);
+            }
+            else if (!nullAsEmpty(existing.getDependentProductIds()).equals(
+                nullAsEmpty(product.getDependentProductIds()))) {
+                updatedProducts.add(product);
+            }
         }
+        timings.stop("products.compare");
+
+        // Point the products being written at the persistent content so Hibernate
+        // does not have to look each detached reference up again:
+        Map<String, Content> persistentContent = new HashMap<String, Content>(
+            existingContent);
+        persistentContent.putAll(contentCurator.bulkCreateOrUpdate(createdContent,
+            updatedContent));
+        List<Product> writtenProducts = new ArrayList<Product>(createdProducts);
+        writtenProducts.addAll(updatedProducts);
+        for (Product product : writtenProducts) {
+            for (ProductContent pc : product.getProductContent()) {
+                Content persistent = persistentContent.get(pc.getContent().getId());
+                if (persistent != null) {
+                    pc.setContent(persistent);
+                }
+            }
+        }
+        curator.bulkCreateOrUpdate(createdProducts, updatedProducts);
+        timings.stop("products.write");
+
+        return changedProducts;
+    }
+
+    private void prepareContent(Content c) {
+        // BZ 990113 error occurs because incoming content data has
+        //  no value for Vendor. Will place one to avoid DB issues.
+        if (StringUtils.isBlank(c.getVendor())) {
+            c.setVendor("unknown");
+        }
+
+        /*
+         * On standalone servers we will set metadata expire to 1 second so
+         * clients an immediately get changes to content when published on the
+         * server. We would use 0, but the client plugin interprets this as unset
+         * and ignores it completely resulting in the default yum values being
+         * used.
+         *
+         * We know this is a standalone server due to the fact that import is
+         * being used, so there is no need to guard this behavior.
+         */
+        c.setMetadataExpire(new Long(1));
+    }
+
+    /*
+     * Content.equals only covers the fields identifying the content, every
+     * persistent field has to be compared to know whether it must be written.
+     */
+    protected final boolean hasContentChanged(Content existing, Content imported) {
+        return !new EqualsBuilder()
+            .append(existing.getType(), imported.getType())
+            .append(existing.getLabel(), imported.getLabel())
+            .append(existing.getName(), imported.getName())
+            .append(existing.getVendor(), imported.getVendor())
+            .append(existing.getContentUrl(), imported.getContentUrl())
+            .append(existing.getRequiredTags(), imported.getRequiredTags())
+            .append(existing.getReleaseVer(), imported.getReleaseVer())
+            .append(existing.getGpgUrl(), imported.getGpgUrl())
+            .append(existing.getMetadataExpire(), imported.getMetadataExpire())
+            .append(existing.getArches(), imported.getArches())
+            .isEquals() ||
+            !nullAsEmpty(existing.getModifiedProductIds()).equals(
+                nullAsEmpty(imported.getModifiedProductIds()));
+    }
+
+    private static Set<String> nullAsEmpty(Set<String> values) {
+        return values == null ? Collections.<String>emptySet() : values;
     }
 
     /**
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContentPayloadCache
+ *
+ * Remembers the encoded content payloads (path tree, Huffman tries and node
+ * dictionary) of version 3 entitlement certificates. The payload only depends on
+ * the ordered list of content paths, which already reflects the products, content
+ * prefix, promoted environment content and content overrides of the entitlement,
+ * so it is keyed by a digest of those paths. Every entitlement of a pool whose
+ * consumers share an environment then reuses one encoding, which mostly matters
+ * when the certificates of a product or environment are regenerated en masse.
+ *
+ * The cache is bounded, least recently used payloads are evicted first. A size of
+ * zero disables it.
+ */
+@Singleton
+public class ContentPayloadCache {
+
+    private final int maxSize;
+    private final Map<String, byte[]> payloads;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ContentPayloadCache(Configuration config) {
+        this(config.getInt(ConfigProperties.V3_PAYLOAD_CACHE_SIZE));
+    }
+
+    public ContentPayloadCache(int size) {
+        this.maxSize = size;
+        this.payloads = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @param paths ordered content paths of the certificate
+     * @return a copy of the payload encoded for the same paths, or null if it must
+     * be encoded
+     */
+    public byte[] get(List<String> paths) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        byte[] payload;
+        String key = key(paths);
+        synchronized (payloads) {
+            payload = payloads.get(key);
+        }
+
+        if (payload == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return payload.clone();
+    }
+
+    /**
+     * @param paths ordered content paths of the certificate
+     * @param payload the payload encoded for those paths
+     */
+    public void put(List<String> paths, byte[] payload) {
+        if (!isEnabled() || payload == null) {
+            return;
+        }
+
+        String key = key(paths);
+        synchronized (payloads) {
+            payloads.put(key, payload.clone());
+        }
+    }
+
+    public void flush() {
+        synchronized (payloads) {
+            payloads.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private String key(List<String> paths) {
+        StringBuilder builder = new StringBuilder();
+        for (String path : paths) {
+            // Paths never contain a newline, so joining on it keeps lists distinct:
+            builder.append(path).append('\n');
+        }
+
+        try {
+            return DigestUtils.sha256Hex(builder.toString().getBytes("UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -23,10 +23,13 @@ import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -93,6 +96,25 @@ public class CrlFileUtil {
         }
     }
 
+    /**
+     * Reads the PEM encoded CRL as is, without parsing it.
+     * @param file to the CRL
+     * @return the contents of the file, empty if it does not exist
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public byte[] readCRLFileBytes(File file) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!file.exists()) {
+                return new byte[0];
+            }
+            return FileUtils.readFileToByteArray(file);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public byte[] writeCRLFile(File file, X509CRL crl)
         throws CRLException, CertificateException, IOException {
 
@@ -119,4 +141,78 @@ public class CrlFileUtil {
 
         return encoded;
     }
+
+    /**
+     * Writes a CRL to a stream.
+     */
+    public interface CrlWriter {
+        /**
+         * @param out the stream to write the PEM encoded CRL to, not to be closed
+         * @throws IOException if the CRL can not be written
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Streams the PEM encoded CRL into a temporary file next to the given file,
+     * and then moves it into place. The encoded CRL is never held in memory, and
+     * readers are only blocked while the file is being replaced.
+     * @param file to the CRL
+     * @param crl X.509 CRL structure to write
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public void streamCRLFile(File file, final X509CRL crl) throws IOException {
+        streamCRLFile(file, new CrlWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                pkiUtility.writePemEncoded(crl, out);
+            }
+        });
+    }
+
+    /**
+     * Streams the CRL produced by the given writer into a temporary file next to
+     * the given file, and then moves it into place. Readers are only blocked
+     * while the file is being replaced.
+     * @param file to the CRL
+     * @param writer writes the PEM encoded CRL
+     * @throws IOException thrown if there's general I/O problems
+     */
+    public void streamCRLFile(File file, CrlWriter writer) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            writer.write(out);
+            out.close();
+            out = null;
+
+            log.info("Completed generating CRL. Moving it into place");
+            lock.writeLock().lock();
+            try {
+                if (!tmp.renameTo(file)) {
+                    // rename does not replace existing files on every platform
+                    FileUtils.copyFile(tmp, file);
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    log.error(
+                        "exception when closing a CRL file: {}", tmp.getAbsolutePath());
+                }
+            }
+            if (tmp.exists() && !tmp.delete()) {
+                log.warn("Unable to delete temporary CRL file: {}", tmp.getAbsolutePath());
+            }
+        }
+    }
 }
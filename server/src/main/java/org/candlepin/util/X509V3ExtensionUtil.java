@@ -49,15 +49,19 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -72,19 +76,21 @@ public class X509V3ExtensionUtil extends X509Util {
     private Configuration config;
     private EntitlementCurator entCurator;
     private ProductServiceAdapter prodAdapter;
+    private ContentPayloadCache payloadCache;
     private String thisVersion = "3.2";
 
-    private long pathNodeId = 0;
-    private long huffNodeId = 0;
+    private final AtomicLong pathNodeId = new AtomicLong();
+    private final AtomicLong huffNodeId = new AtomicLong();
     private static final Object END_NODE = new Object();
     private static boolean treeDebug = false;
     @Inject
     public X509V3ExtensionUtil(Configuration config, EntitlementCurator entCurator,
-            ProductServiceAdapter prodAdapter) {
+            ProductServiceAdapter prodAdapter, ContentPayloadCache payloadCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
         this.prodAdapter = prodAdapter;
+        this.payloadCache = payloadCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Entitlement ent,
@@ -134,6 +140,24 @@ public class X509V3ExtensionUtil extends X509Util {
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        if (!payloadCache.isEnabled()) {
+            return encodeContentValue(contentList);
+        }
+
+        List<String> paths = new ArrayList<String>(contentList.size());
+        for (Content c : contentList) {
+            paths.add(c.getPath());
+        }
+
+        byte[] payload = payloadCache.get(paths);
+        if (payload == null) {
+            payload = encodeContentValue(contentList);
+            payloadCache.put(paths, payload);
+        }
+        return payload;
+    }
+
+    byte[] encodeContentValue(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -666,28 +690,21 @@ public class X509V3ExtensionUtil extends X509Util {
     public List<String> orderStrings(PathNode parent) throws IOException {
         List<String> parts = new ArrayList<String>();
         // walk tree to make string map
-        Map<String, Integer> segments =  new HashMap<String, Integer>();
+        final Map<String, Integer> segments =  new HashMap<String, Integer>();
         Set<PathNode> nodes =  new HashSet<PathNode>();
         buildSegments(segments, nodes, parent);
         for (Entry<String, Integer> entry : segments.entrySet()) {
-            String part = entry.getKey();
-            if (!part.equals("")) {
-                int count = entry.getValue();
-                if (parts.size() == 0) {
-                    parts.add(part);
-                }
-                else {
-                    int pos = parts.size();
-                    for (int i = 0; i < parts.size(); i++) {
-                        if (count < segments.get(parts.get(i))) {
-                            pos = i;
-                            break;
-                        }
-                    }
-                    parts.add(pos, part);
-                }
+            if (!entry.getKey().equals("")) {
+                parts.add(entry.getKey());
             }
         }
+        // least frequent first, the sort is stable so ties keep the map's order
+        Collections.sort(parts, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return segments.get(a).compareTo(segments.get(b));
+            }
+        });
         if (treeDebug) {
             log.debug("Parts List: " + parts);
         }
@@ -709,27 +726,20 @@ public class X509V3ExtensionUtil extends X509Util {
         }
     }
 
-    private List<PathNode> orderNodes(PathNode treeRoot) {
-        List<PathNode> result = new ArrayList<PathNode>();
-
+    List<PathNode> orderNodes(PathNode treeRoot) {
         // walk tree to make string map
-        Set<PathNode> nodes =  getPathNodes(treeRoot);
-        for (PathNode pn : nodes) {
-            int count = pn.getParents().size();
-            if (nodes.size() == 0) {
-                nodes.add(pn);
-            }
-            else {
-                int pos = result.size();
-                for (int i = 0; i < result.size(); i++) {
-                    if (count <= result.get(i).getParents().size()) {
-                        pos = i;
-                        break;
-                    }
-                }
-                result.add(pos, pn);
+        List<PathNode> result = new ArrayList<PathNode>(getPathNodes(treeRoot));
+
+        // fewest parents first, ties in the reverse of the set's order
+        Collections.reverse(result);
+        Collections.sort(result, new Comparator<PathNode>() {
+            @Override
+            public int compare(PathNode a, PathNode b) {
+                int countA = a.getParents().size();
+                int countB = b.getParents().size();
+                return countA < countB ? -1 : (countA == countB ? 0 : 1);
             }
-        }
+        });
         if (treeDebug) {
             log.debug("{}", result);
         }
@@ -745,7 +755,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
-    private byte[] makeNodeDictionary(HuffNode stringParent,
+    byte[] makeNodeDictionary(HuffNode stringParent,
         HuffNode pathNodeParent, List<PathNode> pathNodes)
         throws UnsupportedEncodingException, IOException {
 
@@ -770,37 +780,19 @@ public class X509V3ExtensionUtil extends X509Util {
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        Map<Object, boolean[]> stringCodes = makeCodeTable(stringParent);
+        Map<Object, boolean[]> nodeCodes = makeCodeTable(pathNodeParent);
+        BitPacker bits = new BitPacker(baos);
+        boolean[] endNodeLocation = stringCodes.get(END_NODE);
         for (PathNode pn : pathNodes) {
             for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
-            }
-            bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
-            }
-        }
-
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
+                bits.write(stringCodes.get(np.getName()));
+                bits.write(nodeCodes.get(np.getConnection()));
             }
-            baos.write(next);
+            bits.write(endNodeLocation);
         }
+        // the last byte is padded with zeros
+        bits.flush();
         byte[] result = baos.toByteArray();
         if (treeDebug) {
             ByteArrayInputStream bais = new ByteArrayInputStream(result);
@@ -822,6 +814,45 @@ public class X509V3ExtensionUtil extends X509Util {
             (byte) value};
     }
 
+    /*
+     * Collects the bits of the path to every value in the trie in a single walk,
+     * the same paths findHuffPath finds one search at a time. The values of a trie
+     * are unique, so each has exactly one path.
+     */
+    private Map<Object, boolean[]> makeCodeTable(HuffNode trie) {
+        Map<Object, boolean[]> codes = new HashMap<Object, boolean[]>();
+        if (trie.getLeft() == null && trie.getRight() == null) {
+            // a single value trie, its value is found without reading any bits
+            if (trie.getValue() != null) {
+                codes.put(trie.getValue(), new boolean[0]);
+            }
+            return codes;
+        }
+        addCodes(codes, trie, new boolean[0]);
+        return codes;
+    }
+
+    private void addCodes(Map<Object, boolean[]> codes, HuffNode node, boolean[] path) {
+        if (node.getValue() != null) {
+            if (!codes.containsKey(node.getValue())) {
+                codes.put(node.getValue(), path);
+            }
+            return;
+        }
+        if (node.getLeft() != null) {
+            addCodes(codes, node.getLeft(), append(path, false));
+        }
+        if (node.getRight() != null) {
+            addCodes(codes, node.getRight(), append(path, true));
+        }
+    }
+
+    private boolean[] append(boolean[] path, boolean bit) {
+        boolean[] result = Arrays.copyOf(path, path.length + 1);
+        result[path.length] = bit;
+        return result;
+    }
+
     public String findHuffPath(HuffNode trie, Object need) {
         HuffNode left = trie.getLeft();
         HuffNode right = trie.getRight();
@@ -878,7 +909,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return baos.toByteArray();
     }
 
-    private List<HuffNode> getStringNodeList(List<String> pathStrings) {
+    List<HuffNode> getStringNodeList(List<String> pathStrings) {
         List<HuffNode> nodes = new ArrayList<HuffNode>();
         int idx = 1;
         for (String part : pathStrings) {
@@ -888,7 +919,7 @@ public class X509V3ExtensionUtil extends X509Util {
         return nodes;
     }
 
-    private List<HuffNode> getPathNodeNodeList(List<PathNode> pathNodes) {
+    List<HuffNode> getPathNodeNodeList(List<PathNode> pathNodes) {
         List<HuffNode> nodes = new ArrayList<HuffNode>();
         int idx = 0;
         for (PathNode pn : pathNodes) {
@@ -902,34 +933,34 @@ public class X509V3ExtensionUtil extends X509Util {
         if (nodesList.get(0).getValue() instanceof PathNode) {
             nodesList.remove(0);
         }
-        while (nodesList.size() > 1) {
-            int node1 = findSmallest(-1, nodesList);
-            int node2 = findSmallest(node1, nodesList);
-            HuffNode hn1 = nodesList.get(node1);
-            HuffNode hn2 = nodesList.get(node2);
-            HuffNode merged = mergeNodes(hn1, hn2);
-            nodesList.remove(hn1);
-            nodesList.remove(hn2);
-            nodesList.add(merged);
+
+        /*
+         * Repeatedly merge the two lightest nodes. Nodes of equal weight are taken
+         * in list order, with merged nodes queued behind all the nodes before them,
+         * which the decoding side relies on to rebuild the very same trie.
+         */
+        PriorityQueue<QueuedHuffNode> queue = new PriorityQueue<QueuedHuffNode>(
+            Math.max(nodesList.size(), 1));
+        long sequence = 0;
+        for (HuffNode node : nodesList) {
+            queue.add(new QueuedHuffNode(node, sequence++));
+        }
+        while (queue.size() > 1) {
+            HuffNode hn1 = queue.poll().node;
+            HuffNode hn2 = queue.poll().node;
+            queue.add(new QueuedHuffNode(mergeNodes(hn1, hn2), sequence++));
         }
+        if (!queue.isEmpty()) {
+            nodesList.clear();
+            nodesList.add(queue.poll().node);
+        }
+
         if (treeDebug) {
             printTrie(nodesList.get(0), 0);
         }
         return nodesList.get(0);
     }
 
-    private int findSmallest(int exclude, List<HuffNode> nodes) {
-        int smallest = -1;
-        for (int index = 0; index < nodes.size(); index++) {
-            if (index == exclude) { continue; }
-            if (smallest == -1 || nodes.get(index).getWeight() <
-                nodes.get(smallest).getWeight()) {
-                smallest = index;
-            }
-        }
-        return smallest;
-    }
-
     private HuffNode mergeNodes(HuffNode node1, HuffNode node2) {
         HuffNode left = node1;
         HuffNode right = node2;
@@ -1111,6 +1142,60 @@ public class X509V3ExtensionUtil extends X509Util {
         return baos.toByteArray();
     }
 
+    /*
+     * Orders nodes waiting to be merged into the trie by weight and then by the
+     * order they were queued in.
+     */
+    private static class QueuedHuffNode implements Comparable<QueuedHuffNode> {
+        private final HuffNode node;
+        private final long sequence;
+
+        QueuedHuffNode(HuffNode node, long sequence) {
+            this.node = node;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedHuffNode other) {
+            if (node.getWeight() != other.node.getWeight()) {
+                return node.getWeight() < other.node.getWeight() ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /*
+     * Packs bits into bytes, most significant bit first.
+     */
+    private static class BitPacker {
+        private final ByteArrayOutputStream out;
+        private int current = 0;
+        private int count = 0;
+
+        BitPacker(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(boolean[] bits) {
+            for (boolean bit : bits) {
+                current = (current << 1) | (bit ? 1 : 0);
+                if (++count == 8) {
+                    out.write(current);
+                    current = 0;
+                    count = 0;
+                }
+            }
+        }
+
+        void flush() {
+            if (count > 0) {
+                out.write(current << (8 - count));
+                current = 0;
+                count = 0;
+            }
+        }
+    }
+
     /**
      *
      * HuffNode
@@ -1127,12 +1212,12 @@ public class X509V3ExtensionUtil extends X509Util {
             this.weight = weight;
             this.left = left;
             this.right = right;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
         public HuffNode(Object value, int weight) {
             this.value = value;
             this.weight = weight;
-            this.id = huffNodeId++;
+            this.id = huffNodeId.getAndIncrement();
         }
 
         public Object getValue() {
@@ -1175,7 +1260,7 @@ public class X509V3ExtensionUtil extends X509Util {
         private List<PathNode> parents = new ArrayList<PathNode>();
 
         public PathNode() {
-            this.id = pathNodeId++;
+            this.id = pathNodeId.getAndIncrement();
         }
 
         public long getId() {
@@ -18,11 +18,15 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.Principal;
 import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.guice.PrincipalProvider;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerInfo;
+import org.candlepin.model.OwnerInfoCache;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Rules;
 import org.candlepin.model.activationkeys.ActivationKey;
@@ -63,6 +67,8 @@ public class EventSinkImplTest {
     private EventSinkImpl eventSinkImpl;
     private Principal principal;
     private ObjectMapper mapper;
+    private OwnerInfoCache ownerInfoCache;
+    private ConsumerPrincipalCache principalCache;
 
     @Before
     public void init() throws Exception {
@@ -76,6 +82,8 @@ public class EventSinkImplTest {
             HornetQBuffers.fixedBuffer(2000));
         when(mockSessionFactory.getServerLocator()).thenReturn(mockLocator);
         this.mapper = spy(new ObjectMapper());
+        this.ownerInfoCache = new OwnerInfoCache(60000L);
+        this.principalCache = new ConsumerPrincipalCache(60000L, 10);
         this.eventSinkImpl = createEventSink(mockSessionFactory);
     }
 
@@ -95,7 +103,7 @@ public class EventSinkImplTest {
                     }
                 };
         dispatcher.initialize();
-        return new EventSinkImpl(factory, dispatcher);
+        return new EventSinkImpl(factory, dispatcher, ownerInfoCache, principalCache);
     }
 
     /**Set up the {@link ClientSessionFactory} to throw an exception when
@@ -151,6 +159,51 @@ public class EventSinkImplTest {
         verify(mockClientProducer, never()).send(any(ClientMessage.class));
     }
 
+    @Test
+    public void sendEventsInvalidatesOwnerInfo() throws Exception {
+        doReturn("event").when(mapper).writeValueAsString(anyObject());
+        ownerInfoCache.put("owner1", new OwnerInfo(), System.currentTimeMillis() - 1000);
+        Event event = mock(Event.class);
+        when(event.getTarget()).thenReturn(Event.Target.POOL);
+        when(event.getOwnerId()).thenReturn("owner1");
+
+        eventSinkImpl.queueEvent(event);
+        assertNotNull(ownerInfoCache.get("owner1"));
+        eventSinkImpl.sendEvents();
+        assertNull(ownerInfoCache.get("owner1"));
+    }
+
+    @Test
+    public void sendEventsInvalidatesModifiedConsumerPrincipal() throws Exception {
+        doReturn("event").when(mapper).writeValueAsString(anyObject());
+        Consumer consumer = TestUtil.createConsumer();
+        consumer.setId("consumer1");
+        principalCache.put("uuid:" + consumer.getUuid(), new ConsumerPrincipal(consumer));
+        Event event = mock(Event.class);
+        when(event.getTarget()).thenReturn(Event.Target.CONSUMER);
+        when(event.getType()).thenReturn(Event.Type.MODIFIED);
+        when(event.getEntityId()).thenReturn("consumer1");
+
+        eventSinkImpl.queueEvent(event);
+        assertEquals(1, principalCache.size());
+        eventSinkImpl.sendEvents();
+        assertEquals(0, principalCache.size());
+    }
+
+    @Test
+    public void transferEventsMovesQueueToTarget() throws Exception {
+        Event event = mock(Event.class);
+        EventSink target = mock(EventSink.class);
+
+        eventSinkImpl.queueEvent(event);
+        eventSinkImpl.transferEvents(target);
+        verify(target).queueEvent(event);
+
+        // Nothing is left to send from the worker's sink:
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+    }
+
     @Test
     public void consumerCreatedShouldEmitSuccessfully()
         throws Exception {
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.Event.Target;
+import org.candlepin.audit.Event.Type;
+import org.candlepin.model.StatisticCounter;
+import org.candlepin.model.StatisticCounterCurator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * StatisticListenerTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class StatisticListenerTest {
+
+    private static final String GUEST = "{\"uuid\": \"abc\", \"facts\": " +
+        "{\"virt.is_guest\": \"true\", \"cpu.cpu_socket(s)\": \"1\"}}";
+    private static final String PHYSICAL = "{\"uuid\": \"abc\", \"facts\": " +
+        "{\"virt.is_guest\": \"false\", \"cpu.cpu_socket(s)\": \"1\"}}";
+
+    @Mock private StatisticCounterCurator counterCurator;
+    private StatisticListener listener;
+
+    @Before
+    public void init() {
+        listener = new StatisticListener(counterCurator);
+    }
+
+    private Event event(Type type, Target target, String oldEntity, String newEntity) {
+        Event event = new Event();
+        event.setType(type);
+        event.setTarget(target);
+        event.setOwnerId("owner");
+        event.setOldEntity(oldEntity);
+        event.setNewEntity(newEntity);
+        return event;
+    }
+
+    @Test
+    public void consumerCreatedIncrementsCounters() {
+        listener.onEvent(event(Type.CREATED, Target.CONSUMER, null, GUEST));
+        verify(counterCurator).increment("owner", StatisticCounter.TOTAL_CONSUMERS, 1);
+        verify(counterCurator).increment("owner", StatisticCounter.GUEST_CONSUMERS, 1);
+        verify(counterCurator).increment("owner", StatisticCounter.socketsName("1"), 1);
+    }
+
+    @Test
+    public void consumerModifiedOnlyMovesChangedCounters() {
+        listener.onEvent(event(Type.MODIFIED, Target.CONSUMER, GUEST, PHYSICAL));
+        verify(counterCurator).increment("owner", StatisticCounter.GUEST_CONSUMERS, -1);
+        verify(counterCurator, times(1)).increment(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    public void entitlementEventsIgnored() {
+        listener.onEvent(event(Type.DELETED, Target.ENTITLEMENT,
+            "{\"id\": \"ent\", \"quantity\": 5}", null));
+        verify(counterCurator, never()).increment(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    public void unreadableEntityIsSkipped() {
+        listener.onEvent(event(Type.CREATED, Target.CONSUMER, null, "{not json"));
+        verify(counterCurator, never()).increment(anyString(), anyString(), anyLong());
+    }
+}
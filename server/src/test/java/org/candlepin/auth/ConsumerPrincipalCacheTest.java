@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Owner;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ConsumerPrincipalCacheTest
+ */
+public class ConsumerPrincipalCacheTest {
+
+    private ConsumerPrincipalCache cache;
+    private ConsumerPrincipal principal;
+
+    @Before
+    public void setUp() {
+        cache = new ConsumerPrincipalCache(60000L, 2);
+        principal = createPrincipal("consumer1");
+    }
+
+    private ConsumerPrincipal createPrincipal(String id) {
+        Consumer consumer = TestUtil.createConsumer(new Owner("cacheowner"));
+        consumer.setId(id);
+        return new ConsumerPrincipal(consumer);
+    }
+
+    @Test
+    public void cachedPrincipalReturned() {
+        cache.put("cert:1", principal);
+        assertSame(principal, cache.get("cert:1"));
+        assertNull(cache.get("cert:2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void expiredPrincipalDropped() throws Exception {
+        cache = new ConsumerPrincipalCache(1L, 2);
+        cache.put("cert:1", principal);
+        Thread.sleep(5);
+        assertNull(cache.get("cert:1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void disabledCacheHoldsNothing() {
+        cache = new ConsumerPrincipalCache(0L, 0);
+        cache.put("cert:1", principal);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("cert:1"));
+    }
+
+    @Test
+    public void nullPrincipalNotCached() {
+        cache.put("cert:1", null);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateDropsEveryKeyOfConsumer() {
+        ConsumerPrincipal other = createPrincipal("consumer2");
+        cache.put("cert:1", principal);
+        cache.put("uuid:1", principal);
+        cache.invalidateConsumer("consumer2");
+        assertEquals(2, cache.size());
+
+        cache.invalidateConsumer("consumer1");
+        assertEquals(0, cache.size());
+
+        cache.put("cert:2", other);
+        assertSame(other, cache.get("cert:2"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache.put("cert:1", principal);
+        cache.put("cert:2", createPrincipal("consumer2"));
+        cache.get("cert:1");
+        cache.put("cert:3", createPrincipal("consumer3"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("cert:2"));
+        assertSame(principal, cache.get("cert:1"));
+
+        // The evicted entry no longer holds on to its consumer
+        cache.invalidateConsumer("consumer2");
+        assertEquals(2, cache.size());
+    }
+}
@@ -24,22 +24,27 @@ import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509CRLEntryWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
+import org.candlepin.util.OIDUtil;
 import org.candlepin.util.Util;
 
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.X509Extensions;
 import org.bouncycastle.x509.X509V2CRLGenerator;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.hibernate.ScrollableResults;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
@@ -331,6 +336,93 @@ public class CrlGeneratorTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("serial")
+    public void deltaCRLOnlyAppendsNewSerials() {
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(getStubCSList());
+        X509CRL base = this.generator.syncCRLWithDB((X509CRL) null);
+        X509CRL delta = this.generator.createDeltaCRL(base);
+        assertEquals(1, this.generator.getDeltaCRLCount(delta));
+        assertNull(delta.getRevokedCertificates());
+
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(new ArrayList<CertificateSerial>() {
+                {
+                    add(stubCS(1001L, new Date()));
+                }
+            });
+        delta = this.generator.syncDeltaCRLWithDB(delta);
+
+        assertEquals(BigInteger.ONE, this.generator.getBaseCRLNumber(delta));
+        assertEquals(new BigInteger("3"), this.generator.getCRLNumber(delta));
+        assertEquals(2, this.generator.getDeltaCRLCount(delta));
+        assertNotNull(delta.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR));
+        assertTrue(delta.getCriticalExtensionOIDs().contains(
+            OIDUtil.DELTA_CRL_INDICATOR));
+        assertEquals(1, delta.getRevokedCertificates().size());
+        assertNotNull(delta.getRevokedCertificate(Util.toBigInt(1001L)));
+
+        // delta runs leave expired serials to the complete regeneration
+        verify(this.curator, never()).getExpiredSerials();
+        verify(this.curator, times(1)).deleteExpiredSerials();
+    }
+
+    @Test
+    @SuppressWarnings("serial")
+    public void completeCRLFoldsInDelta() {
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(getStubCSList());
+        X509CRL base = this.generator.syncCRLWithDB((X509CRL) null);
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(new ArrayList<CertificateSerial>() {
+                {
+                    add(stubCS(1001L, new Date()));
+                }
+            });
+        X509CRL delta = this.generator.syncDeltaCRLWithDB(
+            this.generator.createDeltaCRL(base));
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(new ArrayList<CertificateSerial>());
+
+        X509CRL complete = this.generator.syncCRLWithDB(base, delta);
+
+        assertEquals(new BigInteger("4"), this.generator.getCRLNumber(complete));
+        assertNull(complete.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR));
+        Set<BigInteger> nos = Util.newSet();
+        for (X509CRLEntry entry : complete.getRevokedCertificates()) {
+            nos.add(entry.getSerialNumber());
+        }
+        assertEquals(4, nos.size());
+        assertTrue(nos.contains(Util.toBigInt(1001L)));
+        assertTrue(nos.contains(new BigInteger("1235465")));
+    }
+
+    @Test
+    public void writeCRLStreamsRevokedSerials() throws Exception {
+        ScrollableResults results = mock(ScrollableResults.class);
+        when(results.next()).thenReturn(true, true, false);
+        when(results.get(0)).thenReturn(100L, 1235465L);
+        when(results.get(1)).thenReturn(new Date(), null);
+        when(this.curator.scrollRevokedSerials()).thenReturn(results);
+        when(this.curator.retrieveTobeCollectedSerials())
+            .thenReturn(getStubCSList());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.generator.writeCRL(BigInteger.TEN, out);
+
+        verify(this.curator).saveOrUpdateAll(anyListOf(CertificateSerial.class));
+        verify(this.curator).deleteExpiredSerials();
+        verify(results).close();
+
+        X509CRL x509crl = (X509CRL) CertificateFactory.getInstance("X.509")
+            .generateCRL(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(BigInteger.TEN, this.generator.getCRLNumber(x509crl));
+        assertEquals(2, x509crl.getRevokedCertificates().size());
+        assertNotNull(x509crl.getRevokedCertificate(new BigInteger("100")));
+        assertNotNull(x509crl.getRevokedCertificate(new BigInteger("1235465")));
+    }
+
     @Test
     public void decodeValue() throws Exception {
         // there's gotta be a way to reduce to a set of mocks
@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.common.config.MapConfiguration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.CertificateSerialCurator;
+import org.candlepin.util.CrlFileUtil;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * CrlPublisherTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrlPublisherTest {
+
+    private static final File CRL_FILE = new File("/tmp/test-crl.crl");
+    private static final File DELTA_FILE = new File("/tmp/test-crl-delta.crl");
+
+    @Mock private CrlGenerator crlGenerator;
+    @Mock private CrlFileUtil crlFileUtil;
+    @Mock private CertificateSerialCurator serialCurator;
+    @Mock private X509CRL crl;
+    @Mock private X509CRL delta;
+    @Mock private X509CRL newCrl;
+    @Mock private X509CRL newDelta;
+
+    private MapConfiguration config;
+    private CrlPublisher publisher;
+
+    @Before
+    public void init() throws Exception {
+        config = new MapConfiguration();
+        config.setProperty(ConfigProperties.CRL_DELTA_MAX_DELTAS, "3");
+        publisher = new CrlPublisher(config, crlGenerator, crlFileUtil, serialCurator);
+
+        when(crlFileUtil.readCRLFile(eq(CRL_FILE))).thenReturn(crl);
+        when(crlGenerator.createDeltaCRL(eq(newCrl))).thenReturn(newDelta);
+    }
+
+    @Test
+    public void publishWithoutDeltaRegeneratesCompleteCrl() throws Exception {
+        when(crlGenerator.syncCRLWithDB(eq(crl), any(X509CRL.class))).thenReturn(newCrl);
+
+        publisher.publish(CRL_FILE);
+
+        verify(crlFileUtil).streamCRLFile(eq(CRL_FILE), eq(newCrl));
+        verify(crlGenerator, never()).createDeltaCRL(any(X509CRL.class));
+    }
+
+    @Test
+    public void publishAppendsToDelta() throws Exception {
+        config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, DELTA_FILE.getPath());
+        when(crlFileUtil.readCRLFile(eq(DELTA_FILE))).thenReturn(delta);
+        when(crlGenerator.getDeltaCRLCount(eq(delta))).thenReturn(2);
+        when(crlGenerator.syncDeltaCRLWithDB(eq(delta))).thenReturn(newDelta);
+
+        publisher.publish(CRL_FILE);
+
+        verify(crlFileUtil).streamCRLFile(eq(DELTA_FILE), eq(newDelta));
+        verify(crlFileUtil, never()).readCRLFile(eq(CRL_FILE));
+        verify(crlGenerator, never()).syncCRLWithDB(any(X509CRL.class),
+            any(X509CRL.class));
+    }
+
+    @Test
+    public void publishWritesCompleteCrlFromDatabaseAfterMaxDeltas() throws Exception {
+        config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, DELTA_FILE.getPath());
+        when(crlFileUtil.readCRLFile(eq(DELTA_FILE))).thenReturn(delta);
+        when(crlGenerator.getDeltaCRLCount(eq(delta))).thenReturn(3);
+        when(crlGenerator.getCRLNumber(eq(delta))).thenReturn(BigInteger.TEN);
+        when(crlGenerator.createDeltaCRL(eq(BigInteger.valueOf(11L)))).thenReturn(newDelta);
+
+        publisher.publish(CRL_FILE);
+
+        ArgumentCaptor<CrlFileUtil.CrlWriter> writer =
+            ArgumentCaptor.forClass(CrlFileUtil.CrlWriter.class);
+        verify(crlFileUtil).streamCRLFile(eq(CRL_FILE), writer.capture());
+        OutputStream out = new ByteArrayOutputStream();
+        writer.getValue().write(out);
+        verify(crlGenerator).writeCRL(eq(BigInteger.valueOf(11L)), eq(out));
+
+        verify(crlFileUtil).streamCRLFile(eq(DELTA_FILE), eq(newDelta));
+        verify(crlFileUtil, never()).readCRLFile(eq(CRL_FILE));
+        verify(crlGenerator, never()).syncDeltaCRLWithDB(any(X509CRL.class));
+    }
+
+    @Test
+    public void publishStartsDeltaWhenMissing() throws Exception {
+        config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, DELTA_FILE.getPath());
+        when(crlGenerator.syncCRLWithDB(eq(crl), any(X509CRL.class))).thenReturn(newCrl);
+
+        publisher.publish(CRL_FILE);
+
+        verify(crlFileUtil).streamCRLFile(eq(CRL_FILE), eq(newCrl));
+        verify(crlFileUtil).streamCRLFile(eq(DELTA_FILE), eq(newDelta));
+    }
+
+    @Test
+    public void publishCompleteResetsDelta() throws Exception {
+        config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, DELTA_FILE.getPath());
+        when(crlFileUtil.readCRLFile(eq(DELTA_FILE))).thenReturn(delta);
+        when(crlGenerator.syncCRLWithDB(eq(crl), eq(delta))).thenReturn(newCrl);
+
+        publisher.publishComplete(CRL_FILE);
+
+        verify(crlFileUtil).writeCRLFile(eq(CRL_FILE), eq(newCrl));
+        verify(crlFileUtil).streamCRLFile(eq(DELTA_FILE), eq(newDelta));
+    }
+
+    @Test
+    public void snapshotServedWithoutRegenerating() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+
+            CrlPublisher.Snapshot snapshot = publisher.getSnapshot(f);
+            assertSame(snapshot, publisher.getSnapshot(f));
+
+            assertEquals("crl", snapshot.getCrl());
+            assertEquals(DigestUtils.md5Hex("crl".getBytes()), snapshot.getETag());
+            verify(crlFileUtil, times(1)).readCRLFileBytes(eq(f));
+            verify(crlGenerator, never()).syncCRLWithDB(any(X509CRL.class),
+                any(X509CRL.class));
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void snapshotRegeneratedWhenSerialsPending() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+            when(crlFileUtil.readCRLFile(eq(f))).thenReturn(crl);
+            when(crlGenerator.syncCRLWithDB(eq(crl), any(X509CRL.class)))
+                .thenReturn(newCrl);
+            publisher.getSnapshot(f);
+
+            when(serialCurator.hasTobeCollectedSerials()).thenReturn(true);
+            publisher.getSnapshot(f);
+
+            verify(crlFileUtil).streamCRLFile(eq(f), eq(newCrl));
+            // writing the CRL drops the snapshot
+            verify(crlFileUtil, times(2)).readCRLFileBytes(eq(f));
+        }
+        finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void snapshotAppendsPendingSerialsToDelta() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        File d = File.createTempFile("test-delta", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, d.getPath());
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+            when(crlFileUtil.readCRLFile(eq(d))).thenReturn(delta);
+            when(crlGenerator.getDeltaCRLCount(eq(delta))).thenReturn(1);
+            when(crlGenerator.syncDeltaCRLWithDB(eq(delta))).thenReturn(newDelta);
+            when(serialCurator.hasTobeCollectedSerials()).thenReturn(true);
+
+            publisher.getSnapshot(f);
+
+            verify(crlFileUtil).streamCRLFile(eq(d), eq(newDelta));
+            verify(crlFileUtil, never()).streamCRLFile(eq(f),
+                any(CrlFileUtil.CrlWriter.class));
+        }
+        finally {
+            f.delete();
+            d.delete();
+        }
+    }
+
+    @Test
+    public void snapshotRegeneratesCompleteCrlAfterMaxDeltas() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        File d = File.createTempFile("test-delta", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, d.getPath());
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+            when(crlFileUtil.readCRLFile(eq(d))).thenReturn(delta);
+            when(crlGenerator.getDeltaCRLCount(eq(delta))).thenReturn(3);
+            when(crlGenerator.getCRLNumber(eq(delta))).thenReturn(BigInteger.TEN);
+            when(serialCurator.hasTobeCollectedSerials()).thenReturn(true);
+
+            publisher.getSnapshot(f);
+
+            verify(crlFileUtil).streamCRLFile(eq(f), any(CrlFileUtil.CrlWriter.class));
+            verify(crlGenerator, never()).syncDeltaCRLWithDB(any(X509CRL.class));
+        }
+        finally {
+            f.delete();
+            d.delete();
+        }
+    }
+
+    @Test
+    public void snapshotServesCompleteAndDeltaCrl() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        File d = File.createTempFile("test-delta", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, d.getPath());
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+            when(crlFileUtil.readCRLFileBytes(eq(d))).thenReturn("delta".getBytes());
+            Set<X509CRLEntry> entries = new HashSet<X509CRLEntry>();
+            entries.add(mock(X509CRLEntry.class));
+            doReturn(entries).when(delta).getRevokedCertificates();
+            when(crlFileUtil.readCRLFile(eq(d))).thenReturn(delta);
+
+            CrlPublisher.Snapshot snapshot = publisher.getSnapshot(f);
+            assertSame(snapshot, publisher.getSnapshot(f));
+
+            assertEquals("crldelta", snapshot.getCrl());
+            assertEquals(DigestUtils.md5Hex("crldelta".getBytes()), snapshot.getETag());
+            verify(crlFileUtil, never()).streamCRLFile(eq(f),
+                any(CrlFileUtil.CrlWriter.class));
+            verify(crlGenerator, never()).syncCRLWithDB(any(X509CRL.class),
+                any(X509CRL.class));
+        }
+        finally {
+            f.delete();
+            d.delete();
+        }
+    }
+
+    @Test
+    public void snapshotKeptWhileDeltaEmpty() throws Exception {
+        File f = File.createTempFile("test", ".crl");
+        File d = File.createTempFile("test-delta", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "crl".getBytes());
+            config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH, d.getPath());
+            when(crlFileUtil.readCRLFile(eq(d))).thenReturn(delta);
+            when(crlFileUtil.readCRLFileBytes(eq(f))).thenReturn("crl".getBytes());
+
+            CrlPublisher.Snapshot snapshot = publisher.getSnapshot(f);
+            assertSame(snapshot, publisher.getSnapshot(f));
+
+            verify(crlFileUtil, times(1)).readCRLFile(eq(d));
+            verify(crlFileUtil, never()).streamCRLFile(eq(f),
+                any(CrlFileUtil.CrlWriter.class));
+        }
+        finally {
+            f.delete();
+            d.delete();
+        }
+    }
+}
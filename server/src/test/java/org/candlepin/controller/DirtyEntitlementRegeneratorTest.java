@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.pinsetter.core.JobWorkers;
+
+import com.google.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * DirtyEntitlementRegeneratorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DirtyEntitlementRegeneratorTest {
+
+    @Mock private PoolManager poolManager;
+    @Mock private EntitlementCurator entitlementCurator;
+    @Mock private PoolManager workerPoolManager;
+    @Mock private Provider<PoolManager> poolManagerProvider;
+    @Mock private JobWorkers workers;
+    @Mock private EventSink workerSink;
+    private CandlepinCommonTestConfig config;
+
+    @Before
+    public void setUp() {
+        config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.DIRTY_REGEN_THREADS, "1");
+        config.setProperty(ConfigProperties.DIRTY_REGEN_BATCH_SIZE, "2");
+        config.setProperty(ConfigProperties.DIRTY_REGEN_MAX_PER_RUN, "3");
+        when(entitlementCurator.listDirtyIds(anyInt())).thenReturn(new ArrayList<String>());
+        when(poolManagerProvider.get()).thenReturn(poolManager);
+        when(workers.getInstance(PoolManager.class)).thenReturn(workerPoolManager);
+        when(workers.getEventSink()).thenReturn(workerSink);
+        Answer<Integer> regenerateAll = new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return ((Collection<?>) invocation.getArguments()[0]).size();
+            }
+        };
+        when(poolManager.regenerateDirtyEntitlementsByIds(anyCollectionOf(String.class)))
+            .thenAnswer(regenerateAll);
+        when(workerPoolManager.regenerateDirtyEntitlementsByIds(
+            anyCollectionOf(String.class))).thenAnswer(regenerateAll);
+    }
+
+    private DirtyEntitlementRegenerator createRegenerator() {
+        return new DirtyEntitlementRegenerator(poolManagerProvider, entitlementCurator,
+            config);
+    }
+
+    @Test
+    public void regenerateInBatches() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(
+            Arrays.asList("ent1", "ent2", "ent3"));
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(3, regenerator.regenerate(null));
+
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent1", "ent2"));
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent3"));
+        assertEquals(0, regenerator.getInProgress());
+        assertEquals(0, regenerator.getFailingCount());
+        assertEquals(3, regenerator.getRegeneratedCount());
+    }
+
+    @Test
+    public void regenerateKeepsMostRecentCheckinsFirst() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(
+            Arrays.asList("recent1", "recent2", "recent3", "old"));
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(3, regenerator.regenerate(null));
+
+        verify(poolManager).regenerateDirtyEntitlementsByIds(
+            Arrays.asList("recent1", "recent2"));
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("recent3"));
+        verify(poolManager, never()).regenerateDirtyEntitlementsByIds(
+            Arrays.asList("old"));
+    }
+
+    @Test
+    public void failedBatchRetriedPerEntitlement() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(
+            Arrays.asList("ent1", "ent2", "ent3"));
+        when(poolManager.regenerateDirtyEntitlementsByIds(Arrays.asList("ent1", "ent2")))
+            .thenThrow(new RuntimeException("boom"));
+        when(poolManager.regenerateDirtyEntitlementsByIds(Arrays.asList("ent1")))
+            .thenThrow(new RuntimeException("boom"));
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(2, regenerator.regenerate(null));
+
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent2"));
+        assertEquals(1, regenerator.getFailedCount());
+        assertEquals(1, regenerator.getFailingCount());
+        assertEquals(2, regenerator.getRegeneratedCount());
+        assertEquals(0, regenerator.getInProgress());
+    }
+
+    @Test
+    public void failingEntitlementsRegeneratedLast() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(Arrays.asList("ent1"));
+        when(entitlementCurator.listDirtyIds(4)).thenReturn(
+            Arrays.asList("ent1", "ent2", "ent3", "ent4"));
+        when(poolManager.regenerateDirtyEntitlementsByIds(Arrays.asList("ent1")))
+            .thenThrow(new RuntimeException("boom"));
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(0, regenerator.regenerate(null));
+        assertEquals(3, regenerator.regenerate(null));
+
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent1"));
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent2", "ent3"));
+        verify(poolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent4"));
+        assertEquals(1, regenerator.getFailingCount());
+    }
+
+    @Test
+    public void failingEntitlementForgottenOnceRegenerated() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(Arrays.asList("ent1"));
+        when(entitlementCurator.listDirtyIds(4)).thenReturn(Arrays.asList("ent1"));
+        when(poolManager.regenerateDirtyEntitlementsByIds(Arrays.asList("ent1")))
+            .thenThrow(new RuntimeException("boom")).thenReturn(1);
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        regenerator.regenerate(null);
+        assertEquals(1, regenerator.getFailingCount());
+        assertEquals(1, regenerator.regenerate(null));
+
+        assertEquals(0, regenerator.getFailingCount());
+    }
+
+    @Test
+    public void batchesRunAsJobWorkers() {
+        config.setProperty(ConfigProperties.DIRTY_REGEN_THREADS, "2");
+        List<String> ids = Arrays.asList("ent1", "ent2", "ent3");
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(ids);
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(3, regenerator.regenerate(workers));
+
+        verify(workers, times(2)).enter();
+        verify(workers, times(2)).exit();
+        verify(workers, times(2)).collect(workerSink);
+        verify(workerPoolManager).regenerateDirtyEntitlementsByIds(
+            Arrays.asList("ent1", "ent2"));
+        verify(workerPoolManager).regenerateDirtyEntitlementsByIds(Arrays.asList("ent3"));
+        verify(poolManager, never()).regenerateDirtyEntitlementsByIds(
+            anyCollectionOf(String.class));
+        assertEquals(3, regenerator.getRegeneratedCount());
+    }
+
+    @Test
+    public void poolManagerLookedUpForEveryRun() {
+        when(entitlementCurator.listDirtyIds(3)).thenReturn(Arrays.asList("ent1"))
+            .thenReturn(Arrays.asList("ent2"));
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        regenerator.regenerate(workers);
+        regenerator.regenerate(workers);
+
+        verify(poolManagerProvider, times(2)).get();
+        verify(workers, never()).enter();
+    }
+
+    @Test
+    public void nothingDirty() {
+        DirtyEntitlementRegenerator regenerator = createRegenerator();
+
+        assertEquals(0, regenerator.regenerate(workers));
+
+        verify(poolManager, never()).regenerateDirtyEntitlementsByIds(
+            anyCollectionOf(String.class));
+        verify(workers, never()).enter();
+    }
+}
@@ -58,6 +58,9 @@ import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 import org.candlepin.policy.js.pool.PoolRules;
 import org.candlepin.policy.js.pool.PoolUpdate;
 import org.candlepin.resource.dto.AutobindData;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
+import org.candlepin.service.BulkSubscriptionServiceAdapter;
+import org.candlepin.service.EntitlementCertRequest;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
@@ -93,7 +96,7 @@ public class PoolManagerTest {
     @Mock
     private PoolCurator mockPoolCurator;
     @Mock
-    private SubscriptionServiceAdapter mockSubAdapter;
+    private BulkSubscriptionServiceAdapter mockSubAdapter;
     @Mock
     private ProductServiceAdapter mockProductAdapter;
     @Mock
@@ -105,7 +108,7 @@ public class PoolManagerTest {
     @Mock
     private EntitlementCertificateCurator certCuratorMock;
     @Mock
-    private EntitlementCertServiceAdapter entCertAdapterMock;
+    private BaseEntitlementCertServiceAdapter entCertAdapterMock;
     @Mock
     private Enforcer enforcerMock;
     @Mock
@@ -382,6 +385,58 @@ public class PoolManagerTest {
         verify(this.mockPoolCurator, times(1)).delete(any(Pool.class));
     }
 
+    @Test
+    public void refreshPoolsLooksUpSubscriptionsInBulk() {
+        Subscription s = TestUtil.createSubscription(getOwner(),
+            TestUtil.createProduct());
+        s.setId("existing");
+        Pool p = TestUtil.createPool(s.getProduct());
+        p.setSourceSubscription(new SourceSubscription("deleted", "master"));
+        List<Pool> pools = Util.newList();
+        pools.add(p);
+        mockPoolsList(pools);
+
+        List<String> subIds = new LinkedList<String>();
+        subIds.add("existing");
+        subIds.add("deleted");
+        when(mockSubAdapter.getSubscriptionIds(any(Owner.class))).thenReturn(subIds);
+        List<Subscription> subscriptions = Util.newList();
+        subscriptions.add(s);
+        when(mockSubAdapter.getSubscriptions(anyCollectionOf(String.class)))
+            .thenReturn(subscriptions);
+
+        this.manager.getRefresher().add(getOwner()).run();
+
+        verify(mockSubAdapter, times(1)).getSubscriptions(anyCollectionOf(String.class));
+        verify(mockSubAdapter, never()).getSubscription(any(String.class));
+        verify(poolRulesMock).createPools(eq(s), any(List.class));
+        // The pool of the subscription which could not be found is removed:
+        verify(mockPoolCurator).delete(eq(p));
+    }
+
+    @Test
+    public void refreshPoolsLooksUpSubscriptionsOneByOneWithOtherAdapters() {
+        Subscription s = TestUtil.createSubscription(getOwner(),
+            TestUtil.createProduct());
+        s.setId("existing");
+        mockPoolsList(new ArrayList<Pool>());
+        SubscriptionServiceAdapter otherAdapter = mock(SubscriptionServiceAdapter.class);
+        List<String> subIds = new LinkedList<String>();
+        subIds.add("existing");
+        when(otherAdapter.getSubscriptionIds(any(Owner.class))).thenReturn(subIds);
+        when(otherAdapter.getSubscription("existing")).thenReturn(s);
+        CandlepinPoolManager otherManager = new CandlepinPoolManager(mockPoolCurator,
+            otherAdapter, productCache, entCertAdapterMock, mockEventSink, eventFactory,
+            mockConfig, enforcerMock, poolRulesMock, entitlementCurator,
+            consumerCuratorMock, certCuratorMock, complianceRules, autobindRules,
+            activationKeyRules);
+
+        otherManager.getRefresher().add(getOwner()).run();
+
+        verify(otherAdapter).getSubscription("existing");
+        verify(poolRulesMock).createPools(eq(s), anyListOf(Pool.class));
+    }
+
     @Test
     public void testLazyRegenerate() {
         Entitlement e = new Entitlement();
@@ -420,6 +475,122 @@ public class PoolManagerTest {
         verify(mockEventSink, times(1)).queueEvent(any(Event.class));
     }
 
+    private List<Entitlement> createDirtyEntitlements(int count) {
+        Subscription s = TestUtil.createSubscription(getOwner(), product);
+        s.setId("testSubId");
+        pool.setSourceSubscription(new SourceSubscription(s.getId(), "master"));
+        when(mockSubAdapter.getSubscription(pool.getSubscriptionId())).thenReturn(s);
+
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        for (int i = 0; i < count; i++) {
+            Entitlement e = new Entitlement(pool, TestUtil.createConsumer(o), 1);
+            e.setId("ent" + i);
+            e.setDirty(true);
+            ents.add(e);
+        }
+        return ents;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockBatchGeneration(final String oversizedEntId) throws Exception {
+        when(entCertAdapterMock.generateEntitlementCerts(anyListOf(
+            EntitlementCertRequest.class))).thenAnswer(
+                new Answer<List<EntitlementCertificate>>() {
+                    @Override
+                    public List<EntitlementCertificate> answer(
+                        InvocationOnMock invocation) {
+                        List<EntitlementCertRequest> requests =
+                            (List<EntitlementCertRequest>) invocation.getArguments()[0];
+                        List<EntitlementCertificate> certs =
+                            new ArrayList<EntitlementCertificate>();
+                        for (EntitlementCertRequest request : requests) {
+                            certs.add(request.getEntitlement().getId()
+                                .equals(oversizedEntId) ?
+                                null : new EntitlementCertificate());
+                        }
+                        return certs;
+                    }
+                });
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testNonLazyRegenerateInBatches() throws Exception {
+        when(mockConfig.getInt(eq(ConfigProperties.ENTITLEMENT_CERT_BATCH_SIZE)))
+            .thenReturn(3);
+        List<Entitlement> ents = createDirtyEntitlements(3);
+        EntitlementCertificate oversizedOld = new EntitlementCertificate();
+        ents.get(1).getCertificates().add(oversizedOld);
+        mockBatchGeneration("ent1");
+
+        manager.regenerateCertificatesOf(ents, false);
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(entCertAdapterMock).generateEntitlementCerts(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        verify(entCertAdapterMock, never()).generateEntitlementCert(
+            any(Entitlement.class), any(Subscription.class), any(Product.class));
+        // Entitlements of the same pool share one subscription lookup:
+        verify(mockSubAdapter, times(1)).getSubscription(eq("testSubId"));
+
+        assertFalse(ents.get(0).getDirty());
+        assertFalse(ents.get(2).getDirty());
+        // Too large to regenerate, keeps its certificate and stays dirty:
+        assertTrue(ents.get(1).getDirty());
+        assertTrue(ents.get(1).getCertificates().contains(oversizedOld));
+        verify(certCuratorMock, never()).delete(eq(oversizedOld));
+        verify(mockEventSink, times(2)).queueEvent(any(Event.class));
+    }
+
+    @Test
+    public void testNonLazyRegenerateOneByOneWithOtherAdapters() throws Exception {
+        when(mockConfig.getInt(eq(ConfigProperties.ENTITLEMENT_CERT_BATCH_SIZE)))
+            .thenReturn(3);
+        List<Entitlement> ents = createDirtyEntitlements(3);
+        EntitlementCertServiceAdapter otherAdapter =
+            mock(EntitlementCertServiceAdapter.class);
+        when(otherAdapter.generateEntitlementCert(any(Entitlement.class),
+            any(Subscription.class), any(Product.class))).thenReturn(
+                new EntitlementCertificate());
+        CandlepinPoolManager otherManager = new CandlepinPoolManager(mockPoolCurator,
+            mockSubAdapter, productCache, otherAdapter, mockEventSink, eventFactory,
+            mockConfig, enforcerMock, poolRulesMock, entitlementCurator,
+            consumerCuratorMock, certCuratorMock, complianceRules, autobindRules,
+            activationKeyRules);
+
+        otherManager.regenerateCertificatesOf(ents, false);
+
+        verify(otherAdapter, times(3)).generateEntitlementCert(any(Entitlement.class),
+            any(Subscription.class), any(Product.class));
+        for (Entitlement e : ents) {
+            assertFalse(e.getDirty());
+        }
+    }
+
+    @Test
+    public void testCanceledRegenerateMarksRemainingDirty() throws Exception {
+        when(mockConfig.getInt(eq(ConfigProperties.ENTITLEMENT_CERT_BATCH_SIZE)))
+            .thenReturn(2);
+        List<Entitlement> ents = createDirtyEntitlements(5);
+        mockBatchGeneration(null);
+        for (Entitlement e : ents) {
+            e.setDirty(false);
+        }
+        PoolManager.RegenerationMonitor monitor = mock(PoolManager.RegenerationMonitor.class);
+        when(monitor.isCanceled()).thenReturn(true);
+
+        manager.regenerateCertificatesOf(ents, false, monitor);
+
+        verify(entCertAdapterMock, times(1)).generateEntitlementCerts(
+            anyListOf(EntitlementCertRequest.class));
+        verify(monitor, times(1)).isCanceled();
+        assertFalse(ents.get(0).getDirty());
+        assertFalse(ents.get(1).getDirty());
+        for (Entitlement e : ents.subList(2, ents.size())) {
+            assertTrue(e.getDirty());
+        }
+    }
+
     /**
      * @return
      */
@@ -508,8 +679,12 @@ public class PoolManagerTest {
             anyBoolean())).thenReturn(page);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        Map<String, ValidationResult> resultMap = new HashMap<String, ValidationResult>();
+        for (Pool pool : pools) {
+            resultMap.put(pool.getId(), result);
+        }
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollectionOf(Pool.class),
+            any(CallerType.class))).thenReturn(resultMap);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -707,8 +882,12 @@ public class PoolManagerTest {
                 .thenReturn(page);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        Map<String, ValidationResult> resultMap = new HashMap<String, ValidationResult>();
+        for (Pool pool : pools) {
+            resultMap.put(pool.getId(), result);
+        }
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollectionOf(Pool.class),
+            any(CallerType.class))).thenReturn(resultMap);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -782,6 +961,7 @@ public class PoolManagerTest {
             when(mockSubAdapter.getSubscription(eq(sub.getId()))).thenReturn(sub);
         }
         when(mockSubAdapter.getSubscriptionIds(any(Owner.class))).thenReturn(subIds);
+        when(mockSubAdapter.getSubscriptions(anyCollectionOf(String.class))).thenReturn(subs);
         when(mockSubAdapter.getSubscriptions(any(Owner.class))).thenReturn(subs);
     }
 
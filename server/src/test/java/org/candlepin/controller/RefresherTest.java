@@ -17,11 +17,13 @@ package org.candlepin.controller;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import org.candlepin.audit.EventSink;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
 import org.candlepin.model.SourceSubscription;
 import org.candlepin.model.Subscription;
+import org.candlepin.pinsetter.core.JobWorkers;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.util.Util;
 
@@ -30,6 +32,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -136,4 +140,52 @@ public class RefresherTest {
         verify(poolManager, times(1)).updatePoolsForSubscription(any(List.class),
             any(Subscription.class), eq(true));
     }
+
+    @Test
+    public void testPartitionedRefresh() {
+        Owner owner = mock(Owner.class);
+        JobWorkers workers = mock(JobWorkers.class);
+        CandlepinPoolManager workerManager = mock(CandlepinPoolManager.class);
+        EventSink workerSink = mock(EventSink.class);
+        Refresher.ProgressListener listener = mock(Refresher.ProgressListener.class);
+        when(workers.getInstance(CandlepinPoolManager.class)).thenReturn(workerManager);
+        when(workers.getEventSink()).thenReturn(workerSink);
+        when(subAdapter.getSubscriptionIds(owner)).thenReturn(
+            Arrays.asList("e", "d", "c", "b", "a"));
+        when(workerManager.refreshPoolsForPartition(anyListOf(String.class), eq(true)))
+            .thenReturn(new ArrayList<String>());
+        when(workerManager.refreshPoolsForPartition(eq(Arrays.asList("c", "d")), eq(true)))
+            .thenReturn(Arrays.asList("c"));
+
+        refresher = new Refresher(poolManager, subAdapter, true, 2, 2);
+        refresher.setWorkers(workers).setProgressListener(listener);
+        refresher.add(owner).run();
+
+        verify(workerManager).refreshPoolsForPartition(eq(Arrays.asList("a", "b")), eq(true));
+        verify(workerManager).refreshPoolsForPartition(eq(Arrays.asList("c", "d")), eq(true));
+        verify(workerManager).refreshPoolsForPartition(eq(Arrays.asList("e")), eq(true));
+        verify(poolManager, never()).refreshPoolsForPartition(anyListOf(String.class),
+            anyBoolean());
+        verify(poolManager).cleanupPoolsForOwner(eq(owner),
+            eq(Arrays.asList("a", "b", "d", "e")), eq(true));
+        verify(poolManager, never()).refreshPoolsWithRegeneration(any(Owner.class),
+            anyBoolean());
+        verify(workers, times(3)).enter();
+        verify(workers, times(3)).exit();
+        verify(workers, times(3)).collect(workerSink);
+        verify(listener).progress(eq(owner), eq(5), eq(5));
+    }
+
+    @Test
+    public void testNonLazyRefreshNotPartitioned() {
+        Owner owner = mock(Owner.class);
+
+        refresher = new Refresher(poolManager, subAdapter, false, 2, 2);
+        refresher.setWorkers(mock(JobWorkers.class));
+        refresher.add(owner).run();
+
+        verify(poolManager).refreshPoolsWithRegeneration(eq(owner), eq(false));
+        verify(poolManager, never()).refreshPoolsForPartition(anyListOf(String.class),
+            anyBoolean());
+    }
 }
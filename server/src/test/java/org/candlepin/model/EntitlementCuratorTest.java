@@ -25,6 +25,7 @@ import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -43,6 +44,7 @@ public class EntitlementCuratorTest extends DatabaseTestFixture {
     @Inject private ConsumerCurator consumerCurator;
     @Inject private EntitlementCurator entitlementCurator;
     @Inject private EnvironmentCurator envCurator;
+    @Inject private EntitlementCertificateCurator entCertCurator;
 
     private Entitlement secondEntitlement;
     private Entitlement firstEntitlement;
@@ -581,4 +583,77 @@ public class EntitlementCuratorTest extends DatabaseTestFixture {
         Entitlement ent = createEntitlement(owner, consumer, pool, cert);
         return entitlementCurator.create(ent);
     }
+
+    @Test
+    public void listSerialsForConsumerSkipsExpiredCerts() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool currentPool = createPoolAndSub(owner, product, 1L, pastDate, futureDate);
+        poolCurator.create(currentPool);
+
+        EntitlementCertificate cert = createEntitlementCertificate("key", "certificate");
+        Entitlement ent = createEntitlement(owner, consumer, currentPool, cert);
+        ent.setDirty(true);
+        entitlementCurator.create(ent);
+
+        Pool expiredPool = createPoolAndSub(owner, product, 1L, pastDate,
+            createDate(2000, 1, 1));
+        poolCurator.create(expiredPool);
+        entitlementCurator.create(createEntitlement(owner, consumer, expiredPool,
+            createEntitlementCertificate("key", "certificate")));
+
+        List<EntitlementCertificateSerial> serials =
+            entCertCurator.listSerialsForConsumer(consumer);
+        assertEquals(1, serials.size());
+        assertEquals(cert.getSerial().getId(), serials.get(0).getSerial());
+        assertEquals(ent.getId(), serials.get(0).getEntitlementId());
+        assertTrue(serials.get(0).isDirty());
+    }
+
+    @Test
+    public void listSerialsForConsumerIncludesDirtyEntitlementsWithoutCerts() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L, pastDate, futureDate);
+        poolCurator.create(pool);
+
+        Entitlement dirty = createEntitlement(owner, consumer, pool, null);
+        dirty.setDirty(true);
+        entitlementCurator.create(dirty);
+        entitlementCurator.create(createEntitlement(owner, consumer, pool, null));
+
+        List<EntitlementCertificateSerial> serials =
+            entCertCurator.listSerialsForConsumer(consumer);
+        assertEquals(1, serials.size());
+        assertNull(serials.get(0).getSerial());
+        assertEquals(dirty.getId(), serials.get(0).getEntitlementId());
+        assertTrue(serials.get(0).isDirty());
+    }
+
+    @Test
+    public void listDirtyIdsMostRecentCheckinFirst() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L, pastDate, futureDate);
+        poolCurator.create(pool);
+
+        Consumer oldConsumer = createConsumer(owner);
+        oldConsumer.setLastCheckin(createDate(2010, 1, 1));
+        consumerCurator.create(oldConsumer);
+        Consumer recentConsumer = createConsumer(owner);
+        recentConsumer.setLastCheckin(createDate(2012, 1, 1));
+        consumerCurator.create(recentConsumer);
+
+        Entitlement oldEnt = createEntitlement(owner, oldConsumer, pool, null);
+        oldEnt.setDirty(true);
+        entitlementCurator.create(oldEnt);
+        Entitlement recentEnt = createEntitlement(owner, recentConsumer, pool, null);
+        recentEnt.setDirty(true);
+        entitlementCurator.create(recentEnt);
+        entitlementCurator.create(createEntitlement(owner, recentConsumer, pool, null));
+
+        assertEquals(Arrays.asList(recentEnt.getId(), oldEnt.getId()),
+            entitlementCurator.listDirtyIds(10));
+        assertEquals(Arrays.asList(recentEnt.getId()), entitlementCurator.listDirtyIds(1));
+    }
 }
@@ -24,7 +24,10 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -107,4 +110,35 @@ public class GuestIdCuratorTest extends DatabaseTestFixture {
         GuestId result = curator.findByConsumerAndId(consumer, "1");
         assertEquals(new GuestId("1"), result);
     }
+
+    private Consumer createHost(String name, Date checkIn, int checkIns, String... guests) {
+        Consumer host = new Consumer(name, "testUser", owner, ct);
+        for (String guest : guests) {
+            host.addGuestId(new GuestId(guest));
+        }
+        for (int i = 0; i < checkIns; i++) {
+            host.addGuestIdCheckIn();
+        }
+        consumerCurator.create(host);
+        beginTransaction();
+        entityManager().createNativeQuery(
+            "update cp_guest_ids_checkin set updated = :updated where consumer_id = :id")
+            .setParameter("updated", checkIn)
+            .setParameter("id", host.getId())
+            .executeUpdate();
+        commitTransaction();
+        return host;
+    }
+
+    @Test
+    public void reportingHostIsLatestCheckIn() {
+        Consumer older = createHost("older", new Date(1000L), 3, "guest1", "guest2");
+        Consumer newer = createHost("newer", new Date(2000L), 1, "GUEST1");
+
+        Map<String, String> hosts = curator.getReportingHostUuids(owner,
+            Arrays.asList("guest1", "guest2", "guest3"));
+        assertEquals(2, hosts.size());
+        assertEquals(newer.getUuid(), hosts.get("guest1"));
+        assertEquals(older.getUuid(), hosts.get("guest2"));
+    }
 }
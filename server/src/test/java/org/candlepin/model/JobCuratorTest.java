@@ -34,6 +34,8 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.util.Util;
 
 import org.apache.commons.lang.RandomStringUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.junit.Test;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
@@ -128,6 +130,33 @@ public class JobCuratorTest extends DatabaseTestFixture {
         assertEquals(JobStatus.JobState.CANCELED, job.getState());
     }
 
+    @Test
+    public void isCanceledSeesCancellationCommittedElsewhere() {
+        String jobid = newJobStatus().state(JobStatus.JobState.RUNNING)
+            .owner("ducks").create().getId();
+        assertFalse(curator.isCanceled(jobid));
+
+        // Canceled by another request, as the job runs:
+        Session other = ((Session) entityManager().getDelegate()).getSessionFactory()
+            .openSession();
+        try {
+            Transaction tx = other.beginTransaction();
+            other.createQuery("update JobStatus j set j.state = :canceled " +
+                "where j.id = :jobid")
+                .setInteger("canceled", JobState.CANCELED.ordinal())
+                .setParameter("jobid", jobid)
+                .executeUpdate();
+            tx.commit();
+        }
+        finally {
+            other.close();
+        }
+
+        // The job's own session still holds the running status:
+        assertEquals(JobState.RUNNING, curator.find(jobid).getState());
+        assertTrue(curator.isCanceled(jobid));
+    }
+
     @Test
     public void updateWithLargeResult() {
         String longstr = RandomStringUtils.randomAlphanumeric(300);
@@ -30,10 +30,14 @@ import org.candlepin.test.TestUtil;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -114,6 +118,21 @@ public class ProductCuratorTest extends DatabaseTestFixture {
         assertEquals(5, results.size());
     }
 
+    @Test
+    public void lookupByIds() {
+        Product prod = TestUtil.createProduct("bulk1", "Bulk One");
+        productCurator.create(prod);
+        productCurator.create(new Product("bulk2", "Bulk Two"));
+        entityManager().clear();
+
+        Map<String, Product> found = productCurator.lookupByIds(
+            Arrays.asList("bulk1", "bulk2", "missing"));
+        assertEquals(2, found.size());
+        assertEquals("Bulk Two", found.get("bulk2").getName());
+        assertEquals(prod.getAttributes().size(),
+            found.get("bulk1").getAttributes().size());
+    }
+
     @Test(expected = PersistenceException.class)
     public void nameRequired() {
 
@@ -614,4 +633,58 @@ public class ProductCuratorTest extends DatabaseTestFixture {
         Product result = productCurator.find(p.getId());
         assertEquals(1, result.getProductContent().size());
     }
+
+    @Test
+    public void testSessionsBatchLikeDefaultConfig() {
+        SessionFactoryImplementor factory = (SessionFactoryImplementor)
+            entityManager().unwrap(Session.class).getSessionFactory();
+        assertEquals(config.getInt(ConfigProperties.DB_BATCH_SIZE),
+            factory.getSettings().getJdbcBatchSize());
+    }
+
+    @Test
+    public void testBatchedFlushStoresEveryProduct() {
+        List<Product> products = new ArrayList<Product>();
+        beginTransaction();
+        // More than two batches, the last one partial:
+        for (int i = 0; i < 2 * config.getInt(ConfigProperties.DB_BATCH_SIZE) + 5; i++) {
+            Product p = TestUtil.createProduct();
+            entityManager().persist(p);
+            products.add(p);
+        }
+        commitTransaction();
+        entityManager().clear();
+
+        for (Product p : products) {
+            assertNotNull(productCurator.find(p.getId()));
+        }
+    }
+
+    @Test
+    public void testOrderedFlushKeepsBatchesFull() {
+        SessionFactoryImplementor factory = (SessionFactoryImplementor)
+            entityManager().unwrap(Session.class).getSessionFactory();
+        assertTrue(factory.getSettings().isOrderInsertsEnabled());
+        assertTrue(factory.getSettings().isOrderUpdatesEnabled());
+
+        int count = 2 * config.getInt(ConfigProperties.DB_BATCH_SIZE);
+        Statistics stats = factory.getStatistics();
+        stats.clear();
+        stats.setStatisticsEnabled(true);
+        try {
+            beginTransaction();
+            for (int i = 0; i < count; i++) {
+                Product p = TestUtil.createProduct();
+                p.setAttribute("arch", "x86_64");
+                entityManager().persist(p);
+            }
+            commitTransaction();
+
+            // Unordered, every product and attribute insert would start a batch:
+            assertTrue(stats.getPrepareStatementCount() < count);
+        }
+        finally {
+            stats.setStatisticsEnabled(false);
+        }
+    }
 }
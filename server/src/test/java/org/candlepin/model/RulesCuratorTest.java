@@ -16,11 +16,14 @@ package org.candlepin.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.candlepin.test.DatabaseTestFixture;
 
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.inject.Inject;
 
 /**
@@ -67,6 +70,47 @@ public class RulesCuratorTest extends DatabaseTestFixture {
         assertFalse("0.0".equals(rules.getVersion()));
     }
 
+    @Test
+    public void afterCommitRunsOnlyOnceCommitted() {
+        final AtomicBoolean ran = new AtomicBoolean();
+        beginTransaction();
+        rulesCurator.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        assertFalse(ran.get());
+        commitTransaction();
+        assertTrue(ran.get());
+    }
+
+    @Test
+    public void afterCommitSkippedOnRollback() {
+        final AtomicBoolean ran = new AtomicBoolean();
+        beginTransaction();
+        rulesCurator.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        entityManager().getTransaction().rollback();
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void afterCommitRunsImmediatelyWithoutTransaction() {
+        final AtomicBoolean ran = new AtomicBoolean();
+        rulesCurator.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        });
+        assertTrue(ran.get());
+    }
+
     @Test
     public void getRules() {
         rulesCurator.getRules();
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.candlepin.test.DatabaseTestFixture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+
+/**
+ * StatisticCounterCuratorTest
+ */
+public class StatisticCounterCuratorTest extends DatabaseTestFixture {
+
+    @Inject private StatisticCounterCurator counterCurator;
+    @Inject private ConsumerCurator consumerCurator;
+
+    private Owner owner;
+
+    @Before
+    public void setUp() {
+        owner = createOwner();
+
+        Consumer guest = createConsumer(owner);
+        guest.setFact("virt.is_guest", "True");
+        guest.setFact("cpu.cpu_socket(s)", "2");
+        consumerCurator.merge(guest);
+
+        Consumer physical = createConsumer(owner);
+        physical.setFact("cpu.cpu_socket(s)", "2");
+        consumerCurator.merge(physical);
+
+        createConsumer(owner);
+    }
+
+    @Test
+    public void reconcileCountsWithAggregates() {
+        assertNull(counterCurator.getReconciled(owner.getId()));
+
+        Map<String, Long> counters = counterCurator.reconcile(owner.getId());
+        assertEquals(Long.valueOf(3), counters.get(StatisticCounter.TOTAL_CONSUMERS));
+        assertEquals(Long.valueOf(1), counters.get(StatisticCounter.GUEST_CONSUMERS));
+        assertEquals(Long.valueOf(2), counters.get(StatisticCounter.socketsName("2")));
+        assertEquals(Long.valueOf(1), counters.get(StatisticCounter.socketsName(null)));
+
+        assertNotNull(counterCurator.getReconciled(owner.getId()));
+        assertEquals(counters, counterCurator.getCounters(owner.getId()));
+    }
+
+    @Test
+    public void incrementIgnoredUntilReconciled() {
+        counterCurator.increment(owner.getId(), StatisticCounter.TOTAL_CONSUMERS, 1);
+        assertTrue(counterCurator.getCounters(owner.getId()).isEmpty());
+
+        counterCurator.reconcile(owner.getId());
+        counterCurator.increment(owner.getId(), StatisticCounter.TOTAL_CONSUMERS, 1);
+        assertEquals(Long.valueOf(4),
+            counterCurator.getCounters(owner.getId()).get(StatisticCounter.TOTAL_CONSUMERS));
+    }
+
+    @Test
+    public void incrementCreatesAndMovesCounters() {
+        counterCurator.reconcile(owner.getId());
+
+        counterCurator.increment(owner.getId(), StatisticCounter.socketsName("4"), 1);
+        counterCurator.increment(owner.getId(), StatisticCounter.TOTAL_CONSUMERS, -1);
+
+        Map<String, Long> counters = counterCurator.getCounters(owner.getId());
+        assertEquals(Long.valueOf(1), counters.get(StatisticCounter.socketsName("4")));
+        assertEquals(Long.valueOf(2), counters.get(StatisticCounter.TOTAL_CONSUMERS));
+        assertFalse(counters.containsKey(StatisticCounter.RECONCILED));
+    }
+}
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import org.candlepin.service.BulkSubscriptionServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.test.TestUtil;
@@ -26,6 +27,7 @@ import org.candlepin.test.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -77,6 +79,26 @@ public class SubscriptionCuratorTest extends DatabaseTestFixture {
         assertNull(s);
     }
 
+    @Test
+    public void testGetSubscriptionsByIds() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Subscription s2 = TestUtil.createSubscription(owner, product);
+        adapter.createSubscription(s2);
+
+        List<String> ids = new ArrayList<String>();
+        ids.add(s1.getId());
+        ids.add(s2.getId());
+        ids.add("-15");
+        BulkSubscriptionServiceAdapter bulkAdapter = (BulkSubscriptionServiceAdapter) adapter;
+        List<Subscription> results = bulkAdapter.getSubscriptions(ids);
+
+        assertEquals(2, results.size());
+        assertTrue(results.contains(s1));
+        assertTrue(results.contains(s2));
+        assertTrue(bulkAdapter.getSubscriptions(new ArrayList<String>()).isEmpty());
+    }
+
     @Test
     public void testLookupSubscriptionByProduct() {
         Owner owner = createOwner();
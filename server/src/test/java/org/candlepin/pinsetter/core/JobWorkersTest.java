@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.core;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.guice.SimpleScope;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.persist.UnitOfWork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JobWorkersTest
+ */
+public class JobWorkersTest {
+
+    private Injector injector;
+    private UnitOfWork unitOfWork;
+    private SimpleScope scope;
+    private EventSink jobSink;
+    private JobWorkers workers;
+
+    @Before
+    public void setUp() {
+        injector = mock(Injector.class);
+        unitOfWork = mock(UnitOfWork.class);
+        scope = new SimpleScope();
+        jobSink = mock(EventSink.class);
+        workers = new JobWorkers(injector, unitOfWork, scope, jobSink);
+    }
+
+    @Test
+    public void enterAndExitScopeAndUnitOfWork() {
+        workers.enter();
+        scope.seed(String.class, "worker");
+        verify(unitOfWork).begin();
+
+        workers.exit();
+        verify(unitOfWork).end();
+
+        // The worker's scope is gone, so the next worker gets a fresh one:
+        workers.enter();
+        scope.seed(String.class, "next worker");
+        workers.exit();
+    }
+
+    @Test(expected = OutOfScopeException.class)
+    public void exitsScopeWhenUnitOfWorkFails() {
+        doThrow(new IllegalStateException()).when(unitOfWork).begin();
+        try {
+            workers.enter();
+            fail("Expected the unit of work to fail");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        scope.seed(String.class, "outside");
+    }
+
+    @Test
+    public void eventSinkIsTheWorkers() {
+        EventSink workerSink = mock(EventSink.class);
+        when(injector.getInstance(any(Key.class))).thenReturn(workerSink);
+
+        assertSame(workerSink, workers.getEventSink());
+    }
+
+    @Test
+    public void collectMovesEventsToJobSink() {
+        EventSink workerSink = mock(EventSink.class);
+        workers.collect(workerSink);
+
+        verify(workerSink).transferEvents(jobSink);
+        verifyZeroInteractions(jobSink);
+    }
+}
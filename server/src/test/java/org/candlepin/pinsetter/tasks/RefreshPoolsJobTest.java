@@ -19,18 +19,20 @@ import static org.mockito.Mockito.*;
 
 import org.candlepin.controller.CandlepinPoolManager;
 import org.candlepin.controller.Refresher;
+import org.candlepin.model.JobCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.pinsetter.core.JobWorkers;
 import org.candlepin.pinsetter.core.model.JobStatus;
 
-import com.google.inject.persist.UnitOfWork;
-
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
 
 import java.sql.SQLException;
 
@@ -45,6 +47,8 @@ public class RefreshPoolsJobTest {
     private JobExecutionContext ctx;
     private JobDataMap jdm;
     private Refresher refresher;
+    private JobCurator jobCurator;
+    private JobWorkers workers;
 
     @Before
     public void setUp() {
@@ -54,30 +58,49 @@ public class RefreshPoolsJobTest {
         ctx = mock(JobExecutionContext.class);
         jdm = mock(JobDataMap.class);
         refresher = mock(Refresher.class);
+        jobCurator = mock(JobCurator.class);
+        workers = mock(JobWorkers.class);
+        JobDetail detail = mock(JobDetail.class);
 
         when(ctx.getMergedJobDataMap()).thenReturn(jdm);
+        when(ctx.getJobDetail()).thenReturn(detail);
+        when(detail.getKey()).thenReturn(new JobKey("refresh_pools_test"));
         when(jdm.getString(eq(JobStatus.TARGET_ID))).thenReturn("someownerkey");
         when(jdm.getBoolean(eq(RefreshPoolsJob.LAZY_REGEN))).thenReturn(true);
         when(oc.lookupByKey(eq("someownerkey"))).thenReturn(owner);
         when(owner.getDisplayName()).thenReturn("test owner");
         when(pm.getRefresher(eq(true))).thenReturn(refresher);
         when(refresher.add(eq(owner))).thenReturn(refresher);
-        when(refresher.setUnitOfWork(any(UnitOfWork.class))).thenReturn(refresher);
+        when(refresher.setWorkers(eq(workers))).thenReturn(refresher);
     }
 
     @Test
     public void execute() throws Exception {
         // test
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
         rpj.execute(ctx);
 
         // verification
         verify(pm).getRefresher(true);
         verify(refresher).add(owner);
+        verify(refresher).setProgressListener(any(Refresher.ProgressListener.class));
         verify(refresher).run();
         verify(ctx).setResult(eq("Pools refreshed for owner test owner"));
     }
 
+    @Test
+    public void progressReportedThroughJobResult() throws Exception {
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
+        rpj.execute(ctx);
+
+        ArgumentCaptor<Refresher.ProgressListener> listener =
+            ArgumentCaptor.forClass(Refresher.ProgressListener.class);
+        verify(refresher).setProgressListener(listener.capture());
+        listener.getValue().progress(owner, 100, 250);
+        verify(jobCurator).updateResult(eq("refresh_pools_test"),
+            eq("Refreshed 100 of 250 subscriptions for owner test owner"));
+    }
+
     @Test
     public void forOwner() {
         Owner owner = mock(Owner.class);
@@ -95,7 +118,7 @@ public class RefreshPoolsJobTest {
         // the real thing we want to handle
         doThrow(new NullPointerException()).when(refresher).run();
 
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
         try {
             rpj.execute(ctx);
             fail("Expected exception not thrown");
@@ -112,7 +135,7 @@ public class RefreshPoolsJobTest {
         RuntimeException e = new RuntimeException("uh oh", new SQLException("not good"));
         doThrow(e).when(refresher).run();
 
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
         try {
             rpj.execute(ctx);
             fail("Expected exception not thrown");
@@ -130,7 +153,7 @@ public class RefreshPoolsJobTest {
         RuntimeException e2 = new RuntimeException("trouble!", e);
         doThrow(e2).when(refresher).run();
 
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
         try {
             rpj.execute(ctx);
             fail("Expected exception not thrown");
@@ -145,7 +168,7 @@ public class RefreshPoolsJobTest {
         RuntimeException e = new RuntimeException("uh oh", new NullPointerException());
         doThrow(e).when(refresher).run();
 
-        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm);
+        RefreshPoolsJob rpj = new RefreshPoolsJob(oc, pm, jobCurator, workers);
         try {
             rpj.execute(ctx);
             fail("Expected exception not thrown");
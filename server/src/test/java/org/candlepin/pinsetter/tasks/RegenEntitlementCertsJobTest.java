@@ -14,15 +14,20 @@
  */
 package org.candlepin.pinsetter.tasks;
 
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.PoolManager.RegenerationMonitor;
+import org.candlepin.model.JobCurator;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 
 
 /**
@@ -41,14 +46,42 @@ public class RegenEntitlementCertsJobTest {
         when(jdm.getString(eq("product_id"))).thenReturn("foobarbaz");
         when(jdm.getBoolean(eq("lazy_regen"))).thenReturn(true);
         when(detail.getJobDataMap()).thenReturn(jdm);
+        when(detail.getKey()).thenReturn(new JobKey("regen_job"));
         when(jec.getJobDetail()).thenReturn(detail);
 
         // test
         RegenProductEntitlementCertsJob recj =
-            new RegenProductEntitlementCertsJob(pm);
+            new RegenProductEntitlementCertsJob(pm, mock(JobCurator.class));
         recj.execute(jec);
 
         // verification
-        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true));
+        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true),
+            any(RegenerationMonitor.class));
+    }
+
+    @Test
+    public void regenerationStopsWhenJobIsCanceled() throws Exception {
+        CandlepinPoolManager pm = mock(CandlepinPoolManager.class);
+        JobCurator jobCurator = mock(JobCurator.class);
+        JobExecutionContext jec = mock(JobExecutionContext.class);
+        JobDetail detail = mock(JobDetail.class);
+        JobDataMap jdm = mock(JobDataMap.class);
+
+        when(jdm.getString(eq("product_id"))).thenReturn("foobarbaz");
+        when(jdm.getBoolean(eq("lazy_regen"))).thenReturn(false);
+        when(detail.getJobDataMap()).thenReturn(jdm);
+        when(detail.getKey()).thenReturn(new JobKey("regen_job"));
+        when(jec.getJobDetail()).thenReturn(detail);
+
+        new RegenProductEntitlementCertsJob(pm, jobCurator).execute(jec);
+
+        ArgumentCaptor<RegenerationMonitor> monitor =
+            ArgumentCaptor.forClass(RegenerationMonitor.class);
+        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(false),
+            monitor.capture());
+
+        assertFalse(monitor.getValue().isCanceled());
+        when(jobCurator.isCanceled(eq("regen_job"))).thenReturn(true);
+        assertTrue(monitor.getValue().isCanceled());
     }
 }
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.controller.DirtyEntitlementRegenerator;
+import org.candlepin.pinsetter.core.JobWorkers;
+
+import org.junit.Test;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+/**
+ * RegenerateDirtyEntitlementsJobTest
+ */
+public class RegenerateDirtyEntitlementsJobTest {
+
+    @Test
+    public void regeneratesAndReportsMetrics() throws JobExecutionException {
+        DirtyEntitlementRegenerator regenerator = mock(DirtyEntitlementRegenerator.class);
+        JobExecutionContext ctx = mock(JobExecutionContext.class);
+        JobWorkers workers = mock(JobWorkers.class);
+        when(regenerator.regenerate(any(JobWorkers.class))).thenReturn(7);
+        when(regenerator.getFailingCount()).thenReturn(3);
+
+        new RegenerateDirtyEntitlementsJob(regenerator, workers).toExecute(ctx);
+
+        verify(regenerator).regenerate(workers);
+        verify(ctx).setResult(matches("Regenerated 7 dirty entitlements .* 3 failing, .*"));
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+/**
+ * KeyPairPoolTest
+ */
+public class KeyPairPoolTest {
+
+    private static KeyPair pooled;
+    private static KeyPair generated;
+
+    private PKIUtility pki;
+    private KeyPairPool pool;
+    private File file;
+
+    @BeforeClass
+    public static void generateKeyPairs() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        pooled = generator.generateKeyPair();
+        generated = generator.generateKeyPair();
+    }
+
+    @Before
+    public void init() throws Exception {
+        pki = mock(PKIUtility.class);
+        when(pki.generateNewKeyPair()).thenReturn(pooled);
+        when(pki.decodeKeys(any(byte[].class), any(byte[].class))).thenCallRealMethod();
+
+        file = File.createTempFile("keypairs", ".txt");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.stop();
+        }
+        file.delete();
+    }
+
+    private void waitUntilFull(KeyPairPool pool) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (pool.size() < pool.getCapacity() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(pool.getCapacity(), pool.size());
+    }
+
+    @Test
+    public void disabledPoolGeneratesOnDemand() throws Exception {
+        pool = new KeyPairPool(pki, 0, "");
+        pool.start();
+
+        assertSame(pooled, pool.take());
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getServedCount());
+        assertEquals(0, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void servesPreGeneratedKeyPairs() throws Exception {
+        pool = new KeyPairPool(pki, 3, "");
+        pool.start();
+        waitUntilFull(pool);
+        when(pki.generateNewKeyPair()).thenReturn(generated);
+
+        assertSame(pooled, pool.take());
+        assertEquals(1, pool.getServedCount());
+        assertEquals(0, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void emptyPoolCountsExhaustion() throws Exception {
+        pool = new KeyPairPool(pki, 3, "");
+
+        assertSame(pooled, pool.take());
+        assertEquals(0, pool.getServedCount());
+        assertEquals(1, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void keyPairsPersistedAcrossRestarts() throws Exception {
+        pool = new KeyPairPool(pki, 2, file.getPath());
+        pool.start();
+        waitUntilFull(pool);
+        pool.stop();
+        assertTrue(file.exists());
+
+        when(pki.generateNewKeyPair()).thenReturn(generated);
+        pool = new KeyPairPool(pki, 2, file.getPath());
+        pool.start();
+
+        // Read back before the refill thread runs, and never read twice:
+        assertEquals(2, pool.size());
+        assertFalse(file.exists());
+        KeyPair loaded = pool.take();
+        assertNotSame(pooled, loaded);
+        assertTrue(Arrays.equals(pooled.getPrivate().getEncoded(),
+            loaded.getPrivate().getEncoded()));
+        assertTrue(Arrays.equals(pooled.getPublic().getEncoded(),
+            loaded.getPublic().getEncoded()));
+    }
+
+    @Test
+    public void saveLeavesNoTemporaryFiles() throws Exception {
+        pool = new KeyPairPool(pki, 2, file.getPath());
+        pool.start();
+        waitUntilFull(pool);
+        pool.stop();
+
+        assertTrue(file.length() > 0);
+        for (String name : file.getAbsoluteFile().getParentFile().list()) {
+            assertFalse(name.startsWith(file.getName() + ".") && name.endsWith(".tmp"));
+        }
+    }
+}
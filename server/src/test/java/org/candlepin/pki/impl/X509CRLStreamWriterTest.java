@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.pki.PKIReader;
+import org.candlepin.pki.X509CRLEntryWrapper;
+import org.candlepin.util.OIDUtil;
+import org.candlepin.util.Util;
+
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * X509CRLStreamWriterTest
+ */
+@SuppressWarnings("deprecation")
+public class X509CRLStreamWriterTest {
+
+    private static KeyPair keyPair;
+    private static X509Certificate caCert;
+
+    private BouncyCastlePKIUtility pkiUtility;
+
+    @Before
+    public void init() throws Exception {
+        if (keyPair == null) {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+            kpg.initialize(2048);
+            keyPair = kpg.generateKeyPair();
+
+            X500Principal principal = new X500Principal("CN=test");
+            X509V3CertificateGenerator gen = new X509V3CertificateGenerator();
+            gen.setSerialNumber(BigInteger.TEN);
+            gen.setNotBefore(Util.yesterday());
+            gen.setNotAfter(Util.getFutureDate(2));
+            gen.setSubjectDN(principal);
+            gen.setIssuerDN(principal);
+            gen.setPublicKey(keyPair.getPublic());
+            gen.setSignatureAlgorithm("SHA1WITHRSA");
+            caCert = gen.generate(keyPair.getPrivate());
+        }
+
+        PKIReader reader = mock(PKIReader.class);
+        when(reader.getCACert()).thenReturn(caCert);
+        when(reader.getCaKey()).thenReturn(keyPair.getPrivate());
+        pkiUtility = new BouncyCastlePKIUtility(reader,
+            new DefaultSubjectKeyIdentifierWriter());
+    }
+
+    @Test
+    public void streamedCrlMatchesGeneratedCrl() throws Exception {
+        List<X509CRLEntryWrapper> entries = new ArrayList<X509CRLEntryWrapper>();
+        entries.add(new X509CRLEntryWrapper(BigInteger.ONE, new Date()));
+        entries.add(new X509CRLEntryWrapper(new BigInteger("1235465"), new Date()));
+        entries.add(new X509CRLEntryWrapper(new BigInteger("9876543210123"), new Date()));
+
+        X509CRL generated = pkiUtility.createX509CRL(entries, BigInteger.TEN);
+        X509CRL streamed = write(entries.iterator(), BigInteger.TEN, null);
+
+        streamed.verify(keyPair.getPublic());
+        assertEquals(generated.getIssuerX500Principal(), streamed.getIssuerX500Principal());
+        assertEquals(generated.getSigAlgName(), streamed.getSigAlgName());
+        assertEquals(generated.getNonCriticalExtensionOIDs(),
+            streamed.getNonCriticalExtensionOIDs());
+        assertEquals("10", pkiUtility.decodeDERValue(
+            streamed.getExtensionValue(OIDUtil.CRL_NUMBER)));
+        assertNull(streamed.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR));
+
+        assertEquals(3, streamed.getRevokedCertificates().size());
+        for (X509CRLEntry entry : generated.getRevokedCertificates()) {
+            X509CRLEntry match = streamed.getRevokedCertificate(entry.getSerialNumber());
+            assertNotNull(match);
+            assertArrayEquals(entry.getExtensionValue("2.5.29.21"),
+                match.getExtensionValue("2.5.29.21"));
+        }
+    }
+
+    @Test
+    public void streamedDeltaCrl() throws Exception {
+        List<X509CRLEntryWrapper> entries = new ArrayList<X509CRLEntryWrapper>();
+        entries.add(new X509CRLEntryWrapper(BigInteger.ONE, new Date()));
+
+        X509CRL streamed = write(entries.iterator(), BigInteger.TEN, BigInteger.ONE);
+
+        streamed.verify(keyPair.getPublic());
+        assertTrue(streamed.getCriticalExtensionOIDs().contains(
+            OIDUtil.DELTA_CRL_INDICATOR));
+        assertEquals("1", pkiUtility.decodeDERValue(
+            streamed.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR)));
+    }
+
+    @Test
+    public void streamedEmptyCrl() throws Exception {
+        X509CRL streamed = write(new ArrayList<X509CRLEntryWrapper>().iterator(),
+            BigInteger.ONE, null);
+
+        streamed.verify(keyPair.getPublic());
+        assertNull(streamed.getRevokedCertificates());
+    }
+
+    /*
+     * Stands in for a benchmark: the entries are produced lazily, so only the
+     * streamed CRL itself is ever held in memory by this test.
+     */
+    @Test
+    public void streamedLargeCrl() throws Exception {
+        final int count = 50000;
+        Iterator<X509CRLEntryWrapper> entries = new Iterator<X509CRLEntryWrapper>() {
+            private int next = 0;
+            private final Date date = new Date();
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public X509CRLEntryWrapper next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new X509CRLEntryWrapper(BigInteger.valueOf(1000000L + next++),
+                    date);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        X509CRL streamed = write(entries, BigInteger.ONE, null);
+
+        streamed.verify(keyPair.getPublic());
+        assertEquals(count, streamed.getRevokedCertificates().size());
+        assertNotNull(streamed.getRevokedCertificate(BigInteger.valueOf(1000000L)));
+        assertNotNull(streamed.getRevokedCertificate(
+            BigInteger.valueOf(1000000L + count - 1)));
+    }
+
+    @Test
+    public void streamedCrlUsesGivenSignatureAlgorithm() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new X509CRLStreamWriter(caCert, keyPair.getPrivate(), "SHA256withRSA").write(
+            new ArrayList<X509CRLEntryWrapper>().iterator(), BigInteger.ONE, null, out);
+
+        X509CRL streamed = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+            new ByteArrayInputStream(out.toByteArray()));
+        streamed.verify(keyPair.getPublic());
+        assertEquals("1.2.840.113549.1.1.11", streamed.getSigAlgOID());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedSignatureAlgorithm() {
+        new X509CRLStreamWriter(caCert, keyPair.getPrivate(), "SHA256WITHECDSA");
+    }
+
+    @Test
+    public void definiteLengthEncoding() {
+        assertArrayEquals(new byte[] {0x30, 0x7f},
+            X509CRLStreamWriter.encodeTagAndLength(0x30, 0x7f));
+        assertArrayEquals(new byte[] {0x30, (byte) 0x81, (byte) 0x80},
+            X509CRLStreamWriter.encodeTagAndLength(0x30, 0x80));
+        assertArrayEquals(new byte[] {0x30, (byte) 0x83, 0x01, 0x00, 0x00},
+            X509CRLStreamWriter.encodeTagAndLength(0x30, 0x10000));
+    }
+
+    private X509CRL write(Iterator<X509CRLEntryWrapper> entries, BigInteger crlNumber,
+        BigInteger baseCrlNumber) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pkiUtility.writeX509CRL(entries, crlNumber, baseCrlNumber, out);
+
+        String pem = new String(out.toByteArray(), "US-ASCII");
+        assertTrue(pem.startsWith("-----BEGIN X509 CRL-----\n"));
+        assertTrue(pem.endsWith("-----END X509 CRL-----\n"));
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+            new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.util.Util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * JsRunnerProviderTest
+ */
+public class JsRunnerProviderTest {
+
+    @Mock private RulesCurator rulesCuratorMock;
+    private JsRunnerProvider provider;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        InputStream is = this.getClass().getResourceAsStream(
+            RulesCurator.DEFAULT_RULES_FILE);
+        Rules rules = new Rules(Util.readFile(is));
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date(1000L));
+        when(rulesCuratorMock.getRules()).thenReturn(rules);
+        provider = new JsRunnerProvider(rulesCuratorMock);
+    }
+
+    @Test
+    public void namespaceResolvedOncePerCompile() {
+        provider.get().init("compliance_name_space");
+        provider.get().init("compliance_name_space");
+        provider.get().init("entitlement_name_space");
+
+        JsNamespaceCache cache = provider.getNamespaceCache();
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void namespaceCacheDiscardedOnRecompile() {
+        provider.get().init("compliance_name_space");
+        JsNamespaceCache before = provider.getNamespaceCache();
+        assertSame(before, provider.getNamespaceCache());
+
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date(2000L));
+        provider.get().init("compliance_name_space");
+
+        JsNamespaceCache after = provider.getNamespaceCache();
+        assertNotSame(before, after);
+        assertEquals(1, after.size());
+        assertEquals(1, after.getMisses());
+    }
+
+    @Test
+    public void rulesTimestampTrustedWithinInterval() {
+        provider = new JsRunnerProvider(rulesCuratorMock, 60000L);
+        JsNamespaceCache before = provider.getNamespaceCache();
+
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date(2000L));
+        provider.get();
+        provider.get();
+
+        assertSame(before, provider.getNamespaceCache());
+        assertEquals(2, provider.getAvoidedVersionChecks());
+    }
+
+    @Test
+    public void invalidateForcesVersionCheck() {
+        provider = new JsRunnerProvider(rulesCuratorMock, 60000L);
+        JsNamespaceCache before = provider.getNamespaceCache();
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(rulesCuratorMock).afterCommit(any(Runnable.class));
+
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date(2000L));
+        provider.invalidate();
+        provider.get();
+
+        assertNotSame(before, provider.getNamespaceCache());
+        assertEquals(0, provider.getAvoidedVersionChecks());
+    }
+
+    @Test
+    public void invalidateWaitsForCommit() {
+        provider = new JsRunnerProvider(rulesCuratorMock, 60000L);
+        JsNamespaceCache before = provider.getNamespaceCache();
+
+        when(rulesCuratorMock.getUpdated()).thenReturn(new Date(2000L));
+        provider.invalidate();
+        ArgumentCaptor<Runnable> reset = ArgumentCaptor.forClass(Runnable.class);
+        verify(rulesCuratorMock).afterCommit(reset.capture());
+
+        // Not committed yet, the cached timestamp is still trusted:
+        provider.get();
+        assertSame(before, provider.getNamespaceCache());
+        assertEquals(1, provider.getAvoidedVersionChecks());
+
+        reset.getValue().run();
+        provider.get();
+        assertNotSame(before, provider.getNamespaceCache());
+    }
+}
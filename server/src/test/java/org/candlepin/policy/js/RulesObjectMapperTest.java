@@ -27,10 +27,13 @@ import org.candlepin.model.ProductPoolAttribute;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.util.Util;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -140,4 +143,49 @@ public class RulesObjectMapperTest {
         ComplianceStatus cs = objMapper.toObject(json, ComplianceStatus.class);
     }
 
+    @Test
+    public void consecutiveCallsDoNotShareOutput() {
+        Consumer c = new Consumer();
+        c.setName("a-rather-long-consumer-name-for-the-first-payload");
+        c.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
+        context.put("consumer", c);
+        context.put("nothing", null);
+        String first = objMapper.toJsonString(context);
+        assertTrue(first.startsWith("{"));
+        assertTrue(first.contains("\"nothing\":null"));
+
+        Map<String, Object> small = new HashMap<String, Object>();
+        small.put("compliance", "short");
+        assertEquals("{\"compliance\":\"short\"}", objMapper.toJsonString(small));
+    }
+
+    @Test
+    public void streamedOutputParsesBack() {
+        Pool p = new Pool();
+        p.setId("POOLID");
+        p.setQuantity(10L);
+        context.put("pool", p);
+
+        Map<String, Pool> parsed = objMapper.toObject(objMapper.toJsonString(context),
+            new TypeReference<Map<String, Pool>>() {});
+        assertEquals("POOLID", parsed.get("pool").getId());
+        assertEquals(Long.valueOf(10), parsed.get("pool").getQuantity());
+    }
+
+    @Test
+    public void writeJsonLeavesWriterOpen() {
+        final boolean[] closed = new boolean[1];
+        StringWriter writer = new StringWriter() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        context.put("compliance", "short");
+        objMapper.writeJson(context, writer);
+
+        assertFalse(closed[0]);
+        assertEquals("{\"compliance\":\"short\"}", writer.toString());
+        assertEquals(writer.toString(), objMapper.toJsonString(context));
+    }
 }
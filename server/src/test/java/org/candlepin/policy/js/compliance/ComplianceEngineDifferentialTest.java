@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.assertEquals;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerCurator;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.policy.js.JsRunner;
+
+import com.google.inject.Provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * ComplianceEngineDifferentialTest
+ *
+ * Runs every ComplianceRulesTest fixture through both the javascript rules and the
+ * native ComplianceCalculator, failing with a description of the two results
+ * whenever they diverge.
+ */
+public class ComplianceEngineDifferentialTest extends ComplianceRulesTest {
+
+    @Override
+    protected ComplianceRules createComplianceRules(JsRunner jsRules,
+        EntitlementCurator entCurator, StatusReasonMessageGenerator generator,
+        Provider<EventSink> eventSinkProvider, ConsumerCurator consumerCurator) {
+        return new DifferentialComplianceRules(jsRules, entCurator, generator,
+            eventSinkProvider, consumerCurator);
+    }
+
+    /**
+     * ComplianceRules which compares the javascript result with the native one.
+     */
+    private static class DifferentialComplianceRules extends ComplianceRules {
+        private EntitlementCurator entCurator;
+
+        DifferentialComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
+            StatusReasonMessageGenerator generator, Provider<EventSink> eventSinkProvider,
+            ConsumerCurator consumerCurator) {
+            super(jsRules, entCurator, generator, eventSinkProvider, consumerCurator,
+                new CandlepinCommonTestConfig(), new ComplianceStatusCache(0));
+            this.entCurator = entCurator;
+        }
+
+        @Override
+        ComplianceStatus calculateStatus(Consumer c, Date date,
+            boolean calculateCompliantUntil) {
+            ComplianceStatus jsStatus = calculateJsStatus(c, date, calculateCompliantUntil);
+            ComplianceStatus nativeStatus = getCalculator().getStatus(c,
+                c.getEntitlements(), date, calculateCompliantUntil);
+            assertEquals("Compliance engines diverged for get_status",
+                describe(jsStatus), describe(nativeStatus));
+            return jsStatus;
+        }
+
+        @Override
+        public boolean isStackCompliant(Consumer consumer, String stackId,
+            List<Entitlement> entsToConsider) {
+            boolean jsResult = super.isStackCompliant(consumer, stackId, entsToConsider);
+            assertEquals("Compliance engines diverged for is_stack_compliant",
+                jsResult,
+                getCalculator().isStackCompliant(consumer, stackId, entsToConsider));
+            return jsResult;
+        }
+
+        @Override
+        public boolean isEntitlementCompliant(Consumer consumer, Entitlement ent,
+            Date onDate) {
+            boolean jsResult = super.isEntitlementCompliant(consumer, ent, onDate);
+            List<Entitlement> ents = entCurator.listByConsumerAndDate(consumer, onDate);
+            assertEquals("Compliance engines diverged for is_ent_compliant",
+                jsResult, getCalculator().isEntitlementCompliant(consumer, ent, ents));
+            return jsResult;
+        }
+    }
+
+    /*
+     * Builds an order independent description of a status. Entitlements are
+     * compared by id since the javascript result contains deserialized copies.
+     */
+    private static String describe(ComplianceStatus status) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("status: ").append(status.getStatus()).append('\n');
+        builder.append("date: ").append(time(status.getDate())).append('\n');
+        builder.append("compliantUntil: ").append(time(status.getCompliantUntil()))
+            .append('\n');
+        builder.append("nonCompliant: ").append(sorted(status.getNonCompliantProducts()))
+            .append('\n');
+        builder.append("compliant: ").append(describe(status.getCompliantProducts()))
+            .append('\n');
+        builder.append("partial: ").append(
+            describe(status.getPartiallyCompliantProducts())).append('\n');
+        builder.append("partialStacks: ").append(describe(status.getPartialStacks()))
+            .append('\n');
+
+        List<String> reasons = new ArrayList<String>();
+        for (ComplianceReason reason : status.getReasons()) {
+            reasons.add(reason.getKey() + " " +
+                new TreeMap<String, String>(reason.getAttributes()));
+        }
+        Collections.sort(reasons);
+        builder.append("reasons: ").append(reasons);
+        return builder.toString();
+    }
+
+    private static String describe(Map<String, Set<Entitlement>> products) {
+        Map<String, List<String>> result = new TreeMap<String, List<String>>();
+        for (Map.Entry<String, Set<Entitlement>> entry : products.entrySet()) {
+            List<String> ids = new ArrayList<String>();
+            for (Entitlement ent : entry.getValue()) {
+                ids.add(String.valueOf(ent.getId()));
+            }
+            Collections.sort(ids);
+            result.put(String.valueOf(entry.getKey()), ids);
+        }
+        return result.toString();
+    }
+
+    private static List<String> sorted(Set<String> values) {
+        List<String> result = new ArrayList<String>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static Long time(Date date) {
+        return date == null ? null : date.getTime();
+    }
+}
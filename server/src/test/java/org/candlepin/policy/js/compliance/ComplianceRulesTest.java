@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerInstalledProduct;
@@ -99,7 +100,7 @@ public class ComplianceRulesTest {
         when(rulesCuratorMock.getRules()).thenReturn(rules);
         provider = new JsRunnerProvider(rulesCuratorMock);
         when(eventSinkProvider.get()).thenReturn(eventSink);
-        compliance = new ComplianceRules(provider.get(),
+        compliance = createComplianceRules(provider.get(),
             entCurator, new StatusReasonMessageGenerator(i18n), eventSinkProvider,
             consumerCurator);
         owner = new Owner("test");
@@ -108,6 +109,14 @@ public class ComplianceRulesTest {
         activeGuestAttrs.put("active", "1");
     }
 
+    protected ComplianceRules createComplianceRules(JsRunner jsRules,
+        EntitlementCurator entCurator, StatusReasonMessageGenerator generator,
+        Provider<EventSink> eventSinkProvider, ConsumerCurator consumerCurator) {
+        return new ComplianceRules(jsRules, entCurator, generator, eventSinkProvider,
+            consumerCurator, new CandlepinCommonTestConfig(),
+            new ComplianceStatusCache(0));
+    }
+
     /*
      * Make sure additive properties coming back from the javascript do not break when
      * we deserialize.
@@ -117,7 +126,8 @@ public class ComplianceRulesTest {
         JsRunner mockRunner = mock(JsRunner.class);
         compliance = new ComplianceRules(mockRunner,
             entCurator, new StatusReasonMessageGenerator(i18n), eventSinkProvider,
-            consumerCurator);
+            consumerCurator, new CandlepinCommonTestConfig(),
+            new ComplianceStatusCache(0));
         when(mockRunner.runJsFunction(any(Class.class), eq("get_status"),
             any(JsContext.class))).thenReturn("{\"unknown\": \"thing\"}");
         Consumer c = mockConsumerWithTwoProductsAndNoEntitlements();
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.test.TestUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+public class ComplianceStatusCacheTest {
+
+    private ComplianceStatusCache cache;
+    private Owner owner;
+    private Consumer consumer;
+    private Pool pool;
+    private Entitlement ent;
+    private Date rulesTimestamp;
+
+    @Before
+    public void setUp() {
+        cache = new ComplianceStatusCache(10);
+        owner = new Owner("cacheowner");
+        consumer = TestUtil.createConsumer(owner);
+        pool = TestUtil.createPool(owner, TestUtil.createProduct());
+        pool.setId("pool1");
+        pool.setStartDate(TestUtil.createDate(2010, 1, 1));
+        pool.setEndDate(TestUtil.createDate(2020, 1, 1));
+        ent = TestUtil.createEntitlement(owner, consumer, pool, null);
+        ent.setId("ent1");
+        ent.setQuantity(1);
+        rulesTimestamp = new Date(1000L);
+    }
+
+    private ComplianceStatus cacheStatus(Date date) {
+        ComplianceStatus status = new ComplianceStatus(date);
+        status.addCompliantProduct("product1", ent);
+        cache.put(consumer, false, rulesTimestamp, status);
+        return status;
+    }
+
+    @Test
+    public void cachedStatusReturnedForSameInput() {
+        ComplianceStatus status = cacheStatus(TestUtil.createDate(2012, 1, 1));
+        Date later = TestUtil.createDate(2013, 1, 1);
+
+        ComplianceStatus cached = cache.get(consumer, later, false, rulesTimestamp);
+        assertNotNull(cached);
+        assertNotSame(status, cached);
+        assertEquals(later, cached.getDate());
+        assertEquals(status.getCompliantProducts(), cached.getCompliantProducts());
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void expirationInvalidatesCachedStatus() {
+        cacheStatus(TestUtil.createDate(2012, 1, 1));
+        assertNull(cache.get(consumer, TestUtil.createDate(2021, 1, 1), false,
+            rulesTimestamp));
+        assertNull(cache.get(consumer, TestUtil.createDate(2009, 1, 1), false,
+            rulesTimestamp));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void entitlementChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        // Changed in memory only, nothing flushed or bumped the updated time:
+        ent.setQuantity(2);
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void factChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        consumer.setFact("cpu.cpu_socket(s)", "8");
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void poolChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        pool.setQuantity(pool.getQuantity() + 1);
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void poolAttributeChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        pool.setProductAttribute("sockets", "4", pool.getProductId());
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void installedProductChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("product2", "Product 2"));
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void guestChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        consumer.addGuestId(new GuestId("guest1"));
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void updatedTimesAloneKeepCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        consumer.setUpdated(new Date());
+        ent.setUpdated(new Date());
+        pool.setUpdated(new Date());
+        assertNotNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void dirtyEntitlementInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        ent.setDirty(true);
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void cachedStatusRebuiltFromConsumerEntitlements() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+
+        // The same consumer and entitlement, as loaded by a later request:
+        Consumer reloaded = TestUtil.createConsumer(owner);
+        reloaded.setUuid(consumer.getUuid());
+        reloaded.setType(consumer.getType());
+        Entitlement reloadedEnt = new Entitlement();
+        reloadedEnt.setId("ent1");
+        reloadedEnt.setOwner(owner);
+        reloadedEnt.setPool(pool);
+        reloadedEnt.setQuantity(1);
+        reloaded.addEntitlement(reloadedEnt);
+
+        ComplianceStatus cached = cache.get(reloaded, date, false, rulesTimestamp);
+        assertNotNull(cached);
+        assertSame(reloadedEnt,
+            cached.getCompliantProducts().get("product1").iterator().next());
+    }
+
+    @Test
+    public void rulesChangeInvalidatesCachedStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        assertNull(cache.get(consumer, date, false, new Date(2000L)));
+    }
+
+    @Test
+    public void compliantUntilRequiresMatchingStatus() {
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        assertNull(cache.get(consumer, date, true, rulesTimestamp));
+    }
+
+    @Test
+    public void flushOwner() {
+        cacheStatus(TestUtil.createDate(2012, 1, 1));
+        assertEquals(0, cache.flushOwner("someotherowner"));
+        assertEquals(1, cache.flushOwner("cacheowner"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        cache = new ComplianceStatusCache(1);
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        Consumer other = TestUtil.createConsumer(owner);
+        cache.put(other, false, rulesTimestamp, new ComplianceStatus(date));
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+        assertNotNull(cache.get(other, date, false, rulesTimestamp));
+    }
+
+    @Test
+    public void disabledCacheNeverHits() {
+        cache = new ComplianceStatusCache(0);
+        Date date = TestUtil.createDate(2012, 1, 1);
+        cacheStatus(date);
+        assertNull(cache.get(consumer, date, false, rulesTimestamp));
+        assertEquals(0, cache.size());
+    }
+}
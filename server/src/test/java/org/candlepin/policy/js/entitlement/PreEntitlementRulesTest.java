@@ -36,6 +36,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
 
@@ -95,6 +96,38 @@ public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
             result.getWarnings().get(0).getResourceKey());
     }
 
+    @Test
+    public void batchPreEntitlementMatchesSinglePoolChecks() {
+        Product coresProduct = new Product(productId, "A product for testing");
+        coresProduct.addAttribute(new ProductAttribute("cores", "10"));
+        Pool coresPool = createPool(owner, coresProduct);
+        Pool plainPool = createPool(owner, new Product("plain", "Plain product"));
+
+        consumer.setFacts(new HashMap<String, String>());
+        consumer.setFact("cpu.cpu_socket(s)", "2");
+        consumer.setFact("cpu.core(s)_per_socket", "10");
+
+        when(this.prodAdapter.getProductById(productId)).thenReturn(coresProduct);
+
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(coresPool);
+        pools.add(plainPool);
+        Map<String, ValidationResult> results = enforcer.preEntitlement(consumer, pools,
+            CallerType.BEST_POOLS);
+
+        assertEquals(2, results.size());
+        for (Pool pool : pools) {
+            ValidationResult single = enforcer.preEntitlement(consumer, pool, 1,
+                CallerType.BEST_POOLS);
+            ValidationResult batched = results.get(pool.getId());
+            assertEquals(single.getErrors().toString(), batched.getErrors().toString());
+            assertEquals(single.getWarnings().toString(),
+                batched.getWarnings().toString());
+        }
+        assertTrue(results.get(coresPool.getId()).hasWarnings());
+        assertFalse(results.get(plainPool.getId()).hasWarnings());
+    }
+
     @Test
     public void testListForSufficientRAM() {
         Product product = new Product(productId, "A product for testing");
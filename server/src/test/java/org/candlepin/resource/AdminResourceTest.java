@@ -20,12 +20,15 @@ import static org.mockito.Mockito.*;
 
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.service.impl.DefaultUserServiceAdapter;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Map;
 
 /**
  * AdminResourceTest
@@ -35,12 +38,16 @@ public class AdminResourceTest {
     private UserServiceAdapter usa;
     private AdminResource ar;
     private UserCurator uc;
+    private ComplianceStatusCache cache;
+    private KeyPairPool keyPairPool;
 
     @Before
     public void init() {
         usa = mock(DefaultUserServiceAdapter.class);
         uc = mock(UserCurator.class);
-        ar = new AdminResource(usa, uc, null);
+        cache = mock(ComplianceStatusCache.class);
+        keyPairPool = mock(KeyPairPool.class);
+        ar = new AdminResource(usa, uc, null, cache, keyPairPool);
     }
 
     @Test
@@ -52,7 +59,8 @@ public class AdminResourceTest {
 
     @Test
     public void initWithNonDefaultUserService() {
-        ar = new AdminResource(mock(UserServiceAdapter.class), uc, null);
+        ar = new AdminResource(mock(UserServiceAdapter.class), uc, null, cache,
+            keyPairPool);
         assertEquals("Already initialized.", ar.initialize());
     }
 
@@ -61,4 +69,22 @@ public class AdminResourceTest {
         when(uc.getUserCount()).thenReturn(new Long(1000));
         assertEquals("Already initialized.", ar.initialize());
     }
+
+    @Test
+    public void flushComplianceCacheForOwner() {
+        ar.flushComplianceCache("admin");
+        verify(cache).flushOwner(eq("admin"));
+    }
+
+    @Test
+    public void keyPairPoolStats() {
+        when(keyPairPool.size()).thenReturn(3);
+        when(keyPairPool.getCapacity()).thenReturn(100);
+        when(keyPairPool.getExhaustedCount()).thenReturn(7L);
+
+        Map<String, Long> stats = ar.getKeyPairPoolStats();
+        assertEquals(Long.valueOf(3), stats.get("size"));
+        assertEquals(Long.valueOf(100), stats.get("capacity"));
+        assertEquals(Long.valueOf(7), stats.get("exhausted"));
+    }
 }
@@ -46,6 +46,7 @@ import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.model.ConsumerTypeCurator;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
+import org.candlepin.model.EntitlementCertificateSerial;
 import org.candlepin.model.EntitlementCurator;
 import org.candlepin.model.IdentityCertificate;
 import org.candlepin.model.Owner;
@@ -61,6 +62,7 @@ import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.resource.dto.AutobindData;
 import org.candlepin.resource.util.ConsumerBindUtil;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.service.BaseEntitlementCertServiceAdapter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
@@ -68,6 +70,7 @@ import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.test.TestUtil;
 import org.candlepin.util.ServiceLevelValidator;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -90,6 +93,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 /**
@@ -105,7 +111,7 @@ public class ConsumerResourceTest {
     @Mock
     private OwnerCurator mockedOwnerCurator;
     @Mock
-    private EntitlementCertServiceAdapter mockedEntitlementCertServiceAdapter;
+    private BaseEntitlementCertServiceAdapter mockedEntitlementCertServiceAdapter;
     @Mock
     private SubscriptionServiceAdapter mockedSubscriptionServiceAdapter;
     @Mock
@@ -139,26 +145,142 @@ public class ConsumerResourceTest {
     @Test
     public void testGetCertSerials() {
         Consumer consumer = createConsumer();
-        List<EntitlementCertificate> certificates = createEntitlementCertificates();
+        List<EntitlementCertificateSerial> serials = createEntitlementCertificateSerials();
 
-        when(mockedEntitlementCertServiceAdapter.listForConsumer(consumer))
-            .thenReturn(certificates);
+        when(mockedEntitlementCertServiceAdapter.listSerialsForConsumer(consumer))
+            .thenReturn(serials);
         when(mockedConsumerCurator.verifyAndLookupConsumer(consumer.getUuid())).thenReturn(
             consumer);
+
+        Response response = createSerialsResource().getEntitlementCertificateSerials(
+            consumer.getUuid(), null);
+
+        verifyCertificateSerialNumbers(getSerials(response));
+        assertEquals(new EntityTag(DigestUtils.md5Hex("1,2,3")),
+            response.getMetadata().getFirst("ETag"));
+        verify(mockedPoolManager, never()).regenerateDirtyEntitlements(
+            anyListOf(Entitlement.class));
+        verify(mockedEntitlementCertServiceAdapter, never()).listForConsumer(consumer);
+    }
+
+    @Test
+    public void testGetCertSerialsRegeneratesOnlyDirtyEntitlements() {
+        Consumer consumer = createConsumer();
+        List<EntitlementCertificateSerial> dirty = new ArrayList<EntitlementCertificateSerial>(
+            createEntitlementCertificateSerials());
+        dirty.set(1, new EntitlementCertificateSerial(5L, "ent2", true));
+
+        when(mockedEntitlementCertServiceAdapter.listSerialsForConsumer(consumer))
+            .thenReturn(dirty).thenReturn(createEntitlementCertificateSerials());
+        when(mockedConsumerCurator.verifyAndLookupConsumer(consumer.getUuid())).thenReturn(
+            consumer);
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        when(mockedEntitlementCurator.listAllByIds(eq(new HashSet<String>(
+            Arrays.asList("ent2"))))).thenReturn(ents);
+
+        Response response = createSerialsResource().getEntitlementCertificateSerials(
+            consumer.getUuid(), null);
+
+        verify(mockedPoolManager).regenerateDirtyEntitlements(ents);
+        verifyCertificateSerialNumbers(getSerials(response));
+    }
+
+    @Test
+    public void testGetCertSerialsRegeneratesDirtyEntitlementsWithoutCerts() {
+        Consumer consumer = createConsumer();
+        List<EntitlementCertificateSerial> dirty = new ArrayList<EntitlementCertificateSerial>(
+            createEntitlementCertificateSerials());
+        dirty.add(new EntitlementCertificateSerial(null, "ent4", true));
+
+        when(mockedEntitlementCertServiceAdapter.listSerialsForConsumer(consumer))
+            .thenReturn(dirty).thenReturn(createEntitlementCertificateSerials());
+        when(mockedConsumerCurator.verifyAndLookupConsumer(consumer.getUuid())).thenReturn(
+            consumer);
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        when(mockedEntitlementCurator.listAllByIds(eq(new HashSet<String>(
+            Arrays.asList("ent4"))))).thenReturn(ents);
+
+        Response response = createSerialsResource().getEntitlementCertificateSerials(
+            consumer.getUuid(), null);
+
+        verify(mockedPoolManager).regenerateDirtyEntitlements(ents);
+        verifyCertificateSerialNumbers(getSerials(response));
+    }
+
+    @Test
+    public void testGetCertSerialsNotModified() {
+        Consumer consumer = createConsumer();
+
+        when(mockedEntitlementCertServiceAdapter.listSerialsForConsumer(consumer))
+            .thenReturn(createEntitlementCertificateSerials());
+        when(mockedConsumerCurator.verifyAndLookupConsumer(consumer.getUuid())).thenReturn(
+            consumer);
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(
+            eq(new EntityTag(DigestUtils.md5Hex("1,2,3")))))
+            .thenReturn(Response.notModified());
+
+        Response response = createSerialsResource().getEntitlementCertificateSerials(
+            consumer.getUuid(), request);
+
+        assertEquals(304, response.getStatus());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    public void testGetCertSerialsFromOtherAdapters() {
+        Consumer consumer = createConsumer();
+        EntitlementCertServiceAdapter otherAdapter =
+            mock(EntitlementCertServiceAdapter.class);
+        List<EntitlementCertificate> certs = new ArrayList<EntitlementCertificate>();
+        for (long serial = 1; serial <= 3; serial++) {
+            Entitlement ent = new Entitlement();
+            ent.setId("ent" + serial);
+            EntitlementCertificate cert = new EntitlementCertificate();
+            cert.setSerial(new CertificateSerial(serial, new Date()));
+            cert.setEntitlement(ent);
+            certs.add(cert);
+        }
+        Entitlement dirty = new Entitlement();
+        dirty.setId("ent4");
+        dirty.setDirty(true);
+
+        when(otherAdapter.listForConsumer(consumer)).thenReturn(certs);
         when(mockedEntitlementCurator.listByConsumer(consumer)).thenReturn(
-            new ArrayList<Entitlement>());
+            Arrays.asList(certs.get(0).getEntitlement(), dirty));
+        when(mockedConsumerCurator.verifyAndLookupConsumer(consumer.getUuid())).thenReturn(
+            consumer);
+        List<Entitlement> ents = new ArrayList<Entitlement>();
+        when(mockedEntitlementCurator.listAllByIds(eq(new HashSet<String>(
+            Arrays.asList("ent4"))))).thenReturn(ents);
 
-        ConsumerResource consumerResource = new ConsumerResource(
+        Response response = createSerialsResource(otherAdapter)
+            .getEntitlementCertificateSerials(consumer.getUuid(), null);
+
+        verify(mockedPoolManager).regenerateDirtyEntitlements(ents);
+        verifyCertificateSerialNumbers(getSerials(response));
+    }
+
+    private ConsumerResource createSerialsResource() {
+        return createSerialsResource(mockedEntitlementCertServiceAdapter);
+    }
+
+    private ConsumerResource createSerialsResource(EntitlementCertServiceAdapter adapter) {
+        return new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
-            mockedEntitlementCertServiceAdapter, null, null, null, null, null,
+            adapter, null, null, null, null, null,
             null, null, mockedPoolManager, null, null, null, null, null,
             null, null, null, new CandlepinCommonTestConfig(), null, null, null,
             consumerBindUtil);
+    }
 
-        List<CertificateSerialDto> serials = consumerResource
-            .getEntitlementCertificateSerials(consumer.getUuid());
-
-        verifyCertificateSerialNumbers(serials);
+    @SuppressWarnings("unchecked")
+    private List<CertificateSerialDto> getSerials(Response response) {
+        Object entity = response.getEntity();
+        if (entity instanceof GenericEntity) {
+            entity = ((GenericEntity<?>) entity).getEntity();
+        }
+        return (List<CertificateSerialDto>) entity;
     }
 
     @Test (expected = RuntimeException.class)
@@ -202,11 +324,11 @@ public class ConsumerResourceTest {
         assertTrue(serials.get(0).getSerial() > 0);
     }
 
-    private List<EntitlementCertificate> createEntitlementCertificates() {
-        return Arrays.asList(new EntitlementCertificate[]{
-            createEntitlementCertificate("key1", "cert1"),
-            createEntitlementCertificate("key2", "cert2"),
-            createEntitlementCertificate("key3", "cert3") });
+    private List<EntitlementCertificateSerial> createEntitlementCertificateSerials() {
+        return Arrays.asList(new EntitlementCertificateSerial[]{
+            new EntitlementCertificateSerial(3L, "ent3", false),
+            new EntitlementCertificateSerial(1L, "ent1", false),
+            new EntitlementCertificateSerial(2L, "ent2", false) });
     }
 
 
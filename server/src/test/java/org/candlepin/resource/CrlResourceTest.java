@@ -14,10 +14,12 @@
  */
 package org.candlepin.resource;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -25,6 +27,7 @@ import org.candlepin.common.config.Configuration;
 import org.candlepin.common.config.MapConfiguration;
 import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlPublisher;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.util.CrlFileUtil;
 
@@ -32,9 +35,14 @@ import org.junit.Test;
 
 import java.io.File;
 import java.security.cert.X509CRL;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 /**
  * CrlResourceTest
  */
@@ -51,19 +59,58 @@ public class CrlResourceTest {
         when(fileutil.readCRLFile(any(File.class))).thenReturn(crl);
         when(crlgen.removeEntries(eq(crl), any(List.class))).thenReturn(crl);
 
-        CrlResource res = new CrlResource(crlgen, fileutil, config, sercur);
+        CrlResource res = new CrlResource(
+            new CrlPublisher(config, crlgen, fileutil, sercur), config, sercur);
         String[] ids = {"10"};
         res.unrevoke(ids);
         verify(crlgen, atLeastOnce()).removeEntries(eq(crl), any(List.class));
         verify(fileutil, atLeastOnce()).writeCRLFile(any(File.class), eq(crl));
     }
 
+    @Test
+    public void snapshotNotModified() throws Exception {
+        CrlPublisher publisher = mock(CrlPublisher.class);
+        CrlPublisher.Snapshot snapshot = mock(CrlPublisher.Snapshot.class);
+        when(snapshot.getETag()).thenReturn("abc");
+        when(snapshot.getLastModified()).thenReturn(new Date(1000L));
+        when(publisher.getSnapshot(any(File.class))).thenReturn(snapshot);
+        Request request = mock(Request.class);
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class)))
+            .thenReturn(Response.notModified());
+
+        CrlResource res = new CrlResource(publisher, new ConfigForTesting(),
+            mock(CertificateSerialCurator.class));
+        Response response = res.getCurrentCrl(null, request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(new EntityTag("abc"), response.getMetadata().getFirst("ETag"));
+        verify(snapshot, never()).getCrl();
+    }
+
+    @Test
+    public void snapshotServed() throws Exception {
+        CrlPublisher publisher = mock(CrlPublisher.class);
+        CrlPublisher.Snapshot snapshot = mock(CrlPublisher.Snapshot.class);
+        when(snapshot.getETag()).thenReturn("abc");
+        when(snapshot.getLastModified()).thenReturn(new Date(1000L));
+        when(snapshot.getCrl()).thenReturn("crl");
+        when(publisher.getSnapshot(any(File.class))).thenReturn(snapshot);
+
+        CrlResource res = new CrlResource(publisher, new ConfigForTesting(),
+            mock(CertificateSerialCurator.class));
+        Response response = res.getCurrentCrl(null, mock(Request.class));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("crl", response.getEntity());
+    }
+
     private static class ConfigForTesting extends MapConfiguration {
         public ConfigForTesting() {
             super(new HashMap<String, String>() {
                 private static final long serialVersionUID = 1L;
                 {
                     this.put(ConfigProperties.CRL_FILE_PATH, "/tmp/test-crl.crl");
+                    this.put(ConfigProperties.CRL_SERVE_SNAPSHOT, "true");
                 }
             });
         }
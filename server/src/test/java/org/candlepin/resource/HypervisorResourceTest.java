@@ -16,6 +16,8 @@ package org.candlepin.resource;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.audit.Event.Target;
@@ -28,6 +30,7 @@ import org.candlepin.auth.SubResource;
 import org.candlepin.auth.UserPrincipal;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -35,15 +38,19 @@ import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.model.ConsumerTypeCurator;
 import org.candlepin.model.DeletedConsumerCurator;
 import org.candlepin.model.GuestId;
+import org.candlepin.model.GuestIdCurator;
 import org.candlepin.model.IdentityCertificate;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
 import org.candlepin.model.activationkeys.ActivationKeyCurator;
+import org.candlepin.pinsetter.core.PinsetterKernel;
+import org.candlepin.pinsetter.tasks.HypervisorCheckInJob;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
 import org.candlepin.resource.dto.HypervisorCheckInResult;
 import org.candlepin.resource.util.ConsumerBindUtil;
+import org.candlepin.resource.util.HypervisorBulkCheckIn;
 import org.candlepin.service.IdentityCertServiceAdapter;
 import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.service.UserServiceAdapter;
@@ -55,18 +62,23 @@ import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.quartz.JobDetail;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import javax.ws.rs.core.Response;
+
 @RunWith(MockitoJUnitRunner.class)
 public class HypervisorResourceTest {
 
@@ -112,6 +124,14 @@ public class HypervisorResourceTest {
     @Mock
     private EventBuilder consumerEventBuilder;
 
+    @Mock
+    private GuestIdCurator guestIdCurator;
+
+    @Mock
+    private PinsetterKernel pinsetterKernel;
+
+    private CandlepinCommonTestConfig config;
+
     private ConsumerResource consumerResource;
 
     private I18n i18n;
@@ -132,8 +152,11 @@ public class HypervisorResourceTest {
             this.deletedConsumerCurator, null, null, new CandlepinCommonTestConfig(),
             null, null, null, this.consumerBindUtil);
 
+        this.config = new CandlepinCommonTestConfig();
+        HypervisorBulkCheckIn bulkCheckIn = new HypervisorBulkCheckIn(consumerResource,
+            consumerCurator, guestIdCurator, eventFactory, sink, i18n);
         hypervisorResource = new HypervisorResource(consumerResource,
-            consumerCurator, i18n, ownerCurator);
+            consumerCurator, i18n, ownerCurator, bulkCheckIn, pinsetterKernel, config);
 
         // Ensure that we get the consumer that was passed in back from the create call.
         when(consumerCurator.create(any(Consumer.class))).thenAnswer(new Answer<Object>() {
@@ -320,4 +343,116 @@ public class HypervisorResourceTest {
     public void ensureBadRequestWhenNoMappingIsIncludedInRequest() {
         hypervisorResource.hypervisorCheckIn(null, principal, "an-owner", false);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bulkCheckInBatchesGuestIdChanges() throws Exception {
+        Owner owner = new Owner("admin");
+        Consumer existing = new Consumer();
+        existing.setId("host-id");
+        existing.setUuid("host-uuid");
+        existing.setOwner(owner);
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        hostGuestMap.put("test-host", Arrays.asList(new GuestId("guest_b"),
+            new GuestId("GUEST_C")));
+        Map<String, List<GuestId>> existingGuests = new HashMap<String, List<GuestId>>();
+        existingGuests.put("host-id", Arrays.asList(new GuestId("GUEST_A"),
+            new GuestId("GUEST_B")));
+
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(any(Owner.class), any(Collection.class)))
+            .thenReturn(mockHypervisorConsumerMap("test-host", existing));
+        when(consumerCurator.getGuestConsumersMap(any(Owner.class), any(List.class)))
+            .thenReturn(new VirtConsumerMap());
+        when(guestIdCurator.getGuestIdsByConsumer(any(Collection.class)))
+            .thenReturn(existingGuests);
+
+        Response response = hypervisorResource.hypervisorBulkCheckIn(hostGuestMap,
+            principal, owner.getKey(), true);
+        HypervisorCheckInResult result = (HypervisorCheckInResult) response.getEntity();
+        assertEquals(1, result.getUpdated().size());
+
+        List<GuestId> deleted = new ArrayList<GuestId>();
+        deleted.add(new GuestId("GUEST_A"));
+        verify(guestIdCurator).batchDelete(eq(deleted));
+        List<GuestId> inserted = new ArrayList<GuestId>();
+        inserted.add(new GuestId("GUEST_C"));
+        verify(guestIdCurator).batchInsert(eq(inserted));
+        verify(pinsetterKernel, never()).scheduleSingleJob(any(JobDetail.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bulkCheckInDefersGuestReconcile() throws Exception {
+        Owner owner = new Owner("admin");
+        Consumer existing = new Consumer();
+        existing.setId("host-id");
+        existing.setUuid("host-uuid");
+        existing.setOwner(owner);
+        Consumer guest = new Consumer();
+        guest.setUuid("guest-uuid");
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        hostGuestMap.put("test-host", Arrays.asList(new GuestId("GUEST_A")));
+        VirtConsumerMap guestConsumers = new VirtConsumerMap();
+        guestConsumers.add("guest_a", guest);
+        Map<String, String> reportingHosts = new HashMap<String, String>();
+        reportingHosts.put("guest_a", "other-host-uuid");
+
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+        when(consumerCurator.getHostConsumersMap(any(Owner.class), any(Collection.class)))
+            .thenReturn(mockHypervisorConsumerMap("test-host", existing));
+        when(consumerCurator.getGuestConsumersMap(any(Owner.class), any(List.class)))
+            .thenReturn(guestConsumers);
+        when(guestIdCurator.getReportingHostUuids(any(Owner.class), any(Collection.class)))
+            .thenReturn(reportingHosts);
+
+        hypervisorResource.hypervisorBulkCheckIn(hostGuestMap, principal, owner.getKey(),
+            true);
+        verify(pinsetterKernel).scheduleSingleJob(any(JobDetail.class));
+    }
+
+    @Test
+    public void bulkCheckInReturnsJobForLargeReports() throws Exception {
+        Owner owner = new Owner("admin");
+        config.setProperty(ConfigProperties.HYPERVISOR_ASYNC_CHECKIN_GUESTS, "1");
+
+        Map<String, List<GuestId>> hostGuestMap = new HashMap<String, List<GuestId>>();
+        hostGuestMap.put("test-host", Arrays.asList(new GuestId("GUEST_A"),
+            new GuestId("GUEST_B")));
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+
+        Response response = hypervisorResource.hypervisorBulkCheckIn(hostGuestMap,
+            principal, owner.getKey(), true);
+        assertEquals(202, response.getStatus());
+        assertEquals(1, ((JobDetail[]) response.getEntity()).length);
+        verify(guestIdCurator, never()).batchInsert(any(Collection.class));
+    }
+
+    @Test
+    public void bulkCheckInSplitsLargeReportsByHost() throws Exception {
+        Owner owner = new Owner("admin");
+        config.setProperty(ConfigProperties.HYPERVISOR_ASYNC_CHECKIN_GUESTS, "2");
+
+        Map<String, List<GuestId>> hostGuestMap = new LinkedHashMap<String, List<GuestId>>();
+        hostGuestMap.put("host-a", Arrays.asList(new GuestId("GUEST_A"),
+            new GuestId("GUEST_B")));
+        hostGuestMap.put("host-b", Arrays.asList(new GuestId("GUEST_C")));
+        hostGuestMap.put("host-c", Arrays.asList(new GuestId("GUEST_D")));
+        when(ownerCurator.lookupByKey(eq(owner.getKey()))).thenReturn(owner);
+
+        Response response = hypervisorResource.hypervisorBulkCheckIn(hostGuestMap,
+            principal, owner.getKey(), true);
+        JobDetail[] details = (JobDetail[]) response.getEntity();
+        assertEquals(2, details.length);
+
+        int hosts = 0;
+        for (JobDetail detail : details) {
+            Map<?, ?> chunk = (Map<?, ?>) detail.getJobDataMap().get(
+                HypervisorCheckInJob.HOST_GUEST_MAP);
+            hosts += chunk.size();
+        }
+        assertEquals(3, hosts);
+    }
 }
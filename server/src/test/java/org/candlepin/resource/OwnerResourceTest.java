@@ -47,6 +47,8 @@ import org.candlepin.model.ImportRecord;
 import org.candlepin.model.ImportRecordCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.OwnerInfo;
+import org.candlepin.model.OwnerInfoCache;
 import org.candlepin.model.PermissionBlueprint;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolCurator;
@@ -97,6 +99,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MultivaluedMap;
 /**
@@ -459,6 +462,30 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         assert (futureList.get(0).getId().equals(pool2.getId()));
     }
 
+    @Test
+    public void ownerInfoCachedForOwnerAdmins() {
+        Principal principal = setupPrincipal(owner, Access.ALL);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        OwnerInfo info = ownerResource.getOwnerInfo(owner.getKey(), principal, response);
+        assertSame(info, ownerResource.getOwnerInfo(owner.getKey(), principal, response));
+        verify(response, times(2)).setHeader(eq(OwnerInfoCache.AGE_HEADER), anyString());
+    }
+
+    @Test
+    public void ownerInfoNotCachedForConsumers() {
+        Consumer c = TestUtil.createConsumer(owner);
+        consumerTypeCurator.create(c.getType());
+        consumerCurator.create(c);
+        Principal principal = setupPrincipal(new ConsumerPrincipal(c));
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        OwnerInfo info = ownerResource.getOwnerInfo(owner.getKey(), principal, response);
+        assertNotSame(info,
+            ownerResource.getOwnerInfo(owner.getKey(), principal, response));
+        verify(response, times(2)).setHeader(OwnerInfoCache.AGE_HEADER, "0");
+    }
+
     @Test
     public void testOwnerAdminCanGetPools() {
         Principal principal = setupPrincipal(owner, Access.ALL);
@@ -911,7 +938,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, akc, null, null, i18n, null, null, null,
             null, null, null, null, null, null, null,
             null, null, null, null, null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null);
+            serviceLevelValidator, null, null);
         or.createActivationKey("testOwner", ak);
     }
 
@@ -989,7 +1016,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, null, null, i18n, es, null, null, null, importer, null, null,
             null, importRecordCurator, null, null, null, null, null,
             null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null);
+            serviceLevelValidator, null, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1025,7 +1052,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, null, null, i18n, es, null, null, null, null, null, ec,
             null, importRecordCurator, null, null, null, null, null,
             null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null);
+            serviceLevelValidator, null, null);
 
         ExporterMetadata metadata = new ExporterMetadata();
         when(ec.lookupByTypeAndOwner(ExporterMetadata.TYPE_PER_USER, owner))
@@ -1049,7 +1076,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             null, null, null, i18n, es, null, null, null, importer, null, null,
             null, importRecordCurator, null, null, null, null, null,
             null, null, null, contentOverrideValidator,
-            serviceLevelValidator, null);
+            serviceLevelValidator, null, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1090,7 +1117,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
         OwnerResource ownerres = new OwnerResource(oc, null,
             null, null, null, i18n, null, null, null, null, null, null, null,
             null, null, null, null, null, null, null, null, null, null,
-            contentOverrideValidator, serviceLevelValidator, null);
+            contentOverrideValidator, serviceLevelValidator, null, null);
 
         when(oc.lookupByKey(eq("admin"))).thenReturn(owner);
         when(owner.getUpstreamConsumer()).thenReturn(upstream);
@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerInstalledProduct;
@@ -36,6 +37,7 @@ import org.candlepin.model.RulesCurator;
 import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.policy.js.compliance.StatusReasonMessageGenerator;
 import org.candlepin.util.Util;
 
@@ -98,7 +100,8 @@ public class InstalledProductStatusCalculatorTest {
             I18nFactory.FALLBACK);
         compliance = new ComplianceRules(provider.get(),
             entCurator, new StatusReasonMessageGenerator(i18n), eventSinkProvider,
-            consumerCurator);
+            consumerCurator, new CandlepinCommonTestConfig(),
+            new ComplianceStatusCache(0));
         owner = new Owner("test");
     }
 
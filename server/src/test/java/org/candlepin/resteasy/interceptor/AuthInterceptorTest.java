@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.UserPrincipal;
@@ -134,7 +135,7 @@ public class AuthInterceptorTest extends DatabaseTestFixture {
         dcc = mock(DeletedConsumerCurator.class);
         permFactory = mock(PermissionFactory.class);
         interceptor = new AuthInterceptor(config, usa,
-            consumerCurator, dcc, injector, i18nProvider);
+            consumerCurator, dcc, injector, i18nProvider, new ConsumerPrincipalCache(0, 0));
 
         ResteasyProviderFactory.getInstance().registerProvider(
             StubInjectorFactoryImpl.class);
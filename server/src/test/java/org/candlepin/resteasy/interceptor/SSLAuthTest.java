@@ -19,6 +19,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.auth.ConsumerPrincipal;
+import org.candlepin.auth.ConsumerPrincipalCache;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -33,10 +34,12 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.xnap.commons.i18n.I18n;
 
+import java.math.BigInteger;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 
 import javax.inject.Provider;
+import javax.security.auth.x500.X500Principal;
 
 public class SSLAuthTest {
 
@@ -45,12 +48,15 @@ public class SSLAuthTest {
     @Mock private DeletedConsumerCurator deletedConsumerCurator;
     @Mock private Provider<I18n> i18nProvider;
 
+    private ConsumerPrincipalCache principalCache;
     private SSLAuth auth;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator, i18nProvider);
+        this.principalCache = new ConsumerPrincipalCache(60000L, 10);
+        this.auth = new SSLAuth(this.consumerCurator, this.deletedConsumerCurator, i18nProvider,
+            principalCache);
     }
 
     /**
@@ -107,8 +113,34 @@ public class SSLAuthTest {
         assertNull(this.auth.getPrincipal(request));
     }
 
+    /**
+     * A certificate seen before is served from the principal cache.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void principalCachedBySerial() throws Exception {
+        Owner owner = new Owner("test owner");
+        Consumer consumer = new Consumer("machine_name", "test user", owner,
+                new ConsumerType(ConsumerTypeEnum.SYSTEM));
+        consumer.setId("consumer_id");
+
+        X509Certificate idCert = mockCert("CN=453-44423-235");
+        when(idCert.getSerialNumber()).thenReturn(BigInteger.valueOf(42L));
+        when(idCert.getIssuerX500Principal()).thenReturn(new X500Principal("CN=ca"));
+        when(this.consumerCurator.getConsumer("453-44423-235")).thenReturn(consumer);
+
+        ConsumerPrincipal first = (ConsumerPrincipal) this.auth.getPrincipal(request);
+        assertSame(first, this.auth.getPrincipal(request));
+        verify(this.consumerCurator, times(1)).getConsumer("453-44423-235");
+        assertEquals(1, principalCache.getHits());
+
+        principalCache.invalidateConsumer("consumer_id");
+        assertNotSame(first, this.auth.getPrincipal(request));
+        verify(this.consumerCurator, times(2)).getConsumer("453-44423-235");
+    }
 
-    private void mockCert(String dn) {
+    private X509Certificate mockCert(String dn) {
         X509Certificate idCert =  mock(X509Certificate.class);
         Principal principal = mock(Principal.class);
 
@@ -116,6 +148,7 @@ public class SSLAuthTest {
         when(idCert.getSubjectDN()).thenReturn(principal);
         when(this.request.getAttribute("javax.servlet.request.X509Certificate"))
                 .thenReturn(new X509Certificate[]{idCert});
+        return idCert;
     }
 
 }
@@ -20,6 +20,7 @@ import static org.mockito.Mockito.*;
 
 import org.candlepin.TestingModules;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Consumer;
@@ -42,11 +43,14 @@ import org.candlepin.model.ProductContent;
 import org.candlepin.model.ProductPoolAttribute;
 import org.candlepin.model.Subscription;
 import org.candlepin.pki.PKIUtility;
+import org.candlepin.pki.SigningExecutor;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
+import org.candlepin.service.EntitlementCertRequest;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.X509ExtensionUtil;
 import org.candlepin.util.X509V3ExtensionUtil;
@@ -66,6 +70,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.xnap.commons.i18n.I18nFactory;
@@ -129,6 +134,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
 
     private DefaultEntitlementCertServiceAdapter certServiceAdapter;
     private X509V3ExtensionUtil v3extensionUtil;
+    private ContentPayloadCache payloadCache;
 
     @Inject private PKIUtility realPKI;
     @Inject private EntitlementCurator entCurator;
@@ -199,13 +205,15 @@ public class DefaultEntitlementCertServiceAdapterTest {
         );
         injector.injectMembers(this);
 
-        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator, productAdapter);
+        payloadCache = new ContentPayloadCache(10);
+        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator, productAdapter,
+            payloadCache);
         certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
             mockedPKI, extensionUtil, v3extensionUtil,
             mock(EntitlementCertificateCurator.class), keyPairCurator,
             serialCurator, productAdapter, entCurator,
             I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-            config);
+            config, new SigningExecutor(config));
 
         product = new Product("12345", "a product", "variant", "version",
             ARCH_LABEL, "SVC");
@@ -310,7 +318,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
             mock(EntitlementCertificateCurator.class), keyPairCurator,
             serialCurator, productAdapter, entCurator,
             I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-            config);
+            config, new SigningExecutor(config));
 
         X509Certificate result = certServiceAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -732,7 +740,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class), keyPairCurator,
                 serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new SigningExecutor(1));
 
         entAdapter.createX509Certificate(entitlement, product,
             new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -770,7 +778,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class), keyPairCurator,
                 serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new SigningExecutor(1));
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -800,7 +808,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class), keyPairCurator,
                 serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new SigningExecutor(1));
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -827,7 +835,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class), keyPairCurator,
                 serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new SigningExecutor(1));
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -851,7 +859,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
                 mock(EntitlementCertificateCurator.class), keyPairCurator,
                 serialCurator, productAdapter, entCurator,
                 I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
-                mockConfig);
+                mockConfig, new SigningExecutor(1));
 
         entAdapter.createX509Certificate(entitlement,
             product, new HashSet<Product>(), new BigInteger("1234"), keyPair, true);
@@ -1539,6 +1547,88 @@ public class DefaultEntitlementCertServiceAdapterTest {
         assertTrue(!cert.getCert().contains("ENTITLEMENT DATA"));
     }
 
+    @Test
+    public void generateEntitlementCertsPersistsInRequestOrder() throws Exception {
+        EntitlementCertificateCurator entCertCurator =
+            mock(EntitlementCertificateCurator.class);
+        SigningExecutor signer = new SigningExecutor(4);
+        certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
+            realPKI, extensionUtil, v3extensionUtil, entCertCurator, keyPairCurator,
+            serialCurator, productAdapter, entCurator,
+            I18nFactory.getI18n(getClass(), Locale.US, I18nFactory.FALLBACK),
+            config, signer);
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(keyPair);
+
+        List<EntitlementCertRequest> requests = new ArrayList<EntitlementCertRequest>();
+        List<CertificateSerial> serials = new ArrayList<CertificateSerial>();
+        for (int i = 0; i < 6; i++) {
+            Entitlement ent = new Entitlement();
+            ent.setId("ent" + i);
+            ent.setQuantity(1);
+            ent.setConsumer(consumer);
+            ent.setPool(pool);
+            ent.setOwner(owner);
+            requests.add(new EntitlementCertRequest(ent, subscription, product));
+
+            CertificateSerial serial = mock(CertificateSerial.class);
+            when(serial.getId()).thenReturn(100L + i);
+            serials.add(serial);
+        }
+        when(serialCurator.create(any(CertificateSerial.class))).thenReturn(
+            serials.get(0), serials.subList(1, serials.size()).toArray(
+                new CertificateSerial[0]));
+
+        List<EntitlementCertificate> certs;
+        try {
+            certs = certServiceAdapter.generateEntitlementCerts(requests);
+        }
+        finally {
+            signer.stop();
+        }
+
+        assertEquals(requests.size(), certs.size());
+        InOrder persisted = inOrder(entCertCurator);
+        for (int i = 0; i < requests.size(); i++) {
+            Entitlement ent = requests.get(i).getEntitlement();
+            EntitlementCertificate cert = certs.get(i);
+            assertSame(ent, cert.getEntitlement());
+            assertSame(serials.get(i), cert.getSerial());
+            assertTrue(ent.getCertificates().contains(cert));
+
+            X509Certificate x509 = PKIUtility.createCert(cert.getCertAsBytes());
+            assertEquals(BigInteger.valueOf(100L + i), x509.getSerialNumber());
+            assertEquals("CN=" + ent.getId(), x509.getSubjectDN().getName());
+            persisted.verify(entCertCurator).create(cert);
+        }
+    }
+
+    @Test
+    public void generateEntitlementCertsSkipsOversizedCerts() throws Exception {
+        when(keyPairCurator.getConsumerKeyPair(any(Consumer.class))).thenReturn(keyPair);
+        when(mockedPKI.getPemEncoded(any(X509Certificate.class))).thenReturn(
+            "".getBytes());
+        when(mockedPKI.getPemEncoded(any(Key.class))).thenReturn("".getBytes());
+        CertificateSerial serial = mock(CertificateSerial.class);
+        when(serial.getId()).thenReturn(1L);
+        when(serialCurator.create(any(CertificateSerial.class))).thenReturn(serial);
+
+        largeContentProduct.setContent(generateContent(
+            X509ExtensionUtil.V1_CONTENT_LIMIT + 1, "TestContent"));
+        largeContentEntitlement.setId("large");
+        entitlement.setId("small");
+
+        List<EntitlementCertificate> certs = certServiceAdapter.generateEntitlementCerts(
+            Arrays.asList(
+                new EntitlementCertRequest(largeContentEntitlement,
+                    largeContentSubscription, largeContentProduct),
+                new EntitlementCertRequest(entitlement, subscription, product)));
+
+        assertEquals(2, certs.size());
+        assertNull(certs.get(0));
+        assertSame(entitlement, certs.get(1).getEntitlement());
+        assertTrue(largeContentEntitlement.getCertificates().isEmpty());
+    }
+
     @Test
     public void testContentExtension() throws IOException {
         Set<Product> products = new HashSet<Product>();
@@ -1572,6 +1662,45 @@ public class DefaultEntitlementCertServiceAdapterTest {
         }
     }
 
+    @Test
+    public void testContentExtensionReusesCachedPayload() throws IOException {
+        Set<Product> products = new HashSet<Product>();
+        products.add(product);
+        product.setContent(superContent);
+        consumer.setFact("system.certificate_version", "3.2");
+        consumer.setFact("uname.machine", "x86_64");
+
+        byte[] first = getContentPayload(certServiceAdapter.prepareV3ByteExtensions(
+            products, entitlement, "prefix", null));
+        byte[] second = getContentPayload(certServiceAdapter.prepareV3ByteExtensions(
+            products, entitlement, "prefix", null));
+        byte[] otherPrefix = getContentPayload(certServiceAdapter.prepareV3ByteExtensions(
+            products, entitlement, "other", null));
+
+        assertEquals(1, payloadCache.getHits());
+        assertEquals(2, payloadCache.getMisses());
+        assertArrayEquals(first, second);
+        assertNotSame(first, second);
+
+        List<String> contentSetList = v3extensionUtil.hydrateContentPackage(second);
+        assertEquals(7, contentSetList.size());
+        for (String url : testUrls) {
+            assertTrue(contentSetList.contains("/prefix" + url));
+            assertTrue(v3extensionUtil.hydrateContentPackage(otherPrefix)
+                .contains("/other" + url));
+        }
+    }
+
+    private byte[] getContentPayload(Set<X509ByteExtensionWrapper> byteExtensions) {
+        for (X509ByteExtensionWrapper ext : byteExtensions) {
+            if ("1.3.6.1.4.1.2312.9.7".equals(ext.getOid())) {
+                return ext.getValue();
+            }
+        }
+        fail("No content payload extension");
+        return null;
+    }
+
     @Test
     public void testContentExtensionConsumerNoArchFact() throws IOException {
         Set<Product> products = new HashSet<Product>();
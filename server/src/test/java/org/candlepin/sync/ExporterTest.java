@@ -17,6 +17,7 @@ package org.candlepin.sync;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -55,20 +56,24 @@ import org.candlepin.service.ProductServiceAdapter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -106,6 +111,7 @@ public class ExporterTest {
     private CandlepinCommonTestConfig config;
     private ExportRules exportRules;
     private PrincipalProvider pprov;
+    private java.security.KeyPair signingKeys;
 
     @Before
     public void setUp() {
@@ -134,6 +140,17 @@ public class ExporterTest {
         when(exportRules.canExport(any(Entitlement.class))).thenReturn(Boolean.TRUE);
     }
 
+    private Signature createSigner() throws GeneralSecurityException {
+        if (signingKeys == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(1024);
+            signingKeys = generator.generateKeyPair();
+        }
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(signingKeys.getPrivate());
+        return signature;
+    }
+
     private KeyPair createKeyPair() {
         KeyPair cpKeyPair = null;
 
@@ -216,8 +233,7 @@ public class ExporterTest {
 
         when(ent.getPool()).thenReturn(pool);
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(rc.getRules()).thenReturn(mrules);
         when(consumer.getEntitlements()).thenReturn(entitlements);
         when(psa.getProductById("12345")).thenReturn(prod);
@@ -274,8 +290,7 @@ public class ExporterTest {
         List<Entitlement> entitlements = new ArrayList<Entitlement>();
         entitlements.add(ent);
 
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
 
@@ -302,7 +317,7 @@ public class ExporterTest {
     }
 
     @Test
-    public void exportMetadata() throws ExportCreationException, IOException {
+    public void exportMetadata() throws Exception {
         config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
         Date start = new Date();
         Rules mrules = mock(Rules.class);
@@ -311,8 +326,7 @@ public class ExporterTest {
         IdentityCertificate idcert = new IdentityCertificate();
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -347,6 +361,60 @@ public class ExporterTest {
         assertTrue(new File("/tmp/meta.json").delete());
     }
 
+    @Test
+    public void streamedExportIsSigned() throws Exception {
+        Rules mrules = mock(Rules.class);
+        Consumer consumer = mock(Consumer.class);
+        Principal principal = mock(Principal.class);
+        IdentityCertificate idcert = new IdentityCertificate();
+
+        when(mrules.getRules()).thenReturn("foobar");
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
+        when(rc.getRules()).thenReturn(mrules);
+        when(pprov.get()).thenReturn(principal);
+        when(principal.getUsername()).thenReturn("testUser");
+
+        idcert.setSerial(new CertificateSerial(10L, new Date()));
+        idcert.setKey("euh0876puhapodifbvj094");
+        idcert.setCert("hpj-08ha-w4gpoknpon*)&^%#");
+        idcert.setCreated(new Date());
+        idcert.setUpdated(new Date());
+        when(consumer.getIdCert()).thenReturn(idcert);
+
+        Exporter e = new Exporter(ctc, me, ce, cte, re, ece, ecsa, pe, psa,
+            pce, ec, ee, pki, config, exportRules, pprov, dvc, dve, cdnc, cdne);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        e.getFullExport(consumer, null, null, null, out);
+
+        // The outer archive holds the inner one followed by its signature
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ZipEntry entry = zis.getNextEntry();
+        assertEquals("consumer_export.zip", entry.getName());
+        byte[] inner = IOUtils.toByteArray(zis);
+        entry = zis.getNextEntry();
+        assertEquals("signature", entry.getName());
+        byte[] signed = IOUtils.toByteArray(zis);
+        assertNull(zis.getNextEntry());
+        zis.close();
+
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(signingKeys.getPublic());
+        verifier.update(inner);
+        assertTrue(verifier.verify(signed));
+
+        Set<String> names = new HashSet<String>();
+        zis = new ZipInputStream(new ByteArrayInputStream(inner));
+        while ((entry = zis.getNextEntry()) != null) {
+            names.add(entry.getName());
+        }
+        zis.close();
+        assertTrue(names.contains("export/meta.json"));
+        assertTrue(names.contains("export/consumer.json"));
+        assertTrue(names.contains("export/upstream_consumer/10.json"));
+        assertTrue(names.contains("export/rules2/rules.js"));
+        assertTrue(names.contains("export/rules/default-rules.js"));
+    }
+
     @Test
     public void exportIdentityCertificate() throws Exception {
         config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
@@ -355,8 +423,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -390,7 +457,7 @@ public class ExporterTest {
     }
 
     @Test
-    public void exportConsumer() throws ExportCreationException, IOException {
+    public void exportConsumer() throws Exception {
         config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
         config.setProperty(ConfigProperties.PREFIX_WEBURL, "localhost:8443/weburl");
         config.setProperty(ConfigProperties.PREFIX_APIURL, "localhost:8443/apiurl");
@@ -399,8 +466,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
@@ -434,7 +500,7 @@ public class ExporterTest {
     }
 
     @Test
-    public void exportDistributorVersions() throws ExportCreationException, IOException {
+    public void exportDistributorVersions() throws Exception {
         config.setProperty(ConfigProperties.SYNC_WORK_DIR, "/tmp/");
         config.setProperty(ConfigProperties.PREFIX_WEBURL, "localhost:8443/weburl");
         config.setProperty(ConfigProperties.PREFIX_APIURL, "localhost:8443/apiurl");
@@ -443,8 +509,7 @@ public class ExporterTest {
         Principal principal = mock(Principal.class);
 
         when(mrules.getRules()).thenReturn("foobar");
-        when(pki.getSHA256WithRSAHash(any(InputStream.class))).thenReturn(
-            "signature".getBytes());
+        when(pki.getSHA256WithRSASigner()).thenReturn(createSigner());
         when(rc.getRules()).thenReturn(mrules);
         when(pprov.get()).thenReturn(principal);
         when(principal.getUsername()).thenReturn("testUser");
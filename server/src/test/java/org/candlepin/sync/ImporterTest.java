@@ -16,6 +16,8 @@ package org.candlepin.sync;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -41,6 +43,7 @@ import org.candlepin.model.ExporterMetadataCurator;
 import org.candlepin.model.IdentityCertificateCurator;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.Product;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
@@ -57,12 +60,15 @@ import org.junit.Test;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.net.URISyntaxException;
@@ -376,7 +382,7 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(InputStream.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File("/tmp/file.zip");
@@ -412,7 +418,7 @@ public class ImporterTest {
         ConflictOverrides co = mock(ConflictOverrides.class);
 
         // Mock a passed signature check:
-        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(InputStream.class),
             any(byte [].class))).thenReturn(true);
 
         File archive = new File("/tmp/file.zip");
@@ -436,6 +442,106 @@ public class ImporterTest {
         fail();
     }
 
+    @Test
+    public void readManifestWhileStreaming() throws Exception {
+        Importer i = new Importer(null, null, null, null, null, null, null, null,
+            null, config, null, null, null, i18n, null, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream cezip = new ZipOutputStream(bytes);
+        addEntry(cezip, "export/meta.json", mapper.writeValueAsString(
+            new Meta("0.0.3", new Date(), "test_user", "prefix", null)));
+        addEntry(cezip, "export/consumer_types/candlepin.json",
+            mapper.writeValueAsString(new ConsumerType(ConsumerTypeEnum.CANDLEPIN)));
+        addEntry(cezip, "export/products/100.json",
+            mapper.writeValueAsString(new Product("100", "Product 100")));
+        addEntry(cezip, "export/products/100.pem", "not json");
+        addEntry(cezip, "export/rules/default-rules.js", "// legacy rules");
+        addEntry(cezip, "export/rules2/rules.js", "// nothing to see here");
+        cezip.close();
+
+        ManifestContents contents = i.readManifest(
+            new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals("test_user", contents.getMeta().getPrincipalName());
+        assertEquals("// nothing to see here", contents.getRules());
+        assertEquals(1, contents.getConsumerTypes().size());
+        assertEquals(ConsumerTypeEnum.CANDLEPIN.getLabel(),
+            contents.getConsumerTypes().iterator().next().getLabel());
+        assertEquals(1, contents.getProducts().size());
+        assertEquals("100", contents.getProducts().iterator().next().getId());
+        assertNull(contents.getConsumer());
+        assertNull(contents.getEntitlements());
+    }
+
+    @Test
+    public void readManifestFromExtractedFiles() throws Exception {
+        Importer i = new Importer(null, null, null, null, null, null, null, null,
+            null, config, null, null, null, i18n, null, null);
+        Map<String, File> importFiles = new HashMap<String, File>();
+        importFiles.put(ImportFile.META.fileName(), createFile("meta.json", "0.0.3",
+            new Date(), "test_user", "prefix"));
+        File consumerTypes = mock(File.class);
+        when(consumerTypes.listFiles()).thenReturn(new File[0]);
+        importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), consumerTypes);
+        importFiles.put(ImportFile.CONSUMER.fileName(),
+            new File("target/test/resources/upstream/consumer.json"));
+        File distributorVersions = mock(File.class);
+        when(distributorVersions.listFiles()).thenReturn(new File[] {
+            new File("target/test/resources/upstream/dist-ver.json")});
+        importFiles.put(ImportFile.DISTRIBUTOR_VERSIONS.fileName(), distributorVersions);
+        importFiles.put(ImportFile.RULES_FILE.fileName(), new File("/tmp/no-such-rules.js"));
+
+        ManifestContents contents = i.readManifest(importFiles);
+
+        assertEquals("test_user", contents.getMeta().getPrincipalName());
+        assertNull(contents.getRules());
+        assertTrue(contents.getConsumerTypes().isEmpty());
+        assertNotNull(contents.getConsumer());
+        assertEquals(1, contents.getDistributorVersions().size());
+        assertNull(contents.getCdns());
+        assertNull(contents.getProducts());
+        assertNull(contents.getEntitlements());
+    }
+
+    @Test
+    public void loadExportWithoutStreaming() throws Exception {
+        config.setProperty(ConfigProperties.SYNC_IMPORT_STREAMING, "false");
+        PKIUtility pki = mock(PKIUtility.class);
+        Importer i = new Importer(null, null, null, null, null, null, null, null,
+            pki, config, null, null, null, i18n, null, null);
+        when(pki.verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+            any(byte [].class))).thenReturn(true);
+
+        File archive = new File("/tmp/file.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        addEntry(out, "signature", "This is the placeholder for the signature file");
+        File ceArchive = new File("/tmp/consumer_export.zip");
+        ZipOutputStream cezip = new ZipOutputStream(new FileOutputStream(ceArchive));
+        cezip.putNextEntry(new ZipEntry("no_content"));
+        cezip.close();
+        addFileToArchive(out, ceArchive);
+        out.close();
+
+        try {
+            i.loadExport(mock(Owner.class), archive, mock(ConflictOverrides.class));
+        }
+        catch (ImportExtractionException e) {
+            assertTrue(e.getMessage().contains("consumer_export archive has no contents"));
+            verify(pki).verifySHA256WithRSAHashAgainstCACerts(any(File.class),
+                any(byte [].class));
+            return;
+        }
+        fail();
+    }
+
+    private void addEntry(ZipOutputStream out, String name, String content)
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes());
+        out.closeEntry();
+    }
+
     private Map<String, File> getTestImportFiles() {
         Map<String, File> importFiles = new HashMap<String, File>();
         importFiles.put(ImportFile.META.fileName(), mock(File.class));
@@ -536,6 +642,9 @@ public class ImporterTest {
         importFiles.put(ImportFile.PRODUCTS.fileName(), null);
         importFiles.put(ImportFile.ENTITLEMENTS.fileName(), null);
         importFiles.put(ImportFile.UPSTREAM_CONSUMER.fileName(), mock(File.class));
+        // The manifest is read in full before anything is imported:
+        importFiles.put(ImportFile.CONSUMER.fileName(),
+            new File("target/test/resources/upstream/consumer.json"));
 
         try {
             i.importObjects(owner, importFiles, co);
@@ -718,6 +827,9 @@ public class ImporterTest {
         File cTypes = mock(File.class);
         when(cTypes.listFiles()).thenReturn(new File[]{});
         importFiles.put(ImportFile.CONSUMER_TYPE.fileName(), cTypes);
+        // The manifest is read in full before anything is imported:
+        importFiles.put(ImportFile.CONSUMER.fileName(),
+            new File("target/test/resources/upstream/consumer.json"));
 
         // this is the hook to stop testing. we confirm that the dist version null test
         //  is passed and then jump out instead of trying to fake the actual file
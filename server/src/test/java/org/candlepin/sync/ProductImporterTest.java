@@ -36,8 +36,11 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 /**
  * ProductImporterTest
@@ -415,6 +418,77 @@ public class ProductImporterTest {
         assertEquals("unknown", c.getVendor());
     }
 
+    @Test
+    public void bulkStoreWritesOnlyNewAndChanged() {
+        Product created = TestUtil.createProduct("created", "created");
+        Content newContent = addContentTo(created);
+        Product unchanged = TestUtil.createProduct("unchanged", "unchanged");
+        Product changed = TestUtil.createProduct("changed", "new name");
+
+        Product existingUnchanged = TestUtil.createProduct("unchanged", "unchanged");
+        Product existingChanged = TestUtil.createProduct("changed", "old name");
+        Map<String, Product> existing = new HashMap<String, Product>();
+        existing.put(existingUnchanged.getId(), existingUnchanged);
+        existing.put(existingChanged.getId(), existingChanged);
+        when(productCuratorMock.lookupByIds(anyCollectionOf(String.class)))
+            .thenReturn(existing);
+        when(contentCuratorMock.lookupByIds(anyCollectionOf(String.class)))
+            .thenReturn(new HashMap<String, Content>());
+        when(contentCuratorMock.bulkCreateOrUpdate(anyCollectionOf(Content.class),
+            anyCollectionOf(Content.class))).thenReturn(new HashMap<String, Content>());
+
+        Set<Product> storeThese = new HashSet<Product>();
+        storeThese.add(created);
+        storeThese.add(unchanged);
+        storeThese.add(changed);
+        ImportTimings timings = new ImportTimings();
+        Set<Product> changedProducts = importer.bulkStore(storeThese, timings);
+
+        assertEquals(1, changedProducts.size());
+        assertTrue(changedProducts.contains(changed));
+        verify(contentCuratorMock).bulkCreateOrUpdate(eq(Arrays.asList(newContent)),
+            eq(new ArrayList<Content>()));
+        verify(productCuratorMock).bulkCreateOrUpdate(eq(Arrays.asList(created)),
+            eq(Arrays.asList(changed)));
+        verify(productCuratorMock, never()).lookupById(any(String.class));
+        verify(productCuratorMock, never()).createOrUpdate(any(Product.class));
+        assertTrue(timings.getPhases().containsKey("products.lookup"));
+        assertTrue(timings.getPhases().containsKey("products.write"));
+    }
+
+    @Test
+    public void bulkStoreWritesSharedContentOnce() {
+        Product first = TestUtil.createProduct("first", "first");
+        Content c = addContentTo(first);
+        Product second = TestUtil.createProduct("second", "second");
+        second.getProductContent().add(new ProductContent(second,
+            new Content("name", "100130", "label", "type", "vendor", "url", "gpgurl",
+                "arch"), true));
+
+        Content existingContent = new Content("name", "100130", "label", "type",
+            "vendor", "url", "gpgurl", "arch");
+        existingContent.setMetadataExpire(1L);
+        existingContent.setRequiredTags("old-tag");
+        Map<String, Content> existing = new HashMap<String, Content>();
+        existing.put(existingContent.getId(), existingContent);
+        when(productCuratorMock.lookupByIds(anyCollectionOf(String.class)))
+            .thenReturn(new HashMap<String, Product>());
+        when(contentCuratorMock.lookupByIds(anyCollectionOf(String.class)))
+            .thenReturn(existing);
+        when(contentCuratorMock.bulkCreateOrUpdate(anyCollectionOf(Content.class),
+            anyCollectionOf(Content.class))).thenReturn(existing);
+
+        Set<Product> storeThese = new HashSet<Product>();
+        storeThese.add(first);
+        storeThese.add(second);
+        importer.bulkStore(storeThese, new ImportTimings());
+
+        verify(contentCuratorMock).bulkCreateOrUpdate(eq(new ArrayList<Content>()),
+            eq(Arrays.asList(c)));
+        assertSame(existingContent,
+            second.getProductContent().iterator().next().getContent());
+    }
+
     // Returns the Content object added
     private Content addContentTo(Product p) {
         Content c = new Content("name", "100130", "label", "type",
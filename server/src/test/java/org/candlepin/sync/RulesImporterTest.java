@@ -20,6 +20,7 @@ import static org.mockito.Mockito.*;
 import org.candlepin.audit.EventSink;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.test.DatabaseTestFixture;
 
 import org.junit.Before;
@@ -42,11 +43,12 @@ public class RulesImporterTest extends DatabaseTestFixture {
     @Inject private EventSink sink;
 
     @Mock private RulesCurator curator;
+    @Mock private JsRunnerProvider jsProvider;
     private RulesImporter importer;
 
     @Before
     public void setUp() {
-        importer = new RulesImporter(curator, sink);
+        importer = new RulesImporter(curator, sink, jsProvider);
     }
 
     @Test
@@ -56,6 +58,7 @@ public class RulesImporterTest extends DatabaseTestFixture {
 
         importer.importObject(new StringReader("//Version: 2.1"));
         verify(curator).update(any(Rules.class));
+        verify(jsProvider).invalidate();
     }
 
     @Test
@@ -65,6 +68,7 @@ public class RulesImporterTest extends DatabaseTestFixture {
 
         importer.importObject(new StringReader("// Version: 2.0"));
         verify(curator, never()).update(any(Rules.class));
+        verify(jsProvider, never()).invalidate();
     }
 
     @Test
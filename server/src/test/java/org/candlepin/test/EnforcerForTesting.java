@@ -22,7 +22,10 @@ import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 import org.candlepin.policy.js.pool.PoolHelper;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -48,6 +51,16 @@ public class EnforcerForTesting implements Enforcer {
         return new ValidationResult();
     }
 
+    @Override
+    public Map<String, ValidationResult> preEntitlement(Consumer consumer,
+            Collection<Pool> entitlementPools, CallerType caller) {
+        Map<String, ValidationResult> results = new HashMap<String, ValidationResult>();
+        for (Pool pool : entitlementPools) {
+            results.put(pool.getId(), new ValidationResult());
+        }
+        return results;
+    }
+
     public PreUnbindHelper preUnbind(Consumer consumer, Pool entitlementPool) {
         return new PreUnbindHelper(null);
     }
@@ -52,6 +52,10 @@ public class EventSinkForTesting implements EventSink {
     public void sendEvents() {
     }
 
+    @Override
+    public void transferEvents(EventSink target) {
+    }
+
     @Override
     public void emitPoolCreated(Pool newPool) {
     }
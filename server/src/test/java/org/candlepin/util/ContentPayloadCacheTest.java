@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * ContentPayloadCacheTest
+ */
+public class ContentPayloadCacheTest {
+
+    @Test
+    public void payloadKeyedByOrderedPaths() {
+        ContentPayloadCache cache = new ContentPayloadCache(10);
+        cache.put(Arrays.asList("/a/b", "/a/c"), new byte[] {1, 2});
+
+        assertArrayEquals(new byte[] {1, 2}, cache.get(Arrays.asList("/a/b", "/a/c")));
+        assertNull(cache.get(Arrays.asList("/a/c", "/a/b")));
+        assertNull(cache.get(Arrays.asList("/a/b/a/c")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void cachedPayloadIsCopied() {
+        ContentPayloadCache cache = new ContentPayloadCache(10);
+        byte[] payload = new byte[] {1, 2};
+        cache.put(Arrays.asList("/a"), payload);
+        payload[0] = 5;
+        cache.get(Arrays.asList("/a"))[1] = 5;
+
+        assertArrayEquals(new byte[] {1, 2}, cache.get(Arrays.asList("/a")));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        ContentPayloadCache cache = new ContentPayloadCache(2);
+        cache.put(Arrays.asList("/a"), new byte[] {1});
+        cache.put(Arrays.asList("/b"), new byte[] {2});
+        cache.get(Arrays.asList("/a"));
+        cache.put(Arrays.asList("/c"), new byte[] {3});
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(Arrays.asList("/a")));
+        assertNull(cache.get(Arrays.asList("/b")));
+    }
+
+    @Test
+    public void disabledWhenEmpty() {
+        ContentPayloadCache cache = new ContentPayloadCache(0);
+        cache.put(Arrays.asList("/a"), new byte[] {1});
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(Arrays.asList("/a")));
+        assertEquals(0, cache.size());
+    }
+}
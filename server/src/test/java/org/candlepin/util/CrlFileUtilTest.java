@@ -27,10 +27,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
@@ -131,4 +135,35 @@ public class CrlFileUtilTest {
             }
         }
     }
+
+    @Test
+    public void streamCrlFileReplacesFile() throws Exception {
+        final File f = File.createTempFile("test", ".crl");
+        try {
+            FileUtils.writeByteArrayToFile(f, "old".getBytes());
+            X509CRL crl = mock(X509CRL.class);
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    OutputStream out = (OutputStream) invocation.getArguments()[1];
+                    out.write("new crl".getBytes());
+                    return null;
+                }
+            }).when(pkiUtility).writePemEncoded(eq(crl), any(OutputStream.class));
+
+            cfu.streamCRLFile(f, crl);
+
+            assertEquals("new crl", FileUtils.readFileToString(f, "UTF-8"));
+            // the temporary file has been moved into place
+            assertEquals(0, f.getParentFile().listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith(f.getName()) && name.endsWith(".tmp");
+                }
+            }).length);
+        }
+        finally {
+            f.delete();
+        }
+    }
 }
@@ -30,12 +30,16 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductContent;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.X509V3ExtensionUtil.HuffNode;
 import org.candlepin.util.X509V3ExtensionUtil.NodePair;
 import org.candlepin.util.X509V3ExtensionUtil.PathNode;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -58,7 +62,7 @@ public class X509V3ExtensionUtilTest {
         config = mock(Configuration.class);
         ec = mock(EntitlementCurator.class);
         psa = mock(ProductServiceAdapter.class);
-        util = new X509V3ExtensionUtil(config, ec, psa);
+        util = new X509V3ExtensionUtil(config, ec, psa, new ContentPayloadCache(0));
     }
 
     @Test
@@ -186,4 +190,139 @@ public class X509V3ExtensionUtilTest {
         assertEquals("OS", resultBrandType);
     }
 
+    @Test
+    public void encoderMatchesReferenceEncoding() throws IOException {
+        PathNode root = util.makePathTree(createContent(2000), util.new PathNode());
+        List<String> strings = util.orderStrings(root);
+        List<PathNode> nodes = util.orderNodes(root);
+
+        HuffNode stringTrie = util.makeTrie(util.getStringNodeList(strings));
+        HuffNode nodeTrie = util.makeTrie(util.getPathNodeNodeList(nodes));
+        List<HuffNode> stringLeaves = util.getStringNodeList(strings);
+        Object endNode = stringLeaves.get(stringLeaves.size() - 1).getValue();
+        HuffNode refStringTrie = referenceTrie(stringLeaves);
+        HuffNode refNodeTrie = referenceTrie(util.getPathNodeNodeList(nodes));
+
+        for (String string : strings) {
+            assertEquals(util.findHuffPath(refStringTrie, string),
+                util.findHuffPath(stringTrie, string));
+        }
+        for (PathNode node : nodes.subList(1, nodes.size())) {
+            assertEquals(util.findHuffPath(refNodeTrie, node),
+                util.findHuffPath(nodeTrie, node));
+        }
+        assertArrayEquals(
+            referenceNodeDictionary(refStringTrie, refNodeTrie, nodes, endNode),
+            util.makeNodeDictionary(stringTrie, nodeTrie, nodes));
+    }
+
+    @Test
+    public void encodedContentHydrates() throws IOException {
+        List<org.candlepin.json.model.Content> contents = createContent(1000);
+        byte[] payload = util.encodeContentValue(contents);
+
+        Set<String> expected = new HashSet<String>();
+        for (org.candlepin.json.model.Content content : contents) {
+            expected.add(content.getPath());
+        }
+        assertEquals(expected, new HashSet<String>(util.hydrateContentPackage(payload)));
+    }
+
+    /*
+     * Stands in for a benchmark, encoding a product with 10k content sets used to
+     * take minutes.
+     */
+    @Test(timeout = 30000)
+    public void encodeLargeProduct() throws IOException {
+        assertTrue(util.encodeContentValue(createContent(10000)).length > 0);
+    }
+
+    private List<org.candlepin.json.model.Content> createContent(int count) {
+        String[] arches = {"i386", "x86_64", "ppc64"};
+        List<org.candlepin.json.model.Content> contents =
+            new ArrayList<org.candlepin.json.model.Content>();
+        for (int i = 0; i < count; i++) {
+            org.candlepin.json.model.Content content =
+                new org.candlepin.json.model.Content();
+            content.setPath("/content/dist/rhel/server/" + (i % 7) + "/repo" + i +
+                "/" + arches[i % arches.length] + "/os");
+            contents.add(content);
+        }
+        return contents;
+    }
+
+    /*
+     * The trie as originally built, by scanning for the two lightest nodes.
+     */
+    private HuffNode referenceTrie(List<HuffNode> nodes) {
+        if (nodes.get(0).getValue() instanceof PathNode) {
+            nodes.remove(0);
+        }
+        while (nodes.size() > 1) {
+            int node1 = referenceSmallest(-1, nodes);
+            int node2 = referenceSmallest(node1, nodes);
+            HuffNode hn1 = nodes.get(node1);
+            HuffNode hn2 = nodes.get(node2);
+            nodes.remove(hn1);
+            nodes.remove(hn2);
+            nodes.add(util.new HuffNode(null, hn1.getWeight() + hn2.getWeight(), hn1, hn2));
+        }
+        return nodes.get(0);
+    }
+
+    private int referenceSmallest(int exclude, List<HuffNode> nodes) {
+        int smallest = -1;
+        for (int index = 0; index < nodes.size(); index++) {
+            if (index == exclude) {
+                continue;
+            }
+            if (smallest == -1 || nodes.get(index).getWeight() <
+                nodes.get(smallest).getWeight()) {
+                smallest = index;
+            }
+        }
+        return smallest;
+    }
+
+    /*
+     * The node dictionary as originally encoded, one trie search per reference.
+     */
+    private byte[] referenceNodeDictionary(HuffNode stringParent, HuffNode nodeParent,
+        List<PathNode> pathNodes, Object endNode) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int nodeSize = pathNodes.size();
+        if (nodeSize > 127) {
+            ByteArrayOutputStream countBaos = new ByteArrayOutputStream();
+            boolean start = false;
+            byte[] size = new byte[] {(byte) (nodeSize >> 24), (byte) (nodeSize >> 16),
+                (byte) (nodeSize >> 8), (byte) nodeSize};
+            for (byte b : size) {
+                if (b != 0 || start) {
+                    countBaos.write(b);
+                    start = true;
+                }
+            }
+            baos.write(128 + countBaos.size());
+            baos.write(countBaos.toByteArray(), 0, countBaos.size());
+        }
+        else {
+            baos.write(nodeSize);
+        }
+
+        StringBuffer bits = new StringBuffer();
+        for (PathNode pn : pathNodes) {
+            for (NodePair np : pn.getChildren()) {
+                bits.append(util.findHuffPath(stringParent, np.getName()));
+                bits.append(util.findHuffPath(nodeParent, np.getConnection()));
+            }
+            bits.append(util.findHuffPath(stringParent, endNode));
+        }
+        while (bits.length() % 8 != 0) {
+            bits.append('0');
+        }
+        for (int i = 0; i < bits.length(); i += 8) {
+            baos.write(Integer.parseInt(bits.substring(i, i + 8), 2));
+        }
+        return baos.toByteArray();
+    }
 }